@@ -37,5 +37,6 @@ public class AstarMenuActivity extends MenuActivity {
         addMenu(R.id.btn_grid_group, GridGroupActivity.class);
         addMenu(R.id.btn_astar_rect_grid, AstarRectGridActivity.class);
         addMenu(R.id.btn_astar_hex_grid, AstarHexGridActivity.class);
+        addMenu(R.id.btn_flow_field, FlowFieldActivity.class);
     }
 }
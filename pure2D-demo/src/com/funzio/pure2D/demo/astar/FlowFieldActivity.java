@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.funzio.pure2D.demo.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Point;
+import android.graphics.PointF;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.funzio.pure2D.DisplayObject;
+import com.funzio.pure2D.Scene;
+import com.funzio.pure2D.astar.Astar;
+import com.funzio.pure2D.astar.AstarNode;
+import com.funzio.pure2D.astar.FlowField;
+import com.funzio.pure2D.astar.GridSnapshot;
+import com.funzio.pure2D.containers.DisplayGroup;
+import com.funzio.pure2D.demo.R;
+import com.funzio.pure2D.demo.activities.StageActivity;
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.textures.Texture;
+import com.funzio.pure2D.grid.RectGrid;
+import com.funzio.pure2D.shapes.Sprite;
+
+/**
+ * Benchmark for the flow field: many agents walking to the same goal. Touch to move the goal, the cost of one flow field versus one Astar search per agent is logged.
+ */
+public class FlowFieldActivity extends StageActivity {
+    private static final String TAG = FlowFieldActivity.class.getSimpleName();
+    private static final int GRID_CELL_SIZE = 16; // the textures are 32px, scaled down by half
+    private static final int NUM_AGENTS = 200;
+    private static final float AGENT_SPEED = 0.1f; // pixels per ms
+
+    private int GRID_WIDTH;
+    private int GRID_HEIGHT;
+
+    private RectGrid<Object> mRectGrid;
+    private FlowField mFlowField;
+    private AgentGroup mAgents;
+    private List<Texture> mTextures = new ArrayList<Texture>();
+    private final Point mTempCell = new Point();
+
+    @Override
+    public void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // define the grid dimensions based on the screen size
+        GRID_WIDTH = mDisplaySize.x / GRID_CELL_SIZE;
+        GRID_HEIGHT = mDisplaySize.y / GRID_CELL_SIZE;
+        mRectGrid = new RectGrid<Object>(GRID_WIDTH, GRID_HEIGHT);
+        mRectGrid.flipVertical(true); // flip the y-orientation
+        mRectGrid.setCellSize(GRID_CELL_SIZE, GRID_CELL_SIZE);
+
+        mScene.setListener(new Scene.Listener() {
+
+            @Override
+            public void onSurfaceCreated(final GLState glState, final boolean firstTime) {
+                if (firstTime) {
+                    // load the textures
+                    loadTextures();
+
+                    createWalls();
+                    mFlowField = new FlowField(mRectGrid);
+                    mAgents = new AgentGroup();
+                    mScene.addChild(mAgents);
+
+                    setGoal(GRID_WIDTH / 2, GRID_HEIGHT / 2);
+                }
+            }
+        });
+    }
+
+    private void loadTextures() {
+        final int[] ids = {
+                R.drawable.cc_32, // cc
+                R.drawable.mw_32, // mw
+                R.drawable.ka_32, // ka
+        };
+
+        for (int id : ids) {
+            // add texture to list
+            mTextures.add(mScene.getTextureManager().createDrawableTexture(id, null));
+        }
+    }
+
+    private void createWalls() {
+        final PointF point = new PointF();
+        for (int row = 0; row < GRID_HEIGHT; row++) {
+            for (int col = 0; col < GRID_WIDTH; col++) {
+                if (mRandom.nextInt(5) > 0) {
+                    continue;
+                }
+
+                final Sprite wall = new Sprite();
+                wall.setTexture(mTextures.get(0));
+                wall.setOriginAtCenter();
+                wall.setScale(0.5f);
+                mRectGrid.cellToPoint(col, row, point);
+                wall.setPosition(point);
+                wall.setAlpha(0.3f);
+                mScene.addChild(wall);
+
+                mRectGrid.setDataAt(col, row, wall);
+            }
+        }
+    }
+
+    private void setGoal(final int cellX, final int cellY) {
+        // make sure the goal is walkable
+        final Object wall = mRectGrid.getDataAt(cellX, cellY);
+        if (wall != null) {
+            mScene.removeChild((DisplayObject) wall);
+            mRectGrid.setDataAt(cellX, cellY, null);
+        }
+
+        // flow field: one integration for everyone
+        long time = System.nanoTime();
+        mFlowField.setGoal(cellX, cellY);
+        mFlowField.update();
+        final long flowTime = System.nanoTime() - time;
+
+        // versus one search per agent
+        final Astar astar = new GridSnapshot(mRectGrid).createEngine();
+        Astar.LOG_ENABLED = false;
+        final Point cell = new Point();
+        int numFound = 0;
+        time = System.nanoTime();
+        for (int i = 0; i < mAgents.getNumChildren(); i++) {
+            mRectGrid.pointToCell(mAgents.getChildAt(i).getPosition(), cell);
+            final List<AstarNode> path = astar.findPath(astar.createNode(cell), astar.createNode(cellX, cellY), 0, false);
+            if (path != null) {
+                astar.recycleNodes(path);
+                numFound++;
+            }
+        }
+        final long astarTime = System.nanoTime() - time;
+
+        Log.i(TAG, GRID_WIDTH + "x" + GRID_HEIGHT + " cells, " + mAgents.getNumChildren() + " agents (" + numFound + " can reach), flow field: " + (flowTime / 1000) + " us, "
+                + "Astar x " + mAgents.getNumChildren() + ": " + (astarTime / 1000) + " us");
+    }
+
+    @Override
+    protected int getNumObjects() {
+        return mAgents != null ? mAgents.getNumChildren() : 0;
+    }
+
+    @Override
+    public boolean onTouch(final View v, final MotionEvent event) {
+        if (event.getAction() == MotionEvent.ACTION_DOWN) {
+            mScene.onTouchEvent(event);
+            mStage.queueEvent(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (mAgents == null) {
+                        return;
+                    }
+
+                    mRectGrid.pointToCell(mScene.getTouchedPoint(), mTempCell);
+                    if (mTempCell.x >= 0 && mTempCell.x < GRID_WIDTH && mTempCell.y >= 0 && mTempCell.y < GRID_HEIGHT) {
+                        setGoal(mTempCell.x, mTempCell.y);
+                    }
+                }
+            });
+        }
+
+        return true;
+    }
+
+    /**
+     * Agents following the flow field
+     */
+    private class AgentGroup extends DisplayGroup {
+        private final Point mCell = new Point();
+        private final PointF mTarget = new PointF();
+
+        public AgentGroup() {
+            final PointF point = new PointF();
+            for (int i = 0; i < NUM_AGENTS; i++) {
+                final Sprite agent = new Sprite();
+                agent.setTexture(mTextures.get(1 + mRandom.nextInt(mTextures.size() - 1)));
+                agent.setOriginAtCenter();
+                agent.setScale(0.5f);
+                mRectGrid.cellToPoint(mRandom.nextInt(GRID_WIDTH), mRandom.nextInt(GRID_HEIGHT), point);
+                agent.setPosition(point);
+                addChild(agent);
+            }
+        }
+
+        @Override
+        protected void updateChildren(final int deltaTime) {
+            final float distance = AGENT_SPEED * deltaTime;
+            for (int i = 0; i < mNumChildren; i++) {
+                final PointF position = mChildren.get(i).getPosition();
+                mRectGrid.pointToCell(position, mCell);
+                if (mFlowField.getNextStep(mCell.x, mCell.y, mCell)) {
+                    // head to the center of the next cell, so we never cut through walls
+                    mRectGrid.cellToPoint(mCell, mTarget);
+                    final float dx = mTarget.x - position.x;
+                    final float dy = mTarget.y - position.y;
+                    final float length = (float) Math.sqrt(dx * dx + dy * dy);
+                    if (length > 0) {
+                        mChildren.get(i).move(dx / length * distance, dy / length * distance);
+                    }
+                }
+            }
+
+            super.updateChildren(deltaTime);
+        }
+    }
+}
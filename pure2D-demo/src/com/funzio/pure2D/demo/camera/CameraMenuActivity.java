@@ -34,5 +34,6 @@ public class CameraMenuActivity extends MenuActivity {
     protected void createMenus() {
         addMenu(R.id.btn_hello_camera, HelloCameraActivity.class);
         addMenu(R.id.btn_perspective_camera, PerspectiveCameraActivity.class);
+        addMenu(R.id.btn_culling_camera, CullingCameraActivity.class);
     }
 }
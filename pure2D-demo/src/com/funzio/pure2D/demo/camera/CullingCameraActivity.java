@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.funzio.pure2D.demo.camera;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.PointF;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.funzio.pure2D.Camera;
+import com.funzio.pure2D.Scene;
+import com.funzio.pure2D.containers.DisplayGroup;
+import com.funzio.pure2D.demo.R;
+import com.funzio.pure2D.demo.activities.StageActivity;
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.textures.Texture;
+import com.funzio.pure2D.shapes.Sprite;
+
+/**
+ * Benchmark for the camera culling: a big world of static sprites with the camera panning around. Touch the left half to add more sprites, the right half to toggle the
+ * spatial index. The cull cost per frame is logged every second.
+ */
+public class CullingCameraActivity extends StageActivity {
+    private static final String TAG = CullingCameraActivity.class.getSimpleName();
+    private static final int WORLD_SCREENS = 10;
+    private static final int STEP_NUM = 5000;
+
+    private Camera mCamera;
+    private CullingGroup mWorld;
+    private List<Texture> mTextures = new ArrayList<Texture>();
+
+    @Override
+    public void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        mCamera = new Camera(new PointF(mDisplaySizeDiv2), new PointF(mDisplaySize));
+        mCamera.setClipping(true);
+        mScene.setCamera(mCamera);
+
+        mScene.setListener(new Scene.Listener() {
+
+            @Override
+            public void onSurfaceCreated(final GLState glState, final boolean firstTime) {
+                if (firstTime) {
+                    // load the textures
+                    loadTextures();
+
+                    mWorld = new CullingGroup();
+                    mWorld.setSize(mDisplaySize.x * WORLD_SCREENS, mDisplaySize.y * WORLD_SCREENS);
+                    mWorld.setSpatialIndexEnabled(true, Math.max(mDisplaySize.x, mDisplaySize.y) / 2);
+                    mScene.addChild(mWorld);
+
+                    addObjects(STEP_NUM);
+                }
+            }
+        });
+    }
+
+    private void loadTextures() {
+        final int[] ids = {
+                R.drawable.cc_32, // cc
+                R.drawable.mw_32, // mw
+                R.drawable.ka_32, // ka
+        };
+
+        for (int id : ids) {
+            // add texture to list
+            mTextures.add(mScene.getTextureManager().createDrawableTexture(id, null));
+        }
+    }
+
+    private void addObjects(final int num) {
+        for (int i = 0; i < num; i++) {
+            final Sprite sprite = new Sprite();
+            sprite.setAutoUpdateBounds(true); // for camera culling
+            sprite.setTexture(mTextures.get(mRandom.nextInt(mTextures.size())));
+            sprite.setPosition(mRandom.nextInt(mDisplaySize.x * WORLD_SCREENS), mRandom.nextInt(mDisplaySize.y * WORLD_SCREENS));
+            mWorld.addChild(sprite);
+        }
+    }
+
+    @Override
+    protected int getNumObjects() {
+        return mWorld != null ? mWorld.getNumChildren() : 0;
+    }
+
+    @Override
+    public boolean onTouch(final View v, final MotionEvent event) {
+        if (event.getAction() == MotionEvent.ACTION_DOWN) {
+            final boolean left = event.getX() < mDisplaySizeDiv2.x;
+            mStage.queueEvent(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (mWorld == null) {
+                        return;
+                    }
+
+                    if (left) {
+                        addObjects(STEP_NUM);
+                    } else {
+                        mWorld.setSpatialIndexEnabled(!mWorld.isSpatialIndexEnabled(), Math.max(mDisplaySize.x, mDisplaySize.y) / 2);
+                    }
+                    mWorld.resetStats();
+                }
+            });
+        }
+
+        return true;
+    }
+
+    /**
+     * Pans the camera around and measures drawChildren()
+     */
+    private class CullingGroup extends DisplayGroup {
+        private float mAngle = 0;
+        private long mDrawTime = 0;
+        private int mNumFrames = 0;
+        private int mStatsTime = 0;
+
+        @Override
+        protected void updateChildren(final int deltaTime) {
+            super.updateChildren(deltaTime);
+
+            // circle around the world
+            mAngle += deltaTime * 0.0002f;
+            final float radius = Math.min(mSize.x, mSize.y) * 0.4f;
+            mCamera.setPosition(mSize.x / 2 + radius * (float) Math.cos(mAngle), mSize.y / 2 + radius * (float) Math.sin(mAngle));
+
+            // report every second
+            mStatsTime += deltaTime;
+            if (mStatsTime >= 1000 && mNumFrames > 0) {
+                Log.i(TAG, getNumChildren() + " children, indexed: " + isSpatialIndexEnabled() + ", visited: " + getNumCullCandidates() + ", drawChildren: "
+                        + (mDrawTime / mNumFrames / 1000) + " us");
+                resetStats();
+            }
+        }
+
+        @Override
+        protected boolean drawChildren(final GLState glState) {
+            final long time = System.nanoTime();
+            final boolean result = super.drawChildren(glState);
+            mDrawTime += System.nanoTime() - time;
+            mNumFrames++;
+
+            return result;
+        }
+
+        public void resetStats() {
+            mDrawTime = 0;
+            mNumFrames = 0;
+            mStatsTime = 0;
+        }
+    }
+}
@@ -115,7 +115,8 @@ public class NovaActivity extends StageActivity {
                                 @Override
                                 public void run() {
                                     try {
-                                        mTextView.setText(vo.getSource().toString(3));
+                                        // streamed VOs don't keep the source
+                                        mTextView.setText(vo.getSource() != null ? vo.getSource().toString(3) : vo.toString());
                                     } catch (JSONException e) {
                                     }
                                 }
@@ -126,6 +126,8 @@ public abstract class BaseDisplayObject implements DisplayObject {
 
     // rect and bounds
     protected int mInvalidateFlags = 0;
+    // this object or one of its descendants needs update() in the next frame
+    protected boolean mUpdateNeeded = true;
     protected Matrix mMatrix;
     protected boolean mAutoUpdateBounds = false;
     // global bounds
@@ -254,6 +256,7 @@ public abstract class BaseDisplayObject implements DisplayObject {
 
         // check mask
         if (mMask != null) {
+            glState.flushBatch(GLState.FLUSH_MASK);
             mMask.enableMask();
         }
         // glState.setMask(mMask); // why this doesn't work?
@@ -269,6 +272,7 @@ public abstract class BaseDisplayObject implements DisplayObject {
 
         // check mask
         if (mMask != null) {
+            glState.flushBatch(GLState.FLUSH_MASK);
             mMask.disableMask();
         }
 
@@ -307,6 +311,9 @@ public abstract class BaseDisplayObject implements DisplayObject {
 
     @Override
     public boolean update(final int deltaTime) {
+        // consume the dirty flag, anything invalidated from here on gets another pass next frame
+        mUpdateNeeded = false;
+
         // check constraints first ,only apply it when size or parent changed
         if (mUIConstraint != null && (mInvalidateFlags & (SIZE | PARENT | PARENT_BOUNDS)) != 0) {
             mUIConstraint.apply(this, mParent);
@@ -383,11 +390,44 @@ public abstract class BaseDisplayObject implements DisplayObject {
     public void invalidate(final int flags) {
         mInvalidateFlags |= flags;
 
+        // CACHE is drawing-only and CHILDREN is mostly propagated from the children, neither needs another update()
+        if ((flags & ~(CHILDREN | CACHE)) != 0) {
+            invalidateUpdate();
+        }
+
         if (mParent != null) {
             mParent.invalidate(CHILDREN);
         }
     }
 
+    /**
+     * @hide Flags this object and its ancestors for the next update() when {@link Pure2D#AUTO_SKIP_UPDATE} is on.
+     */
+    public void invalidateUpdate() {
+        mUpdateNeeded = true;
+
+        // walk up until an ancestor is already flagged
+        Container parent = mParent;
+        while (parent instanceof BaseDisplayObject) {
+            final BaseDisplayObject parentObject = (BaseDisplayObject) parent;
+            if (parentObject.mUpdateNeeded) {
+                break;
+            }
+            parentObject.mUpdateNeeded = true;
+            parent = parentObject.mParent;
+        }
+    }
+
+    /**
+     * Used by the containers to skip the idle branches when {@link Pure2D#AUTO_SKIP_UPDATE} is on. Subclasses that do work in update() on every frame should override this.
+     * 
+     * @return true if this object or one of its descendants needs update() in the next frame
+     */
+    @Override
+    public boolean isUpdateNeeded() {
+        return mUpdateNeeded || mNumManipulators > 0 || (mInvalidateFlags & (BOUNDS | TRANSFORM_MATRIX)) != 0;
+    }
+
     /**
      * @hide
      */
@@ -404,6 +444,11 @@ public abstract class BaseDisplayObject implements DisplayObject {
     @Override
     public void setAlive(final boolean value) {
         mAlive = value;
+
+        if (mAlive) {
+            // catch up with what was missed while sleeping
+            invalidateUpdate();
+        }
     }
 
     @Override
@@ -799,6 +844,7 @@ public abstract class BaseDisplayObject implements DisplayObject {
         if (mManipulators.add(manipulator)) {
             manipulator.setTarget(this);
             mNumManipulators++;
+            invalidateUpdate();
             return true;
         }
 
@@ -1319,6 +1365,7 @@ public abstract class BaseDisplayObject implements DisplayObject {
 
     public void setUIConstraint(final UIConstraint uiConstraint) {
         mUIConstraint = uiConstraint;
+        invalidateUpdate();
     }
 
     public VertexBuffer getVertexBuffer() {
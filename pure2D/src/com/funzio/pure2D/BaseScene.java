@@ -89,8 +89,13 @@ public class BaseScene implements Scene {
     // extra
     private GLColor mColor = new GLColor(0f, 0f, 0f, 1f);
     private BlendFunc mDefaultBlendFunc = BlendFunc.getInterpolate();
+    private boolean mBatchingEnabled = false;
     private Listener mListener;
 
+    // update stats, see Pure2D.AUTO_SKIP_UPDATE
+    private int mNumUpdatedObjects = 0;
+    private int mNumSkippedObjects = 0;
+
     // axis system
     private int mAxisSystem = AXIS_BOTTOM_LEFT;
 
@@ -293,6 +298,7 @@ public class BaseScene implements Scene {
             mGLState = new GLState(gl, mStage);
             mGLState.setAxisSystem(mAxisSystem);
             mGLState.setDefaultBlendFunc(mDefaultBlendFunc);
+            mGLState.setBatchingEnabled(mBatchingEnabled);
             // mGLState.setCamera(mCamera);
 
             // init Texture manager with the new GL
@@ -426,12 +432,22 @@ public class BaseScene implements Scene {
                     mCamera.update((int) delta);
                 }
 
+                // new update pass
+                mNumUpdatedObjects = mNumSkippedObjects = 0;
+                final boolean skipping = Pure2D.AUTO_SKIP_UPDATE;
+
                 // update children
                 for (int i = 0; i < mNumChildren; i++) {
                     child = mChildren.get(i);
                     if (child.isAlive()) {
-                        // heart beat
-                        child.update((int) delta);
+                        if (!skipping || child.isUpdateNeeded()) {
+                            // heart beat
+                            child.update((int) delta);
+                            mNumUpdatedObjects++;
+                        } else {
+                            // idle branch
+                            mNumSkippedObjects++;
+                        }
                     }
                 }
             }
@@ -442,6 +458,9 @@ public class BaseScene implements Scene {
 
         // draw children if needed
         if (mInvalidated > 0 || mRenderContinueously) {
+            // new frame
+            mGLState.resetBatchStats();
+
             // camera
             if (mCamera != null) {
                 // validate the camera
@@ -494,6 +513,9 @@ public class BaseScene implements Scene {
                 }
             }
 
+            // draw the rest of the batch
+            mGLState.flushBatch(GLState.FLUSH_END);
+
             // camera
             if (mCamera != null) {
                 // validate the camera
@@ -602,6 +624,53 @@ public class BaseScene implements Scene {
         }
     }
 
+    public boolean isBatchingEnabled() {
+        return mBatchingEnabled;
+    }
+
+    /**
+     * Enable/disable automatic draw-call batching for all the children. Plain quads such as Sprites and Clips are merged until the Texture, BlendFunc, ShaderProgram, scissor or mask
+     * changes.
+     * 
+     * @param batchingEnabled
+     * @see GLState#setBatchingEnabled(boolean)
+     * @see GLState#getNumBatches()
+     */
+    public void setBatchingEnabled(final boolean batchingEnabled) {
+        mBatchingEnabled = batchingEnabled;
+
+        // null check
+        if (mGLState != null) {
+            mGLState.setBatchingEnabled(batchingEnabled);
+        }
+
+        invalidate();
+    }
+
+    /**
+     * @hide For internal use
+     */
+    public void countUpdates(final int numUpdated, final int numSkipped) {
+        mNumUpdatedObjects += numUpdated;
+        mNumSkippedObjects += numSkipped;
+    }
+
+    /**
+     * @return the number of objects that got update() called in the last frame
+     * @see Pure2D#AUTO_SKIP_UPDATE
+     */
+    public int getNumUpdatedObjects() {
+        return mNumUpdatedObjects;
+    }
+
+    /**
+     * @return the number of idle branches skipped in the last frame. A skipped branch can have any number of descendants.
+     * @see Pure2D#AUTO_SKIP_UPDATE
+     */
+    public int getNumSkippedObjects() {
+        return mNumSkippedObjects;
+    }
+
     protected void clear() {
         // Clears the screen and depth buffer.
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
@@ -46,6 +46,11 @@ public interface DisplayObject extends Displayable {
 
     public ShaderProgram getShaderProgram();
 
+    /**
+     * @return true if this object or one of its descendants needs update() in the next frame
+     */
+    public boolean isUpdateNeeded();
+
     /**
      * @hide For internal use
      */
@@ -74,6 +74,8 @@ public class Pure2D {
     private static final VertexBuffer DEBUG_VERTEX_BUFFER = new VertexBuffer(GLES20.GL_LINE_LOOP, 4, DEBUG_VERTICES);
 
     public static boolean AUTO_UPDATE_BOUNDS = false;
+    // skip update() on the branches that have nothing changed, see DisplayObject.isUpdateNeeded()
+    public static boolean AUTO_SKIP_UPDATE = false;
 
     /**
      * Globally turns on debug flags on all display objects.
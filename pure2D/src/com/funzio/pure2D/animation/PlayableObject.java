@@ -87,8 +87,14 @@ public abstract class PlayableObject extends BaseDisplayObject implements Playab
         return mNumFrames > 0;
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        return super.isUpdateNeeded() || (mNumFrames > 0 && mPlaying) || mCurrentFrame != mPreviousFrame;
+    }
+
     public void play() {
         mPlaying = true;
+        invalidateUpdate();
     }
 
     public void playAt(final int frame) {
@@ -26,6 +26,9 @@
 package com.funzio.pure2D.animation.skeleton;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -74,6 +77,14 @@ public class AniFile {
     private float[] mVertexFloats;
     private float[] mCoordFloats;
 
+    // native-order view of the skeleton data, decoded once
+    private FloatBuffer mFloatData;
+
+    // pre-baked slices of mFloatData, shared by all the skeletons using this file
+    private VertexBuffer[][] mBakedVertexBuffers; // [frame][part]
+    private TextureCoordBuffer[][] mBakedCoordBuffers; // [frame][part], or [1][part] for version 2
+    private RectF[] mBakedBounds;
+
     private Map<String, Texture> mTextures;
 
     public AniFile() {
@@ -125,16 +136,7 @@ public class AniFile {
                 if (name.equals("key")) {
                     key = xml.nextText();
                 } else if ((key != null) && name.equals("data") && key.equals("floatdata")) {
-                    mSkeletonData = Base64.decode(xml.nextText(), Base64.DEFAULT);
-
-                    // header
-                    final int versionBits = (mSkeletonData[3] << 24) | ((mSkeletonData[2] & 0xFF) << 16) | ((mSkeletonData[1] & 0xFF) << 8) | (mSkeletonData[0] & 0xFF);
-                    mVersion = Float.intBitsToFloat(versionBits);
-                    mNumFrames = mSkeletonData[4];
-                    mNumParts = mSkeletonData[8];
-                    mFrameSize = mNumParts * (mVersion == 1 ? PART_TOTAL_SIZE : PART_VERTICES_SIZE);
-                    mVertexFloats = new float[PART_VERTICES];
-                    mCoordFloats = new float[PART_COORDS];
+                    setSkeletonData(Base64.decode(xml.nextText(), Base64.DEFAULT));
                 } else if ((key != null) && name.equals("string") && key.equals("imageindex")) {
                     mImageIndex.add(xml.nextText());
                 } else if ((key != null) && name.equals("string") && key.equals("requiredimages")) {
@@ -166,7 +168,7 @@ public class AniFile {
 
         for (int i = 0; i < mNumParts; i++) {
             // find the vertices
-            readVertices(mSkeletonData, start, mVertexFloats, flips, bounds);
+            readVertices(mFloatData, start, mVertexFloats, flips, bounds);
 
             // get the buffers
             if (buffers != null) {
@@ -197,7 +199,7 @@ public class AniFile {
         if (mVersion == 1) {
             int start = (frame * mFrameSize) + HEADER + PART_VERTICES_SIZE;
             for (int i = 0; i < mNumParts; i++) {
-                readFloats(mSkeletonData, start, mCoordFloats);
+                readFloats(mFloatData, start, mCoordFloats);
                 // set into vertex buffers
                 if (buffers[i] == null) {
                     buffers[i] = new TextureCoordBuffer(mCoordFloats);
@@ -213,7 +215,7 @@ public class AniFile {
             // so it's next to the Header
             int start = HEADER;
             for (int i = 0; i < mNumParts; i++) {
-                readFloats(mSkeletonData, start, mCoordFloats);
+                readFloats(mFloatData, start, mCoordFloats);
 
                 // set into vertex buffers
                 if (buffers[i] == null) {
@@ -233,8 +235,139 @@ public class AniFile {
         return mSkeletonData;
     }
 
+    /**
+     * Set the raw skeleton data and read its header. The floats are decoded once into a native-order buffer.
+     * 
+     * @param floatData
+     */
     public void setSkeletonData(final byte[] floatData) {
         mSkeletonData = floatData;
+        mBakedVertexBuffers = null;
+        mBakedCoordBuffers = null;
+        mBakedBounds = null;
+
+        if (floatData == null || floatData.length < HEADER) {
+            mFloatData = null;
+            mNumFrames = mNumParts = mFrameSize = 0;
+            return;
+        }
+
+        // the data is little endian, floats and the header alike
+        final ByteBuffer data = ByteBuffer.allocateDirect(floatData.length).order(ByteOrder.LITTLE_ENDIAN);
+        data.put(floatData);
+        data.position(0);
+        mVersion = data.getFloat(0);
+        mNumFrames = floatData[4];
+        mNumParts = floatData[8];
+        mFrameSize = mNumParts * (mVersion == 1 ? PART_TOTAL_SIZE : PART_VERTICES_SIZE);
+        mVertexFloats = new float[PART_VERTICES];
+        mCoordFloats = new float[PART_COORDS];
+
+        if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+            // GL can read it directly
+            mFloatData = data.asFloatBuffer();
+        } else {
+            // one bulk conversion
+            final FloatBuffer source = data.asFloatBuffer();
+            mFloatData = ByteBuffer.allocateDirect(floatData.length).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            mFloatData.put(source);
+            mFloatData.position(0);
+        }
+    }
+
+    /**
+     * @return the skeleton data as floats, in native order
+     */
+    public FloatBuffer getFloatData() {
+        return mFloatData;
+    }
+
+    /**
+     * Pre-bake the buffers and the bounds of all the frames, once. The buffers are slices of the decoded data, no values are copied. Later calls do nothing.
+     */
+    public void bake() {
+        if (mBakedVertexBuffers != null || mFloatData == null) {
+            return;
+        }
+
+        final int partSize = mVersion == 1 ? PART_TOTAL_SIZE : PART_VERTICES_SIZE;
+        final int frameStart = HEADER + (mVersion == 2 ? PART_COORDS_SIZE * mNumParts : 0);
+        final VertexBuffer[][] vertexBuffers = new VertexBuffer[mNumFrames][mNumParts];
+        final RectF[] bounds = new RectF[mNumFrames];
+        for (int frame = 0; frame < mNumFrames; frame++) {
+            bounds[frame] = new RectF();
+            int start = frameStart + frame * mFrameSize;
+            for (int i = 0; i < mNumParts; i++) {
+                // bounds only, no flips
+                readVertices(mFloatData, start, mVertexFloats, 0, bounds[frame]);
+
+                final VertexBuffer buffer = new VertexBuffer(GLES20.GL_TRIANGLE_STRIP, PART_POINTS, (float[]) null);
+                buffer.setVertexPointerSize(3); // xyz
+                buffer.setBuffer(slice(start, PART_VERTICES));
+                vertexBuffers[frame][i] = buffer;
+
+                start += partSize;
+            }
+        }
+
+        // version 2 has the same coordinates across the frames, next to the header
+        final int coordFrames = mVersion == 1 ? mNumFrames : 1;
+        final TextureCoordBuffer[][] coordBuffers = new TextureCoordBuffer[coordFrames][mNumParts];
+        for (int frame = 0; frame < coordFrames; frame++) {
+            int start = mVersion == 1 ? HEADER + frame * mFrameSize + PART_VERTICES_SIZE : HEADER;
+            for (int i = 0; i < mNumParts; i++) {
+                final TextureCoordBuffer buffer = new TextureCoordBuffer((float[]) null);
+                buffer.setBuffer(slice(start, PART_COORDS));
+                coordBuffers[frame][i] = buffer;
+
+                start += mVersion == 1 ? PART_TOTAL_SIZE : PART_COORDS_SIZE;
+            }
+        }
+
+        mBakedBounds = bounds;
+        mBakedCoordBuffers = coordBuffers;
+        mBakedVertexBuffers = vertexBuffers;
+    }
+
+    /**
+     * @param frame
+     * @return the pre-baked vertex buffers of all the parts in a specific frame. These are shared, do not modify.
+     * @see #bake()
+     */
+    public VertexBuffer[] getBakedVertexBuffers(final int frame) {
+        bake();
+        return mBakedVertexBuffers != null ? mBakedVertexBuffers[frame] : null;
+    }
+
+    /**
+     * @param frame
+     * @return the pre-baked texture coordinate buffers of all the parts in a specific frame. These are shared, do not modify.
+     * @see #bake()
+     */
+    public TextureCoordBuffer[] getBakedCoordBuffers(final int frame) {
+        bake();
+        return mBakedCoordBuffers != null ? mBakedCoordBuffers[mVersion == 1 ? frame : 0] : null;
+    }
+
+    /**
+     * @param frame
+     * @return the local bounds of a specific frame, without flips
+     */
+    public RectF getFrameBounds(final int frame) {
+        bake();
+        return mBakedBounds != null ? mBakedBounds[frame] : null;
+    }
+
+    /**
+     * @param byteOffset
+     * @param numFloats
+     * @return a view of the floats at the given byte offset
+     */
+    private FloatBuffer slice(final int byteOffset, final int numFloats) {
+        final FloatBuffer view = mFloatData.duplicate();
+        view.position(byteOffset / FLOAT);
+        view.limit(byteOffset / FLOAT + numFloats);
+        return view.slice();
     }
 
     public void setTextures(final Map<String, Texture> map) {
@@ -249,6 +382,59 @@ public class AniFile {
         return mTextures.get(mImageIndex.get(index));
     }
 
+    /**
+     * Bulk read the float values from a float buffer into a float array
+     * 
+     * @param data
+     * @param start the offset in bytes
+     * @param output
+     */
+    public static void readVertices(final FloatBuffer data, final int start, final float[] output, final int flips, final RectF bounds) {
+        readFloats(data, start, output);
+
+        final boolean flipX = (flips & DisplayObject.FLIP_X) > 0;
+        final boolean flipY = (flips & DisplayObject.FLIP_Y) > 0;
+        for (int i = 0; i < output.length; i += 3) {
+            final float x = output[i];
+            final float y = output[i + 1];
+            if (bounds != null) {
+                if (bounds.left > x) {
+                    bounds.left = x;
+                }
+                if (bounds.right < x) {
+                    bounds.right = x;
+                }
+                if (bounds.top > y) {
+                    bounds.top = y;
+                }
+                if (bounds.bottom < y) {
+                    bounds.bottom = y;
+                }
+            }
+
+            if (flipX) {
+                output[i] = -x;
+            }
+            if (flipY) {
+                output[i + 1] = -y;
+            }
+        }
+    }
+
+    /**
+     * Bulk read the float values from a float buffer into a float array
+     * 
+     * @param data
+     * @param start the offset in bytes
+     * @param output
+     */
+    public static void readFloats(final FloatBuffer data, final int start, final float[] output) {
+        // absolute position, the buffer can be shared
+        final FloatBuffer view = data.duplicate();
+        view.position(start / FLOAT);
+        view.get(output);
+    }
+
     /**
      * Read the float values from a byte array into a float array
      * 
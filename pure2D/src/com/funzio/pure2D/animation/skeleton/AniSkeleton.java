@@ -42,7 +42,6 @@ public class AniSkeleton extends PlayableObject {
     private TextureCoordBuffer[] mCoordBuffers;
     private AniFile mAniFile;
     private int mFlips = 0;
-    private RectF[] mBounds;
 
     // for debug
     private boolean mDebugging = false;
@@ -58,14 +57,11 @@ public class AniSkeleton extends PlayableObject {
         // Log.v("long", ">>" + file.mVersion + " " + mAniFile.mNumParts + " " + file.mNumFrames + " " + file.mFrameSize);
 
         mAniFile = file;
-        if (file != null && mAniFile.mSkeletonData.length > 0) {
-            mVertexBuffers = new VertexBuffer[file.mNumParts];
-            mCoordBuffers = new TextureCoordBuffer[file.mNumParts];
-            mBounds = new RectF[file.mNumParts];
-            if (file.mVersion == 2) {
-                // version 2 has the same coordinates across the frames
-                file.getFrameCoordBuffers(0, mCoordBuffers);
-            }
+        if (file != null && file.mSkeletonData != null && file.mSkeletonData.length > 0) {
+            // all the frames are baked once per file and shared
+            file.bake();
+            mVertexBuffers = file.getBakedVertexBuffers(0);
+            mCoordBuffers = file.getBakedCoordBuffers(0);
 
             // set the frame
             mNumFrames = file.mNumFrames;
@@ -84,17 +80,9 @@ public class AniSkeleton extends PlayableObject {
             return;
         }
 
-        // get the vertex buffers of the parts, and also the bounds
-        final RectF bounds = mBounds[frame] == null ? new RectF() : mBounds[frame];
-        mAniFile.getFrameVertexBuffers(frame, mFlips, mVertexBuffers, bounds);
-        if (mBounds[frame] == null) {
-            mBounds[frame] = bounds;
-        }
-
-        if (mAniFile.mVersion == 1) {
-            // version 1 has different coordinates across the frames
-            mAniFile.getFrameCoordBuffers(frame, mCoordBuffers);
-        }
+        // just switch to the baked buffers, nothing to decode
+        mVertexBuffers = mAniFile.getBakedVertexBuffers(frame);
+        mCoordBuffers = mAniFile.getBakedCoordBuffers(frame);
     }
 
     /*
@@ -104,11 +92,17 @@ public class AniSkeleton extends PlayableObject {
     @Override
     protected boolean drawChildren(final GLState glState) {
         if (mDebugging) {
-            mDebugRect.setRect(mBounds[mCurrentFrame]);
+            mDebugRect.setRect(mAniFile.getFrameBounds(mCurrentFrame));
             mDebugRect.setColor(new GLColor(1f, (float) Math.random(), (float) Math.random(), 0.8f));
             mDebugRect.draw(glState);
         }
 
+        // flip with the transform, the baked vertices are shared
+        if (mFlips != 0) {
+            glState.matrixPush();
+            glState.matrixScale((mFlips & FLIP_X) != 0 ? -1 : 1, (mFlips & FLIP_Y) != 0 ? -1 : 1, 1);
+        }
+
         final int parts = mNumFrames == 0 ? 0 : mVertexBuffers.length;
         for (int i = 0; i < parts; i++) {
             final Texture texture = mAniFile.getTexture(i);
@@ -120,6 +114,10 @@ public class AniSkeleton extends PlayableObject {
             }
         }
 
+        if (mFlips != 0) {
+            glState.matrixPop();
+        }
+
         return true;
     }
 
@@ -128,13 +126,7 @@ public class AniSkeleton extends PlayableObject {
         if (mAniFile == null) {
             return null;
         } else {
-            if (mBounds != null && mBounds[frame] != null) {
-                return mBounds[frame];
-            } else {
-                final RectF rect = new RectF();
-                mAniFile.getFrameVertexBuffers(frame, 0, null, rect);
-                return rect;
-            }
+            return mAniFile.getFrameBounds(frame);
         }
     }
 
@@ -144,6 +136,7 @@ public class AniSkeleton extends PlayableObject {
      */
     @Override
     public void dispose() {
+        // the buffers belong to the AniFile
         mVertexBuffers = null;
         mCoordBuffers = null;
     }
@@ -153,7 +146,7 @@ public class AniSkeleton extends PlayableObject {
     }
 
     /**
-     * Flip the vertices horizontally and/or vertically
+     * Flip the vertices horizontally and/or vertically, around the local origin. This is applied to the transform when drawing.
      * 
      * @param flips
      * @see DisplayObject, FLIP_X, FLIP_Y
@@ -49,7 +49,7 @@ public class Astar {
 
     public Astar(final AstarAdapter adapter, final int nodePoolSize, final boolean closedNodeRevision) {
         mAdapter = adapter;
-        mNodePool = new ObjectPool<AstarNode>(nodePoolSize);
+        mNodePool = new ObjectPool<AstarNode>(nodePoolSize, true); // an Astar instance is used by one thread at a time
         mClosedNodeRevision = closedNodeRevision;
     }
 
@@ -83,6 +83,28 @@ public class AstarNode extends Point implements Reusable {
         key = generateKey(x, y);
     }
 
+    /**
+     * Same as {@link #reset(Object...)} but without boxing the coordinates
+     * 
+     * @param x
+     * @param y
+     */
+    public void reset(final int x, final int y) {
+        set(x, y);
+
+        h = 0;
+        g = 1;
+        parent = null;
+    }
+
+    @Override
+    public void set(final int x, final int y) {
+        super.set(x, y);
+
+        // generate the key for quick lookup
+        key = generateKey(x, y);
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (o instanceof AstarNode) {
@@ -0,0 +1,515 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.funzio.pure2D.astar;
+
+import java.util.Arrays;
+
+import android.graphics.Point;
+import android.graphics.PointF;
+import android.util.Log;
+
+import com.funzio.pure2D.grid.AbstractGrid;
+import com.funzio.pure2D.grid.Grid;
+import com.funzio.pure2D.grid.VerticalHexGrid;
+
+/**
+ * A flow field (Dijkstra map) over a rect or vertical hex grid. It integrates the cell costs from one or more goals with a bucketed queue, then every cell knows its next step to
+ * the nearest goal, in O(1). Use it instead of one {@link Astar} search per agent when many agents share the same goals.
+ * <p>
+ * The costs are kept in sync with the grid through {@link AbstractGrid.Listener}. Changes are applied at the next query: only the cells whose path went through a changed cell
+ * are reset and integrated again. Not thread-safe, use it on the thread that changes the grid.
+ * </p>
+ * 
+ * @author long.ngo
+ */
+public class FlowField implements AbstractGrid.Listener {
+    private static final String TAG = FlowField.class.getSimpleName();
+
+    public static final int BLOCKED = 0;
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int[][] RECT_NEIGHBOR_OFFSETS = {
+            {
+                    -1, 0
+            }, {
+                    +1, 0
+            }, {
+                    0, -1
+            }, {
+                    0, +1
+            }
+    };
+
+    private final AbstractGrid<?> mGrid;
+    private int mWidth;
+    private int mHeight;
+    // null for rect grids
+    private final int[][] mHexOffsets;
+    private final int mMaxNeighbors;
+
+    private int[] mCosts; // cost to enter a cell, BLOCKED for walls
+    private int[] mIntegration; // total cost to the nearest goal
+    private int[] mNext; // next cell toward the goal, -1 for none
+    private int mMaxCost = 1; // only grows, it just sizes the buckets
+
+    // goals
+    private int[] mGoals = new int[4];
+    private int mNumGoals = 0;
+    private boolean[] mIsGoal;
+
+    // pending changes
+    private int[] mChanges = new int[16];
+    private int mNumChanges = 0;
+    private boolean mFullUpdateNeeded = true;
+
+    // bucketed queue, circular over mMaxCost + 1 buckets
+    private int[][] mBuckets;
+    private int[] mBucketSizes;
+    private int mQueueSize = 0;
+
+    // scratch
+    private int[] mStamps; // for the affected cells
+    private int mStamp = 0;
+    private int[] mStack = new int[64];
+    private long[] mSeeds = new long[64];
+    private final PointF mTempPoint1 = new PointF();
+    private final PointF mTempPoint2 = new PointF();
+
+    // stats
+    private int mNumUpdatedCells = 0;
+
+    public FlowField(final AbstractGrid<?> grid) {
+        mGrid = grid;
+        mHexOffsets = grid instanceof VerticalHexGrid ? ((VerticalHexGrid<?>) grid).getNeighborOffets() : null;
+        mMaxNeighbors = mHexOffsets != null ? VerticalHexGrid.CELL_MAX_NEIGHBORS : RECT_NEIGHBOR_OFFSETS.length;
+
+        allocateCells(grid);
+        grid.addListener(this);
+    }
+
+    private void allocateCells(final Grid<?> grid) {
+        mWidth = grid.getSize().x;
+        mHeight = grid.getSize().y;
+
+        final int numCells = mWidth * mHeight;
+        mCosts = new int[numCells];
+        mIntegration = new int[numCells];
+        mNext = new int[numCells];
+        mIsGoal = new boolean[numCells];
+        mStamps = new int[numCells];
+        for (int y = 0; y < mHeight; y++) {
+            for (int x = 0; x < mWidth; x++) {
+                final int cost = getCellCost(grid.getDataAt(x, y));
+                mCosts[y * mWidth + x] = cost;
+                mMaxCost = Math.max(mMaxCost, cost);
+            }
+        }
+    }
+
+    public void dispose() {
+        mGrid.removeListener(this);
+    }
+
+    /**
+     * Override this for custom costs
+     * 
+     * @param data the cell data
+     * @return the cost to enter the cell, or {@link #BLOCKED}
+     */
+    protected int getCellCost(final Object data) {
+        return data == null ? 1 : BLOCKED;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.grid.AbstractGrid.Listener#onGridDataChanged(com.funzio.pure2D.grid.Grid, int, int)
+     */
+    @Override
+    public void onGridDataChanged(final Grid<?> grid, final int cellX, final int cellY) {
+        final int cell = cellY * mWidth + cellX;
+        final int cost = getCellCost(grid.getDataAt(cellX, cellY));
+        if (cost == mCosts[cell]) {
+            return;
+        }
+
+        mCosts[cell] = cost;
+        mMaxCost = Math.max(mMaxCost, cost);
+        if (!mFullUpdateNeeded) {
+            if (mNumChanges == mChanges.length) {
+                mChanges = grow(mChanges, mNumChanges);
+            }
+            mChanges[mNumChanges++] = cell;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.grid.AbstractGrid.Listener#onGridResized(com.funzio.pure2D.grid.Grid)
+     */
+    @Override
+    public void onGridResized(final Grid<?> grid) {
+        // the cells are indexed by the old width
+        final int oldWidth = mWidth;
+        final int[] oldGoals = mGoals;
+        final int numGoals = mNumGoals;
+
+        allocateCells(grid);
+        mGoals = new int[Math.max(4, numGoals)];
+        mNumGoals = 0;
+        mNumChanges = 0;
+        mFullUpdateNeeded = true;
+
+        // keep the goals that are still inside
+        for (int i = 0; i < numGoals; i++) {
+            addGoal(oldGoals[i] % oldWidth, oldGoals[i] / oldWidth);
+        }
+    }
+
+    /**
+     * Replace all the goals with one
+     * 
+     * @param x
+     * @param y
+     */
+    public void setGoal(final int x, final int y) {
+        clearGoals();
+        addGoal(x, y);
+    }
+
+    public void addGoal(final int x, final int y) {
+        if (x < 0 || x >= mWidth || y < 0 || y >= mHeight || mIsGoal[y * mWidth + x]) {
+            return;
+        }
+
+        if (mNumGoals == mGoals.length) {
+            mGoals = grow(mGoals, mNumGoals);
+        }
+        mGoals[mNumGoals++] = y * mWidth + x;
+        mIsGoal[y * mWidth + x] = true;
+        mFullUpdateNeeded = true;
+    }
+
+    public void clearGoals() {
+        for (int i = 0; i < mNumGoals; i++) {
+            mIsGoal[mGoals[i]] = false;
+        }
+        mNumGoals = 0;
+        mFullUpdateNeeded = true;
+    }
+
+    public int getNumGoals() {
+        return mNumGoals;
+    }
+
+    /**
+     * Get the next step from a cell toward the nearest goal
+     * 
+     * @param x
+     * @param y
+     * @param next the next cell
+     * @return false if the cell is a goal or cannot reach any goal
+     */
+    public boolean getNextStep(final int x, final int y, final Point next) {
+        if (x < 0 || x >= mWidth || y < 0 || y >= mHeight) {
+            return false;
+        }
+        update();
+
+        final int nextCell = mNext[y * mWidth + x];
+        if (nextCell < 0) {
+            return false;
+        }
+
+        next.x = nextCell % mWidth;
+        next.y = nextCell / mWidth;
+        return true;
+    }
+
+    /**
+     * Get the normalized direction from a cell to its next step, in grid space
+     * 
+     * @param x
+     * @param y
+     * @param direction
+     * @return false if the cell is a goal or cannot reach any goal
+     */
+    public boolean getDirection(final int x, final int y, final PointF direction) {
+        if (x < 0 || x >= mWidth || y < 0 || y >= mHeight) {
+            return false;
+        }
+        update();
+
+        final int nextCell = mNext[y * mWidth + x];
+        if (nextCell < 0) {
+            direction.x = direction.y = 0;
+            return false;
+        }
+
+        mGrid.cellToPoint(x, y, mTempPoint1);
+        mGrid.cellToPoint(nextCell % mWidth, nextCell / mWidth, mTempPoint2);
+        final float dx = mTempPoint2.x - mTempPoint1.x;
+        final float dy = mTempPoint2.y - mTempPoint1.y;
+        final float length = (float) Math.sqrt(dx * dx + dy * dy);
+        direction.x = dx / length;
+        direction.y = dy / length;
+        return true;
+    }
+
+    /**
+     * @return the total cost from a cell to the nearest goal, or {@link #UNREACHABLE}
+     */
+    public int getCostAt(final int x, final int y) {
+        if (x < 0 || x >= mWidth || y < 0 || y >= mHeight) {
+            return UNREACHABLE;
+        }
+        update();
+
+        return mIntegration[y * mWidth + x];
+    }
+
+    /**
+     * @return number of cells integrated by the last update
+     */
+    public int getNumUpdatedCells() {
+        return mNumUpdatedCells;
+    }
+
+    /**
+     * Apply the goal and grid changes. This is called automatically by the queries.
+     */
+    public void update() {
+        if (mFullUpdateNeeded) {
+            mFullUpdateNeeded = false;
+            mNumChanges = 0;
+            integrateAll();
+        } else if (mNumChanges > 0) {
+            integrateChanges();
+            mNumChanges = 0;
+        }
+    }
+
+    private void integrateAll() {
+        Arrays.fill(mIntegration, UNREACHABLE);
+        Arrays.fill(mNext, -1);
+        prepareQueue();
+
+        int numSeeds = 0;
+        for (int i = 0; i < mNumGoals; i++) {
+            if (mCosts[mGoals[i]] != BLOCKED) {
+                mIntegration[mGoals[i]] = 0;
+                mSeeds = ensureSeeds(numSeeds);
+                mSeeds[numSeeds++] = mGoals[i];
+            }
+        }
+
+        integrate(numSeeds);
+
+        if (Astar.LOG_ENABLED) {
+            Log.v(TAG, "integrateAll(): " + mNumGoals + " goals, " + mNumUpdatedCells + " cells");
+        }
+    }
+
+    /**
+     * Reset the cells whose path went through a changed cell, then integrate them again from their unaffected neighbors. The changed cells themselves are seeded too, so a
+     * cheaper or opened cell spreads its improvement.
+     */
+    private void integrateChanges() {
+        prepareQueue();
+        if (++mStamp == Integer.MAX_VALUE) {
+            Arrays.fill(mStamps, 0);
+            mStamp = 1;
+        }
+
+        // collect the affected cells: the changed ones and everything flowing through them
+        int numAffected = 0;
+        for (int i = 0; i < mNumChanges; i++) {
+            final int cell = mChanges[i];
+            if (mStamps[cell] != mStamp) {
+                mStamps[cell] = mStamp;
+                numAffected = push(cell, numAffected);
+            }
+        }
+        for (int i = 0; i < numAffected; i++) {
+            final int cell = mStack[i];
+            final int x = cell % mWidth, y = cell / mWidth;
+            for (int n = 0; n < mMaxNeighbors; n++) {
+                final int neighborCell = getNeighbor(x, y, n);
+                if (neighborCell >= 0 && mNext[neighborCell] == cell && mStamps[neighborCell] != mStamp) {
+                    mStamps[neighborCell] = mStamp;
+                    numAffected = push(neighborCell, numAffected);
+                }
+            }
+        }
+
+        // reset them
+        for (int i = 0; i < numAffected; i++) {
+            mIntegration[mStack[i]] = UNREACHABLE;
+            mNext[mStack[i]] = -1;
+        }
+
+        // seed them from their unaffected neighbors
+        int numSeeds = 0;
+        int neighborCell, value;
+        for (int i = 0; i < numAffected; i++) {
+            final int cell = mStack[i];
+            if (mCosts[cell] == BLOCKED) {
+                continue;
+            }
+
+            if (mIsGoal[cell]) {
+                mIntegration[cell] = 0;
+            } else {
+                final int x = cell % mWidth, y = cell / mWidth;
+                for (int n = 0; n < mMaxNeighbors; n++) {
+                    neighborCell = getNeighbor(x, y, n);
+                    if (neighborCell >= 0 && mStamps[neighborCell] != mStamp && mIntegration[neighborCell] != UNREACHABLE) {
+                        value = mIntegration[neighborCell] + mCosts[neighborCell];
+                        if (value < mIntegration[cell]) {
+                            mIntegration[cell] = value;
+                            mNext[cell] = neighborCell;
+                        }
+                    }
+                }
+            }
+
+            if (mIntegration[cell] != UNREACHABLE) {
+                mSeeds = ensureSeeds(numSeeds);
+                mSeeds[numSeeds++] = ((long) mIntegration[cell] << 32) | cell;
+            }
+        }
+
+        integrate(numSeeds);
+
+        if (Astar.LOG_ENABLED) {
+            Log.v(TAG, "integrateChanges(): " + mNumChanges + " changes, " + numAffected + " affected, " + mNumUpdatedCells + " cells");
+        }
+    }
+
+    private int push(final int cell, final int size) {
+        if (size == mStack.length) {
+            mStack = grow(mStack, size);
+        }
+        mStack[size] = cell;
+        return size + 1;
+    }
+
+    private long[] ensureSeeds(final int size) {
+        if (size < mSeeds.length) {
+            return mSeeds;
+        }
+
+        final long[] seeds = new long[size * 2];
+        System.arraycopy(mSeeds, 0, seeds, 0, size);
+        return seeds;
+    }
+
+    /**
+     * Dijkstra with a bucketed queue, from seeds packed as (integration << 32 | cell). All costs are in [1, mMaxCost] so the open cells always fit in mMaxCost + 1 buckets; the
+     * seeds are sorted and injected when the front reaches their value.
+     */
+    private void integrate(final int numSeeds) {
+        mNumUpdatedCells = 0;
+        Arrays.sort(mSeeds, 0, numSeeds);
+
+        final int numBuckets = mBuckets.length;
+        int seedIndex = 0;
+        int value = numSeeds > 0 ? (int) (mSeeds[0] >>> 32) : 0;
+        while (mQueueSize > 0 || seedIndex < numSeeds) {
+            if (mQueueSize == 0) {
+                // jump to the next seed
+                value = Math.max(value, (int) (mSeeds[seedIndex] >>> 32));
+            }
+            // inject the seeds of this value
+            while (seedIndex < numSeeds && (int) (mSeeds[seedIndex] >>> 32) <= value) {
+                enqueue((int) mSeeds[seedIndex++], value);
+            }
+
+            // costs are >= 1, nothing is added to this bucket while processing it
+            final int bucket = value % numBuckets;
+            final int size = mBucketSizes[bucket];
+            mBucketSizes[bucket] = 0;
+            mQueueSize -= size;
+            final int[] cells = mBuckets[bucket];
+            for (int i = 0; i < size; i++) {
+                final int cell = cells[i];
+                if (mIntegration[cell] != value) {
+                    // outdated
+                    continue;
+                }
+                mNumUpdatedCells++;
+
+                // stepping from a neighbor into this cell costs this cell
+                final int newValue = value + mCosts[cell];
+                final int x = cell % mWidth, y = cell / mWidth;
+                for (int n = 0; n < mMaxNeighbors; n++) {
+                    final int neighborCell = getNeighbor(x, y, n);
+                    if (neighborCell < 0 || mCosts[neighborCell] == BLOCKED || mIsGoal[neighborCell]) {
+                        continue;
+                    }
+
+                    if (newValue < mIntegration[neighborCell]) {
+                        mIntegration[neighborCell] = newValue;
+                        mNext[neighborCell] = cell;
+                        enqueue(neighborCell, newValue);
+                    }
+                }
+            }
+
+            value++;
+        }
+    }
+
+    private void prepareQueue() {
+        if (mBuckets == null || mBuckets.length < mMaxCost + 1) {
+            mBuckets = new int[mMaxCost + 1][16];
+            mBucketSizes = new int[mMaxCost + 1];
+        }
+        mQueueSize = 0;
+    }
+
+    private void enqueue(final int cell, final int value) {
+        final int bucket = value % mBuckets.length;
+        final int size = mBucketSizes[bucket];
+        if (size == mBuckets[bucket].length) {
+            mBuckets[bucket] = grow(mBuckets[bucket], size);
+        }
+        mBuckets[bucket][size] = cell;
+        mBucketSizes[bucket] = size + 1;
+        mQueueSize++;
+    }
+
+    /**
+     * @return the n-th neighbor cell id, or -1 when out of the grid
+     */
+    private int getNeighbor(final int x, final int y, final int n) {
+        final int[] offset = mHexOffsets != null ? mHexOffsets[(x % 2) * mMaxNeighbors + n] : RECT_NEIGHBOR_OFFSETS[n];
+        final int nx = x + offset[0];
+        final int ny = y + offset[1];
+        return nx >= 0 && nx < mWidth && ny >= 0 && ny < mHeight ? ny * mWidth + nx : -1;
+    }
+
+    private static int[] grow(final int[] array, final int size) {
+        final int[] newArray = new int[size * 2];
+        System.arraycopy(array, 0, newArray, 0, size);
+        return newArray;
+    }
+}
@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.funzio.pure2D.astar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.util.Log;
+
+import com.funzio.pure2D.grid.Grid;
+
+/**
+ * A grid-specialized Astar. The search state (g, h, parent, open/closed) lives in primitive arrays indexed by cell id (y * width + x) and the open list is an indexed binary heap
+ * with decrease-key. Generation counters are used instead of clearing the arrays, so a search does not allocate anything other than the result path, once the node pool is
+ * warm. It works with the same {@link AstarAdapter}: the neighbor nodes are read and recycled right away, the open/closed sets passed to the adapter are always empty since the
+ * engine filters the neighbors itself.
+ * 
+ * @author long.ngo
+ */
+public class GridAstar extends Astar {
+    private static final String TAG = GridAstar.class.getSimpleName();
+
+    private int mWidth;
+    private int mHeight;
+
+    // search state, indexed by cell id
+    private int[] mG;
+    private int[] mH;
+    private int[] mParent;
+    private int[] mVisited; // generation when the cell was reached
+    private int[] mClosed; // generation when the cell was closed
+    private int mGeneration = 0;
+
+    // indexed binary heap of cell ids, ordered by g + h
+    private int[] mHeap;
+    private int[] mHeapIndex;
+    private int mHeapSize = 0;
+
+    // scratch
+    private final AstarNode mCurrentNode = new AstarNode(0, 0);
+    private final AstarNode mEndNode = new AstarNode(0, 0);
+    private final AstarNodeSet mEmptySet = new AstarNodeSet();
+    private AstarNode[] mNeighbors;
+    private int[] mPathCells;
+
+    // stats
+    private int mNumExpandedNodes = 0;
+
+    public GridAstar(final AstarAdapter adapter, final Grid<?> grid) {
+        this(adapter, grid.getSize().x, grid.getSize().y);
+    }
+
+    public GridAstar(final AstarAdapter adapter, final int width, final int height) {
+        super(adapter, adapter.getNodeMaxNeighbors() * 2, false);
+
+        mNeighbors = new AstarNode[adapter.getNodeMaxNeighbors()];
+        setGridSize(width, height);
+    }
+
+    public void setGridSize(final int width, final int height) {
+        mWidth = width;
+        mHeight = height;
+
+        final int numCells = width * height;
+        mG = new int[numCells];
+        mH = new int[numCells];
+        mParent = new int[numCells];
+        mVisited = new int[numCells];
+        mClosed = new int[numCells];
+        mHeap = new int[numCells];
+        mHeapIndex = new int[numCells];
+        mPathCells = null;
+        mGeneration = 0;
+    }
+
+    public int getGridWidth() {
+        return mWidth;
+    }
+
+    public int getGridHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return number of nodes closed by the last search
+     */
+    public int getNumExpandedNodes() {
+        return mNumExpandedNodes;
+    }
+
+    @Override
+    public List<AstarNode> findPath(final AstarNode start, final AstarNode end, final int maxCost, final boolean compressPath, final List<AstarNode> closedNodes, final List<AstarNode> openNodes) {
+        if (LOG_ENABLED) {
+            Log.v(TAG, "findPath(): " + start + ", " + end);
+        }
+
+        if (!contains(start.x, start.y) || !contains(end.x, end.y)) {
+            return null;
+        }
+
+        newGeneration();
+        mHeapSize = 0;
+        mNumExpandedNodes = 0;
+        mEndNode.set(end.x, end.y);
+        final int endCell = end.y * mWidth + end.x;
+        final int startCell = start.y * mWidth + start.x;
+
+        // seed the start
+        open(startCell, 0, mAdapter.getHeuristic(end, start), -1);
+        if (openNodes != null) {
+            for (int i = 0, size = openNodes.size(); i < size; i++) {
+                final AstarNode node = openNodes.get(i);
+                if (contains(node.x, node.y)) {
+                    open(node.y * mWidth + node.x, node.g, mAdapter.getHeuristic(node, end), -1);
+                }
+            }
+        }
+        if (closedNodes != null) {
+            for (int i = 0, size = closedNodes.size(); i < size; i++) {
+                final AstarNode node = closedNodes.get(i);
+                if (contains(node.x, node.y)) {
+                    mClosed[node.y * mWidth + node.x] = mGeneration;
+                }
+            }
+        }
+
+        final AstarNode[] neighbors = mNeighbors;
+        int currentCell, neighborCell, g;
+        while (mHeapSize > 0) {
+            // get the lowest cost cell from the open heap
+            currentCell = poll();
+            if (mClosed[currentCell] == mGeneration) {
+                continue;
+            }
+            mClosed[currentCell] = mGeneration;
+            mNumExpandedNodes++;
+
+            if (currentCell == endCell) {
+                // awesome! path found!
+                return extractPath(start, endCell, compressPath);
+            }
+
+            // otherwise find the neighbors, using the adapter
+            mCurrentNode.set(currentCell % mWidth, currentCell / mWidth);
+            mCurrentNode.g = mG[currentCell];
+            mCurrentNode.h = mH[currentCell];
+            for (int i = 0; i < neighbors.length; i++) {
+                neighbors[i] = null;
+            }
+            mAdapter.getNodeNeighbors(mCurrentNode, mEmptySet, mEmptySet, neighbors);
+
+            for (int i = 0; i < neighbors.length; i++) {
+                final AstarNode neighbor = neighbors[i];
+                if (neighbor == null) {
+                    break;
+                }
+
+                if (contains(neighbor.x, neighbor.y)) {
+                    neighborCell = neighbor.y * mWidth + neighbor.x;
+                    // the node g is the step cost
+                    g = mG[currentCell] + neighbor.g;
+
+                    // check the cost
+                    if (maxCost <= 0 || g <= maxCost) {
+                        if (mClosed[neighborCell] == mGeneration) {
+                            // closed node? but is it shorter?
+                            if (mClosedNodeRevision && g < mG[neighborCell]) {
+                                mClosed[neighborCell] = 0;
+                                open(neighborCell, g, mH[neighborCell], currentCell);
+                            }
+                        } else if (mVisited[neighborCell] == mGeneration) {
+                            // open node, decrease key when shorter
+                            if (g < mG[neighborCell]) {
+                                mG[neighborCell] = g;
+                                mParent[neighborCell] = currentCell;
+                                siftUp(mHeapIndex[neighborCell]);
+                            }
+                        } else {
+                            open(neighborCell, g, mAdapter.getHeuristic(neighbor, mEndNode), currentCell);
+                        }
+                    }
+                }
+
+                // done with it
+                mNodePool.release(neighbor);
+                neighbors[i] = null;
+            }
+        }
+
+        return null;
+    }
+
+    private boolean contains(final int x, final int y) {
+        return x >= 0 && x < mWidth && y >= 0 && y < mHeight;
+    }
+
+    private void newGeneration() {
+        mGeneration++;
+        if (mGeneration == Integer.MAX_VALUE) {
+            // wrapped, this rarely happens
+            for (int i = 0; i < mVisited.length; i++) {
+                mVisited[i] = mClosed[i] = 0;
+            }
+            mGeneration = 1;
+        }
+    }
+
+    private void open(final int cell, final int g, final int h, final int parent) {
+        mG[cell] = g;
+        mH[cell] = h;
+        mParent[cell] = parent;
+
+        if (mVisited[cell] == mGeneration && mHeapIndex[cell] >= 0) {
+            // already in the heap, the cost can go either way
+            siftUp(mHeapIndex[cell]);
+            siftDown(mHeapIndex[cell]);
+            return;
+        }
+
+        mVisited[cell] = mGeneration;
+        mHeap[mHeapSize] = cell;
+        mHeapIndex[cell] = mHeapSize;
+        siftUp(mHeapSize++);
+    }
+
+    private int poll() {
+        final int cell = mHeap[0];
+        mHeapIndex[cell] = -1;
+
+        mHeapSize--;
+        if (mHeapSize > 0) {
+            final int last = mHeap[mHeapSize];
+            mHeap[0] = last;
+            mHeapIndex[last] = 0;
+            siftDown(0);
+        }
+
+        return cell;
+    }
+
+    private void siftUp(int index) {
+        final int cell = mHeap[index];
+        final int f = mG[cell] + mH[cell];
+        int parentIndex, parentCell;
+        while (index > 0) {
+            parentIndex = (index - 1) >> 1;
+            parentCell = mHeap[parentIndex];
+            if (mG[parentCell] + mH[parentCell] <= f) {
+                break;
+            }
+            mHeap[index] = parentCell;
+            mHeapIndex[parentCell] = index;
+            index = parentIndex;
+        }
+        mHeap[index] = cell;
+        mHeapIndex[cell] = index;
+    }
+
+    private void siftDown(int index) {
+        final int cell = mHeap[index];
+        final int f = mG[cell] + mH[cell];
+        final int half = mHeapSize >> 1;
+        int childIndex, childCell, rightIndex, rightCell;
+        while (index < half) {
+            childIndex = (index << 1) + 1;
+            childCell = mHeap[childIndex];
+            rightIndex = childIndex + 1;
+            if (rightIndex < mHeapSize) {
+                rightCell = mHeap[rightIndex];
+                if (mG[rightCell] + mH[rightCell] < mG[childCell] + mH[childCell]) {
+                    childIndex = rightIndex;
+                    childCell = rightCell;
+                }
+            }
+            if (f <= mG[childCell] + mH[childCell]) {
+                break;
+            }
+            mHeap[index] = childCell;
+            mHeapIndex[childCell] = index;
+            index = childIndex;
+        }
+        mHeap[index] = cell;
+        mHeapIndex[cell] = index;
+    }
+
+    private List<AstarNode> extractPath(final AstarNode start, final int endCell, final boolean compression) {
+        if (mPathCells == null) {
+            mPathCells = new int[mWidth * mHeight];
+        }
+
+        // walk back to the start, end first
+        int numCells = 0;
+        int cell = endCell;
+        while (cell >= 0) {
+            mPathCells[numCells++] = cell;
+            cell = mParent[cell];
+        }
+
+        final ArrayList<AstarNode> path = new ArrayList<AstarNode>(numCells);
+        int lastX = 0, lastY = 0, x, y;
+        int lastVectorX = 0, lastVectorY = 0, newVectorX, newVectorY;
+        for (int i = 0; i < numCells; i++) {
+            cell = mPathCells[i];
+            x = cell % mWidth;
+            y = cell / mWidth;
+
+            if (compression && i > 0) {
+                newVectorX = x - lastX;
+                newVectorY = y - lastY;
+                if (i > 1 && lastVectorX == newVectorX && lastVectorY == newVectorY) {
+                    // same direction, override the last node
+                    final AstarNode node = path.get(path.size() - 1);
+                    node.set(x, y);
+                    node.g = mG[cell];
+                    node.h = mH[cell];
+                    lastX = x;
+                    lastY = y;
+                    continue;
+                }
+
+                lastVectorX = newVectorX;
+                lastVectorY = newVectorY;
+            }
+
+            final AstarNode node = i == numCells - 1 ? start : createNode(x, y);
+            node.g = mG[cell];
+            node.h = mH[cell];
+            path.add(node);
+            lastX = x;
+            lastY = y;
+        }
+
+        // start first
+        Collections.reverse(path);
+
+        if (LOG_ENABLED) {
+            Log.v(TAG, "extractPath(): " + mNumExpandedNodes + " expanded -> " + path.size() + " nodes");
+        }
+
+        return path;
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.funzio.pure2D.astar;
+
+import com.funzio.pure2D.grid.Grid;
+import com.funzio.pure2D.grid.VerticalHexGrid;
+
+/**
+ * An immutable copy of the walkability of a {@link Grid}, for searching on other threads while the grid keeps changing. Cells with null data are walkable by default.
+ * 
+ * @author long.ngo
+ * @see PathService
+ */
+public class GridSnapshot implements PathService.Snapshot {
+    private static final int[][] RECT_NEIGHBOR_OFFSETS = {
+            {
+                    -1, 0
+            }, {
+                    +1, 0
+            }, {
+                    0, -1
+            }, {
+                    0, +1
+            }
+    };
+
+    private int mWidth;
+    private int mHeight;
+    private boolean[] mWalkable;
+    // null for rect grids
+    private final int[][] mHexOffsets;
+    private final boolean mEvenColumn;
+
+    /**
+     * Snapshot of a rect grid, 4 neighbors per cell
+     */
+    public GridSnapshot(final Grid<?> grid) {
+        this(grid, null, false);
+    }
+
+    /**
+     * Snapshot of a vertical hex grid, 6 neighbors per cell
+     */
+    public GridSnapshot(final VerticalHexGrid<?> grid) {
+        this(grid, grid.getNeighborOffets(), grid.isEvenColumn());
+    }
+
+    private GridSnapshot(final Grid<?> grid, final int[][] hexOffsets, final boolean evenColumn) {
+        mHexOffsets = hexOffsets;
+        mEvenColumn = evenColumn;
+
+        reset(grid);
+    }
+
+    /**
+     * Take the size and walkability of the grid again, after it has been resized. Same restriction as {@link #setWalkableAt(int, int, boolean)}.
+     */
+    void reset(final Grid<?> grid) {
+        mWidth = grid.getSize().x;
+        mHeight = grid.getSize().y;
+
+        mWalkable = new boolean[mWidth * mHeight];
+        for (int y = 0; y < mHeight; y++) {
+            for (int x = 0; x < mWidth; x++) {
+                mWalkable[y * mWidth + x] = isWalkable(grid.getDataAt(x, y));
+            }
+        }
+    }
+
+    /**
+     * Override this for custom walkability
+     * 
+     * @param data the cell data
+     * @return true if the cell can be walked on
+     */
+    protected boolean isWalkable(final Object data) {
+        return data == null;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public boolean isWalkableAt(final int x, final int y) {
+        return x >= 0 && x < mWidth && y >= 0 && y < mHeight && mWalkable[y * mWidth + x];
+    }
+
+    /**
+     * Only for owners that keep a private copy in sync with a grid. A snapshot that has been shared must never be changed.
+     */
+    void setWalkableAt(final int x, final int y, final boolean walkable) {
+        mWalkable[y * mWidth + x] = walkable;
+    }
+
+    public boolean isHex() {
+        return mHexOffsets != null;
+    }
+
+    public int getMaxNeighbors() {
+        return mHexOffsets != null ? VerticalHexGrid.CELL_MAX_NEIGHBORS : RECT_NEIGHBOR_OFFSETS.length;
+    }
+
+    /**
+     * Get the walkable neighbors of a cell
+     * 
+     * @param x
+     * @param y
+     * @param neighborXs
+     * @param neighborYs
+     * @return the number of neighbors
+     */
+    public int getNeighbors(final int x, final int y, final int[] neighborXs, final int[] neighborYs) {
+        final int[][] offsets = mHexOffsets != null ? mHexOffsets : RECT_NEIGHBOR_OFFSETS;
+        final int numOffsets = getMaxNeighbors();
+        final int start = mHexOffsets != null ? (x % 2) * numOffsets : 0;
+        int count = 0, nx, ny;
+        for (int i = 0; i < numOffsets; i++) {
+            nx = x + offsets[start + i][0];
+            ny = y + offsets[start + i][1];
+            if (isWalkableAt(nx, ny)) {
+                neighborXs[count] = nx;
+                neighborYs[count] = ny;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of steps between 2 cells, ignoring walls
+     */
+    public int getDistance(final int x1, final int y1, final int x2, final int y2) {
+        if (mHexOffsets == null) {
+            return Math.abs(x2 - x1) + Math.abs(y2 - y1);
+        }
+
+        // cube coordinates, same as VerticalHexGrid.getCellsDistance()
+        final int cz1 = mEvenColumn ? y1 - (x1 + (x1 & 1)) / 2 : y1 - (x1 - (x1 & 1)) / 2;
+        final int cz2 = mEvenColumn ? y2 - (x2 + (x2 & 1)) / 2 : y2 - (x2 - (x2 & 1)) / 2;
+        final int cy1 = -x1 - cz1;
+        final int cy2 = -x2 - cz2;
+
+        return (Math.abs(x1 - x2) + Math.abs(cy1 - cy2) + Math.abs(cz1 - cz2)) / 2;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.astar.PathService.Snapshot#createEngine()
+     */
+    @Override
+    public Astar createEngine() {
+        final SnapshotAdapter adapter = new SnapshotAdapter();
+        adapter.mAstar = new GridAstar(adapter, mWidth, mHeight);
+
+        return adapter.mAstar;
+    }
+
+    private class SnapshotAdapter implements AstarAdapter {
+        private Astar mAstar;
+        private final int[] mNeighborXs = new int[getMaxNeighbors()];
+        private final int[] mNeighborYs = new int[getMaxNeighbors()];
+
+        @Override
+        public int getNodeMaxNeighbors() {
+            return getMaxNeighbors();
+        }
+
+        @Override
+        public void getNodeNeighbors(final AstarNode node, final AstarNodeSet openNodes, final AstarNodeSet closedNodes, final AstarNode[] neighbors) {
+            final int count = getNeighbors(node.x, node.y, mNeighborXs, mNeighborYs);
+            for (int i = 0; i < count; i++) {
+                neighbors[i] = mAstar.createNode(mNeighborXs[i], mNeighborYs[i]);
+            }
+        }
+
+        @Override
+        public int getHeuristic(final AstarNode node1, final AstarNode node2) {
+            return getDistance(node1.x, node1.y, node2.x, node2.y);
+        }
+    }
+}
@@ -0,0 +1,886 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.funzio.pure2D.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.funzio.pure2D.grid.AbstractGrid;
+import com.funzio.pure2D.grid.Grid;
+import com.funzio.pure2D.grid.VerticalHexGrid;
+
+/**
+ * Hierarchical path finding (HPA*) for big rect and vertical hex grids. The grid is split into square clusters; the entrances between neighbor clusters and the distances
+ * between entrances of the same cluster are cached in an abstract graph. A search only runs over that graph, then each abstract step is refined inside a single cluster. Paths
+ * are near-optimal, not always the shortest. All steps cost 1, like the default {@link AstarNode#g}.
+ * <p>
+ * The walkability is kept in sync with the grid through {@link AbstractGrid.Listener}. Changed clusters are repaired at the next search, so bulk changes are cheap. Not
+ * thread-safe, use it on the thread that changes the grid.
+ * </p>
+ * 
+ * @author long.ngo
+ */
+public class HierarchicalAstar implements AbstractGrid.Listener {
+    private static final String TAG = HierarchicalAstar.class.getSimpleName();
+
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+    // an entrance longer than this gets 2 transitions, at both ends
+    private static final int LONG_ENTRANCE = 6;
+
+    // the borders are owned by the cluster with the lower id: east, south-west, south, south-east
+    private static final int[][] BORDER_DIRECTIONS = {
+            {
+                    1, 0
+            }, {
+                    -1, 1
+            }, {
+                    0, 1
+            }, {
+                    1, 1
+            }
+    };
+
+    private final AbstractGrid<?> mGrid;
+    private final GridSnapshot mWalkability;
+    private int mWidth;
+    private int mHeight;
+    private final int mClusterSize;
+    private int mNumClustersX;
+    private int mNumClustersY;
+
+    // the abstract graph
+    private final SparseArray<Node> mNodes = new SparseArray<Node>(); // by cell id
+    private ArrayList<Node>[] mClusterNodes;
+    private ArrayList<Node>[][] mBorders; // pairs of transition nodes
+    private boolean[] mDirtyClusters;
+    private boolean[] mDirtyIntraClusters;
+    private int mNumDirtyClusters = 0;
+
+    // search
+    private Node[] mHeap = new Node[64]; // indexed binary heap, ordered by f
+    private int mHeapSize = 0;
+    private final Node mStartNode = new Node(0, 0);
+    private final Node mEndNode = new Node(0, 0);
+    private int mGeneration = 0;
+    private int mNumExpandedNodes = 0;
+
+    // scratch
+    private final int[] mDistances;
+    private final int[] mQueue;
+    private final int[] mNeighborXs;
+    private final int[] mNeighborYs;
+    private final int[] mRunCells;
+    private int[] mPathCells = new int[64];
+    private int[] mPathCosts = new int[64];
+    private int mNumPathCells = 0;
+
+    public HierarchicalAstar(final AbstractGrid<?> grid) {
+        this(grid, DEFAULT_CLUSTER_SIZE);
+    }
+
+    public HierarchicalAstar(final AbstractGrid<?> grid, final int clusterSize) {
+        this(grid, grid instanceof VerticalHexGrid ? new GridSnapshot((VerticalHexGrid<?>) grid) : new GridSnapshot(grid), clusterSize);
+    }
+
+    /**
+     * @param grid the grid to listen to
+     * @param walkability a private copy of the grid walkability, subclass {@link GridSnapshot} for custom walkable data. It will be kept in sync with the grid.
+     * @param clusterSize
+     */
+    public HierarchicalAstar(final AbstractGrid<?> grid, final GridSnapshot walkability, final int clusterSize) {
+        mGrid = grid;
+        mWalkability = walkability;
+        mClusterSize = clusterSize;
+
+        mDistances = new int[clusterSize * clusterSize];
+        mQueue = new int[clusterSize * clusterSize];
+        mNeighborXs = new int[walkability.getMaxNeighbors()];
+        mNeighborYs = new int[walkability.getMaxNeighbors()];
+        mRunCells = new int[clusterSize * walkability.getMaxNeighbors() * 2];
+
+        allocateClusters();
+        build();
+        grid.addListener(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocateClusters() {
+        mWidth = mWalkability.getWidth();
+        mHeight = mWalkability.getHeight();
+        mNumClustersX = (mWidth + mClusterSize - 1) / mClusterSize;
+        mNumClustersY = (mHeight + mClusterSize - 1) / mClusterSize;
+
+        final int numClusters = mNumClustersX * mNumClustersY;
+        mClusterNodes = new ArrayList[numClusters];
+        mBorders = new ArrayList[numClusters][BORDER_DIRECTIONS.length];
+        for (int i = 0; i < numClusters; i++) {
+            mClusterNodes[i] = new ArrayList<Node>();
+            for (int d = 0; d < BORDER_DIRECTIONS.length; d++) {
+                mBorders[i][d] = new ArrayList<Node>();
+            }
+        }
+        mDirtyClusters = new boolean[numClusters];
+        mDirtyIntraClusters = new boolean[numClusters];
+        mNumDirtyClusters = 0;
+        mNodes.clear();
+    }
+
+    public void dispose() {
+        mGrid.removeListener(this);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.grid.AbstractGrid.Listener#onGridDataChanged(com.funzio.pure2D.grid.Grid, int, int)
+     */
+    @Override
+    public void onGridDataChanged(final Grid<?> grid, final int cellX, final int cellY) {
+        final boolean walkable = mWalkability.isWalkable(grid.getDataAt(cellX, cellY));
+        if (walkable != mWalkability.isWalkableAt(cellX, cellY)) {
+            mWalkability.setWalkableAt(cellX, cellY, walkable);
+
+            final int cluster = (cellY / mClusterSize) * mNumClustersX + cellX / mClusterSize;
+            if (!mDirtyClusters[cluster]) {
+                mDirtyClusters[cluster] = true;
+                mNumDirtyClusters++;
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see com.funzio.pure2D.grid.AbstractGrid.Listener#onGridResized(com.funzio.pure2D.grid.Grid)
+     */
+    @Override
+    public void onGridResized(final Grid<?> grid) {
+        // the clusters are sized for the old grid, start over
+        mWalkability.reset(grid);
+        allocateClusters();
+        build();
+    }
+
+    public int getClusterSize() {
+        return mClusterSize;
+    }
+
+    public int getNumAbstractNodes() {
+        return mNodes.size();
+    }
+
+    /**
+     * @return number of abstract nodes closed by the last search
+     */
+    public int getNumExpandedNodes() {
+        return mNumExpandedNodes;
+    }
+
+    /**
+     * Find a refined path between 2 cells, the same shape as {@link Astar#findPath(AstarNode, AstarNode, int, boolean)}
+     * 
+     * @param start
+     * @param end
+     * @param maxCost
+     * @param compressPath
+     * @return the path, start first, or null if not found
+     */
+    public List<AstarNode> findPath(final AstarNode start, final AstarNode end, final int maxCost, final boolean compressPath) {
+        if (!search(start.x, start.y, end.x, end.y, maxCost)) {
+            return null;
+        }
+
+        // refine every abstract step
+        final int numWaypoints = mNumPathCells;
+        final int[] waypoints = new int[numWaypoints];
+        System.arraycopy(mPathCells, 0, waypoints, 0, numWaypoints);
+        mNumPathCells = 0;
+        addPathCell(waypoints[0], 0);
+        for (int i = 1; i < numWaypoints; i++) {
+            refine(waypoints[i - 1], waypoints[i]);
+        }
+
+        return createPath(start, compressPath);
+    }
+
+    /**
+     * Find the abstract path between 2 cells. Consecutive waypoints are either in the same cluster or neighbors, they can be refined lazily with
+     * {@link #refinePath(AstarNode, AstarNode, boolean)}.
+     * 
+     * @param start
+     * @param end
+     * @param maxCost
+     * @return the waypoints, start first, or null if not found
+     */
+    public List<AstarNode> findAbstractPath(final AstarNode start, final AstarNode end, final int maxCost) {
+        if (!search(start.x, start.y, end.x, end.y, maxCost)) {
+            return null;
+        }
+
+        return createPath(start, false);
+    }
+
+    /**
+     * Refine a step of an abstract path
+     * 
+     * @param from
+     * @param to
+     * @param compressPath
+     * @return the path, from first, or null if they are not in the same or neighbor clusters, or not connected
+     */
+    public List<AstarNode> refinePath(final AstarNode from, final AstarNode to, final boolean compressPath) {
+        mNumPathCells = 0;
+        addPathCell(from.y * mWidth + from.x, 0);
+        if (!refine(from.y * mWidth + from.x, to.y * mWidth + to.x)) {
+            return null;
+        }
+
+        return createPath(from, compressPath);
+    }
+
+    /**
+     * Repair the clusters changed since the last search. This is called automatically by the searches.
+     */
+    public void repair() {
+        if (mNumDirtyClusters == 0) {
+            return;
+        }
+
+        final int numClusters = mDirtyClusters.length;
+        for (int cluster = 0; cluster < numClusters; cluster++) {
+            if (mDirtyClusters[cluster]) {
+                mDirtyClusters[cluster] = false;
+                repairBorders(cluster);
+            }
+        }
+        for (int cluster = 0; cluster < numClusters; cluster++) {
+            if (mDirtyIntraClusters[cluster]) {
+                mDirtyIntraClusters[cluster] = false;
+                buildIntraEdges(cluster);
+            }
+        }
+
+        if (Astar.LOG_ENABLED) {
+            Log.v(TAG, "repair(): " + mNumDirtyClusters + " clusters, " + mNodes.size() + " nodes");
+        }
+        mNumDirtyClusters = 0;
+    }
+
+    private void build() {
+        final int numClusters = mClusterNodes.length;
+        for (int cluster = 0; cluster < numClusters; cluster++) {
+            for (int d = 0; d < BORDER_DIRECTIONS.length; d++) {
+                buildBorder(cluster, d);
+            }
+        }
+        for (int cluster = 0; cluster < numClusters; cluster++) {
+            buildIntraEdges(cluster);
+        }
+
+        if (Astar.LOG_ENABLED) {
+            Log.v(TAG, "build(): " + numClusters + " clusters, " + mNodes.size() + " nodes");
+        }
+    }
+
+    private void repairBorders(final int cluster) {
+        final int cx = cluster % mNumClustersX;
+        final int cy = cluster / mNumClustersX;
+        mDirtyIntraClusters[cluster] = true;
+
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                final int nx = cx + dx;
+                final int ny = cy + dy;
+                if ((dx == 0 && dy == 0) || nx < 0 || nx >= mNumClustersX || ny < 0 || ny >= mNumClustersY) {
+                    continue;
+                }
+
+                final int neighbor = ny * mNumClustersX + nx;
+                final int owner = neighbor > cluster ? cluster : neighbor;
+                final int direction = neighbor > cluster ? getBorderDirection(dx, dy) : getBorderDirection(-dx, -dy);
+                clearBorder(owner, direction);
+                buildBorder(owner, direction);
+                mDirtyIntraClusters[neighbor] = true;
+            }
+        }
+    }
+
+    private static int getBorderDirection(final int dx, final int dy) {
+        for (int d = 0; d < BORDER_DIRECTIONS.length; d++) {
+            if (BORDER_DIRECTIONS[d][0] == dx && BORDER_DIRECTIONS[d][1] == dy) {
+                return d;
+            }
+        }
+
+        return -1;
+    }
+
+    private void clearBorder(final int cluster, final int direction) {
+        final ArrayList<Node> transitions = mBorders[cluster][direction];
+        for (int i = 0, size = transitions.size(); i < size; i += 2) {
+            final Node node1 = transitions.get(i);
+            final Node node2 = transitions.get(i + 1);
+            node1.removeEdgeTo(node2);
+            node2.removeEdgeTo(node1);
+            releaseNode(node1);
+            releaseNode(node2);
+        }
+        transitions.clear();
+    }
+
+    /**
+     * Find the entrances between a cluster and its neighbor in the given direction
+     */
+    private void buildBorder(final int cluster, final int direction) {
+        final int cx = cluster % mNumClustersX;
+        final int cy = cluster / mNumClustersX;
+        final int dx = BORDER_DIRECTIONS[direction][0];
+        final int dy = BORDER_DIRECTIONS[direction][1];
+        final int nx = cx + dx;
+        final int ny = cy + dy;
+        if (nx < 0 || nx >= mNumClustersX || ny >= mNumClustersY) {
+            return;
+        }
+        final int neighbor = ny * mNumClustersX + nx;
+
+        // the cells of this cluster that face the neighbor
+        final int minX = cx * mClusterSize;
+        final int maxX = Math.min(minX + mClusterSize, mWidth) - 1;
+        final int minY = cy * mClusterSize;
+        final int maxY = Math.min(minY + mClusterSize, mHeight) - 1;
+        final int fromX = dx > 0 ? maxX : minX;
+        final int toX = dx < 0 ? minX : maxX;
+        final int fromY = dy > 0 ? maxY : minY;
+        final int toY = maxY;
+
+        // collect the runs of connected crossings
+        int runLength = 0;
+        for (int y = fromY; y <= toY; y++) {
+            for (int x = fromX; x <= toX; x++) {
+                if (!mWalkability.isWalkableAt(x, y)) {
+                    runLength = flushRun(cluster, direction, neighbor, runLength);
+                    continue;
+                }
+
+                boolean crossed = false;
+                final int numNeighbors = mWalkability.getNeighbors(x, y, mNeighborXs, mNeighborYs);
+                for (int i = 0; i < numNeighbors; i++) {
+                    if (getCluster(mNeighborXs[i], mNeighborYs[i]) != neighbor) {
+                        continue;
+                    }
+
+                    final int cell = y * mWidth + x;
+                    final int neighborCell = mNeighborYs[i] * mWidth + mNeighborXs[i];
+                    if (runLength > 0 && (!areCellsClose(mRunCells[runLength - 2], cell) || !areCellsClose(mRunCells[runLength - 1], neighborCell))) {
+                        runLength = flushRun(cluster, direction, neighbor, runLength);
+                    }
+                    mRunCells[runLength++] = cell;
+                    mRunCells[runLength++] = neighborCell;
+                    crossed = true;
+                }
+
+                if (!crossed) {
+                    runLength = flushRun(cluster, direction, neighbor, runLength);
+                }
+            }
+        }
+        flushRun(cluster, direction, neighbor, runLength);
+    }
+
+    private boolean areCellsClose(final int cell1, final int cell2) {
+        return Math.abs(cell1 % mWidth - cell2 % mWidth) + Math.abs(cell1 / mWidth - cell2 / mWidth) <= 1;
+    }
+
+    private int flushRun(final int cluster, final int direction, final int neighbor, final int runLength) {
+        if (runLength == 0) {
+            return 0;
+        }
+
+        final int numCrossings = runLength / 2;
+        if (numCrossings >= LONG_ENTRANCE) {
+            addTransition(cluster, direction, neighbor, mRunCells[0], mRunCells[1]);
+            addTransition(cluster, direction, neighbor, mRunCells[runLength - 2], mRunCells[runLength - 1]);
+        } else {
+            final int middle = (numCrossings / 2) * 2;
+            addTransition(cluster, direction, neighbor, mRunCells[middle], mRunCells[middle + 1]);
+        }
+
+        return 0;
+    }
+
+    private void addTransition(final int cluster, final int direction, final int neighbor, final int cell, final int neighborCell) {
+        final Node node1 = acquireNode(cell, cluster);
+        final Node node2 = acquireNode(neighborCell, neighbor);
+        node1.mEdges.add(new Edge(node2, 1, true));
+        node2.mEdges.add(new Edge(node1, 1, true));
+
+        final ArrayList<Node> transitions = mBorders[cluster][direction];
+        transitions.add(node1);
+        transitions.add(node2);
+    }
+
+    private Node acquireNode(final int cell, final int cluster) {
+        Node node = mNodes.get(cell);
+        if (node == null) {
+            node = new Node(cell, cluster);
+            mNodes.put(cell, node);
+            mClusterNodes[cluster].add(node);
+        }
+        node.mNumTransitions++;
+
+        return node;
+    }
+
+    private void releaseNode(final Node node) {
+        if (--node.mNumTransitions > 0) {
+            return;
+        }
+
+        mNodes.remove(node.mCell);
+        mClusterNodes[node.mCluster].remove(node);
+        for (int i = 0, size = node.mEdges.size(); i < size; i++) {
+            node.mEdges.get(i).mTo.removeEdgeTo(node);
+        }
+        node.mEdges.clear();
+    }
+
+    /**
+     * Cache the distances between the entrances of a cluster
+     */
+    private void buildIntraEdges(final int cluster) {
+        final ArrayList<Node> nodes = mClusterNodes[cluster];
+        final int numNodes = nodes.size();
+        for (int i = 0; i < numNodes; i++) {
+            nodes.get(i).removeIntraEdges();
+        }
+
+        for (int i = 0; i < numNodes - 1; i++) {
+            final Node node = nodes.get(i);
+            fillDistances(cluster, node.mCell);
+            for (int j = i + 1; j < numNodes; j++) {
+                final Node other = nodes.get(j);
+                final int distance = mDistances[getLocalIndex(cluster, other.mCell)];
+                if (distance >= 0) {
+                    node.mEdges.add(new Edge(other, distance, false));
+                    other.mEdges.add(new Edge(node, distance, false));
+                }
+            }
+        }
+    }
+
+    private int getCluster(final int x, final int y) {
+        return (y / mClusterSize) * mNumClustersX + x / mClusterSize;
+    }
+
+    private int getLocalIndex(final int cluster, final int cell) {
+        final int x = cell % mWidth - (cluster % mNumClustersX) * mClusterSize;
+        final int y = cell / mWidth - (cluster / mNumClustersX) * mClusterSize;
+        return y * mClusterSize + x;
+    }
+
+    /**
+     * Breadth-first distances from a cell to all cells of its cluster, -1 when not reachable. All steps cost 1 so this is exact.
+     */
+    private void fillDistances(final int cluster, final int sourceCell) {
+        final int[] distances = mDistances;
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = -1;
+        }
+
+        int head = 0, tail = 0, cell, distance, x, y, numNeighbors, neighborCell, neighborIndex;
+        distances[getLocalIndex(cluster, sourceCell)] = 0;
+        mQueue[tail++] = sourceCell;
+        while (head < tail) {
+            cell = mQueue[head++];
+            distance = distances[getLocalIndex(cluster, cell)] + 1;
+            x = cell % mWidth;
+            y = cell / mWidth;
+            numNeighbors = mWalkability.getNeighbors(x, y, mNeighborXs, mNeighborYs);
+            for (int i = 0; i < numNeighbors; i++) {
+                if (getCluster(mNeighborXs[i], mNeighborYs[i]) != cluster) {
+                    continue;
+                }
+
+                neighborCell = mNeighborYs[i] * mWidth + mNeighborXs[i];
+                neighborIndex = getLocalIndex(cluster, neighborCell);
+                if (distances[neighborIndex] < 0) {
+                    distances[neighborIndex] = distance;
+                    mQueue[tail++] = neighborCell;
+                }
+            }
+        }
+    }
+
+    /**
+     * Search the abstract graph, the waypoint cells go to mPathCells
+     */
+    private boolean search(final int startX, final int startY, final int endX, final int endY, final int maxCost) {
+        mNumPathCells = 0;
+        mNumExpandedNodes = 0;
+        if (startX < 0 || startX >= mWidth || startY < 0 || startY >= mHeight || !mWalkability.isWalkableAt(endX, endY)) {
+            return false;
+        }
+
+        repair();
+
+        final int startCell = startY * mWidth + startX;
+        final int endCell = endY * mWidth + endX;
+        if (startCell == endCell) {
+            addPathCell(startCell, 0);
+            return true;
+        }
+
+        mGeneration++;
+        final int startCluster = getCluster(startX, startY);
+        final int endCluster = getCluster(endX, endY);
+
+        // temporarily connect the start and the end to their clusters
+        Node start = mNodes.get(startCell);
+        if (start == null) {
+            start = mStartNode;
+            start.set(startCell, startCluster);
+            fillDistances(startCluster, startCell);
+            final ArrayList<Node> nodes = mClusterNodes[startCluster];
+            for (int i = 0, size = nodes.size(); i < size; i++) {
+                final int distance = mDistances[getLocalIndex(startCluster, nodes.get(i).mCell)];
+                if (distance >= 0) {
+                    start.mEdges.add(new Edge(nodes.get(i), distance, false));
+                }
+            }
+        }
+        Node end = mNodes.get(endCell);
+        if (end == null) {
+            end = mEndNode;
+            end.set(endCell, endCluster);
+            fillDistances(endCluster, endCell);
+            final ArrayList<Node> nodes = mClusterNodes[endCluster];
+            for (int i = 0, size = nodes.size(); i < size; i++) {
+                final Node node = nodes.get(i);
+                final int distance = mDistances[getLocalIndex(endCluster, node.mCell)];
+                if (distance >= 0) {
+                    node.mEndDistance = distance;
+                    node.mEndGeneration = mGeneration;
+                }
+            }
+        }
+        // same cluster, the direct way
+        int directDistance = -1;
+        if (startCluster == endCluster) {
+            if (end != mEndNode) {
+                fillDistances(endCluster, endCell);
+            }
+            directDistance = mDistances[getLocalIndex(startCluster, startCell)];
+        }
+
+        mHeapSize = 0;
+        open(start, 0, null, end);
+        Node current;
+        while (mHeapSize > 0) {
+            current = poll();
+            current.mClosedGeneration = mGeneration;
+            mNumExpandedNodes++;
+
+            if (current == end) {
+                break;
+            }
+
+            final ArrayList<Edge> edges = current.mEdges;
+            for (int i = 0, size = edges.size(); i < size; i++) {
+                final Edge edge = edges.get(i);
+                relax(edge.mTo, current.mG + edge.mCost, current, end, maxCost);
+            }
+            if (end == mEndNode && current.mEndGeneration == mGeneration) {
+                relax(end, current.mG + current.mEndDistance, current, end, maxCost);
+            }
+            if (current == start && directDistance >= 0) {
+                relax(end, directDistance, current, end, maxCost);
+            }
+        }
+        for (int i = 0; i < mHeapSize; i++) {
+            mHeap[i] = null;
+        }
+        mHeapSize = 0;
+        mStartNode.mEdges.clear();
+
+        if (end.mClosedGeneration != mGeneration) {
+            return false;
+        }
+
+        // walk back
+        for (Node node = end; node != null; node = node.mParent) {
+            addPathCell(node.mCell, node.mG);
+        }
+        for (int i = 0, j = mNumPathCells - 1; i < j; i++, j--) {
+            int temp = mPathCells[i];
+            mPathCells[i] = mPathCells[j];
+            mPathCells[j] = temp;
+            temp = mPathCosts[i];
+            mPathCosts[i] = mPathCosts[j];
+            mPathCosts[j] = temp;
+        }
+
+        return true;
+    }
+
+    private void relax(final Node node, final int g, final Node parent, final Node end, final int maxCost) {
+        if (node.mClosedGeneration == mGeneration || (maxCost > 0 && g > maxCost)) {
+            return;
+        }
+
+        if (node.mGeneration != mGeneration || g < node.mG) {
+            open(node, g, parent, end);
+        }
+    }
+
+    private void open(final Node node, final int g, final Node parent, final Node end) {
+        node.mParent = parent;
+        if (node.mGeneration == mGeneration) {
+            // already open, decrease key
+            node.mF -= node.mG - g;
+            node.mG = g;
+            siftUp(node.mHeapIndex);
+            return;
+        }
+
+        node.mGeneration = mGeneration;
+        node.mG = g;
+        node.mF = g + mWalkability.getDistance(node.mCell % mWidth, node.mCell / mWidth, end.mCell % mWidth, end.mCell / mWidth);
+        if (mHeapSize == mHeap.length) {
+            final Node[] heap = new Node[mHeapSize * 2];
+            System.arraycopy(mHeap, 0, heap, 0, mHeapSize);
+            mHeap = heap;
+        }
+        mHeap[mHeapSize] = node;
+        siftUp(mHeapSize++);
+    }
+
+    private Node poll() {
+        final Node node = mHeap[0];
+        mHeapSize--;
+        if (mHeapSize > 0) {
+            mHeap[0] = mHeap[mHeapSize];
+            siftDown(0);
+        }
+        mHeap[mHeapSize] = null;
+
+        return node;
+    }
+
+    /**
+     * Lower f first. On ties, the deeper node first, that saves a lot of expansions on open maps.
+     */
+    private static boolean isBefore(final Node node1, final Node node2) {
+        return node1.mF < node2.mF || (node1.mF == node2.mF && node1.mG > node2.mG);
+    }
+
+    private void siftUp(int index) {
+        final Node node = mHeap[index];
+        int parentIndex;
+        while (index > 0) {
+            parentIndex = (index - 1) >> 1;
+            if (!isBefore(node, mHeap[parentIndex])) {
+                break;
+            }
+            mHeap[index] = mHeap[parentIndex];
+            mHeap[index].mHeapIndex = index;
+            index = parentIndex;
+        }
+        mHeap[index] = node;
+        node.mHeapIndex = index;
+    }
+
+    private void siftDown(int index) {
+        final Node node = mHeap[index];
+        final int half = mHeapSize >> 1;
+        int childIndex;
+        while (index < half) {
+            childIndex = (index << 1) + 1;
+            if (childIndex + 1 < mHeapSize && isBefore(mHeap[childIndex + 1], mHeap[childIndex])) {
+                childIndex++;
+            }
+            if (!isBefore(mHeap[childIndex], node)) {
+                break;
+            }
+            mHeap[index] = mHeap[childIndex];
+            mHeap[index].mHeapIndex = index;
+            index = childIndex;
+        }
+        mHeap[index] = node;
+        node.mHeapIndex = index;
+    }
+
+    /**
+     * Append the cells after fromCell up to toCell to mPathCells
+     */
+    private boolean refine(final int fromCell, final int toCell) {
+        final int fromX = fromCell % mWidth, fromY = fromCell / mWidth;
+        final int toX = toCell % mWidth, toY = toCell / mWidth;
+        final int fromCluster = getCluster(fromX, fromY);
+        final int toCluster = getCluster(toX, toY);
+
+        if (fromCluster != toCluster) {
+            // a transition, they must be neighbors
+            final int numNeighbors = mWalkability.getNeighbors(fromX, fromY, mNeighborXs, mNeighborYs);
+            for (int i = 0; i < numNeighbors; i++) {
+                if (mNeighborXs[i] == toX && mNeighborYs[i] == toY) {
+                    addPathCell(toCell, mPathCosts[mNumPathCells - 1] + 1);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        // walk down the distances to the target
+        fillDistances(toCluster, toCell);
+        int distance = mDistances[getLocalIndex(toCluster, fromCell)];
+        if (distance < 0) {
+            return false;
+        }
+
+        int x = fromX, y = fromY;
+        while (distance > 0) {
+            final int numNeighbors = mWalkability.getNeighbors(x, y, mNeighborXs, mNeighborYs);
+            for (int i = 0; i < numNeighbors; i++) {
+                if (getCluster(mNeighborXs[i], mNeighborYs[i]) == toCluster) {
+                    final int neighborCell = mNeighborYs[i] * mWidth + mNeighborXs[i];
+                    if (mDistances[getLocalIndex(toCluster, neighborCell)] == distance - 1) {
+                        x = mNeighborXs[i];
+                        y = mNeighborYs[i];
+                        addPathCell(neighborCell, mPathCosts[mNumPathCells - 1] + 1);
+                        break;
+                    }
+                }
+            }
+            distance--;
+        }
+
+        return true;
+    }
+
+    private void addPathCell(final int cell, final int g) {
+        if (mNumPathCells == mPathCells.length) {
+            final int[] cells = new int[mPathCells.length * 2];
+            System.arraycopy(mPathCells, 0, cells, 0, mNumPathCells);
+            mPathCells = cells;
+            final int[] costs = new int[cells.length];
+            System.arraycopy(mPathCosts, 0, costs, 0, mNumPathCells);
+            mPathCosts = costs;
+        }
+        mPathCells[mNumPathCells] = cell;
+        mPathCosts[mNumPathCells++] = g;
+    }
+
+    /**
+     * Create the nodes from mPathCells, with the same compression as {@link Astar}
+     */
+    private List<AstarNode> createPath(final AstarNode start, final boolean compression) {
+        final ArrayList<AstarNode> path = new ArrayList<AstarNode>(mNumPathCells);
+        start.g = 0;
+        start.parent = null;
+        path.add(start);
+
+        int lastX = start.x, lastY = start.y, x, y;
+        int lastVectorX = 0, lastVectorY = 0, newVectorX, newVectorY;
+        AstarNode node = start;
+        for (int i = 1; i < mNumPathCells; i++) {
+            x = mPathCells[i] % mWidth;
+            y = mPathCells[i] / mWidth;
+            newVectorX = x - lastX;
+            newVectorY = y - lastY;
+
+            if (compression && i > 1 && newVectorX == lastVectorX && newVectorY == lastVectorY) {
+                // same direction, move the last node
+                node.set(x, y);
+            } else {
+                final AstarNode newNode = new AstarNode(x, y);
+                newNode.parent = node;
+                path.add(newNode);
+                node = newNode;
+            }
+            node.g = mPathCosts[i];
+
+            lastX = x;
+            lastY = y;
+            lastVectorX = newVectorX;
+            lastVectorY = newVectorY;
+        }
+
+        return path;
+    }
+
+    private static class Edge {
+        private final Node mTo;
+        private final int mCost;
+        private final boolean mTransition;
+
+        private Edge(final Node to, final int cost, final boolean transition) {
+            mTo = to;
+            mCost = cost;
+            mTransition = transition;
+        }
+    }
+
+    private static class Node {
+        private int mCell;
+        private int mCluster;
+        private int mNumTransitions = 0;
+        private final ArrayList<Edge> mEdges = new ArrayList<Edge>(4);
+
+        // search state
+        private int mGeneration;
+        private int mClosedGeneration;
+        private int mG;
+        private int mF;
+        private int mHeapIndex;
+        private Node mParent;
+        private int mEndGeneration;
+        private int mEndDistance;
+
+        private Node(final int cell, final int cluster) {
+            mCell = cell;
+            mCluster = cluster;
+        }
+
+        private void set(final int cell, final int cluster) {
+            mCell = cell;
+            mCluster = cluster;
+        }
+
+        private void removeEdgeTo(final Node node) {
+            for (int i = mEdges.size() - 1; i >= 0; i--) {
+                if (mEdges.get(i).mTo == node) {
+                    mEdges.remove(i);
+                }
+            }
+        }
+
+        private void removeIntraEdges() {
+            for (int i = mEdges.size() - 1; i >= 0; i--) {
+                if (!mEdges.get(i).mTransition) {
+                    mEdges.remove(i);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package com.funzio.pure2D.astar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+import com.funzio.pure2D.Scene;
+
+/**
+ * Runs path queries on a small pool of worker threads and delivers the results on the GL thread, via {@link Scene#queueEvent(Runnable)}. Identical pending queries are merged into one search.
+ * Each query is searched against the {@link Snapshot} that was current when it was made, so the game can keep changing its grid while the workers are busy.
+ * 
+ * @author long.ngo
+ */
+public class PathService {
+    protected static final String TAG = PathService.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_RESULTS_PER_FRAME = 8;
+
+    private final Scene mScene;
+    private final ThreadPoolExecutor mExecutor;
+    private volatile Snapshot mSnapshot;
+
+    // pending requests, also the lock for all listener lists
+    private final HashMap<PathRequest, PathRequest> mPendingRequests = new HashMap<PathRequest, PathRequest>();
+    private final ConcurrentLinkedQueue<PathRequest> mResults = new ConcurrentLinkedQueue<PathRequest>();
+    private final AtomicBoolean mDeliveryScheduled = new AtomicBoolean(false);
+    private volatile int mMaxResultsPerFrame = DEFAULT_MAX_RESULTS_PER_FRAME;
+
+    // one engine per worker thread, since Astar is not thread-safe
+    private final ThreadLocal<Worker> mWorkers = new ThreadLocal<Worker>();
+
+    public PathService(final Scene scene, final Snapshot snapshot, final int numThreads) {
+        mScene = scene;
+        mSnapshot = snapshot;
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        mExecutor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, TAG + "-" + threadCount.incrementAndGet());
+                // don't fight with the GL thread
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Set the snapshot for the next requests. Pending requests keep using the snapshot they were made with.
+     * 
+     * @param snapshot
+     */
+    public void setSnapshot(final Snapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    public Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Limit the number of results delivered per frame, to avoid spikes when many paths finish together.
+     * 
+     * @param maxResults 0 for no limit
+     */
+    public void setMaxResultsPerFrame(final int maxResults) {
+        mMaxResultsPerFrame = maxResults;
+    }
+
+    public int getMaxResultsPerFrame() {
+        return mMaxResultsPerFrame;
+    }
+
+    /**
+     * Request a path. The listener is called on the GL thread.
+     * 
+     * @param startX
+     * @param startY
+     * @param endX
+     * @param endY
+     * @param maxCost
+     * @param compressPath
+     * @param listener
+     * @return the request, which can be shared with other identical requests
+     */
+    public PathRequest findPath(final int startX, final int startY, final int endX, final int endY, final int maxCost, final boolean compressPath, final Listener listener) {
+        final PathRequest request = new PathRequest(mSnapshot, startX, startY, endX, endY, maxCost, compressPath);
+
+        synchronized (mPendingRequests) {
+            final PathRequest pending = mPendingRequests.get(request);
+            if (pending != null) {
+                // merge
+                pending.mListeners.add(listener);
+                return pending;
+            }
+
+            request.mListeners.add(listener);
+            mPendingRequests.put(request, request);
+        }
+
+        mExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                search(request);
+            }
+        });
+
+        return request;
+    }
+
+    /**
+     * Remove a listener from a request. The request itself is cancelled when it has no more listener.
+     * 
+     * @param request
+     * @param listener
+     */
+    public void cancel(final PathRequest request, final Listener listener) {
+        synchronized (mPendingRequests) {
+            request.mListeners.remove(listener);
+            if (request.mListeners.isEmpty()) {
+                cancel(request);
+            }
+        }
+    }
+
+    /**
+     * Cancel a request for all its listeners
+     * 
+     * @param request
+     */
+    public void cancel(final PathRequest request) {
+        synchronized (mPendingRequests) {
+            request.mCancelled = true;
+            request.mListeners.clear();
+            if (mPendingRequests.get(request) == request) {
+                mPendingRequests.remove(request);
+            }
+        }
+    }
+
+    /**
+     * Cancel all requests
+     */
+    public void cancelAll() {
+        synchronized (mPendingRequests) {
+            for (PathRequest request : mPendingRequests.values()) {
+                request.mCancelled = true;
+                request.mListeners.clear();
+            }
+            mPendingRequests.clear();
+        }
+        mExecutor.getQueue().clear();
+        mResults.clear();
+    }
+
+    public int getNumPendingRequests() {
+        synchronized (mPendingRequests) {
+            return mPendingRequests.size();
+        }
+    }
+
+    /**
+     * Cancel everything and stop the worker threads. This service cannot be used after this.
+     */
+    public void dispose() {
+        cancelAll();
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Called on a worker thread
+     */
+    private void search(final PathRequest request) {
+        if (request.mCancelled) {
+            return;
+        }
+
+        Worker worker = mWorkers.get();
+        if (worker == null || worker.mSnapshot != request.mSnapshot) {
+            worker = new Worker(request.mSnapshot);
+            mWorkers.set(worker);
+        }
+
+        List<AstarNode> path = null;
+        try {
+            final Astar astar = worker.mAstar;
+            path = astar.findPath(astar.createNode(request.mStartX, request.mStartY), astar.createNode(request.mEndX, request.mEndY), request.mMaxCost, request.mCompressPath);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "search(): " + request, e);
+        }
+
+        synchronized (mPendingRequests) {
+            // no more merging from now on
+            if (mPendingRequests.get(request) == request) {
+                mPendingRequests.remove(request);
+            }
+
+            if (request.mCancelled) {
+                return;
+            }
+
+            request.mPath = path == null ? null : Collections.unmodifiableList(path);
+        }
+
+        mResults.add(request);
+        if (mDeliveryScheduled.compareAndSet(false, true)) {
+            mScene.queueEvent(mDeliverRunnable);
+        }
+    }
+
+    /**
+     * Called on the GL thread
+     */
+    private final Runnable mDeliverRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            final int maxResults = mMaxResultsPerFrame;
+            int count = 0;
+            PathRequest request;
+            while ((maxResults <= 0 || count < maxResults) && (request = mResults.poll()) != null) {
+                if (deliver(request)) {
+                    count++;
+                }
+            }
+
+            mDeliveryScheduled.set(false);
+            // the rest goes to the next frame
+            if (!mResults.isEmpty() && mDeliveryScheduled.compareAndSet(false, true)) {
+                mScene.queueEvent(this, Scene.DEFAULT_MSPF);
+            }
+        }
+    };
+
+    private boolean deliver(final PathRequest request) {
+        final Listener[] listeners;
+        synchronized (mPendingRequests) {
+            if (request.mCancelled || request.mListeners.isEmpty()) {
+                return false;
+            }
+
+            listeners = request.mListeners.toArray(new Listener[request.mListeners.size()]);
+            request.mListeners.clear();
+            request.mDone = true;
+        }
+
+        for (Listener listener : listeners) {
+            listener.onPathFound(request, request.mPath);
+        }
+
+        return true;
+    }
+
+    private static class Worker {
+        private final Snapshot mSnapshot;
+        private final Astar mAstar;
+
+        private Worker(final Snapshot snapshot) {
+            mSnapshot = snapshot;
+            mAstar = snapshot.createEngine();
+        }
+    }
+
+    /**
+     * An immutable copy of the walkability data. It must be safe to use from multiple threads.
+     */
+    public static interface Snapshot {
+        /**
+         * Called once per worker thread
+         * 
+         * @return a new engine that reads this snapshot
+         */
+        public Astar createEngine();
+    }
+
+    public static interface Listener {
+        /**
+         * Called on the GL thread
+         * 
+         * @param request
+         * @param path the path, shared with the other listeners of the same request, or null if not found
+         */
+        public void onPathFound(PathRequest request, List<AstarNode> path);
+    }
+
+    public static class PathRequest {
+        private final Snapshot mSnapshot;
+        private final int mStartX;
+        private final int mStartY;
+        private final int mEndX;
+        private final int mEndY;
+        private final int mMaxCost;
+        private final boolean mCompressPath;
+
+        private final ArrayList<Listener> mListeners = new ArrayList<Listener>(1);
+        private volatile boolean mCancelled = false;
+        private volatile boolean mDone = false;
+        private volatile List<AstarNode> mPath;
+
+        private PathRequest(final Snapshot snapshot, final int startX, final int startY, final int endX, final int endY, final int maxCost, final boolean compressPath) {
+            mSnapshot = snapshot;
+            mStartX = startX;
+            mStartY = startY;
+            mEndX = endX;
+            mEndY = endY;
+            mMaxCost = maxCost;
+            mCompressPath = compressPath;
+        }
+
+        public int getStartX() {
+            return mStartX;
+        }
+
+        public int getStartY() {
+            return mStartY;
+        }
+
+        public int getEndX() {
+            return mEndX;
+        }
+
+        public int getEndY() {
+            return mEndY;
+        }
+
+        public int getMaxCost() {
+            return mMaxCost;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public boolean isDone() {
+            return mDone;
+        }
+
+        /**
+         * @return the path, or null if not found or not done yet
+         */
+        public List<AstarNode> getPath() {
+            return mPath;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof PathRequest)) {
+                return false;
+            }
+
+            final PathRequest r = (PathRequest) o;
+            return r.mSnapshot == mSnapshot && r.mStartX == mStartX && r.mStartY == mStartY && r.mEndX == mEndX && r.mEndY == mEndY && r.mMaxCost == mMaxCost && r.mCompressPath == mCompressPath;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(mSnapshot);
+            hash = hash * 31 + mStartX;
+            hash = hash * 31 + mStartY;
+            hash = hash * 31 + mEndX;
+            hash = hash * 31 + mEndY;
+            hash = hash * 31 + mMaxCost;
+            return hash * 2 + (mCompressPath ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + mStartX + ", " + mStartY + ") -> (" + mEndX + ", " + mEndY + "), " + mMaxCost;
+        }
+    }
+}
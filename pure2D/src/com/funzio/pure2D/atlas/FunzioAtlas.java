@@ -37,6 +37,7 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParser;
 
 /**
  * @author long
@@ -54,6 +55,10 @@ public class FunzioAtlas extends XMLAtlas {
         super(parser);
     }
 
+    public FunzioAtlas(final XmlPullParser parser) {
+        super(parser);
+    }
+
     @Override
     protected void parseXML(final String xml) {
         try {
@@ -70,11 +75,11 @@ public class FunzioAtlas extends XMLAtlas {
     }
 
     @Override
-    protected void parseXML(final XmlResourceParser parser) {
+    protected void parseXML(final XmlPullParser parser) {
         int eventType = -1;
         int index = 0;
-        while (eventType != XmlResourceParser.END_DOCUMENT) {
-            if (eventType == XmlResourceParser.START_TAG) {
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
                 String strNode = parser.getName();
                 if (strNode.equals(NODE_TEXTURE_ATLAS)) {
                     mWidth = Integer.parseInt(parser.getAttributeValue(null, "width"));
@@ -24,20 +24,17 @@
  */
 package com.funzio.pure2D.atlas;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.io.StringReader;
+import java.util.ArrayList;
 
 import android.content.res.AssetManager;
 import android.graphics.PointF;
 import android.graphics.RectF;
 import android.util.Log;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import com.funzio.pure2D.Scene;
 import com.funzio.pure2D.loaders.AsyncTaskExecuter;
@@ -48,6 +45,9 @@ import com.funzio.pure2D.loaders.tasks.URLLoadJsonTask;
 import com.funzio.pure2D.loaders.tasks.URLLoadTextTask;
 import com.funzio.pure2D.loaders.tasks.WriteTextFileTask;
 import com.funzio.pure2D.particles.nova.NovaConfig;
+import com.funzio.pure2D.utils.JsonStreamReader;
+import com.funzio.pure2D.utils.JsonTokenReader;
+import com.funzio.pure2D.utils.binary.BinaryJsonReader;
 
 /**
  * @author long
@@ -60,6 +60,16 @@ public class JsonAtlas extends Atlas {
 
     public float mScale;        // scale from meta-object in json
 
+    // parsing stats
+    protected float mParseTime = 0;
+    protected long mParseBytes = 0;
+
+    // reused while parsing the frames: x, y, w, h
+    private final float[] mFrameValues = new float[4];
+    private final float[] mSourceSizeValues = new float[4];
+    private final float[] mSpriteSourceValues = new float[4];
+    private final float[] mOffsetValues = new float[4];
+
     public JsonAtlas() {
         super();
     }
@@ -73,33 +83,33 @@ public class JsonAtlas extends Atlas {
     protected void load(final InputStream stream, final float scale) throws IOException, JSONException {
         Log.v(TAG, "load()");
 
-        final StringBuilder sb = new StringBuilder();
-        while (stream.available() > 0) {
-            final byte[] bytes = new byte[stream.available()];
-            stream.read(bytes);
-            sb.append(new String(bytes));
+        // stream the tokens, no need to read the whole file first
+        final JsonTokenReader reader = new JsonStreamReader(stream);
+        try {
+            parse(reader, scale);
+        } finally {
+            reader.close();
         }
-        stream.close();
-
-        parse(sb.toString(), scale);
     }
 
     /**
-     * Load from assets
+     * Load from assets. The precompiled binary version is used if there is one next to the file.
      * 
      * @param assets
      * @param filePath
      * @param scale
      * @throws IOException
      * @throws JSONException
+     * @see BinaryJsonReader#open(AssetManager, String)
      */
     public void load(final AssetManager assets, final String filePath, final float scale) throws IOException, JSONException {
         Log.v(TAG, "load(): " + filePath);
 
-        if (assets == null) {
-            load(new FileInputStream(new File(filePath)), scale);
-        } else {
-            load(assets.open(filePath), scale);
+        final JsonTokenReader reader = BinaryJsonReader.open(assets, filePath);
+        try {
+            parse(reader, scale);
+        } finally {
+            reader.close();
         }
 
         // listener
@@ -109,7 +119,7 @@ public class JsonAtlas extends Atlas {
     }
 
     /**
-     * Load from file system
+     * Load from file system. The precompiled binary version is used if there is one next to the file.
      * 
      * @param filePath
      * @param scale
@@ -117,14 +127,7 @@ public class JsonAtlas extends Atlas {
      * @throws JSONException
      */
     public void load(final String filePath, final float scale) throws IOException, JSONException {
-        Log.v(TAG, "load(): " + filePath);
-
-        load(new FileInputStream(new File(filePath)), scale);
-
-        // listener
-        if (mListener != null) {
-            mListener.onAtlasLoad(JsonAtlas.this);
-        }
+        load(null, filePath, scale);
     }
 
     public void loadAsync(final AssetManager assets, final String filePath, final float scale) {
@@ -217,134 +220,238 @@ public class JsonAtlas extends Atlas {
     }
 
     protected void parse(final String json, final float scale) throws JSONException {
+        try {
+            parse(new JsonStreamReader(new StringReader(json)), scale);
+        } catch (IOException e) {
+            // not likely to happen with a string
+            throw new JSONException(e.getMessage());
+        }
+
+        mParseBytes = json.length();
+    }
+
+    protected void parse(final JsonTokenReader reader, final float scale) throws IOException, JSONException {
+        final long startTime = System.nanoTime();
 
         synchronized (mMasterFrameSet) {
             removeAllFrames();
 
-            final JSONObject jsonObject = new JSONObject(json);
-            final JSONObject meta = jsonObject.getJSONObject("meta");
-            mScale = (float) meta.getDouble("scale");
-            final JSONObject size = meta.getJSONObject("size");
-            mWidth = size.getInt("w") * scale;
-            mHeight = size.getInt("h") * scale;
-            mImage = meta.getString("image");
-
-            // Long Ngo added: framerate
-            getMasterFrameSet().setFps(meta.optInt("fps"));
-            String loopMode = meta.optString("loop_mode", null);
-            if (loopMode != null) {
-                getMasterFrameSet().setLoopMode(NovaConfig.getLoopMode(loopMode));
-            }
-
-            // create the master frame set
-            final JSONArray frames = jsonObject.optJSONArray("frames");
+            // frame sets can come before the frames, resolve them at the end
+            final ArrayList<String> setNames = new ArrayList<String>();
+            final ArrayList<int[]> setFrames = new ArrayList<int[]>();
+            final ArrayList<String> setLoopModes = new ArrayList<String>();
+            boolean hasMeta = false;
             int totalFrames = 0;
-            if (frames != null) {
-                totalFrames = frames.length();
-                for (int i = 0; i < totalFrames; i++) {
-                    JSONObject frameJson = frames.getJSONObject(i);
-                    addFrame(parseFrame(i, frameJson, scale, frameJson.getString("filename")));
-                }
-            }
-            // create the master frame set again, TexturePacker (unity JSON mode) outputs an object for "frames"
-            final JSONObject framesObj = jsonObject.optJSONObject("frames");
-            if (framesObj != null) {
-                Iterator<String> names = framesObj.keys();
-                int i = 0;
-                while (names.hasNext()) {
-                    String name = names.next();
-                    Object frameJsonObj = framesObj.get(name);
-                    if (frameJsonObj instanceof JSONObject) {
-                        JSONObject frameJson = (JSONObject)frameJsonObj;
-                        addFrame(parseFrame(i++, frameJson, scale, name));
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if ("meta".equals(name)) {
+                    parseMeta(reader, scale);
+                    hasMeta = true;
+                } else if ("frames".equals(name)) {
+                    if (reader.peek() == JsonTokenReader.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            addFrame(parseFrame(reader, totalFrames++, scale, null));
+                        }
+                        reader.endArray();
                     } else {
-                        throw new JSONException("Frame not described by object");
+                        // TexturePacker (unity JSON mode) outputs an object for "frames"
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            final String filename = reader.nextName();
+                            if (reader.peek() != JsonTokenReader.BEGIN_OBJECT) {
+                                throw new JSONException("Frame not described by object");
+                            }
+                            addFrame(parseFrame(reader, totalFrames++, scale, filename));
+                        }
+                        reader.endObject();
                     }
+                } else if ("frame_sets".equals(name)) {
+                    // Long Ngo added: check for sub frame sets
+                    parseFrameSets(reader, setNames, setFrames, setLoopModes);
+                } else {
+                    reader.skipValue();
                 }
-                totalFrames = i;
             }
+            reader.endObject();
 
-            // Long Ngo added: check for sub frame sets
-            final JSONObject frameSets = jsonObject.optJSONObject("frame_sets");
-            if (frameSets != null) {
-                final JSONArray names = frameSets.names();
-                if (names != null) {
-                    final int numSets = names.length();
-                    for (int i = 0; i < numSets; i++) {
-                        final String setName = names.getString(i);
-                        final JSONObject set = frameSets.optJSONObject(setName);
-                        // Log.e(TAG, "New set: " + setName);
-                        if (set != null) {
-                            final JSONArray subFrames = set.optJSONArray("frames");
-                            if (subFrames != null) {
-                                // create new subset
-                                final AtlasFrameSet newSet = new AtlasFrameSet(setName);
-                                // add the frames
-                                final int numFrames = subFrames.length();
-                                for (int j = 0; j < numFrames; j++) {
-                                    final int frameIndex = subFrames.getInt(j);
-                                    if (frameIndex < totalFrames) {
-                                        // Log.e(TAG, j + ": " + getFrame(frameIndex));
-                                        newSet.addFrame(getFrame(frameIndex));
-                                    }
-                                }
-
-                                // check optional loop mode
-                                loopMode = set.optString("loop_mode", null);
-                                if (loopMode != null) {
-                                    newSet.setLoopMode(NovaConfig.getLoopMode(loopMode));
-                                }
-
-                                // add to the subsets
-                                addSubFrameSet(newSet);
-                            }
-                        }
+            if (!hasMeta) {
+                throw new JSONException("No value for meta");
+            }
+
+            // create the sub frame sets
+            final int numSets = setNames.size();
+            for (int i = 0; i < numSets; i++) {
+                final AtlasFrameSet newSet = new AtlasFrameSet(setNames.get(i));
+                // add the frames
+                final int[] subFrames = setFrames.get(i);
+                for (int j = 0; j < subFrames.length; j++) {
+                    if (subFrames[j] < totalFrames) {
+                        newSet.addFrame(getFrame(subFrames[j]));
                     }
                 }
+
+                // check optional loop mode
+                final String loopMode = setLoopModes.get(i);
+                if (loopMode != null) {
+                    newSet.setLoopMode(NovaConfig.getLoopMode(loopMode));
+                }
+
+                // add to the subsets
+                addSubFrameSet(newSet);
             }
 
-            Log.v(TAG, "parse(): frames: " + totalFrames + ", subsets: " + getNumSubFrameSets());
+            mParseTime = (System.nanoTime() - startTime) / 1000000f;
+            mParseBytes = reader.getBytesRead();
+
+            Log.v(TAG, "parse(): frames: " + totalFrames + ", subsets: " + getNumSubFrameSets() + ", bytes: " + mParseBytes + ", time: " + mParseTime + "ms");
         }
     }
 
-    protected AtlasFrame parseFrame(final int index, final JSONObject frameJson, final float scale, final String filename) throws JSONException {
-        final JSONObject frame = frameJson.getJSONObject("frame");
-        final boolean trimmed = frameJson.getBoolean("trimmed");
-        final boolean rotated = frameJson.getBoolean("rotated");
+    protected void parseMeta(final JsonTokenReader reader, final float scale) throws IOException, JSONException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("scale".equals(name)) {
+                mScale = reader.nextFloat();
+            } else if ("size".equals(name)) {
+                readValues(reader, mFrameValues);
+                mWidth = (int) mFrameValues[2] * scale;
+                mHeight = (int) mFrameValues[3] * scale;
+            } else if ("image".equals(name)) {
+                mImage = reader.nextString();
+            } else if ("fps".equals(name)) {
+                // Long Ngo added: framerate
+                getMasterFrameSet().setFps(reader.nextInt());
+            } else if ("loop_mode".equals(name) && reader.peek() != JsonTokenReader.NULL) {
+                getMasterFrameSet().setLoopMode(NovaConfig.getLoopMode(reader.nextString()));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
 
-        final int left = frame.getInt("x");
-        final int top = frame.getInt("y");
-        final int w = frame.getInt("w");
-        final int h = frame.getInt("h");
+    protected void parseFrameSets(final JsonTokenReader reader, final ArrayList<String> setNames, final ArrayList<int[]> setFrames, final ArrayList<String> setLoopModes)
+            throws IOException, JSONException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String setName = reader.nextName();
+            if (reader.peek() != JsonTokenReader.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            int[] frames = null;
+            String loopMode = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if ("frames".equals(name) && reader.peek() == JsonTokenReader.BEGIN_ARRAY) {
+                    frames = readInts(reader);
+                } else if ("loop_mode".equals(name) && reader.peek() != JsonTokenReader.NULL) {
+                    loopMode = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (frames != null) {
+                setNames.add(setName);
+                setFrames.add(frames);
+                setLoopModes.add(loopMode);
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Parse a frame object from TexturePacker
+     * 
+     * @param reader
+     * @param index
+     * @param scale
+     * @param filename the name of the frame, or null to use the "filename" field
+     * @return
+     * @throws IOException
+     * @throws JSONException
+     */
+    protected AtlasFrame parseFrame(final JsonTokenReader reader, final int index, final float scale, final String filename) throws IOException, JSONException {
+        String frameName = filename;
+        boolean trimmed = false;
+        boolean rotated = false;
+        // the values are reused, so keep track of what this frame has
+        boolean hasFrame = false, hasSourceSize = false, hasSpriteSource = false;
+        mOffsetValues[0] = mOffsetValues[1] = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("filename".equals(name) && filename == null) {
+                frameName = reader.nextString();
+            } else if ("frame".equals(name)) {
+                readValues(reader, mFrameValues);
+                hasFrame = true;
+            } else if ("trimmed".equals(name)) {
+                trimmed = reader.nextBoolean();
+            } else if ("rotated".equals(name)) {
+                rotated = reader.nextBoolean();
+            } else if ("sourceSize".equals(name)) {
+                readValues(reader, mSourceSizeValues);
+                hasSourceSize = true;
+            } else if ("spriteSourceSize".equals(name)) {
+                readValues(reader, mSpriteSourceValues);
+                hasSpriteSource = true;
+            } else if ("offset".equals(name)) {
+                readValues(reader, mOffsetValues);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!hasFrame) {
+            throw new JSONException("No value for frame");
+        } else if (trimmed && !hasSourceSize) {
+            throw new JSONException("No value for sourceSize");
+        } else if (trimmed && !hasSpriteSource) {
+            throw new JSONException("No value for spriteSourceSize");
+        }
+
+        final int left = (int) mFrameValues[0];
+        final int top = (int) mFrameValues[1];
+        final int w = (int) mFrameValues[2];
+        final int h = (int) mFrameValues[3];
         final int right = left + (rotated ? h : w);
         final int bottom = top + (rotated ? w : h);
 
-        final AtlasFrame atlasFrame = new AtlasFrame(this, index, filename, new RectF(left * scale, top * scale, right * scale, bottom * scale));
+        final AtlasFrame atlasFrame = new AtlasFrame(this, index, frameName, new RectF(left * scale, top * scale, right * scale, bottom * scale));
         if (trimmed) {
-            final JSONObject sourceSize = frameJson.getJSONObject("sourceSize");
-            atlasFrame.mOriginalSize.x = sourceSize.getInt("w");
-            atlasFrame.mOriginalSize.y = sourceSize.getInt("h");
+            final int sourceH = (int) mSourceSizeValues[3];
+            atlasFrame.mOriginalSize.x = (int) mSourceSizeValues[2];
+            atlasFrame.mOriginalSize.y = sourceH;
 
-            final JSONObject spriteSourceSize = frameJson.getJSONObject("spriteSourceSize");
-            final int offsetX = spriteSourceSize.getInt("x");
-            int offsetY = spriteSourceSize.getInt("y");
+            final int offsetX = (int) mSpriteSourceValues[0];
+            int offsetY = (int) mSpriteSourceValues[1];
             // check axis
             if (mAxisSystem == Scene.AXIS_BOTTOM_LEFT) {
                 // flip for axis
-                offsetY = sourceSize.getInt("h") - (spriteSourceSize.getInt("y") + spriteSourceSize.getInt("h"));
+                offsetY = sourceH - (offsetY + (int) mSpriteSourceValues[3]);
             }
 
             if (offsetX != 0 || offsetY != 0) {
                 atlasFrame.mOffset = new PointF(offsetX * scale, offsetY * scale);
             }
 
-            final JSONObject offsetJson = frameJson.getJSONObject("offset");
-            float offsetRX = (float)offsetJson.getDouble("x");
-            float offsetRY = (float)offsetJson.getDouble("y");
+            final float offsetRX = mOffsetValues[0];
+            float offsetRY = mOffsetValues[1];
 
             if (mAxisSystem == Scene.AXIS_BOTTOM_LEFT) {
                 // flip for axis
-                offsetRY = sourceSize.getInt("h") - (offsetRY + spriteSourceSize.getInt("h"));
+                offsetRY = sourceH - (offsetRY + (int) mSpriteSourceValues[3]);
             }
 
             if (offsetRX != 0 || offsetRY != 0) {
@@ -358,4 +465,62 @@ public class JsonAtlas extends Atlas {
         return atlasFrame;
     }
 
+    /**
+     * @return the time of the last parse, in ms
+     */
+    public float getParseTime() {
+        return mParseTime;
+    }
+
+    /**
+     * @return the number of bytes of the last parse
+     */
+    public long getParseBytes() {
+        return mParseBytes;
+    }
+
+    /**
+     * Read an object of x, y, w, h into the given values
+     */
+    private static void readValues(final JsonTokenReader reader, final float[] values) throws IOException, JSONException {
+        values[0] = values[1] = values[2] = values[3] = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("x".equals(name)) {
+                values[0] = reader.nextFloat();
+            } else if ("y".equals(name)) {
+                values[1] = reader.nextFloat();
+            } else if ("w".equals(name)) {
+                values[2] = reader.nextFloat();
+            } else if ("h".equals(name)) {
+                values[3] = reader.nextFloat();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static int[] readInts(final JsonTokenReader reader) throws IOException, JSONException {
+        int[] values = new int[16];
+        int size = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == values.length) {
+                final int[] newValues = new int[size * 2];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = reader.nextInt();
+        }
+        reader.endArray();
+
+        final int[] result = new int[size];
+        System.arraycopy(values, 0, result, 0, size);
+        return result;
+    }
+
 }
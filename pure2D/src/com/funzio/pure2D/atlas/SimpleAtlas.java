@@ -37,6 +37,7 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParser;
 
 /**
  * @author long
@@ -54,6 +55,13 @@ public class SimpleAtlas extends XMLAtlas {
         super(parser);
     }
 
+    /**
+     * @param parser such as a BinaryXmlParser for precompiled files
+     */
+    public SimpleAtlas(final XmlPullParser parser) {
+        super(parser);
+    }
+
     @Override
     protected void parseXML(final String xml) {
         try {
@@ -70,11 +78,11 @@ public class SimpleAtlas extends XMLAtlas {
     }
 
     @Override
-    protected void parseXML(final XmlResourceParser parser) {
+    protected void parseXML(final XmlPullParser parser) {
         int eventType = -1;
         int index = 0;
-        while (eventType != XmlResourceParser.END_DOCUMENT) {
-            if (eventType == XmlResourceParser.START_TAG) {
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
                 String strNode = parser.getName();
                 if (strNode.equals(NODE_TEXTURE_ATLAS)) {
                     mWidth = Integer.parseInt(parser.getAttributeValue(null, "width"));
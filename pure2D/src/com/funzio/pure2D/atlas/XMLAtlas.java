@@ -26,6 +26,8 @@ package com.funzio.pure2D.atlas;
 
 import android.content.res.XmlResourceParser;
 
+import org.xmlpull.v1.XmlPullParser;
+
 /**
  * @author long
  */
@@ -33,13 +35,28 @@ public abstract class XMLAtlas extends Atlas {
 
     abstract protected void parseXML(String xml);
 
-    abstract protected void parseXML(XmlResourceParser parser);
+    abstract protected void parseXML(XmlPullParser parser);
+
+    /**
+     * @deprecated override {@link #parseXML(XmlPullParser)} instead, this one just delegates to it
+     */
+    @Deprecated
+    protected void parseXML(final XmlResourceParser parser) {
+        parseXML((XmlPullParser) parser);
+    }
 
     public XMLAtlas(final String xml) {
         parseXML(xml);
     }
 
     public XMLAtlas(final XmlResourceParser parser) {
+        parseXML((XmlPullParser) parser);
+    }
+
+    /**
+     * @param parser an XmlResourceParser, or a BinaryXmlParser for precompiled files
+     */
+    public XMLAtlas(final XmlPullParser parser) {
         parseXML(parser);
     }
 }
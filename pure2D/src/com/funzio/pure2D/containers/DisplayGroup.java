@@ -35,6 +35,7 @@ import android.view.MotionEvent;
 import org.xmlpull.v1.XmlPullParser;
 
 import com.funzio.pure2D.BaseDisplayObject;
+import com.funzio.pure2D.BaseScene;
 import com.funzio.pure2D.Cacheable;
 import com.funzio.pure2D.DisplayObject;
 import com.funzio.pure2D.Parentable;
@@ -84,6 +85,10 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
     protected boolean mWrapContentWidth = false;
     protected boolean mWrapContentHeight = false;
 
+    // spatial index for camera culling
+    protected SpatialGrid mSpatialIndex;
+    protected ArrayList<DisplayObject> mCullCandidates;
+
     public DisplayGroup() {
         super();
 
@@ -100,6 +105,8 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
 
         final boolean forceChildrenConstraints = ((mInvalidateFlags & (SIZE | PARENT | PARENT_BOUNDS)) != 0);
 
+        final boolean skipping = Pure2D.AUTO_SKIP_UPDATE;
+        int numUpdated = 0, numSkipped = 0;
         DisplayObject child;
         float temp, sx = mSize.x, sy = mSize.y;
         for (int i = 0; i < mNumChildren; i++) {
@@ -115,8 +122,23 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
                     child.invalidate(PARENT_BOUNDS);
                 }
 
-                // update child
-                child.update(deltaTime);
+                // update child, unless the whole branch is idle
+                if (!skipping || child.isUpdateNeeded()) {
+                    child.update(deltaTime);
+                    numUpdated++;
+
+                    // bounds might have changed
+                    if (mSpatialIndex != null) {
+                        mSpatialIndex.update(child);
+                    }
+
+                    // child still has work (playing clip, manipulators...), keep this branch awake for the next frame
+                    if (skipping && child.isUpdateNeeded()) {
+                        invalidateUpdate();
+                    }
+                } else {
+                    numSkipped++;
+                }
             }
 
             // match content size
@@ -134,6 +156,11 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             }
         }
 
+        // stats
+        if (skipping && mScene instanceof BaseScene) {
+            ((BaseScene) mScene).countUpdates(numUpdated, numSkipped);
+        }
+
         // diff check
         if (sx != mSize.x || sy != mSize.y) {
             // apply
@@ -281,15 +308,25 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             }
         }
 
+        // only the children around the camera when indexed
+        final RectF cameraRect = mScene != null ? mScene.getCameraRect() : null;
+        final ArrayList<DisplayObject> children;
+        if (mSpatialIndex != null && cameraRect != null) {
+            mSpatialIndex.query(cameraRect, mChildrenDisplayOrder, mCullCandidates);
+            children = mCullCandidates;
+        } else {
+            children = mChildrenDisplayOrder;
+        }
+
         // draw the children
         int numVisibles = 0;
         final boolean uiEnabled = mTouchable && mScene != null && mScene.isUIEnabled();
         DisplayObject child;
-        final int numChildren = mChildrenDisplayOrder.size();
+        final int numChildren = children.size();
         for (int i = 0; i < numChildren; i++) {
-            child = mChildrenDisplayOrder.get(i);
+            child = children.get(i);
 
-            if (child.shouldDraw(mScene != null ? mScene.getCameraRect() : null)) {
+            if (child.shouldDraw(cameraRect)) {
                 // draw frame, check alpha for optimization
                 child.draw(glState);
 
@@ -391,6 +428,11 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             child.onAdded(this);
             invalidate(CHILDREN);
 
+            // index
+            if (mSpatialIndex != null) {
+                mSpatialIndex.add(child);
+            }
+
             // internal callback
             onAddedChild(child);
             return true;
@@ -418,6 +460,11 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             child.onAdded(this);
             invalidate(CHILDREN);
 
+            // index
+            if (mSpatialIndex != null) {
+                mSpatialIndex.add(child);
+            }
+
             onAddedChild(child);
             return true;
         }
@@ -438,6 +485,11 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             child.onRemoved();
             invalidate(CHILDREN);
 
+            // index
+            if (mSpatialIndex != null) {
+                mSpatialIndex.remove(child);
+            }
+
             onRemovedChild(child);
             return true;
         }
@@ -460,6 +512,11 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             child.onRemoved();
             invalidate(CHILDREN);
 
+            // index
+            if (mSpatialIndex != null) {
+                mSpatialIndex.remove(child);
+            }
+
             onRemovedChild(child);
             return true;
         }
@@ -487,6 +544,11 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
         mChildren.clear();
         mNumChildren = 0;
         invalidate(CHILDREN);
+
+        // index
+        if (mSpatialIndex != null) {
+            mSpatialIndex.clear();
+        }
     }
 
     public DisplayObject getChildAt(final int index) {
@@ -539,7 +601,7 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
 
         mChildren.set(index1, child2);
         mChildren.set(index2, child1);
-        invalidate(CHILDREN);
+        invalidateChildrenOrder();
 
         return true;
     }
@@ -565,7 +627,7 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
 
         mChildren.set(index1, child2);
         mChildren.set(index2, child1);
-        invalidate(CHILDREN);
+        invalidateChildrenOrder();
 
         return true;
     }
@@ -585,7 +647,7 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             mChildren.set(i, mChildren.get(i + 1));
         }
         mChildren.set(mNumChildren - 1, child);
-        invalidate(CHILDREN);
+        invalidateChildrenOrder();
 
         return true;
     }
@@ -605,7 +667,7 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
             mChildren.set(i, mChildren.get(i - 1));
         }
         mChildren.set(0, child);
-        invalidate(CHILDREN);
+        invalidateChildrenOrder();
 
         return true;
     }
@@ -776,9 +838,58 @@ public class DisplayGroup extends BaseDisplayObject implements Container, Cachea
 
         mChildrenDisplayOrder = childrenDisplayOrder;
 
+        invalidateChildrenOrder();
+    }
+
+    /**
+     * Call this after the display order changed by other means such as sorting the array passed to {@link #setChildrenDisplayOrder(ArrayList)}.
+     */
+    public void invalidateChildrenOrder() {
+        if (mSpatialIndex != null) {
+            mSpatialIndex.invalidateOrder();
+        }
+
+        invalidate(CHILDREN);
+    }
+
+    public boolean isSpatialIndexEnabled() {
+        return mSpatialIndex != null;
+    }
+
+    /**
+     * Index the children by their global bounds so that only the ones around the camera are visited in drawChildren(). This pays off for large scrolling worlds with thousands
+     * of children, such as tile maps and particle layers. The children need their bounds updated, see {@link #setAutoUpdateBounds(boolean)}.
+     * 
+     * @param enabled
+     * @param cellSize the grid cell size, about the size of the camera works well
+     * @see SpatialGrid
+     */
+    public void setSpatialIndexEnabled(final boolean enabled, final float cellSize) {
+        if (enabled) {
+            if (mSpatialIndex != null && mSpatialIndex.getCellSize() == cellSize) {
+                return;
+            }
+
+            mSpatialIndex = new SpatialGrid(cellSize);
+            mCullCandidates = new ArrayList<DisplayObject>();
+            for (int i = 0; i < mNumChildren; i++) {
+                mSpatialIndex.add(mChildren.get(i));
+            }
+        } else {
+            mSpatialIndex = null;
+            mCullCandidates = null;
+        }
+
         invalidate(CHILDREN);
     }
 
+    /**
+     * @return the number of children visited by the last drawChildren() when the spatial index is enabled
+     */
+    public int getNumCullCandidates() {
+        return mSpatialIndex != null ? mSpatialIndex.getNumCandidates() : mNumChildren;
+    }
+
     public boolean isWrapContentWidth() {
         return mWrapContentWidth;
     }
@@ -77,6 +77,8 @@ public abstract class LinearGroup extends DisplayGroup {
     protected void invalidateChildrenPosition() {
         mChildrenPositionInvalidated = true;
         invalidate(InvalidateFlags.CHILDREN);
+        // positionChildren() happens in update
+        invalidateUpdate();
     }
 
     /**
@@ -46,8 +46,10 @@ public class MaskGroup extends DisplayGroup implements Maskable {
     public boolean draw(final GLState glState) {
         mStencilBuffer.setGLState(glState);
 
+        glState.flushBatch(GLState.FLUSH_MASK);
         mStencilBuffer.startMask();
         final boolean success = super.draw(glState);
+        glState.flushBatch(GLState.FLUSH_MASK);
         mStencilBuffer.endMask();
 
         // if show children
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.containers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import android.graphics.RectF;
+import android.util.SparseArray;
+
+import com.funzio.pure2D.DisplayObject;
+
+/**
+ * A uniform grid that indexes display objects by their global bounds, used by {@link DisplayGroup} to only visit the children that intersect the camera.
+ * 
+ * @author long
+ * @see DisplayGroup#setSpatialIndexEnabled(boolean, float)
+ */
+public class SpatialGrid {
+    // objects spanning more cells than this stay in a separate list and always get visited
+    public static final int MAX_CELLS_PER_OBJECT = 64;
+    // cell coordinates are packed into 16 bits each
+    private static final int MAX_CELL = Short.MAX_VALUE;
+    private static final int MIN_CELL = Short.MIN_VALUE;
+
+    private final float mCellSize;
+    private final SparseArray<ArrayList<Entry>> mCells = new SparseArray<ArrayList<Entry>>();
+    private final HashMap<DisplayObject, Entry> mEntries = new HashMap<DisplayObject, Entry>();
+    private final ArrayList<Entry> mLargeEntries = new ArrayList<Entry>();
+
+    private boolean mOrderInvalidated = true;
+    private int mStamp = 0;
+    private int[] mCandidates = new int[64];
+    private int mNumCandidates = 0;
+
+    public SpatialGrid(final float cellSize) {
+        mCellSize = cellSize;
+    }
+
+    public float getCellSize() {
+        return mCellSize;
+    }
+
+    public void add(final DisplayObject object) {
+        if (mEntries.containsKey(object)) {
+            return;
+        }
+
+        final Entry entry = new Entry();
+        mEntries.put(object, entry);
+        insert(entry, object.getBounds());
+        mOrderInvalidated = true;
+    }
+
+    public void remove(final DisplayObject object) {
+        final Entry entry = mEntries.remove(object);
+        if (entry != null) {
+            extract(entry);
+            mOrderInvalidated = true;
+        }
+    }
+
+    public void clear() {
+        mCells.clear();
+        mEntries.clear();
+        mLargeEntries.clear();
+        mNumCandidates = 0;
+        mOrderInvalidated = true;
+    }
+
+    /**
+     * Re-index an object after its bounds changed. This is cheap when it is still in the same cells.
+     * 
+     * @param object
+     */
+    public void update(final DisplayObject object) {
+        final Entry entry = mEntries.get(object);
+        if (entry == null) {
+            return;
+        }
+
+        final RectF bounds = object.getBounds();
+        final int left = toCell(bounds.left);
+        final int top = toCell(bounds.top);
+        final int right = toCell(bounds.right);
+        final int bottom = toCell(bounds.bottom);
+        if (left == entry.mLeft && top == entry.mTop && right == entry.mRight && bottom == entry.mBottom) {
+            // same cells
+            return;
+        }
+
+        extract(entry);
+        insert(entry, bounds);
+    }
+
+    /**
+     * Flag that the display order has changed. The indices get rebuilt on the next query.
+     */
+    public void invalidateOrder() {
+        mOrderInvalidated = true;
+    }
+
+    /**
+     * Find the objects that might intersect the specified rect, in the same order as the given display order.
+     * 
+     * @param rect the global rect, usually the camera rect
+     * @param displayOrder the children in display order
+     * @param result the candidates
+     * @return the number of candidates
+     */
+    public int query(final RectF rect, final ArrayList<DisplayObject> displayOrder, final ArrayList<DisplayObject> result) {
+        result.clear();
+        mNumCandidates = 0;
+
+        // refresh the display indices
+        final int numObjects = displayOrder.size();
+        if (mOrderInvalidated) {
+            for (int i = 0; i < numObjects; i++) {
+                final Entry entry = mEntries.get(displayOrder.get(i));
+                if (entry != null) {
+                    entry.mDisplayIndex = i;
+                }
+            }
+            mOrderInvalidated = false;
+        }
+
+        // new query
+        mStamp++;
+
+        // the big ones
+        final int numLarge = mLargeEntries.size();
+        for (int i = 0; i < numLarge; i++) {
+            collect(mLargeEntries.get(i));
+        }
+
+        // the cells in range
+        final int left = toCell(rect.left);
+        final int top = toCell(rect.top);
+        final int right = toCell(rect.right);
+        final int bottom = toCell(rect.bottom);
+        final int numCells = mCells.size();
+        if ((long) (right - left + 1) * (bottom - top + 1) > numCells) {
+            // zoomed out, cheaper to go through the used cells
+            int key, x, y;
+            for (int c = 0; c < numCells; c++) {
+                key = mCells.keyAt(c);
+                x = key >> 16;
+                y = (short) key;
+                if (x >= left && x <= right && y >= top && y <= bottom) {
+                    collect(mCells.valueAt(c));
+                }
+            }
+        } else {
+            for (int y = top; y <= bottom; y++) {
+                for (int x = left; x <= right; x++) {
+                    final ArrayList<Entry> cell = mCells.get(getKey(x, y));
+                    if (cell != null) {
+                        collect(cell);
+                    }
+                }
+            }
+        }
+
+        // back to display order
+        Arrays.sort(mCandidates, 0, mNumCandidates);
+        int index;
+        for (int i = 0; i < mNumCandidates; i++) {
+            index = mCandidates[i];
+            if (index < numObjects) {
+                result.add(displayOrder.get(index));
+            }
+        }
+
+        return mNumCandidates;
+    }
+
+    /**
+     * @return the number of candidates found by the last query
+     */
+    public int getNumCandidates() {
+        return mNumCandidates;
+    }
+
+    public int getNumObjects() {
+        return mEntries.size();
+    }
+
+    private void collect(final ArrayList<Entry> cell) {
+        final int size = cell.size();
+        for (int i = 0; i < size; i++) {
+            collect(cell.get(i));
+        }
+    }
+
+    private void collect(final Entry entry) {
+        // an object can be in multiple cells
+        if (entry.mStamp == mStamp) {
+            return;
+        }
+        entry.mStamp = mStamp;
+
+        // grow
+        if (mNumCandidates == mCandidates.length) {
+            final int[] candidates = new int[mNumCandidates * 2];
+            System.arraycopy(mCandidates, 0, candidates, 0, mNumCandidates);
+            mCandidates = candidates;
+        }
+        mCandidates[mNumCandidates++] = entry.mDisplayIndex;
+    }
+
+    private void insert(final Entry entry, final RectF bounds) {
+        entry.mLeft = toCell(bounds.left);
+        entry.mTop = toCell(bounds.top);
+        entry.mRight = toCell(bounds.right);
+        entry.mBottom = toCell(bounds.bottom);
+
+        if ((long) (entry.mRight - entry.mLeft + 1) * (entry.mBottom - entry.mTop + 1) > MAX_CELLS_PER_OBJECT) {
+            entry.mLarge = true;
+            mLargeEntries.add(entry);
+            return;
+        }
+
+        entry.mLarge = false;
+        ArrayList<Entry> cell;
+        for (int y = entry.mTop; y <= entry.mBottom; y++) {
+            for (int x = entry.mLeft; x <= entry.mRight; x++) {
+                final int key = getKey(x, y);
+                cell = mCells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<Entry>();
+                    mCells.put(key, cell);
+                }
+                cell.add(entry);
+            }
+        }
+    }
+
+    private void extract(final Entry entry) {
+        if (entry.mLarge) {
+            mLargeEntries.remove(entry);
+            return;
+        }
+
+        ArrayList<Entry> cell;
+        for (int y = entry.mTop; y <= entry.mBottom; y++) {
+            for (int x = entry.mLeft; x <= entry.mRight; x++) {
+                cell = mCells.get(getKey(x, y));
+                if (cell != null) {
+                    // swap remove, order within a cell does not matter
+                    final int index = cell.indexOf(entry);
+                    if (index >= 0) {
+                        final int last = cell.size() - 1;
+                        cell.set(index, cell.get(last));
+                        cell.remove(last);
+                    }
+                }
+            }
+        }
+    }
+
+    private int toCell(final float value) {
+        final int cell = (int) Math.floor(value / mCellSize);
+        return cell < MIN_CELL ? MIN_CELL : cell > MAX_CELL ? MAX_CELL : cell;
+    }
+
+    private static int getKey(final int x, final int y) {
+        return (x << 16) | (y & 0xFFFF);
+    }
+
+    private static class Entry {
+        private int mDisplayIndex;
+        private int mLeft, mTop, mRight, mBottom;
+        private boolean mLarge;
+        private int mStamp;
+    }
+}
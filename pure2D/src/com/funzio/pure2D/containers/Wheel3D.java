@@ -121,6 +121,8 @@ public class Wheel3D extends DisplayGroup implements Animator.AnimatorListener,
     protected void invalidateChildrenPosition() {
         mChildrenPositionInvalidated = true;
         invalidate(InvalidateFlags.CHILDREN);
+        // positionChildren() happens in update
+        invalidateUpdate();
     }
 
     public float getRadius() {
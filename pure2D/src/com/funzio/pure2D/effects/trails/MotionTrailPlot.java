@@ -277,6 +277,12 @@ public class MotionTrailPlot extends BaseDisplayObject implements MotionTrail, S
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // following the target on every frame
+        return mNumPoints > 0 || super.isUpdateNeeded();
+    }
+
     @Override
     public boolean draw(final GLState glState) {
         super.draw(glState);
@@ -151,6 +151,12 @@ public class MotionTrailShape extends Polyline implements MotionTrail {
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // following the target on every frame
+        return mNumPoints > 0 || super.isUpdateNeeded();
+    }
+
     @Override
     protected void validateVertices() {
         super.validateVertices();
@@ -151,6 +151,12 @@ public class MotionTrailShape3D extends Polyline3D implements MotionTrail {
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // following the target on every frame
+        return mNumPoints > 0 || super.isUpdateNeeded();
+    }
+
     public int getNumPoints() {
         return mNumPoints;
     }
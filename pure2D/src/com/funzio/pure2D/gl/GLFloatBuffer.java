@@ -67,6 +67,54 @@ public class GLFloatBuffer {
         }
     }
 
+    /**
+     * Apply only the first part of the values. The native buffer is recycled as long as it is big enough, for perf.
+     *
+     * @param values
+     * @param length number of values to apply
+     */
+    public void setValues(final float[] values, final int length) {
+        if (mBuffer == null || mBuffer.capacity() < length) {
+            // a float is 4 bytes, therefore we multiply the number if vertices with 4.
+            ByteBuffer bb = ByteBuffer.allocateDirect(values.length * 4);
+            bb.order(ByteOrder.nativeOrder());
+            mBuffer = bb.asFloatBuffer();
+            mCapacity = values.length;
+        } else {
+            // recycle for perf
+            mBuffer.clear();
+        }
+
+        mBuffer.put(values, 0, length);
+        mBuffer.flip();
+    }
+
+    /**
+     * Apply only a range of the values, the rest of the native buffer is kept as-is. The native buffer must be big enough, such as after {@link #setValues(float[], int)}.
+     *
+     * @param values
+     * @param start the first value to apply
+     * @param end the value after the last one to apply
+     * @param length the total number of values in use
+     */
+    public void setValuesRange(final float[] values, final int start, final int end, final int length) {
+        mBuffer.limit(mBuffer.capacity());
+        mBuffer.position(start);
+        mBuffer.put(values, start, end - start);
+        mBuffer.position(0);
+        mBuffer.limit(length);
+    }
+
+    /**
+     * Use an existing native buffer as-is, such as a slice of a bigger buffer. Nothing is copied, so the values should not be changed afterwards.
+     *
+     * @param buffer
+     */
+    public void setBuffer(final FloatBuffer buffer) {
+        mBuffer = buffer;
+        mCapacity = buffer != null ? buffer.capacity() : 0;
+    }
+
     public void dispose() {
         // texture coordinates buffer
         if (mBuffer != null) {
@@ -59,6 +59,19 @@ import javax.microedition.khronos.opengles.GL10;
 public class GLState {
     private static final String TAG = GLState.class.getSimpleName();
 
+    // batch flush reasons
+    public static final int FLUSH_TEXTURE = 0;
+    public static final int FLUSH_BLEND = 1;
+    public static final int FLUSH_SHADER = 2;
+    public static final int FLUSH_SCISSOR = 3;
+    public static final int FLUSH_MASK = 4;
+    public static final int FLUSH_PROJECTION = 5;
+    public static final int FLUSH_FRAME_BUFFER = 6;
+    public static final int FLUSH_CAPACITY = 7;
+    public static final int FLUSH_DRAW = 8; // a non-batched object is drawn
+    public static final int FLUSH_END = 9; // end of frame
+    public static final int NUM_FLUSH_REASONS = 10;
+
     public GL10 mGL;
     private Stage mStage;
 
@@ -102,6 +115,16 @@ public class GLState {
     private TextureManager mTextureManager;
     private int mAxisSystem = Scene.AXIS_BOTTOM_LEFT;
 
+    // batching
+    private boolean mBatchingEnabled = false;
+    private QuadBatch mQuadBatch;
+    private boolean mBatchFlushing = false;
+    private final BlendFunc mBatchBlendFuncBackup = new BlendFunc();
+    private final GLColor mBatchColorBackup = new GLColor(1f, 1f, 1f, 1f);
+    private int mNumBatches = 0;
+    private int mNumBatchedQuads = 0;
+    private final int[] mBatchFlushCounts = new int[NUM_FLUSH_REASONS];
+
     public GLState(final GL10 gl) {
         reset(gl);
     }
@@ -142,6 +165,12 @@ public class GLState {
         mViewMatrixStackPointer = 0;
         mProjectionMatrixStackPointer = 0;
 
+        // drop the pending quads of the old gl
+        if (mQuadBatch != null) {
+            mQuadBatch.clear();
+        }
+        mBatchFlushing = false;
+
         clearErrors();
     }
 
@@ -177,6 +206,10 @@ public class GLState {
     private final Matrix4 mWorkMatrix = new Matrix4();
 
     public void matrixProjectionMode(boolean isProjection) {
+        if (isProjection) {
+            // the pending quads use the current projection
+            flushBatch(FLUSH_PROJECTION);
+        }
         mIsProjection = isProjection;
     }
 
@@ -435,6 +468,7 @@ if (mViewMatrixStackPointer > 100) {
     }
 
     public void setViewport(final int x, final int y, final int width, final int height) {
+        flushBatch(FLUSH_PROJECTION);
         GLES20.glViewport(x, y, width, height);
         mViewport[0] = x;
         mViewport[1] = y;
@@ -472,6 +506,7 @@ if (mViewMatrixStackPointer > 100) {
         if (mFrameBuffer == frameBuffer) {
             return false;
         }
+        flushBatch(FLUSH_FRAME_BUFFER);
         mFrameBuffer = frameBuffer;
 
         // only works for GLES11
@@ -885,6 +920,7 @@ if (mViewMatrixStackPointer > 100) {
 //        if (mScissorTestEnabled == scissorEnabled) {
 //            return;
 //        }
+        flushBatch(FLUSH_SCISSOR);
 
         mScissorTestEnabled = scissorEnabled;
 
@@ -896,6 +932,7 @@ if (mViewMatrixStackPointer > 100) {
     }
 
     public void setScissor(final int x, final int y, final int width, final int height) {
+        flushBatch(FLUSH_SCISSOR);
         GLES20.glScissor(x, y, width, height);
         mScissor[0] = x;
         mScissor[1] = y;
@@ -970,6 +1007,9 @@ if (mViewMatrixStackPointer > 100) {
     }
 
     public void bindShaderProgram() {
+        // something else is about to be drawn, the pending quads go first
+        flushBatch(FLUSH_DRAW);
+
         // adjust for the actual program, based on texture, colors, etc
         int variant = mRequestedProgram.getVariantIdx(this);
 
@@ -1099,4 +1139,153 @@ if (mViewMatrixStackPointer > 100) {
         if (a_TexCoords >= 0) GLES20.glDisableVertexAttribArray(a_TexCoords);
         if (attribute >= 0) GLES20.glDisableVertexAttribArray(attribute);
     }
+
+    public boolean isBatchingEnabled() {
+        return mBatchingEnabled;
+    }
+
+    /**
+     * Enable/disable automatic batching. When enabled, plain quads such as Sprites and Clips are transformed on the CPU and merged into a shared stream, which only gets flushed when the
+     * Texture, BlendFunc, ShaderProgram, scissor, mask or projection changes.
+     *
+     * @param batchingEnabled
+     * @see #batchQuad(Texture, float[], float[])
+     * @see #getNumBatches()
+     */
+    public void setBatchingEnabled(final boolean batchingEnabled) {
+        // NOTE: the pending quads, if any, still get flushed at the end of the frame
+        mBatchingEnabled = batchingEnabled;
+    }
+
+    /**
+     * Add a quad to the batch, using the current model-view matrix, color, BlendFunc and ShaderProgram.
+     *
+     * @param texture can be null
+     * @param coords the texture coordinates, can be null
+     * @param vertices 4 vertices in triangle-strip order
+     * @return false if batching is disabled or the current matrix cannot be baked into the vertices, then the caller needs to draw on its own.
+     */
+    public boolean batchQuad(final Texture texture, final float[] coords, final float[] vertices) {
+        if (!mBatchingEnabled || mBatchFlushing || mIsProjection) {
+            return false;
+        }
+
+        // only 2D affine transformations can be baked into the vertices
+        final float[] m = mViewMatrix.values;
+        if (m[2] != 0 || m[3] != 0 || m[6] != 0 || m[7] != 0 || m[14] != 0 || m[15] != 1) {
+            return false;
+        }
+
+        if (mQuadBatch == null) {
+            mQuadBatch = new QuadBatch();
+        }
+
+        // states changed?
+        final int reason = mQuadBatch.getBreakReason(texture, mBlendFunc, mRequestedProgram);
+        if (reason >= 0) {
+            flushBatch(reason);
+        }
+
+        mQuadBatch.add(texture, mBlendFunc, mRequestedProgram, m, vertices, coords, mColor);
+        mNumBatchedQuads++;
+
+        return true;
+    }
+
+    /**
+     * Draw the pending quads, if there is any.
+     *
+     * @param reason can be FLUSH_TEXTURE, FLUSH_BLEND, FLUSH_SHADER...
+     * @return true if a draw call was issued
+     */
+    public boolean flushBatch(final int reason) {
+        if (mQuadBatch == null || mBatchFlushing || mQuadBatch.isEmpty()) {
+            return false;
+        }
+        mBatchFlushing = true;
+
+        // keep the current states, the caller might be in the middle of setting them up
+        final ShaderProgram program = mRequestedProgram;
+        final Texture texture = mTexture;
+        final boolean textureEnabled = mTextureEnabled;
+        final TextureCoordBuffer coordBuffer = mTextureCoordBuffer;
+        final boolean coordArrayEnabled = mTextureCoordArrayEnabled;
+        final ColorBuffer colorBuffer = mColorBuffer;
+        final boolean colorArrayEnabled = mColorArrayEnabled;
+        final VertexBuffer vertexBuffer = mVertexBuffer;
+        final boolean vertexArrayEnabled = mVertexArrayEnabled;
+        final boolean isProjection = mIsProjection;
+        mBatchBlendFuncBackup.set(mBlendFunc);
+        mBatchColorBackup.setValues(mColor);
+
+        // vertices are already transformed
+        mIsProjection = false;
+        matrixPush();
+        matrixLoadIdentity();
+
+        mQuadBatch.draw(this);
+
+        matrixPop();
+        mIsProjection = isProjection;
+
+        // restore
+        mRequestedProgram = program;
+        mTexture = texture;
+        mTextureEnabled = textureEnabled;
+        mTextureCoordBuffer = coordBuffer;
+        mTextureCoordArrayEnabled = coordArrayEnabled;
+        mColorBuffer = colorBuffer;
+        mColorArrayEnabled = colorArrayEnabled;
+        mVertexBuffer = vertexBuffer;
+        mVertexArrayEnabled = vertexArrayEnabled;
+        setBlendFunc(mBatchBlendFuncBackup);
+        setColor(mBatchColorBackup);
+
+        // stats
+        mNumBatches++;
+        mBatchFlushCounts[reason]++;
+
+        mBatchFlushing = false;
+        return true;
+    }
+
+    /**
+     * Reset the batch counters, this is called by the Scene at the beginning of every frame.
+     */
+    public void resetBatchStats() {
+        mNumBatches = 0;
+        mNumBatchedQuads = 0;
+        for (int i = 0; i < NUM_FLUSH_REASONS; i++) {
+            mBatchFlushCounts[i] = 0;
+        }
+    }
+
+    /**
+     * @return the number of draw calls issued by the batch since {@link #resetBatchStats()}
+     */
+    public int getNumBatches() {
+        return mNumBatches;
+    }
+
+    /**
+     * @return the number of quads merged since {@link #resetBatchStats()}
+     */
+    public int getNumBatchedQuads() {
+        return mNumBatchedQuads;
+    }
+
+    /**
+     * @param reason FLUSH_TEXTURE, FLUSH_BLEND, FLUSH_SHADER...
+     * @return how many times the batch got flushed for the specified reason since {@link #resetBatchStats()}
+     */
+    public int getBatchFlushCount(final int reason) {
+        return mBatchFlushCounts[reason];
+    }
+
+    /**
+     * @hide for debugging and testing
+     */
+    public QuadBatch getQuadBatch() {
+        return mQuadBatch;
+    }
 }
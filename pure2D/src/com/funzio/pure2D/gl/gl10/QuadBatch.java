@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10;
+
+import android.opengl.GLES20;
+
+import com.funzio.pure2D.gl.GLColor;
+import com.funzio.pure2D.gl.gl10.textures.Texture;
+import com.funzio.pure2D.gl.gl10.textures.TextureCoordBuffer;
+import com.funzio.pure2D.gl.gl20.ShaderProgram;
+
+/**
+ * A shared, growable stream of transformed quads. Quads with the same Texture, BlendFunc and ShaderProgram are merged and drawn with a single draw call.
+ * 
+ * @author long
+ * @see GLState#setBatchingEnabled(boolean)
+ */
+public class QuadBatch {
+    public static final int NUM_VERTICES_PER_CELL = QuadMeshBuffer.NUM_VERTICES_PER_CELL;
+    public static final int NUM_INDICES_PER_CELL = QuadMeshBuffer.NUM_INDICES_PER_CELL;
+    public static final int NUM_VALUES_PER_CELL = NUM_VERTICES_PER_CELL * 2;
+    public static final int NUM_COLOR_VALUES_PER_CELL = NUM_VERTICES_PER_CELL * 4;
+    // indices are unsigned short
+    public static final int MAX_CELLS = 0x10000 / NUM_VERTICES_PER_CELL;
+
+    private static final int DEFAULT_CELLS = 64;
+
+    private float[] mVertices;
+    private float[] mCoords;
+    private float[] mColors;
+    private int mNumCells = 0;
+    private int mCapacity = 0;
+
+    // current states
+    private Texture mTexture;
+    private final BlendFunc mBlendFunc = new BlendFunc();
+    private ShaderProgram mProgram;
+
+    // gl buffers
+    private final VertexBuffer mVertexBuffer;
+    private final TextureCoordBuffer mCoordBuffer;
+    private final ColorBuffer mColorBuffer;
+
+    public QuadBatch() {
+        mVertexBuffer = new VertexBuffer(GLES20.GL_TRIANGLES, 0);
+        mCoordBuffer = new TextureCoordBuffer();
+        mColorBuffer = new ColorBuffer(new float[0]);
+
+        ensureCapacity(DEFAULT_CELLS);
+    }
+
+    private void ensureCapacity(final int numCells) {
+        if (numCells <= mCapacity) {
+            return;
+        }
+
+        // grow geometrically
+        int capacity = Math.max(mCapacity, DEFAULT_CELLS);
+        while (capacity < numCells) {
+            capacity <<= 1;
+        }
+        if (capacity > MAX_CELLS) {
+            capacity = MAX_CELLS;
+        }
+
+        // keep the current values
+        final float[] vertices = new float[capacity * NUM_VALUES_PER_CELL];
+        final float[] coords = new float[capacity * NUM_VALUES_PER_CELL];
+        final float[] colors = new float[capacity * NUM_COLOR_VALUES_PER_CELL];
+        if (mNumCells > 0) {
+            System.arraycopy(mVertices, 0, vertices, 0, mNumCells * NUM_VALUES_PER_CELL);
+            System.arraycopy(mCoords, 0, coords, 0, mNumCells * NUM_VALUES_PER_CELL);
+            System.arraycopy(mColors, 0, colors, 0, mNumCells * NUM_COLOR_VALUES_PER_CELL);
+        }
+        mVertices = vertices;
+        mCoords = coords;
+        mColors = colors;
+
+        // indices are fixed
+        final short[] indices = new short[capacity * NUM_INDICES_PER_CELL];
+        int start = 0;
+        short vertexStart = 0;
+        for (int i = 0; i < capacity; i++) {
+            // first triangle
+            indices[start] = vertexStart;
+            indices[start + 1] = (short) (vertexStart + 1);
+            indices[start + 2] = (short) (vertexStart + 2);
+            // second triangle
+            indices[start + 3] = (short) (vertexStart + 2);
+            indices[start + 4] = (short) (vertexStart + 1);
+            indices[start + 5] = (short) (vertexStart + 3);
+            start += NUM_INDICES_PER_CELL;
+            vertexStart += NUM_VERTICES_PER_CELL;
+        }
+        mVertexBuffer.setIndices(indices);
+
+        mCapacity = capacity;
+    }
+
+    /**
+     * Find out whether adding a quad with the specified states would require a flush first
+     * 
+     * @param texture
+     * @param blendFunc
+     * @param program
+     * @return the flush reason or -1 if the quad can be merged
+     * @see GLState#FLUSH_TEXTURE
+     */
+    public int getBreakReason(final Texture texture, final BlendFunc blendFunc, final ShaderProgram program) {
+        if (mNumCells == 0) {
+            return -1;
+        } else if (mNumCells >= MAX_CELLS) {
+            return GLState.FLUSH_CAPACITY;
+        } else if (mTexture != texture) {
+            return GLState.FLUSH_TEXTURE;
+        } else if (!mBlendFunc.equals(blendFunc)) {
+            return GLState.FLUSH_BLEND;
+        } else if (mProgram != program) {
+            return GLState.FLUSH_SHADER;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Add a quad to the batch. Make sure {@link #getBreakReason(Texture, BlendFunc, ShaderProgram)} is checked first.
+     * 
+     * @param texture
+     * @param blendFunc
+     * @param program
+     * @param matrix the column-major 2D model-view matrix to bake into the vertices
+     * @param vertices 4 vertices in triangle-strip order, see {@link QuadBuffer}
+     * @param coords 4 texture coordinates, can be null
+     * @param color
+     */
+    public void add(final Texture texture, final BlendFunc blendFunc, final ShaderProgram program, final float[] matrix, final float[] vertices, final float[] coords, final GLColor color) {
+        if (mNumCells == 0) {
+            // new states
+            mTexture = texture;
+            mBlendFunc.set(blendFunc);
+            mProgram = program;
+        }
+        ensureCapacity(mNumCells + 1);
+
+        // transform the vertices
+        final float m0 = matrix[0], m1 = matrix[1], m4 = matrix[4], m5 = matrix[5], m12 = matrix[12], m13 = matrix[13];
+        int start = mNumCells * NUM_VALUES_PER_CELL;
+        float x, y;
+        for (int i = 0; i < NUM_VALUES_PER_CELL; i += 2) {
+            x = vertices[i];
+            y = vertices[i + 1];
+            mVertices[start + i] = m0 * x + m4 * y + m12;
+            mVertices[start + i + 1] = m1 * x + m5 * y + m13;
+        }
+
+        // texture coordinates
+        if (coords != null) {
+            System.arraycopy(coords, 0, mCoords, start, NUM_VALUES_PER_CELL);
+        }
+
+        // colors
+        start = mNumCells * NUM_COLOR_VALUES_PER_CELL;
+        final float r = color != null ? color.r : 1f;
+        final float g = color != null ? color.g : 1f;
+        final float b = color != null ? color.b : 1f;
+        final float a = color != null ? color.a : 1f;
+        for (int i = 0; i < NUM_VERTICES_PER_CELL; i++) {
+            mColors[start++] = r;
+            mColors[start++] = g;
+            mColors[start++] = b;
+            mColors[start++] = a;
+        }
+
+        mNumCells++;
+    }
+
+    /**
+     * Draw all the quads with the identity model-view matrix then empty the batch. This is called by {@link GLState#flushBatch(int)}.
+     * 
+     * @param glState
+     */
+    void draw(final GLState glState) {
+        glState.useShaderProgram(mProgram);
+        glState.setBlendFunc(mBlendFunc);
+        // colors are in the color buffer
+        glState.setColor(1f, 1f, 1f, 1f);
+        mColorBuffer.setValues(mColors, mNumCells * NUM_COLOR_VALUES_PER_CELL);
+        mColorBuffer.apply(glState);
+
+        // texture
+        if (mTexture != null) {
+            mTexture.bind();
+
+            mCoordBuffer.setValues(mCoords, mNumCells * NUM_VALUES_PER_CELL);
+            mCoordBuffer.apply(glState);
+        } else {
+            glState.unbindTexture();
+            glState.setTextureCoordArrayEnabled(false);
+        }
+
+        // flush it out
+        mVertexBuffer.setValues(mVertices, mNumCells * NUM_VALUES_PER_CELL);
+        mVertexBuffer.setIndicesNumUsed(mNumCells * NUM_INDICES_PER_CELL);
+        mVertexBuffer.draw(glState);
+
+        clear();
+    }
+
+    /**
+     * Drop all the pending quads
+     */
+    public void clear() {
+        mNumCells = 0;
+        mTexture = null;
+        mProgram = null;
+    }
+
+    public boolean isEmpty() {
+        return mNumCells == 0;
+    }
+
+    public int getNumCells() {
+        return mNumCells;
+    }
+
+    /**
+     * @return the number of values in the vertex stream, 2 per vertex
+     */
+    public int getNumVertexValues() {
+        return mNumCells * NUM_VALUES_PER_CELL;
+    }
+
+    /**
+     * @return the merged and transformed vertices. Only the first {@link #getNumVertexValues()} values are valid.
+     */
+    public float[] getVertices() {
+        return mVertices;
+    }
+
+    /**
+     * @return the merged texture coordinates. Only the first {@link #getNumVertexValues()} values are valid.
+     */
+    public float[] getTextureCoords() {
+        return mCoords;
+    }
+
+    /**
+     * @return the merged per-vertex colors, 4 values per vertex.
+     */
+    public float[] getColors() {
+        return mColors;
+    }
+
+    public void dispose() {
+        clear();
+
+        mVertexBuffer.dispose();
+        mCoordBuffer.dispose();
+        mColorBuffer.dispose();
+    }
+}
@@ -32,11 +32,17 @@ import android.opengl.GLES20;
 public class QuadMeshBuffer extends VertexBuffer {
     public static final int NUM_VERTICES_PER_CELL = 4;
     public static final int NUM_INDICES_PER_CELL = 6;
+    // max number of cells for unsigned short indices
+    public static final int MAX_CELLS = 0x10000 / NUM_VERTICES_PER_CELL;
 
     protected float[] mVertices;
     protected short[] mIndices;
     protected int mNumCells = 0;
+    protected int mCapacity = 0;
     protected boolean mInvalidated = false;
+    // the range of cells changed since the last validate()
+    protected int mDirtyStart = 0;
+    protected int mDirtyEnd = 0;
 
     public QuadMeshBuffer(final int numCells) {
         super(GLES20.GL_TRIANGLES, numCells * NUM_VERTICES_PER_CELL);
@@ -44,23 +50,27 @@ public class QuadMeshBuffer extends VertexBuffer {
         setNumCells(numCells);
     }
 
+    /**
+     * Set the number of cells in use. The arrays only grow, geometrically, and the values of the current cells are kept.
+     * 
+     * @param numCells
+     */
     public void setNumCells(final int numCells) {
-        if (numCells > mNumCells) {
-            // final float[] currentVertices = mVertices;
-            mVertices = new float[numCells * NUM_VERTICES_PER_CELL * mVertexPointerSize];
-            mIndices = new short[numCells * NUM_INDICES_PER_CELL];
+        if (numCells > mCapacity) {
+            final int capacity = Math.max(numCells, Math.min(mCapacity + (mCapacity >> 1), MAX_CELLS));
+            final float[] currentVertices = mVertices;
+            mVertices = new float[capacity * NUM_VERTICES_PER_CELL * mVertexPointerSize];
+            mIndices = new short[capacity * NUM_INDICES_PER_CELL];
 
             // restore values
-            // if (currentVertices != null) {
-            // for (int i = 0; i < currentVertices.length; i++) {
-            // mVertices[i] = currentVertices[i];
-            // }
-            // }
+            if (currentVertices != null) {
+                System.arraycopy(currentVertices, 0, mVertices, 0, Math.min(currentVertices.length, mVertices.length));
+            }
 
             // indices is always fixed
             int start = 0;
             short vertexStart = 0;
-            for (int i = 0; i < numCells; i++) {
+            for (int i = 0; i < capacity; i++) {
                 // first triangle
                 mIndices[start] = vertexStart;
                 mIndices[start + 1] = (short) (vertexStart + 1);
@@ -74,6 +84,7 @@ public class QuadMeshBuffer extends VertexBuffer {
             }
             setIndices(mIndices);
 
+            mCapacity = capacity;
             mInvalidated = true;
         }
 
@@ -85,6 +96,25 @@ public class QuadMeshBuffer extends VertexBuffer {
         return mNumCells;
     }
 
+    /**
+     * @return the number of cells allocated
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    protected void invalidateCells(final int index, final int numCells) {
+        if (mDirtyStart >= mDirtyEnd) {
+            mDirtyStart = index;
+            mDirtyEnd = index + numCells;
+        } else {
+            mDirtyStart = Math.min(mDirtyStart, index);
+            mDirtyEnd = Math.max(mDirtyEnd, index + numCells);
+        }
+
+        mInvalidated = true;
+    }
+
     /**
      * @return
      */
@@ -114,7 +144,7 @@ public class QuadMeshBuffer extends VertexBuffer {
         mVertices[start + 6] = x + width;
         mVertices[start + 7] = y;
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     /**
@@ -139,7 +169,7 @@ public class QuadMeshBuffer extends VertexBuffer {
         mVertices[start + 4] = x + width;
         mVertices[start + 5] = y;
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     public void setValuesAt(final int index, final float... values) {
@@ -150,7 +180,8 @@ public class QuadMeshBuffer extends VertexBuffer {
             mVertices[start + i] = values[i];
         }
 
-        mInvalidated = true;
+        final int valuesPerCell = NUM_VERTICES_PER_CELL * mVertexPointerSize;
+        invalidateCells(index, (length + valuesPerCell - 1) / valuesPerCell);
     }
 
     public void setValuesAt(final int index, final int numCells, final float... values) {
@@ -161,7 +192,7 @@ public class QuadMeshBuffer extends VertexBuffer {
             mVertices[start + i] = values[i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
     }
 
     public void setValuesAt(final int index, final int numCells, final int srcOffset, final float... values) {
@@ -172,17 +203,23 @@ public class QuadMeshBuffer extends VertexBuffer {
             mVertices[start + i] = values[srcOffset + i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
     }
 
     /**
-     * Applies the values set by {@link #setRectAt(int, float...)}
+     * Applies the values set by {@link #setRectAt(int, float...)}. Only the changed cells are copied, unless the arrays have grown.
      */
     public void validate() {
         if (mInvalidated) {
-            setValues(mVertices);
+            if (mBuffer != null && mBuffer.capacity() == mVertices.length && mDirtyStart < mDirtyEnd) {
+                final int valuesPerCell = NUM_VERTICES_PER_CELL * mVertexPointerSize;
+                setValuesRange(mVertices, mDirtyStart * valuesPerCell, Math.min(mDirtyEnd * valuesPerCell, mVertices.length), mVertices.length);
+            } else {
+                setValues(mVertices);
+            }
 
             // unflag
+            mDirtyStart = mDirtyEnd = 0;
             mInvalidated = false;
         }
     }
@@ -148,6 +148,35 @@ public class VertexBuffer extends GLFloatBuffer {
         // Disable the vertices buffer.
     }
 
+    /**
+     * Draw only a range of the indices, such as the cells of a mesh that share the same texture
+     * 
+     * @param glState
+     * @param firstIndex
+     * @param numIndices
+     */
+    public void draw(final GLState glState, final int firstIndex, final int numIndices) {
+        if (mIndicesNum == 0 || numIndices <= 0) {
+            return;
+        }
+
+        glState.setVertexArrayEnabled(true);
+        glState.setVertexBuffer(this);
+
+        glState.bindShaderProgram();
+        if (!glState.bindTransformMatrix()) return;
+        if (!glState.bindVertices()) return;
+        glState.bindTexture();
+        glState.bindColor();
+
+        // the indices start from the buffer's position
+        mIndexBuffer.position(firstIndex);
+        glState.drawElements(mPrimitive, Math.min(numIndices, mIndicesNum - firstIndex), GLES20.GL_UNSIGNED_SHORT, mIndexBuffer);
+        mIndexBuffer.position(0);
+
+        glState.unbind();
+    }
+
 
     @Override
     public void dispose() {
@@ -111,6 +111,19 @@ public class AssetTexture extends Texture {
         mFilePath = filePath;
         mOptions = options;
 
+        final TextureLoader loader = getTextureLoader();
+        if (loader != null) {
+            loader.load(this, "asset:" + filePath, options, new TextureLoader.Decoder() {
+
+                @Override
+                public Bitmap decode(final int[] dimensions) {
+                    return Pure2DUtils.getAssetBitmap(mAssetManager, filePath, options, dimensions);
+                }
+            }, options != null ? options.inLoadPriority : TextureLoader.PRIORITY_VISIBLE);
+            return;
+        }
+
+        // no manager, fall back to a standalone AsyncTask
         // AsyncTask can only be initialized on UI Thread, especially on Android 2.2
         mGLState.getStage().getHandler().post(new Runnable() {
             @Override
@@ -97,6 +97,19 @@ public class DrawableTexture extends Texture {
         mDrawable = drawable;
         mOptions = options;
 
+        final TextureLoader loader = getTextureLoader();
+        if (loader != null) {
+            loader.load(this, "drawable:" + drawable, options, new TextureLoader.Decoder() {
+
+                @Override
+                public Bitmap decode(final int[] dimensions) {
+                    return Pure2DUtils.getResourceBitmap(mResources, drawable, options, dimensions);
+                }
+            }, options != null ? options.inLoadPriority : TextureLoader.PRIORITY_VISIBLE);
+            return;
+        }
+
+        // no manager, fall back to a standalone AsyncTask
         // AsyncTask can only be initialized on UI Thread, especially on Android 2.2
         mGLState.getStage().getHandler().post(new Runnable() {
             @Override
@@ -0,0 +1,482 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10.textures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+
+import com.funzio.pure2D.Pure2D;
+import com.funzio.pure2D.Pure2DURI;
+import com.funzio.pure2D.atlas.Atlas;
+import com.funzio.pure2D.atlas.AtlasFrame;
+import com.funzio.pure2D.utils.Pure2DUtils;
+import com.funzio.pure2D.utils.RectPacker;
+
+/**
+ * A runtime atlas that packs small images into a few shared texture pages, so they can be batched and don't waste memory on power-of-2 padding. Images are added and removed by URI
+ * at any time, and a page is repacked in the background when too much of it has been freed. Frames of a repacked page get new rects, so the objects using them should set them
+ * again in {@link Atlas.Listener#onAtlasLoad(Atlas)}. All methods can only be called on GL Thread.
+ * 
+ * @author long
+ * @see TextureManager#getDynamicAtlas()
+ */
+public class DynamicAtlas extends Atlas {
+    protected static final String TAG = DynamicAtlas.class.getSimpleName();
+
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 256;
+    public static final float DEFAULT_REPACK_THRESHOLD = 0.5f;
+
+    // gap between frames, to avoid bleeding
+    private static final int PADDING = 1;
+
+    private static ExecutorService sRepackExecutor;
+
+    private final TextureManager mTextureManager;
+    private final Resources mResources;
+    private String mPackageName;
+    private final int mPageSize;
+    private int mMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private float mRepackThreshold = DEFAULT_REPACK_THRESHOLD;
+    private final TextureOptions mTextureOptions;
+
+    private final ArrayList<Page> mPages = new ArrayList<Page>();
+    private final HashMap<String, Entry> mEntries = new HashMap<String, Entry>();
+    private int mFrameIndex = 0;
+    private int mNumRepacks = 0;
+
+    public DynamicAtlas(final TextureManager textureManager, final Resources res, final int pageSize, final TextureOptions textureOptions) {
+        super(Math.min(pageSize, Pure2D.GL_MAX_TEXTURE_SIZE), Math.min(pageSize, Pure2D.GL_MAX_TEXTURE_SIZE));
+
+        mTextureManager = textureManager;
+        mResources = res;
+        mPageSize = (int) mWidth;
+
+        mTextureOptions = TextureOptions.getDefault();
+        if (textureOptions != null) {
+            mTextureOptions.set(textureOptions);
+        }
+        // the pages are already po2
+        mTextureOptions.inPo2 = false;
+        mTextureOptions.inMipmaps = 0;
+    }
+
+    /**
+     * Only needed for drawable:// URIs
+     * 
+     * @param packageName
+     */
+    public void setPackageName(final String packageName) {
+        mPackageName = packageName;
+    }
+
+    public int getMaxFrameSize() {
+        return mMaxFrameSize;
+    }
+
+    /**
+     * Images bigger than this in either dimension are not packed.
+     * 
+     * @param maxFrameSize
+     */
+    public void setMaxFrameSize(final int maxFrameSize) {
+        mMaxFrameSize = Math.min(maxFrameSize, mPageSize - PADDING);
+    }
+
+    public float getRepackThreshold() {
+        return mRepackThreshold;
+    }
+
+    /**
+     * @param repackThreshold the fraction of a page that is freed before the page gets repacked, 0 to 1
+     */
+    public void setRepackThreshold(final float repackThreshold) {
+        mRepackThreshold = repackThreshold;
+    }
+
+    /**
+     * Check whether an image URI can be packed, without decoding it
+     * 
+     * @param uri
+     * @return true if the image exists and is small enough
+     */
+    public boolean isPackable(final String uri) {
+        if (mEntries.containsKey(uri)) {
+            return true;
+        } else if (!uri.startsWith(Pure2DURI.ASSET) && !uri.startsWith(Pure2DURI.FILE) && !uri.startsWith(Pure2DURI.DRAWABLE)) {
+            return false;
+        }
+
+        final int[] dimensions = new int[2];
+        return Pure2DUtils.getUriBitmapDimensions(mResources, mPackageName, uri, mTextureOptions, dimensions) && dimensions[0] > 0 && dimensions[0] <= mMaxFrameSize
+                && dimensions[1] > 0 && dimensions[1] <= mMaxFrameSize;
+    }
+
+    /**
+     * Pack an image into a page, synchronously. If it's already packed, the same frame is returned.
+     * 
+     * @param uri such as asset://, file:// or drawable://
+     * @return the frame, or null if the image cannot be loaded or is bigger than {@link #getMaxFrameSize()}
+     */
+    public AtlasFrame add(final String uri) {
+        final Entry existing = mEntries.get(uri);
+        if (existing != null) {
+            return existing.mFrame;
+        }
+
+        final Bitmap bitmap = decode(uri);
+        if (bitmap == null) {
+            Log.e(TAG, "Unable to load bitmap: " + uri);
+            return null;
+        }
+
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        if (width > mMaxFrameSize || height > mMaxFrameSize) {
+            bitmap.recycle();
+            return null;
+        }
+
+        // find a page with some room
+        Page page = null;
+        Rect rect = null;
+        final int numPages = mPages.size();
+        for (int i = 0; i < numPages && rect == null; i++) {
+            page = mPages.get(i);
+            if (!page.mRepacking) {
+                rect = page.mPacker.tryOccupy(width + PADDING, height + PADDING);
+            }
+        }
+        if (rect == null) {
+            page = createPage();
+            rect = page.mPacker.tryOccupy(width + PADDING, height + PADDING);
+        }
+
+        final Entry entry = new Entry(uri, width, height);
+        entry.mRect.set(rect);
+        entry.mFrame = new AtlasFrame(page.mTexture, mFrameIndex++, uri, new RectF(rect.left, rect.top, rect.left + width, rect.top + height));
+        page.add(entry);
+        mEntries.put(uri, entry);
+        addFrame(entry.mFrame);
+
+        // upload only this part
+        page.mTexture.loadSubImage(bitmap, rect.left, rect.top);
+        bitmap.recycle();
+
+        return entry.mFrame;
+    }
+
+    public AtlasFrame getFrameByUri(final String uri) {
+        final Entry entry = mEntries.get(uri);
+        return entry != null ? entry.mFrame : null;
+    }
+
+    /**
+     * Remove an image. Its space is reused after the page is repacked, or the page is released when it's empty.
+     * 
+     * @param uri
+     * @return true if found
+     */
+    public boolean remove(final String uri) {
+        final Entry entry = mEntries.remove(uri);
+        if (entry == null) {
+            return false;
+        }
+
+        removeFrame(entry.mFrame);
+        final Page page = entry.mPage;
+        page.remove(entry);
+
+        if (page.mEntries.isEmpty() && !page.mRepacking) {
+            // release the whole page
+            mPages.remove(page);
+            mTextureManager.removeTexture(page.mTexture);
+        } else if (!page.mRepacking && page.mWastedArea >= mRepackThreshold * mPageSize * mPageSize) {
+            repack(page);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove all the images and release all the pages
+     */
+    public void clear() {
+        final int numPages = mPages.size();
+        for (int i = 0; i < numPages; i++) {
+            mTextureManager.removeTexture(mPages.get(i).mTexture);
+        }
+        mPages.clear();
+        mEntries.clear();
+        removeAllFrames();
+    }
+
+    public int getNumPages() {
+        return mPages.size();
+    }
+
+    public int getNumRepacks() {
+        return mNumRepacks;
+    }
+
+    /**
+     * @return the fraction of the occupied space that has been freed but not reused yet
+     */
+    public float getFragmentation() {
+        long used = 0, wasted = 0;
+        final int numPages = mPages.size();
+        for (int i = 0; i < numPages; i++) {
+            final Page page = mPages.get(i);
+            used += page.mUsedArea;
+            wasted += page.mWastedArea;
+        }
+
+        return used + wasted > 0 ? (float) wasted / (used + wasted) : 0;
+    }
+
+    private Bitmap decode(final String uri) {
+        final int[] dimensions = new int[2];
+        return Pure2DUtils.getUriBitmap(mResources, mPackageName, uri, mTextureOptions, dimensions);
+    }
+
+    private Page createPage() {
+        final Page page = new Page();
+        page.mTexture = mTextureManager.createDynamicTexture(new Runnable() {
+
+            @Override
+            public void run() {
+                // GL context lost, redraw everything
+                final Bitmap bitmap = drawPage(page.mEntries, page.mRects);
+                page.mTexture.load(bitmap, mPageSize, mPageSize, 0);
+                if (bitmap != null) {
+                    bitmap.recycle();
+                }
+            }
+        }, mTextureOptions);
+        // there is no other copy of the frames
+        page.mTexture.setPinned(true);
+        page.mTexture.reload();
+
+        mPages.add(page);
+        return page;
+    }
+
+    /**
+     * Draw the frames of a page into a new bitmap. This can be called on any thread.
+     * 
+     * @return the bitmap, or null if there is nothing to draw
+     */
+    private Bitmap drawPage(final ArrayList<Entry> entries, final ArrayList<Rect> rects) {
+        final int size = entries.size();
+        if (size == 0) {
+            return null;
+        }
+
+        final Bitmap pageBitmap = Bitmap.createBitmap(mPageSize, mPageSize, mTextureOptions.inPreferredConfig);
+        final Canvas canvas = new Canvas(pageBitmap);
+        for (int i = 0; i < size; i++) {
+            final Bitmap bitmap = decode(entries.get(i).mUri);
+            if (bitmap != null) {
+                final Rect rect = rects.get(i);
+                canvas.drawBitmap(bitmap, rect.left, rect.top, null);
+                bitmap.recycle();
+            } else {
+                Log.e(TAG, "Unable to load bitmap: " + entries.get(i).mUri);
+            }
+        }
+
+        return pageBitmap;
+    }
+
+    /**
+     * Pack the remaining frames of a page again, biggest first. The page is redrawn in the background, then the frames get their new rects.
+     */
+    private void repack(final Page page) {
+        final ArrayList<Entry> entries = new ArrayList<Entry>(page.mEntries);
+        Collections.sort(entries, HEIGHT_COMPARATOR);
+
+        final RectPacker packer = createPacker();
+        final ArrayList<Rect> rects = new ArrayList<Rect>(entries.size());
+        final int size = entries.size();
+        for (int i = 0; i < size; i++) {
+            final Entry entry = entries.get(i);
+            final Rect rect = packer.tryOccupy(entry.mWidth + PADDING, entry.mHeight + PADDING);
+            if (rect == null) {
+                // unlikely, keep the current layout
+                Log.w(TAG, "repack(): ran out of space");
+                return;
+            }
+            rects.add(new Rect(rect));
+        }
+
+        Log.v(TAG, String.format("repack(): %d frames, %d bytes freed", size, page.mWastedArea * 4));
+        page.mRepacking = true;
+        mNumRepacks++;
+
+        getRepackExecutor().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                final Bitmap bitmap = drawPage(entries, rects);
+
+                // back to GL Thread
+                mTextureManager.getGLState().queueEvent(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        page.mRepacking = false;
+                        if (!mPages.contains(page)) {
+                            // cleared in the mean time
+                            if (bitmap != null) {
+                                bitmap.recycle();
+                            }
+                            return;
+                        }
+
+                        // swap the layout, the frames removed in the mean time are wasted space
+                        page.mPacker = packer;
+                        page.mEntries.clear();
+                        page.mRects.clear();
+                        page.mUsedArea = page.mWastedArea = 0;
+                        for (int i = 0; i < size; i++) {
+                            final Entry entry = entries.get(i);
+                            final Rect rect = rects.get(i);
+                            if (entry.mPage == page) {
+                                entry.mRect.set(rect);
+                                entry.mFrame.setRect(rect.left, rect.top, rect.left + entry.mWidth, rect.top + entry.mHeight);
+                                page.add(entry);
+                            } else {
+                                page.mWastedArea += (entry.mWidth + PADDING) * (entry.mHeight + PADDING);
+                            }
+                        }
+
+                        if (bitmap != null) {
+                            page.mTexture.load(bitmap, mPageSize, mPageSize, 0);
+                            bitmap.recycle();
+                        }
+
+                        if (page.mEntries.isEmpty()) {
+                            mPages.remove(page);
+                            mTextureManager.removeTexture(page.mTexture);
+                        }
+
+                        // the frames have changed
+                        if (mListener != null) {
+                            mListener.onAtlasLoad(DynamicAtlas.this);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private RectPacker createPacker() {
+        final RectPacker packer = new RectPacker(mPageSize, false);
+        packer.setMode(RectPacker.MODE_MAX_RECTS);
+        packer.setRotationEnabled(false);
+        return packer;
+    }
+
+    private static synchronized ExecutorService getRepackExecutor() {
+        if (sRepackExecutor == null) {
+            sRepackExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, TAG);
+                    // don't fight with the GL thread
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return sRepackExecutor;
+    }
+
+    private static final Comparator<Entry> HEIGHT_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry lhs, final Entry rhs) {
+            return rhs.mHeight - lhs.mHeight;
+        }
+    };
+
+    private class Page {
+        private Texture mTexture;
+        private RectPacker mPacker = createPacker();
+        private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+        private final ArrayList<Rect> mRects = new ArrayList<Rect>();
+        private int mUsedArea = 0;
+        private int mWastedArea = 0;
+        private boolean mRepacking = false;
+
+        private void add(final Entry entry) {
+            entry.mPage = this;
+            mEntries.add(entry);
+            mRects.add(entry.mRect);
+            mUsedArea += (entry.mWidth + PADDING) * (entry.mHeight + PADDING);
+        }
+
+        private void remove(final Entry entry) {
+            final int index = mEntries.indexOf(entry);
+            if (index >= 0) {
+                mEntries.remove(index);
+                mRects.remove(index);
+                final int area = (entry.mWidth + PADDING) * (entry.mHeight + PADDING);
+                mUsedArea -= area;
+                mWastedArea += area;
+            }
+            entry.mPage = null;
+        }
+    }
+
+    private static class Entry {
+        private final String mUri;
+        private final int mWidth;
+        private final int mHeight;
+        private final Rect mRect = new Rect();
+        private AtlasFrame mFrame;
+        private Page mPage;
+
+        private Entry(final String uri, final int width, final int height) {
+            mUri = uri;
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+}
@@ -31,7 +31,11 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
     public static final int NUM_COORD_PER_CELL = 4 * 2;
 
     protected int mNumCells;
+    protected int mCapacity = 0;
     protected boolean mInvalidated = false;
+    // the range of cells changed since the last validate()
+    protected int mDirtyStart = 0;
+    protected int mDirtyEnd = 0;
 
     protected float mScaleX = 1;
     protected float mScaleY = 1;
@@ -42,18 +46,23 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         setNumCells(numCells);
     }
 
+    /**
+     * Set the number of cells in use. The array only grows, geometrically, and the values of the current cells are kept.
+     * 
+     * @param numCells
+     */
     public void setNumCells(final int numCells) {
-        if (numCells > mNumCells) {
-            // final float[] currentValues = mValues;
-            mValues = new float[numCells * NUM_COORD_PER_CELL];
+        if (numCells > mCapacity) {
+            final int capacity = Math.max(numCells, mCapacity + (mCapacity >> 1));
+            final float[] currentValues = mValues;
+            mValues = new float[capacity * NUM_COORD_PER_CELL];
 
             // restore values
-            // if (currentValues != null) {
-            // for (int i = 0; i < currentValues.length; i++) {
-            // mValues[i] = currentValues[i];
-            // }
-            // }
+            if (currentValues != null) {
+                System.arraycopy(currentValues, 0, mValues, 0, Math.min(currentValues.length, mValues.length));
+            }
 
+            mCapacity = capacity;
             mInvalidated = true;
         }
 
@@ -64,6 +73,25 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         return mNumCells;
     }
 
+    /**
+     * @return the number of cells allocated
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    protected void invalidateCells(final int index, final int numCells) {
+        if (mDirtyStart >= mDirtyEnd) {
+            mDirtyStart = index;
+            mDirtyEnd = index + numCells;
+        } else {
+            mDirtyStart = Math.min(mDirtyStart, index);
+            mDirtyEnd = Math.max(mDirtyEnd, index + numCells);
+        }
+
+        mInvalidated = true;
+    }
+
     /**
      * Sets a Rect at a specified index but doesn't apply untill applyValues() gets called
      * 
@@ -86,7 +114,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         mValues[start + 6] = (x + width);
         mValues[start + 7] = (y + height);
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     public void setRectFlipVerticalAt(final int index, final float x, final float y, final float width, final float height) {
@@ -101,7 +129,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         mValues[start + 6] = (x + width);
         mValues[start + 7] = y;
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     /**
@@ -123,7 +151,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         mValues[start + 6] = values[6];
         mValues[start + 7] = values[7];
 
-        mInvalidated = true;
+        invalidateCells(index, 1);
     }
 
     public void setValuesAt(final int index, final int numCells, final float... values) {
@@ -134,7 +162,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
             mValues[start + i] = values[i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
     }
 
     public void setValuesAt(final int index, final int numCells, final int srcOffset, final float... values) {
@@ -145,29 +173,44 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
             mValues[start + i] = values[srcOffset + i];
         }
 
-        mInvalidated = true;
+        invalidateCells(index, numCells);
     }
 
     /**
-     * Applies the values set by {@link #setRectAt(int, float...)}
+     * Applies the values set by {@link #setRectAt(int, float...)}. Only the changed cells are copied, unless the array has grown or the scale has changed.
      */
     public void validate() {
         if (mInvalidated) {
+            if (mBuffer != null && mBuffer.capacity() == mValues.length && mDirtyStart < mDirtyEnd) {
+                final int start = mDirtyStart * NUM_COORD_PER_CELL;
+                final int end = Math.min(mDirtyEnd * NUM_COORD_PER_CELL, mValues.length);
 
-            // scale the values
-            if (mValues != null && (mScaleX != 1 || mScaleY != 1)) {
-                for (int i = 0; i < mValues.length; i++) {
-                    if (i % 2 == 0) {
+                // scale the new values
+                if (mScaleX != 1 || mScaleY != 1) {
+                    for (int i = start; i < end; i += 2) {
                         mValues[i] *= mScaleX;
-                    } else {
-                        mValues[i] *= mScaleY;
+                        mValues[i + 1] *= mScaleY;
+                    }
+                }
+
+                setValuesRange(mValues, start, end, mValues.length);
+            } else {
+                // scale the values
+                if (mValues != null && (mScaleX != 1 || mScaleY != 1)) {
+                    for (int i = 0; i < mValues.length; i++) {
+                        if (i % 2 == 0) {
+                            mValues[i] *= mScaleX;
+                        } else {
+                            mValues[i] *= mScaleY;
+                        }
                     }
                 }
-            }
 
-            setValues(mValues);
+                setValues(mValues);
+            }
 
             // unflag
+            mDirtyStart = mDirtyEnd = 0;
             mInvalidated = false;
         }
     }
@@ -180,7 +223,7 @@ public class QuadMeshTextureCoordBuffer extends TextureCoordBuffer {
         mScaleX = scaleX;
         mScaleY = scaleY;
 
-        // unflag
-        mInvalidated = true;
+        // re-apply all the values
+        invalidateCells(0, mCapacity);
     }
 }
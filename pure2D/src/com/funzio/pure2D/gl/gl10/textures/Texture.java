@@ -64,6 +64,15 @@ public abstract class Texture {
 
     private int mTextureUnit;
 
+    // residency, managed by the TextureManager
+    TextureManager mManager;
+    int mLastBindFrame = 0;
+    int mNumBytes = 0;
+    private boolean mPinned = false;
+
+    // pending async load, see TextureLoader
+    TextureLoader.Request mLoadRequest;
+
     protected Texture(final GLState glState) {
         mGLState = glState;
     }
@@ -100,9 +109,21 @@ public abstract class Texture {
      * @param textureUnit
      */
     public void load(final Bitmap bitmap, final int actualWidth, final int actualHeight, final int mipmaps, final int textureUnit) {
+        // this overrides any pending async load
+        if (mLoadRequest != null) {
+            mLoadRequest.mLoader.cancel(this);
+        }
+
         setBitmapSize(bitmap != null ? bitmap.getWidth() : actualWidth, bitmap != null ? bitmap.getHeight() : actualHeight, actualWidth, actualHeight);
         mTextureUnit = textureUnit;
 
+        // make room for this texture, this might evict some other textures
+        final int numBytes = estimateBytes(bitmap, actualWidth, actualHeight, mipmaps);
+        releaseResidency();
+        if (mManager != null) {
+            mManager.reserve(this, numBytes);
+        }
+
         final int[] ids = new int[1];
         // clear the previous error(s), to make sure
         mGLState.clearErrors();
@@ -149,6 +170,12 @@ public abstract class Texture {
             // unexpire
             mExpired = false;
             mIdleTime = 0;
+
+            // now resident
+            mNumBytes = numBytes;
+            if (mManager != null) {
+                mManager.onTextureLoad(this);
+            }
         } else {
             Log.e(TAG, "Failed to generate Texture: " + GLU.gluErrorString(error), new Exception());
             // TODO maybe throw an Exception here
@@ -223,12 +250,50 @@ public abstract class Texture {
 
             // no longer idle
             mIdleTime = 0;
+            // touch for LRU
+            if (mManager != null) {
+                mLastBindFrame = mManager.mFrame;
+            }
         } else {
             // texture is not ready, notify the glstate
             mGLState.unbindTexture();
+
+            // it's wanted now
+            if (mLoadRequest != null) {
+                mLoadRequest.mLoader.prioritize(this, TextureLoader.PRIORITY_VISIBLE);
+            }
+        }
+    }
+
+    /**
+     * Replace a part of this texture with a bitmap, such as a frame of a {@link DynamicAtlas}. This can only be called on GL Thread.
+     * 
+     * @param bitmap
+     * @param x
+     * @param y
+     */
+    public void loadSubImage(final Bitmap bitmap, final int x, final int y) {
+        if (mTextureID != 0) {
+            mGLState.bindTextureUnit(this, mTextureUnit);
+            GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, bitmap);
         }
     }
 
+    /**
+     * @return the loader for async loading, null if there is no TextureManager
+     */
+    protected TextureLoader getTextureLoader() {
+        final TextureManager manager = mManager != null ? mManager : mGLState.getTextureManager();
+        return manager != null ? manager.getTextureLoader() : null;
+    }
+
+    /**
+     * @return true if an async load of this texture is still pending
+     */
+    public boolean isLoading() {
+        return mLoadRequest != null;
+    }
+
     // public void unbind() {
     // if (mTextureID != 0) {
     // // mGL.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
@@ -253,6 +318,79 @@ public abstract class Texture {
             // now unbind me
             mGLState.unbindTexture();
         }
+
+        releaseResidency();
+    }
+
+    private void releaseResidency() {
+        if (mNumBytes > 0) {
+            if (mManager != null) {
+                mManager.onTextureUnload(this);
+            }
+            mNumBytes = 0;
+        }
+    }
+
+    /**
+     * Estimate the GPU memory of a texture from its size, config and mipmaps
+     * 
+     * @param bitmap
+     * @param actualWidth used when bitmap is null
+     * @param actualHeight used when bitmap is null
+     * @param mipmaps
+     * @return the number of bytes
+     */
+    public static int estimateBytes(final Bitmap bitmap, final int actualWidth, final int actualHeight, final int mipmaps) {
+        final int bytesPerPixel;
+        final long numPixels;
+        if (bitmap == null) {
+            // blank ARGB_8888
+            bytesPerPixel = 4;
+            numPixels = (long) actualWidth * actualHeight;
+        } else {
+            final Bitmap.Config config = bitmap.getConfig();
+            if (config == Bitmap.Config.ALPHA_8) {
+                bytesPerPixel = 1;
+            } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+                bytesPerPixel = 2;
+            } else {
+                bytesPerPixel = 4;
+            }
+            numPixels = (long) bitmap.getWidth() * bitmap.getHeight();
+        }
+
+        // a full mipmap chain adds a third
+        final long numBytes = mipmaps > 0 ? numPixels * bytesPerPixel * 4 / 3 : numPixels * bytesPerPixel;
+        return (int) Math.min(numBytes, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the estimated GPU memory of this texture in bytes, 0 when it's not loaded
+     */
+    public int getNumBytes() {
+        return mNumBytes;
+    }
+
+    public boolean isPinned() {
+        return mPinned;
+    }
+
+    /**
+     * Pinned textures are never evicted by the memory budget, such as the UI and fonts.
+     * 
+     * @param pinned
+     * @see TextureManager#setMemoryBudget(long)
+     */
+    public void setPinned(final boolean pinned) {
+        mPinned = pinned;
+    }
+
+    /**
+     * @return the frame of the TextureManager when this texture was last bound, for LRU
+     * @see TextureManager#getFrame()
+     */
+    public int getLastBindFrame() {
+        return mLastBindFrame;
     }
 
     public int getTextureID() {
@@ -267,6 +405,7 @@ public abstract class Texture {
         mGLState = glState;
 
         mTextureID = 0; // clear the previous id
+        releaseResidency(); // and its memory
 
         // reload now
         reload();
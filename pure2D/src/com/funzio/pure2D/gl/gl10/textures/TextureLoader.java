@@ -0,0 +1,435 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.gl.gl10.textures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.funzio.pure2D.Scene;
+
+/**
+ * Decodes the Bitmaps of async Textures on a small pool of worker threads and uploads them on the GL thread, via {@link Scene#queueEvent(Runnable)}. Requests of the same source and
+ * options share one decode. Higher priorities are decoded and uploaded first, and the uploads are spread over multiple frames by a byte budget.
+ * 
+ * @author long
+ */
+public class TextureLoader {
+    protected static final String TAG = TextureLoader.class.getSimpleName();
+
+    // priorities, higher goes first
+    public static final int PRIORITY_PREFETCH = 0;
+    public static final int PRIORITY_VISIBLE = 10;
+
+    public static final int DEFAULT_NUM_THREADS = 2;
+    public static final int DEFAULT_UPLOAD_BUDGET = 4 * 1024 * 1024; // bytes per frame
+
+    private final Scene mScene;
+    private final ThreadPoolExecutor mExecutor;
+
+    // in-flight requests by key, also the lock for all the requests
+    private final HashMap<String, Request> mRequests = new HashMap<String, Request>();
+    // decoded, waiting for upload
+    private final ArrayList<Request> mDecodedRequests = new ArrayList<Request>();
+    private final AtomicBoolean mUploadScheduled = new AtomicBoolean(false);
+    private final AtomicInteger mSequence = new AtomicInteger(0);
+    private volatile int mUploadBudget = DEFAULT_UPLOAD_BUDGET;
+
+    public TextureLoader(final Scene scene, final int numThreads) {
+        mScene = scene;
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        mExecutor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, TAG + "-" + threadCount.incrementAndGet());
+                // don't fight with the GL thread
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Limit the number of bytes uploaded per frame, to avoid spikes when many textures finish decoding together. At least one Bitmap is uploaded per frame.
+     * 
+     * @param uploadBudget in bytes, 0 for no limit
+     */
+    public void setUploadBudget(final int uploadBudget) {
+        mUploadBudget = uploadBudget;
+    }
+
+    public int getUploadBudget() {
+        return mUploadBudget;
+    }
+
+    /**
+     * Request a Texture to be loaded asynchronously. Any previous request of this Texture is cancelled.
+     * 
+     * @param texture
+     * @param key identifies the source, such as "asset:" + path
+     * @param options
+     * @param decoder called on a worker thread
+     * @param priority such as {@link #PRIORITY_VISIBLE}
+     */
+    public void load(final Texture texture, final String key, final TextureOptions options, final Decoder decoder, final int priority) {
+        Request request;
+        synchronized (mRequests) {
+            final Request current = texture.mLoadRequest;
+            if (current != null && current.mLoader == this && current.mKey.equals(key) && current.mOptions == options) {
+                // already on the way
+                prioritize(texture, priority);
+                return;
+            }
+            cancel(texture);
+
+            request = mRequests.get(key);
+            if (request != null && isSameOptions(request.mOptions, options)) {
+                // merge
+                request.mTextures.add(texture);
+                texture.mLoadRequest = request;
+                prioritize(texture, priority);
+                return;
+            }
+
+            request = new Request(key, options, decoder, priority);
+            request.mTextures.add(texture);
+            texture.mLoadRequest = request;
+            // replace the previous one with different options, if any
+            mRequests.put(key, request);
+        }
+
+        mExecutor.execute(request);
+    }
+
+    /**
+     * Raise the priority of a Texture's pending request
+     * 
+     * @param texture
+     * @param priority
+     */
+    public void prioritize(final Texture texture, final int priority) {
+        synchronized (mRequests) {
+            final Request request = texture.mLoadRequest;
+            if (request == null || request.mLoader != this || priority <= request.mPriority) {
+                return;
+            }
+
+            if (request.mState == Request.STATE_QUEUED) {
+                // re-queue with the new priority
+                if (mExecutor.remove(request)) {
+                    request.mPriority = priority;
+                    mExecutor.execute(request);
+                }
+            } else {
+                // only affects the upload order
+                request.mPriority = priority;
+            }
+        }
+    }
+
+    /**
+     * Cancel a Texture's pending request. The decode itself is cancelled when no other Texture shares it.
+     * 
+     * @param texture
+     */
+    public void cancel(final Texture texture) {
+        final Request request = texture.mLoadRequest;
+        if (request == null) {
+            return;
+        } else if (request.mLoader != this) {
+            // from another manager, outside of this lock
+            request.mLoader.cancel(texture);
+            return;
+        }
+
+        synchronized (mRequests) {
+            // might have been uploaded or cancelled meanwhile
+            if (texture.mLoadRequest != request) {
+                return;
+            }
+
+            texture.mLoadRequest = null;
+            request.mTextures.remove(texture);
+            if (request.mTextures.isEmpty()) {
+                cancel(request);
+            }
+        }
+    }
+
+    /**
+     * Cancel all pending requests
+     */
+    public void cancelAll() {
+        synchronized (mRequests) {
+            // cancel(Request) removes from the map, iterate over a copy
+            final ArrayList<Request> requests = new ArrayList<Request>(mRequests.values());
+            final int size = requests.size();
+            for (int i = 0; i < size; i++) {
+                cancel(requests.get(i));
+            }
+            mRequests.clear();
+        }
+    }
+
+    public int getNumPendingRequests() {
+        synchronized (mRequests) {
+            return mRequests.size();
+        }
+    }
+
+    /**
+     * Cancel everything and stop the worker threads. This loader cannot be used after this.
+     */
+    public void dispose() {
+        cancelAll();
+        mExecutor.shutdownNow();
+    }
+
+    private void cancel(final Request request) {
+        // under lock
+        for (Texture texture : request.mTextures) {
+            texture.mLoadRequest = null;
+        }
+        request.mTextures.clear();
+
+        if (request.mState == Request.STATE_QUEUED) {
+            mExecutor.remove(request);
+        } else if (request.mState == Request.STATE_DECODED) {
+            mDecodedRequests.remove(request);
+            if (request.mBitmap != null) {
+                request.mBitmap.recycle();
+                request.mBitmap = null;
+            }
+        }
+        // decoding ones get recycled when done
+        request.mState = Request.STATE_CANCELLED;
+
+        if (mRequests.get(request.mKey) == request) {
+            mRequests.remove(request.mKey);
+        }
+    }
+
+    /**
+     * Called on a worker thread
+     */
+    private void decode(final Request request) {
+        synchronized (mRequests) {
+            if (request.mState != Request.STATE_QUEUED) {
+                return;
+            }
+            request.mState = Request.STATE_DECODING;
+        }
+
+        Bitmap bitmap = null;
+        try {
+            bitmap = request.mDecoder.decode(request.mDimensions);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "decode(): " + request.mKey, e);
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "decode(): " + request.mKey, e);
+        }
+
+        synchronized (mRequests) {
+            if (request.mState == Request.STATE_CANCELLED) {
+                if (bitmap != null) {
+                    bitmap.recycle();
+                }
+                return;
+            }
+
+            request.mBitmap = bitmap;
+            request.mState = Request.STATE_DECODED;
+            mDecodedRequests.add(request);
+        }
+
+        if (mUploadScheduled.compareAndSet(false, true)) {
+            mScene.queueEvent(mUploadRunnable);
+        }
+    }
+
+    /**
+     * Called on the GL thread
+     */
+    private final Runnable mUploadRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            final int uploadBudget = mUploadBudget;
+            int numBytes = 0;
+            Request request;
+            while ((uploadBudget <= 0 || numBytes < uploadBudget) && (request = pollDecodedRequest()) != null) {
+                numBytes += upload(request);
+            }
+
+            mUploadScheduled.set(false);
+            // the rest goes to the next frame
+            boolean more;
+            synchronized (mRequests) {
+                more = !mDecodedRequests.isEmpty();
+            }
+            if (more && mUploadScheduled.compareAndSet(false, true)) {
+                mScene.queueEvent(this, Scene.DEFAULT_MSPF);
+            }
+        }
+    };
+
+    private Request pollDecodedRequest() {
+        synchronized (mRequests) {
+            // highest priority first, then the oldest
+            Request best = null;
+            final int size = mDecodedRequests.size();
+            for (int i = 0; i < size; i++) {
+                final Request request = mDecodedRequests.get(i);
+                if (best == null || request.compareTo(best) < 0) {
+                    best = request;
+                }
+            }
+
+            if (best != null) {
+                mDecodedRequests.remove(best);
+                best.mState = Request.STATE_DONE;
+                // no more merging from now on
+                if (mRequests.get(best.mKey) == best) {
+                    mRequests.remove(best.mKey);
+                }
+            }
+
+            return best;
+        }
+    }
+
+    /**
+     * @return the number of bytes uploaded
+     */
+    private int upload(final Request request) {
+        final Texture[] textures;
+        synchronized (mRequests) {
+            textures = request.mTextures.toArray(new Texture[request.mTextures.size()]);
+            request.mTextures.clear();
+            for (Texture texture : textures) {
+                texture.mLoadRequest = null;
+            }
+        }
+
+        final Bitmap bitmap = request.mBitmap;
+        request.mBitmap = null;
+        final int mipmaps = request.mOptions != null ? request.mOptions.inMipmaps : 0;
+        int numBytes = 0;
+        for (Texture texture : textures) {
+            if (bitmap != null) {
+                texture.load(bitmap, request.mDimensions[0], request.mDimensions[1], mipmaps);
+                numBytes += texture.getNumBytes();
+            } else {
+                Log.e(TAG, "Unable to load bitmap: " + request.mKey);
+                // callback, regardless whether it's successful or not
+                if (texture.mListener != null) {
+                    texture.mListener.onTextureLoad(texture);
+                }
+            }
+        }
+
+        if (bitmap != null) {
+            bitmap.recycle();
+        }
+
+        return numBytes;
+    }
+
+    private static boolean isSameOptions(final TextureOptions a, final TextureOptions b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null) {
+            return false;
+        }
+
+        return a.inPreferredConfig == b.inPreferredConfig && a.inScaled == b.inScaled && a.inDither == b.inDither && a.inSampleSize == b.inSampleSize && a.inScaleX == b.inScaleX
+                && a.inScaleY == b.inScaleY && a.inPo2 == b.inPo2 && a.inMipmaps == b.inMipmaps;
+    }
+
+    /**
+     * Decodes the Bitmap of a request on a worker thread
+     */
+    public static interface Decoder {
+        /**
+         * @param dimensions the actual width and height to fill in
+         * @return the Bitmap, or null if failed
+         */
+        public Bitmap decode(int[] dimensions);
+    }
+
+    class Request implements Runnable, Comparable<Request> {
+        private static final int STATE_QUEUED = 0;
+        private static final int STATE_DECODING = 1;
+        private static final int STATE_DECODED = 2;
+        private static final int STATE_DONE = 3;
+        private static final int STATE_CANCELLED = 4;
+
+        final TextureLoader mLoader = TextureLoader.this;
+        private final String mKey;
+        private final TextureOptions mOptions;
+        private final Decoder mDecoder;
+        private final int mSequence = TextureLoader.this.mSequence.getAndIncrement();
+        private final ArrayList<Texture> mTextures = new ArrayList<Texture>(1);
+        private final int[] mDimensions = new int[2];
+        private int mPriority;
+        private int mState = STATE_QUEUED;
+        private Bitmap mBitmap;
+
+        private Request(final String key, final TextureOptions options, final Decoder decoder, final int priority) {
+            mKey = key;
+            mOptions = options;
+            mDecoder = decoder;
+            mPriority = priority;
+        }
+
+        @Override
+        public void run() {
+            decode(this);
+        }
+
+        @Override
+        public int compareTo(final Request another) {
+            if (mPriority != another.mPriority) {
+                return mPriority > another.mPriority ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+
+        @Override
+        public String toString() {
+            return mKey;
+        }
+    }
+}
@@ -57,6 +57,18 @@ public class TextureManager {
     protected int mExpirationCheckInterval = 0; // <= 0 means disabled
     protected int mExpirationCheckElapsedTime = 0;
 
+    // memory budget, in bytes
+    protected long mMemoryBudget = 0; // <= 0 means unlimited
+    protected long mMemoryUsage = 0;
+    protected int mNumEvictions = 0;
+    int mFrame = 0;
+
+    // async decoding and uploading
+    protected TextureLoader mTextureLoader;
+
+    // shared pages for small images
+    protected DynamicAtlas mDynamicAtlas;
+
 //    protected final Texture mBlankTexture;
 
     public TextureManager(final Scene scene, final Resources res) {
@@ -99,6 +111,68 @@ public class TextureManager {
         mExpirationCheckInterval = expirationCheckInterval;
     }
 
+    /**
+     * @return the memory budget in bytes, <= 0 means unlimited
+     */
+    public long getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    /**
+     * Set the estimated GPU memory (in bytes) that all the loaded Textures can take. When loading a Texture would exceed this budget, the least recently bound Textures are unloaded
+     * first. Evicted Textures are marked as expired so they reload themselves on the next bind. Pinned Textures and the ones bound in the last 2 frames are never evicted. By default,
+     * there is no budget.
+     * 
+     * @param memoryBudget <= 0 means unlimited
+     * @see Texture#setPinned(boolean)
+     */
+    public void setMemoryBudget(final long memoryBudget) {
+        mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return the estimated GPU memory in bytes of all the loaded Textures
+     */
+    public long getMemoryUsage() {
+        return mMemoryUsage;
+    }
+
+    /**
+     * @return the number of frames updated so far
+     */
+    public int getFrame() {
+        return mFrame;
+    }
+
+    /**
+     * @return the number of Textures evicted so far due to the memory budget
+     */
+    public int getNumEvictions() {
+        return mNumEvictions;
+    }
+
+    /**
+     * @return the shared loader of all async Textures, created on demand
+     */
+    public TextureLoader getTextureLoader() {
+        if (mTextureLoader == null && mScene != null) {
+            mTextureLoader = new TextureLoader(mScene, TextureLoader.DEFAULT_NUM_THREADS);
+        }
+
+        return mTextureLoader;
+    }
+
+    /**
+     * @return the shared atlas that packs small images into a few pages, created on demand
+     */
+    public DynamicAtlas getDynamicAtlas() {
+        if (mDynamicAtlas == null) {
+            mDynamicAtlas = new DynamicAtlas(this, mResources, DynamicAtlas.DEFAULT_PAGE_SIZE, null);
+        }
+
+        return mDynamicAtlas;
+    }
+
     /**
      * Call this when GL changed
      * 
@@ -337,6 +411,8 @@ public class TextureManager {
         Log.v(TAG, String.format("createBufferTexture( %d, %d)", width, height));
 
         final BufferTexture texture = new BufferTexture(mGLState, width, height, checkPo2);
+        // frame buffer content cannot be reloaded
+        texture.setPinned(true);
 
         // add to list
         addTexture(texture);
@@ -375,7 +451,19 @@ public class TextureManager {
      * @return
      */
     public boolean addTexture(final Texture texture) {
-        return mTextures.add(texture);
+        if (mTextures.add(texture)) {
+            texture.mManager = this;
+            texture.mLastBindFrame = mFrame;
+            mMemoryUsage += texture.mNumBytes;
+
+            // most textures load in their constructors, before being attached here, so enforce the budget now
+            if (texture.mNumBytes > 0) {
+                reserve(texture, 0);
+            }
+            return true;
+        }
+
+        return false;
     }
 
     /**
@@ -385,7 +473,12 @@ public class TextureManager {
      */
     public void removeTexture(final Texture texture) {
         if (mTextures.remove(texture)) {
+            // cancel the pending decode, if any
+            if (texture.mLoadRequest != null) {
+                texture.mLoadRequest.mLoader.cancel(texture);
+            }
             texture.unload();
+            texture.mManager = null;
         }
     }
 
@@ -429,11 +522,77 @@ public class TextureManager {
     public void removeAllTextures() {
         Log.v(TAG, "removeAllTextures()");
 
-        // unload all first
+        // cancel pending decodes and unload all first
+        if (mTextureLoader != null) {
+            mTextureLoader.cancelAll();
+        }
         unloadAllTextures();
 
         // empty
+        final int len = mTextures.size();
+        for (int i = 0; i < len; i++) {
+            mTextures.get(i).mManager = null;
+        }
         mTextures.clear();
+        mMemoryUsage = 0;
+        // its pages are gone
+        mDynamicAtlas = null;
+    }
+
+    /**
+     * Make room for a Texture that is about to be loaded, by evicting the least recently bound Textures.
+     * 
+     * @param texture
+     * @param numBytes
+     */
+    void reserve(final Texture texture, final int numBytes) {
+        if (mMemoryBudget <= 0) {
+            return;
+        }
+
+        while (mMemoryUsage + numBytes > mMemoryBudget) {
+            final Texture victim = findEvictableTexture(texture);
+            if (victim == null) {
+                Log.w(TAG, String.format("Texture memory budget exceeded: %d + %d > %d bytes", mMemoryUsage, numBytes, mMemoryBudget));
+                return;
+            }
+
+            Log.v(TAG, String.format("Evicting %s, %d bytes", victim, victim.mNumBytes));
+            victim.unload();
+            // expired textures reload themselves on the next bind
+            victim.mExpired = true;
+            mNumEvictions++;
+        }
+    }
+
+    /**
+     * Find the least recently bound Texture that can be evicted.
+     * 
+     * @param exception the Texture being loaded
+     * @return null if there is none
+     */
+    protected Texture findEvictableTexture(final Texture exception) {
+        // still in use if bound in this or the previous frame
+        final int lastFrame = mFrame - 2;
+        Texture lru = null;
+        final int len = mTextures.size();
+        for (int i = 0; i < len; i++) {
+            final Texture texture = mTextures.get(i);
+            if (texture != exception && texture.mNumBytes > 0 && !texture.isPinned() && texture.mLastBindFrame <= lastFrame && (lru == null || texture.mLastBindFrame < lru.mLastBindFrame)) {
+                lru = texture;
+            }
+        }
+
+        return lru;
+    }
+
+    void onTextureLoad(final Texture texture) {
+        mMemoryUsage += texture.mNumBytes;
+        texture.mLastBindFrame = mFrame;
+    }
+
+    void onTextureUnload(final Texture texture) {
+        mMemoryUsage -= texture.mNumBytes;
     }
 
     /**
@@ -441,6 +600,8 @@ public class TextureManager {
      * @param deltaTime
      */
     public void update(final int deltaTime) {
+        mFrame++;
+
         // negative check
         if (mExpirationCheckInterval > 0) {
 
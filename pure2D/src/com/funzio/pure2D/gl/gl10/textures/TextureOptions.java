@@ -37,6 +37,7 @@ public class TextureOptions extends BitmapFactory.Options {
     public float inScaleY = 1;
     public boolean inPo2 = !Pure2D.GL_NPOT_TEXTURE_SUPPORTED; // power of 2 dimensions
     public int inMipmaps = 0; // for GL texture mipmapping
+    public int inLoadPriority = TextureLoader.PRIORITY_VISIBLE; // for async loading
 
     /**
      * Use {@link #getDefault()} to create a default instance
@@ -59,6 +60,7 @@ public class TextureOptions extends BitmapFactory.Options {
         options.inScaleX = options.inScaleY = 1;
         options.inPo2 = !Pure2D.GL_NPOT_TEXTURE_SUPPORTED;
         options.inMipmaps = 0;
+        options.inLoadPriority = TextureLoader.PRIORITY_VISIBLE;
 
         return options;
     }
@@ -73,5 +75,6 @@ public class TextureOptions extends BitmapFactory.Options {
         inScaleY = options.inScaleY;
         inPo2 = options.inPo2;
         inMipmaps = options.inMipmaps;
+        inLoadPriority = options.inLoadPriority;
     }
 }
@@ -116,6 +116,19 @@ public class URLCacheTexture extends Texture {
         mCachePath = cachePath;
         mOptions = options;
 
+        final TextureLoader loader = getTextureLoader();
+        if (loader != null) {
+            loader.load(this, "cache:" + cachePath, options, new TextureLoader.Decoder() {
+
+                @Override
+                public Bitmap decode(final int[] dimensions) {
+                    return getCacheBitmap(fileUrl, cachePath, options, dimensions);
+                }
+            }, options != null ? options.inLoadPriority : TextureLoader.PRIORITY_VISIBLE);
+            return;
+        }
+
+        // no manager, fall back to a standalone AsyncTask
         // AsyncTask can only be initialized on UI Thread, especially on Android 2.2
         mGLState.getStage().getHandler().post(new Runnable() {
             @Override
@@ -131,6 +144,22 @@ public class URLCacheTexture extends Texture {
 
     }
 
+    /**
+     * Decode the cached file, download it first if needed
+     */
+    private static Bitmap getCacheBitmap(final String fileUrl, final String cachePath, final TextureOptions options, final int[] dimensions) {
+        if (new File(cachePath).exists()) {
+            return Pure2DUtils.getFileBitmap(cachePath, options, dimensions);
+        } else if (fileUrl != null && fileUrl.length() > 0) {
+            // try to download and cache
+            if (new DownloadTask(fileUrl, cachePath).run()) {
+                return Pure2DUtils.getFileBitmap(cachePath, options, dimensions);
+            }
+        }
+
+        return null;
+    }
+
     private class AsyncLoader extends AsyncTask<Void, Void, Void> {
         @Override
         protected Void doInBackground(final Void... params) {
@@ -99,6 +99,19 @@ public class URLTexture extends Texture {
         mURL = filePath;
         mOptions = options;
 
+        final TextureLoader loader = getTextureLoader();
+        if (loader != null) {
+            loader.load(this, "url:" + filePath, options, new TextureLoader.Decoder() {
+
+                @Override
+                public Bitmap decode(final int[] dimensions) {
+                    return Pure2DUtils.getURLBitmap(filePath, options, dimensions);
+                }
+            }, options != null ? options.inLoadPriority : TextureLoader.PRIORITY_VISIBLE);
+            return;
+        }
+
+        // no manager, fall back to a standalone AsyncTask
         // AsyncTask can only be initialized on UI Thread, especially on Android 2.2
         mGLState.getStage().getHandler().post(new Runnable() {
             @Override
@@ -43,6 +43,7 @@ public abstract class AbstractGrid<T> implements Grid<T> {
     protected RectF mBounds = new RectF();
 
     protected ArrayList<PointF> mScratchList;
+    protected ArrayList<Listener> mListeners;
 
     public AbstractGrid(final int width, final int height) {
         setSize(width, height);
@@ -63,6 +64,12 @@ public abstract class AbstractGrid<T> implements Grid<T> {
         mData = (T[][]) new Object[h][w];
 
         updateBounds();
+
+        if (mListeners != null) {
+            for (int i = 0, size = mListeners.size(); i < size; i++) {
+                mListeners.get(i).onGridResized(this);
+            }
+        }
     }
 
     /*
@@ -89,7 +96,30 @@ public abstract class AbstractGrid<T> implements Grid<T> {
             return;
         }
 
-        mData[cellY][cellX] = data;
+        if (mListeners != null && mData[cellY][cellX] != data) {
+            mData[cellY][cellX] = data;
+            for (int i = 0, size = mListeners.size(); i < size; i++) {
+                mListeners.get(i).onGridDataChanged(this, cellX, cellY);
+            }
+        } else {
+            mData[cellY][cellX] = data;
+        }
+    }
+
+    public void addListener(final Listener listener) {
+        if (mListeners == null) {
+            mListeners = new ArrayList<Listener>();
+        }
+
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(final Listener listener) {
+        if (mListeners != null) {
+            mListeners.remove(listener);
+        }
     }
 
     public void dispose() {
@@ -246,4 +276,22 @@ public abstract class AbstractGrid<T> implements Grid<T> {
 
         return count;
     }
+
+    public static interface Listener {
+        /**
+         * Called by setDataAt() when the data of a cell changes
+         * 
+         * @param grid
+         * @param cellX
+         * @param cellY
+         */
+        public void onGridDataChanged(Grid<?> grid, int cellX, int cellY);
+
+        /**
+         * Called by setSize(). All the data is cleared, anything sized or indexed for the old grid has to be rebuilt.
+         * 
+         * @param grid
+         */
+        public void onGridResized(Grid<?> grid);
+    }
 }
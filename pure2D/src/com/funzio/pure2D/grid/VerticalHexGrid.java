@@ -133,6 +133,10 @@ public class VerticalHexGrid<T> extends HexGrid<T> {
         mBounds.bottom = (mCellRadius * SQRT_3) * (mSize.y + (mEvenColumn ? -1 : 1) * 0.5f);
     }
 
+    public boolean isEvenColumn() {
+        return mEvenColumn;
+    }
+
     public int[][] getNeighborOffets() {
         return mEvenColumn ? EVEN_COLUMN_NEIGHBOR_OFFSETS : ODD_COLUMN_NEIGHBOR_OFFSETS;
     }
@@ -185,19 +189,19 @@ public class VerticalHexGrid<T> extends HexGrid<T> {
         int cx1, cy1, cz1, cx2, cy2, cz2;
         if (mEvenColumn) {
             cx1 = x1;
-            cz1 = y1 - (x1 + x1 & 1) / 2;
+            cz1 = y1 - (x1 + (x1 & 1)) / 2;
             cy1 = -cx1 - cz1;
 
             cx2 = x2;
-            cz2 = y2 - (x2 + x2 & 1) / 2;
+            cz2 = y2 - (x2 + (x2 & 1)) / 2;
             cy2 = -cx2 - cz2;
         } else {
             cx1 = x1;
-            cz1 = y1 - (x1 - x1 & 1) / 2;
+            cz1 = y1 - (x1 - (x1 & 1)) / 2;
             cy1 = -cx1 - cz1;
 
             cx2 = x2;
-            cz2 = y2 - (x2 - x2 & 1) / 2;
+            cz2 = y2 - (x2 - (x2 & 1)) / 2;
             cy2 = -cx2 - cz2;
         }
 
@@ -33,6 +33,7 @@ import android.os.Build;
 
 import com.funzio.pure2D.loaders.tasks.Task;
 import com.funzio.pure2D.loaders.tasks.Task.TaskListener;
+import com.funzio.pure2D.loaders.tasks.TaskGroup;
 
 /**
  * @author sajjadtabib
@@ -44,6 +45,8 @@ public class AsyncTaskExecuter<T extends Task> extends AsyncTask<T, Float, List<
     protected int mNumTasksCompleted = 0;
 
     protected boolean mStopOnTaskFailed = false;
+    protected int mMaxConcurrency = 1;
+    protected int mMaxConcurrencyPerHost = 0;
 
     /*
      * (non-Javadoc)
@@ -53,6 +56,10 @@ public class AsyncTaskExecuter<T extends Task> extends AsyncTask<T, Float, List<
     protected List<T> doInBackground(final T... taskList) {
         mNumTasks = taskList.length;
 
+        if (mMaxConcurrency != 1) {
+            return doInParallel(taskList);
+        }
+
         final List<T> executedTasks = new ArrayList<T>();
         for (int i = 0; i < mNumTasks; i++) {
             final T task = taskList[i];
@@ -77,6 +84,42 @@ public class AsyncTaskExecuter<T extends Task> extends AsyncTask<T, Float, List<
         return executedTasks;
     }
 
+    /**
+     * Run the tasks with a {@link TaskGroup} in the scheduled mode. The tasks are listed in the order they complete.
+     * 
+     * @param taskList
+     * @return
+     */
+    protected List<T> doInParallel(final T... taskList) {
+        final List<T> executedTasks = new ArrayList<T>();
+        final TaskGroup group = new TaskGroup();
+        group.setMaxConcurrency(mMaxConcurrency);
+        group.setMaxConcurrencyPerHost(mMaxConcurrencyPerHost);
+        group.setStopOnTaskFailed(mStopOnTaskFailed);
+        group.addTasks(taskList);
+        group.setTaskListener(new TaskListener() {
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public void onTaskComplete(final Task task) {
+                if (task.isSucceeded()) {
+                    mNumTasksCompleted++;
+                }
+
+                // callback
+                if (mTaskListener != null) {
+                    mTaskListener.onTaskComplete(task);
+                }
+
+                // add to the list
+                executedTasks.add((T) task);
+            }
+        });
+        group.run();
+
+        return executedTasks;
+    }
+
     // @Override
     // protected void onPostExecute(final List<T> result) {
     // super.onPostExecute(result);
@@ -109,6 +152,27 @@ public class AsyncTaskExecuter<T extends Task> extends AsyncTask<T, Float, List<
         mStopOnTaskFailed = stopOnTaskFailed;
     }
 
+    public int getMaxConcurrency() {
+        return mMaxConcurrency;
+    }
+
+    /**
+     * Set the max number of tasks running at the same time, see {@link TaskGroup#setMaxConcurrency(int)}
+     * 
+     * @param maxConcurrency 0 for no limit
+     */
+    public void setMaxConcurrency(final int maxConcurrency) {
+        mMaxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxConcurrencyPerHost() {
+        return mMaxConcurrencyPerHost;
+    }
+
+    public void setMaxConcurrencyPerHost(final int maxConcurrencyPerHost) {
+        mMaxConcurrencyPerHost = maxConcurrencyPerHost;
+    }
+
     /**
      * If Thread Pool supported, use it to execute; otherwise execute normally
      * 
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.loaders.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Lists the content of a set of files by hash: the hash of each file and the hashes of its fixed-size chunks. Stored as a properties file, one line per path:
+ * 
+ * <pre>
+ * path/to/file = size fileHash chunkHash1 chunkHash2 ...
+ * </pre>
+ * 
+ * @author long
+ * @see ContentUpdateTaskGroup
+ */
+public class ContentManifest {
+    public static final String DEFAULT_ALGORITHM = "SHA-1";
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    // reserved keys, paths don't start with @
+    private static final String KEY_ALGORITHM = "@algorithm";
+    private static final String KEY_CHUNK_SIZE = "@chunk_size";
+
+    protected final String mAlgorithm;
+    protected final int mChunkSize;
+    // sorted, for a stable order
+    protected final TreeMap<String, Entry> mEntries = new TreeMap<String, Entry>();
+
+    public ContentManifest(final String algorithm, final int chunkSize) {
+        mAlgorithm = algorithm;
+        mChunkSize = chunkSize;
+    }
+
+    public String getAlgorithm() {
+        return mAlgorithm;
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    public void addEntry(final Entry entry) {
+        mEntries.put(entry.path, entry);
+    }
+
+    public Entry getEntry(final String path) {
+        return mEntries.get(path);
+    }
+
+    public Collection<Entry> getEntries() {
+        return mEntries.values();
+    }
+
+    public int getNumEntries() {
+        return mEntries.size();
+    }
+
+    /**
+     * @param properties
+     * @return the manifest
+     * @throws IllegalArgumentException if an entry is malformed
+     */
+    public static ContentManifest fromProperties(final Properties properties) {
+        final ContentManifest manifest = new ContentManifest(properties.getProperty(KEY_ALGORITHM, DEFAULT_ALGORITHM), Integer.parseInt(properties.getProperty(KEY_CHUNK_SIZE,
+                String.valueOf(DEFAULT_CHUNK_SIZE))));
+
+        final Enumeration<?> keys = properties.propertyNames();
+        while (keys.hasMoreElements()) {
+            final String path = (String) keys.nextElement();
+            if (path.startsWith("@")) {
+                continue;
+            }
+
+            final String[] values = properties.getProperty(path).trim().split("\\s+");
+            if (values.length < 2) {
+                throw new IllegalArgumentException("Invalid entry: " + path);
+            }
+            final long size = Long.parseLong(values[0]);
+            final String[] chunks = new String[values.length - 2];
+            System.arraycopy(values, 2, chunks, 0, chunks.length);
+            if (chunks.length != (size + manifest.mChunkSize - 1) / manifest.mChunkSize) {
+                throw new IllegalArgumentException("Invalid chunks: " + path);
+            }
+
+            manifest.addEntry(new Entry(path, size, values[1], chunks));
+        }
+
+        return manifest;
+    }
+
+    public Properties toProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_ALGORITHM, mAlgorithm);
+        properties.setProperty(KEY_CHUNK_SIZE, String.valueOf(mChunkSize));
+
+        final StringBuilder sb = new StringBuilder();
+        for (final Entry entry : mEntries.values()) {
+            sb.setLength(0);
+            sb.append(entry.size).append(' ').append(entry.hash);
+            for (int i = 0; i < entry.chunks.length; i++) {
+                sb.append(' ').append(entry.chunks[i]);
+            }
+            properties.setProperty(entry.path, sb.toString());
+        }
+
+        return properties;
+    }
+
+    /**
+     * Build a manifest of all the files in a directory, for publishing an update
+     * 
+     * @param dir
+     * @param algorithm
+     * @param chunkSize
+     * @return the manifest
+     * @throws Exception
+     */
+    public static ContentManifest build(final File dir, final String algorithm, final int chunkSize) throws Exception {
+        final ContentManifest manifest = new ContentManifest(algorithm, chunkSize);
+        addFiles(manifest, dir, "");
+
+        return manifest;
+    }
+
+    private static void addFiles(final ContentManifest manifest, final File dir, final String prefix) throws Exception {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                addFiles(manifest, file, prefix + file.getName() + "/");
+            } else {
+                manifest.addEntry(createEntry(file, prefix + file.getName(), manifest.mAlgorithm, manifest.mChunkSize));
+            }
+        }
+    }
+
+    /**
+     * Hash a file and its chunks in one pass
+     * 
+     * @param file
+     * @param path
+     * @param algorithm
+     * @param chunkSize
+     * @return the entry
+     * @throws Exception
+     */
+    public static Entry createEntry(final File file, final String path, final String algorithm, final int chunkSize) throws Exception {
+        final MessageDigest fileDigest = MessageDigest.getInstance(algorithm);
+        final MessageDigest chunkDigest = MessageDigest.getInstance(algorithm);
+        final long size = file.length();
+        final String[] chunks = new String[(int) ((size + chunkSize - 1) / chunkSize)];
+
+        final byte[] buffer = new byte[chunkSize];
+        final FileInputStream inputStream = new FileInputStream(file);
+        try {
+            for (int i = 0; i < chunks.length; i++) {
+                final int length = (int) Math.min(chunkSize, size - (long) i * chunkSize);
+                int count = 0, n;
+                while (count < length && (n = inputStream.read(buffer, count, length - count)) != -1) {
+                    count += n;
+                }
+                fileDigest.update(buffer, 0, count);
+                chunkDigest.update(buffer, 0, count);
+                chunks[i] = DownloadTask.toHex(chunkDigest.digest());
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return new Entry(path, size, DownloadTask.toHex(fileDigest.digest()), chunks);
+    }
+
+    public static class Entry {
+        public final String path;
+        public final long size;
+        public final String hash;
+        public final String[] chunks;
+
+        public Entry(final String path, final long size, final String hash, final String[] chunks) {
+            this.path = path;
+            this.size = size;
+            this.hash = hash;
+            this.chunks = chunks;
+        }
+    }
+}
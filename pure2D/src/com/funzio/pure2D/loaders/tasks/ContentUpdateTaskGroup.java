@@ -0,0 +1,591 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.loaders.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+/**
+ * Updates a local content-addressed store from a remote {@link ContentManifest}. Each file is stored once under its hash in the "objects" folder. A changed file is assembled from
+ * the chunks already in the store, and only the missing chunks are downloaded, with Range requests on the remote file. A chunk shared by several new files is downloaded once: the
+ * other files wait for it with {@link #addDependency(Task, Task)}. The live manifest is only swapped when all the files are in place, so readers see either the old or the new
+ * content, never a mix.
+ * 
+ * @author long
+ */
+public class ContentUpdateTaskGroup extends TaskGroup {
+    private static final String TAG = ContentUpdateTaskGroup.class.getSimpleName();
+
+    public static final String MANIFEST_FILE = "manifest.properties";
+    public static final String OBJECTS_DIR = "objects";
+
+    protected final String mManifestURL;
+    protected final String mBaseURL;
+    protected final File mStoreDir;
+    protected final File mObjectsDir;
+    protected boolean mCollectingGarbage = true;
+
+    private ContentManifest mLiveManifest;
+    private ContentManifest mRemoteManifest;
+    // chunk hash -> where to copy it from
+    private final HashMap<String, ChunkSource> mChunkSources = new HashMap<String, ChunkSource>();
+
+    // stats
+    private final AtomicLong mBytesDownloaded = new AtomicLong();
+    private final AtomicLong mBytesReused = new AtomicLong();
+    private long mTotalBytes = 0;
+    private long mElapsedTime = 0;
+
+    /**
+     * @param manifestURL the remote manifest, the files are next to it
+     * @param storeDir the local store
+     */
+    public ContentUpdateTaskGroup(final String manifestURL, final String storeDir) {
+        super();
+
+        mManifestURL = manifestURL;
+        mBaseURL = manifestURL.substring(0, manifestURL.lastIndexOf('/') + 1);
+        mStoreDir = new File(storeDir);
+        mObjectsDir = new File(mStoreDir, OBJECTS_DIR);
+    }
+
+    public ContentUpdateTaskGroup(final String manifestURL, final String storeDir, final int retryMax) {
+        this(manifestURL, storeDir);
+
+        setRetryMax(retryMax);
+    }
+
+    public ContentUpdateTaskGroup(final String manifestURL, final String storeDir, final int retryMax, final int retryDelay) {
+        this(manifestURL, storeDir);
+
+        setRetryMax(retryMax);
+        setRetryDelay(retryDelay);
+    }
+
+    /**
+     * The files are always scheduled, for the chunk dependencies and the retries
+     */
+    @Override
+    public boolean isScheduled() {
+        return true;
+    }
+
+    /**
+     * Plan and run the updates of the changed files, then swap the live manifest. The tasks of this group are replaced on each run.
+     */
+    @Override
+    protected boolean runTasks() {
+        final long startTime = System.currentTimeMillis();
+        mBytesDownloaded.set(0);
+        mBytesReused.set(0);
+
+        boolean success = plan() && super.runTasks();
+        if (success) {
+            success = swapManifest();
+        }
+
+        mElapsedTime = System.currentTimeMillis() - startTime;
+        Log.d(TAG, "Updated: " + success + ", total: " + mTotalBytes + ", downloaded: " + mBytesDownloaded.get() + ", reused: " + mBytesReused.get() + ", " + mElapsedTime + "ms");
+
+        return success;
+    }
+
+    /**
+     * Compare the remote manifest with the store and create a task for each missing file
+     * 
+     * @return false if the remote manifest can't be loaded
+     */
+    protected boolean plan() {
+        clearTasks();
+        mNumTasksCompleted = 0;
+        mTotalBytes = 0;
+
+        final URLLoadPropertiesTask manifestTask = new URLLoadPropertiesTask(mManifestURL, getRetryMax(), getRetryDelay());
+        if (!manifestTask.run()) {
+            Log.e(TAG, "Unable to load: " + mManifestURL);
+            return false;
+        }
+        try {
+            mRemoteManifest = ContentManifest.fromProperties(manifestTask.getContent());
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "MANIFEST ERROR!", e);
+            return false;
+        }
+
+        // find the chunks we already have
+        final ContentManifest liveManifest = getLiveManifest();
+        synchronized (mChunkSources) {
+            mChunkSources.clear();
+            if (liveManifest != null && liveManifest.getAlgorithm().equals(mRemoteManifest.getAlgorithm())) {
+                for (final ContentManifest.Entry entry : liveManifest.getEntries()) {
+                    final File object = getObjectFile(entry.hash);
+                    if (object.exists()) {
+                        addChunkSources(entry, object, liveManifest.getChunkSize());
+                    }
+                }
+            }
+        }
+
+        mObjectsDir.mkdirs();
+        final HashMap<String, ObjectTask> objectTasks = new HashMap<String, ObjectTask>();
+        final HashMap<String, ObjectTask> chunkOwners = new HashMap<String, ObjectTask>();
+        for (final ContentManifest.Entry entry : mRemoteManifest.getEntries()) {
+            mTotalBytes += entry.size;
+            if (getObjectFile(entry.hash).exists() || objectTasks.containsKey(entry.hash)) {
+                // same content, nothing to load
+                mBytesReused.addAndGet(entry.size);
+                continue;
+            }
+
+            final ObjectTask task = new ObjectTask(entry, mBaseURL + entry.path);
+            objectTasks.put(entry.hash, task);
+            addTask(task);
+
+            // the first file needing a chunk loads it, the others wait. So dependencies always point to earlier tasks
+            for (int i = 0; i < entry.chunks.length; i++) {
+                final String chunk = entry.chunks[i];
+                if (mChunkSources.containsKey(chunk)) {
+                    continue;
+                }
+
+                final ObjectTask owner = chunkOwners.get(chunk);
+                if (owner == null) {
+                    chunkOwners.put(chunk, task);
+                } else if (owner != task) {
+                    final List<Task> dependencies = getDependencies(task);
+                    if (dependencies == null || !dependencies.contains(owner)) {
+                        addDependency(task, owner);
+                    }
+                }
+            }
+        }
+
+        Log.d(TAG, "Files to update: " + mTasks.size() + " / " + mRemoteManifest.getNumEntries());
+
+        return true;
+    }
+
+    /**
+     * Assemble an object file from the existing chunks and the downloaded ranges, called on a worker thread
+     * 
+     * @param entry
+     * @param url
+     * @return true if the object is in place and verified
+     */
+    protected boolean buildObject(final ContentManifest.Entry entry, final String url) {
+        final File object = getObjectFile(entry.hash);
+        final File partFile = new File(object.getPath() + DownloadTask.PART_EXTENSION);
+        final int chunkSize = mRemoteManifest.getChunkSize();
+        final int numChunks = entry.chunks.length;
+        // left from a failed try, check its chunks before loading them again
+        final boolean resuming = partFile.exists() && partFile.length() == entry.size;
+
+        long reused = 0;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(partFile, "rw");
+            file.setLength(entry.size);
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+            final MessageDigest digest = MessageDigest.getInstance(mRemoteManifest.getAlgorithm());
+
+            // copy what we have
+            final boolean[] missing = new boolean[numChunks];
+            for (int i = 0; i < numChunks; i++) {
+                final long offset = (long) i * chunkSize;
+                final int length = (int) Math.min(chunkSize, entry.size - offset);
+                if (resuming && matchChunk(channel, offset, length, entry.chunks[i], buffer, digest)) {
+                    continue;
+                }
+
+                final ChunkSource source;
+                synchronized (mChunkSources) {
+                    source = mChunkSources.get(entry.chunks[i]);
+                }
+                if (source != null && source.length == length && copyChunk(source, channel, offset, buffer)) {
+                    reused += length;
+                } else {
+                    missing[i] = true;
+                }
+            }
+
+            // now load the missing ranges
+            for (int i = 0; i < numChunks;) {
+                if (!missing[i]) {
+                    i++;
+                    continue;
+                }
+
+                int j = i + 1;
+                while (j < numChunks && missing[j]) {
+                    j++;
+                }
+                if (!downloadRange(url, channel, (long) i * chunkSize, Math.min((long) j * chunkSize, entry.size))) {
+                    return false;
+                }
+                i = j;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "BUILD ERROR! " + entry.path, e);
+            return false;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // TODO nothing
+                }
+            }
+        }
+
+        // verify the whole file
+        try {
+            if (!entry.hash.equalsIgnoreCase(DownloadTask.computeHash(partFile, mRemoteManifest.getAlgorithm()))) {
+                Log.e(TAG, "VERIFY ERROR! " + entry.path);
+                partFile.delete();
+                return false;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "HASH ERROR! " + entry.path, e);
+            return false;
+        }
+
+        if (!partFile.renameTo(object)) {
+            return false;
+        }
+        mBytesReused.addAndGet(reused);
+
+        // share the chunks with the next files
+        synchronized (mChunkSources) {
+            addChunkSources(entry, object, chunkSize);
+        }
+
+        return true;
+    }
+
+    private void addChunkSources(final ContentManifest.Entry entry, final File object, final int chunkSize) {
+        for (int i = 0; i < entry.chunks.length; i++) {
+            if (!mChunkSources.containsKey(entry.chunks[i])) {
+                final long offset = (long) i * chunkSize;
+                mChunkSources.put(entry.chunks[i], new ChunkSource(object, offset, (int) Math.min(chunkSize, entry.size - offset)));
+            }
+        }
+    }
+
+    private static boolean matchChunk(final FileChannel channel, final long offset, final int length, final String hash, final ByteBuffer buffer, final MessageDigest digest)
+            throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                return false;
+            }
+        }
+
+        digest.reset();
+        digest.update(buffer.array(), 0, length);
+        return hash.equalsIgnoreCase(DownloadTask.toHex(digest.digest()));
+    }
+
+    private static boolean copyChunk(final ChunkSource source, final FileChannel channel, final long offset, final ByteBuffer buffer) {
+        try {
+            final FileInputStream inputStream = new FileInputStream(source.file);
+            try {
+                final FileChannel sourceChannel = inputStream.getChannel();
+                buffer.clear();
+                buffer.limit(source.length);
+                while (buffer.hasRemaining()) {
+                    if (sourceChannel.read(buffer, source.offset + buffer.position()) < 0) {
+                        return false;
+                    }
+                }
+            } finally {
+                inputStream.close();
+            }
+
+            buffer.flip();
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            return true;
+        } catch (IOException e) {
+            // the source is gone, load it instead
+            return false;
+        }
+    }
+
+    /**
+     * Download a range of a remote file into the same range of the object
+     * 
+     * @param url
+     * @param channel
+     * @param start
+     * @param end exclusive
+     * @return true if the range is complete
+     */
+    protected boolean downloadRange(final String url, final FileChannel channel, final long start, final long end) {
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setConnectTimeout(URLTask.DEFAULT_TIMEOUT);
+            conn.setReadTimeout(URLTask.DEFAULT_TIMEOUT);
+            conn.setRequestProperty("Accept-Encoding", "identity");
+            conn.setRequestProperty("Range", "bytes=" + start + "-" + (end - 1));
+
+            final int code = conn.getResponseCode();
+            // without range support, the whole file comes
+            long skip;
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                skip = 0;
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                skip = start;
+            } else {
+                Log.e(TAG, "HTTP ERROR! " + code + ", " + url);
+                return false;
+            }
+
+            final InputStream inputStream = conn.getInputStream();
+            final byte[] buffer = new byte[DownloadTask.DOWNLOAD_BUFFER];
+            long position = start;
+            int count;
+            try {
+                while (position < end && (count = inputStream.read(buffer, 0, (int) Math.min(buffer.length, skip > 0 ? skip : end - position))) != -1) {
+                    if (skip > 0) {
+                        skip -= count;
+                        continue;
+                    }
+
+                    final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, count);
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+                    mBytesDownloaded.addAndGet(count);
+                }
+            } finally {
+                inputStream.close();
+            }
+
+            return position == end;
+        } catch (IOException e) {
+            Log.e(TAG, "DOWNLOAD ERROR! " + url, e);
+            return false;
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Replace the live manifest with the remote one, then remove the objects no longer used
+     * 
+     * @return true if swapped
+     */
+    protected boolean swapManifest() {
+        final File manifestFile = new File(mStoreDir, MANIFEST_FILE);
+        final File tempFile = new File(mStoreDir, MANIFEST_FILE + DownloadTask.PART_EXTENSION);
+        try {
+            final FileOutputStream outputStream = new FileOutputStream(tempFile);
+            try {
+                mRemoteManifest.toProperties().store(outputStream, null);
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "WRITE MANIFEST ERROR!", e);
+            return false;
+        }
+
+        // rename is atomic
+        if (!tempFile.renameTo(manifestFile)) {
+            return false;
+        }
+        mLiveManifest = mRemoteManifest;
+
+        if (mCollectingGarbage) {
+            collectGarbage();
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the objects and parts that are not in the live manifest
+     */
+    protected void collectGarbage() {
+        final File[] files = mObjectsDir.listFiles();
+        if (files == null || mLiveManifest == null) {
+            return;
+        }
+
+        final HashSet<String> names = new HashSet<String>();
+        for (final ContentManifest.Entry entry : mLiveManifest.getEntries()) {
+            names.add(entry.hash);
+        }
+        for (final File file : files) {
+            if (!names.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the live manifest of the store, null if there is none
+     */
+    public ContentManifest getLiveManifest() {
+        if (mLiveManifest == null) {
+            final File manifestFile = new File(mStoreDir, MANIFEST_FILE);
+            if (manifestFile.exists()) {
+                final ReadPropertiesFileTask task = new ReadPropertiesFileTask(manifestFile.getPath());
+                if (task.run()) {
+                    try {
+                        mLiveManifest = ContentManifest.fromProperties(task.getContent());
+                    } catch (IllegalArgumentException e) {
+                        Log.e(TAG, "MANIFEST ERROR!", e);
+                    }
+                }
+            }
+        }
+
+        return mLiveManifest;
+    }
+
+    /**
+     * Find the local file of a path in the live manifest
+     * 
+     * @param path
+     * @return the file, or null if the path is not in the store
+     */
+    public File getFile(final String path) {
+        final ContentManifest manifest = getLiveManifest();
+        final ContentManifest.Entry entry = manifest != null ? manifest.getEntry(path) : null;
+
+        return entry != null ? getObjectFile(entry.hash) : null;
+    }
+
+    protected File getObjectFile(final String hash) {
+        return new File(mObjectsDir, hash);
+    }
+
+    public boolean isCollectingGarbage() {
+        return mCollectingGarbage;
+    }
+
+    public void setCollectingGarbage(final boolean collectingGarbage) {
+        mCollectingGarbage = collectingGarbage;
+    }
+
+    /**
+     * @return the size of all the files in the remote manifest
+     */
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    public long getBytesDownloaded() {
+        return mBytesDownloaded.get();
+    }
+
+    /**
+     * @return the number of bytes that didn't need to be downloaded
+     */
+    public long getBytesReused() {
+        return mBytesReused.get();
+    }
+
+    /**
+     * @return the duration of the last run, in ms
+     */
+    public long getElapsedTime() {
+        return mElapsedTime;
+    }
+
+    /**
+     * @return the bytes downloaded per second in the last run
+     */
+    public float getThroughput() {
+        return mElapsedTime > 0 ? mBytesDownloaded.get() * 1000f / mElapsedTime : 0;
+    }
+
+    protected class ObjectTask implements Task {
+        protected final ContentManifest.Entry mEntry;
+        protected final String mURL;
+        private boolean mSucceeded = false;
+
+        public ObjectTask(final ContentManifest.Entry entry, final String url) {
+            mEntry = entry;
+            mURL = url;
+        }
+
+        @Override
+        public void reset() {
+            mSucceeded = false;
+        }
+
+        @Override
+        public boolean run() {
+            mSucceeded = buildObject(mEntry, mURL);
+            return mSucceeded;
+        }
+
+        @Override
+        public boolean isSucceeded() {
+            return mSucceeded;
+        }
+
+        public ContentManifest.Entry getEntry() {
+            return mEntry;
+        }
+    }
+
+    private static class ChunkSource {
+        final File file;
+        final long offset;
+        final int length;
+
+        ChunkSource(final File file, final long offset, final int length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
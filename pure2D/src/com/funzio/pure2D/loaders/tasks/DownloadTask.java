@@ -25,15 +25,26 @@
 package com.funzio.pure2D.loaders.tasks;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Properties;
 
 import android.content.Intent;
 import android.util.Log;
 
 /**
+ * Downloads into a ".part" file first, which is renamed to the destination once complete and verified. An interrupted download is resumed with an HTTP Range request, as long as the
+ * server says the file has not changed. Large files can also be split into range chunks that are downloaded in parallel, see {@link #setNumChunks(int)}.
+ * 
  * @author long
  */
 public class DownloadTask extends URLTask implements Retriable, Optional {
@@ -44,6 +55,20 @@ public class DownloadTask extends URLTask implements Retriable, Optional {
     public static final String INTENT_COMPLETE = CLASS_NAME + ".INTENT_COMPLETE";
     public static final String EXTRA_FILE_PATH = "filePath";
 
+    public static final String PART_EXTENSION = ".part";
+    public static final String INFO_EXTENSION = ".part.info";
+
+    protected static final int DOWNLOAD_BUFFER = 64 * 1024;
+    protected static final int LARGE_DOWNLOAD_BUFFER = 256 * 1024;
+    protected static final int LARGE_FILE_SIZE = 4 * 1024 * 1024;
+    protected static final long DEFAULT_CHUNK_MIN_SIZE = 8 * 1024 * 1024;
+
+    // the keys of the info file
+    private static final String KEY_VALIDATOR = "validator";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_CHUNKS = "chunks";
+    private static final String KEY_CHUNK = "chunk";
+
     protected final String mFilePath;
     protected boolean mOverriding = false;
     private OutputStream mOutputStream;
@@ -55,21 +80,32 @@ public class DownloadTask extends URLTask implements Retriable, Optional {
     private int mRetryMax = 0; // max number of retries
     private int mRetryDelay = 0; // delay between retries
 
+    protected boolean mResumable = true;
+    protected int mNumChunks = 1;
+    protected long mChunkMinSize = DEFAULT_CHUNK_MIN_SIZE;
+    private long mProbedLength;
+    private String mProbedValidator;
+
+    // integrity
+    protected long mExpectedSize = -1;
+    protected String mHashAlgorithm;
+    protected String mExpectedHash;
+
     public DownloadTask(final String srcURL, final String dstFilePath) {
-        super(srcURL);
+        super(srcURL, DOWNLOAD_BUFFER);
 
         mFilePath = dstFilePath;
     }
 
     public DownloadTask(final String srcURL, final String dstFilePath, final boolean overriding) {
-        super(srcURL);
+        super(srcURL, DOWNLOAD_BUFFER);
 
         mFilePath = dstFilePath;
         mOverriding = overriding;
     }
 
     public DownloadTask(final String srcURL, final String dstFilePath, final boolean overriding, final int retryMax) {
-        super(srcURL);
+        super(srcURL, DOWNLOAD_BUFFER);
 
         mFilePath = dstFilePath;
         mOverriding = overriding;
@@ -77,7 +113,7 @@ public class DownloadTask extends URLTask implements Retriable, Optional {
     }
 
     public DownloadTask(final String srcURL, final String dstFilePath, final boolean overriding, final int retryMax, final int retryDelay) {
-        super(srcURL);
+        super(srcURL, DOWNLOAD_BUFFER);
 
         mFilePath = dstFilePath;
         mOverriding = overriding;
@@ -111,51 +147,462 @@ public class DownloadTask extends URLTask implements Retriable, Optional {
     protected boolean download() {
 
         final File file = new File(mFilePath);
+        if (file.exists() && file.length() > 0 && !mOverriding) {
+            if (LOG_ENABLED) {
+                Log.v(TAG, mFilePath + " already exists. Skip!");
+            }
+            return true; // early success
+        }
+
+        // create the dirs if not existing
+        final File parentFile = file.getParentFile();
+        if (parentFile != null && !parentFile.exists()) {
+            parentFile.mkdirs();
+        }
+
+        final File partFile = new File(mFilePath + PART_EXTENSION);
+        final File infoFile = new File(mFilePath + INFO_EXTENSION);
+        final Properties info = mResumable ? readInfo(infoFile) : new Properties();
+
+        // run now
+        boolean success = false;
+        boolean chunked = false;
+        if (mNumChunks > 1 && probe()) {
+            chunked = true;
+            success = downloadChunks(partFile, info, mProbedLength, mProbedValidator);
+        }
+        if (!chunked) {
+            success = downloadStream(partFile, info);
+        }
+
+        if (success && !verify(partFile)) {
+            if (LOG_ENABLED) {
+                Log.e(TAG, "VERIFY ERROR! " + mFilePath);
+            }
+
+            // corrupted, don't resume from it
+            info.clear();
+            partFile.delete();
+            success = false;
+        }
+
+        if (success) {
+            // now replace the file
+            infoFile.delete();
+            if (file.exists()) {
+                file.delete();
+            }
+            success = partFile.renameTo(file);
+        } else if (mResumable && partFile.exists()) {
+            // keep for the next try
+            writeInfo(infoFile, info);
+        } else {
+            // remove the files
+            partFile.delete();
+            infoFile.delete();
+        }
+
+        return success;
+    }
+
+    /**
+     * Download the whole file with a single connection, resuming from the part file when possible
+     * 
+     * @param partFile
+     * @param info
+     * @return true if all the bytes are written
+     */
+    protected boolean downloadStream(final File partFile, final Properties info) {
+        final String validator = info.getProperty(KEY_VALIDATOR);
+        long offset = 0;
+        if (validator != null && Integer.parseInt(info.getProperty(KEY_CHUNKS, "1")) == 1 && partFile.exists()) {
+            offset = partFile.length();
+        }
+
+        HttpURLConnection conn = null;
         try {
-            if (file.exists() && file.length() > 0 && !mOverriding) {
+            conn = openConnection();
+            if (offset > 0) {
+                conn.setRequestProperty("Range", "bytes=" + offset + "-");
+                conn.setRequestProperty("If-Range", validator);
+            }
+
+            final int code = conn.getResponseCode();
+            if (code == 416 && offset > 0 && offset == Long.parseLong(info.getProperty(KEY_LENGTH, "-1"))) {
+                // nothing left to load
+                return true;
+            } else if (code == HttpURLConnection.HTTP_PARTIAL && offset > 0 && getRangeStart(conn) == offset) {
+                if (LOG_ENABLED) {
+                    Log.v(TAG, "Resuming " + mFilePath + " from " + offset);
+                }
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                // the whole file, start over
+                offset = 0;
+            } else {
                 if (LOG_ENABLED) {
-                    Log.v(TAG, mFilePath + " already exists. Skip!");
+                    Log.e(TAG, "HTTP ERROR! " + code + ", " + mURL);
+                }
+                if (code == 416) {
+                    // range not satisfiable, start over next time
+                    info.clear();
+                    partFile.delete();
                 }
-                return true; // early success
+                return false;
             }
 
-            // create the dirs if not existing
-            final File parentFile = file.getParentFile();
-            if (parentFile != null && !parentFile.exists()) {
-                parentFile.mkdirs();
+            final long length = getContentLength(conn);
+            final long total = length < 0 ? -1 : offset + length;
+            info.clear();
+            final String newValidator = getValidator(conn);
+            if (newValidator != null) {
+                info.setProperty(KEY_VALIDATOR, newValidator);
+            }
+            info.setProperty(KEY_LENGTH, String.valueOf(total));
+            info.setProperty(KEY_CHUNKS, "1");
+            mContentLength = (int) total;
+            adaptBuffer(total);
+
+            mOutputStream = new FileOutputStream(partFile, offset > 0);
+            try {
+                mTotalBytesLoaded = readStream(conn.getInputStream());
+            } finally {
+                // finalize
+                mOutputStream.flush();
+                mOutputStream.close();
             }
 
-            mOutputStream = new FileOutputStream(file);
-        } catch (FileNotFoundException e) {
+            return total < 0 || partFile.length() == total;
+        } catch (Exception e) {
             if (LOG_ENABLED) {
-                Log.e(TAG, "OPEN ERROR!", e);
+                Log.e(TAG, "DOWNLOAD ERROR!", e);
             }
             return false;
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
         }
+    }
 
-        // run now
-        boolean success = openURL();
+    /**
+     * Check whether the file is big enough to be chunked and the server supports ranges
+     * 
+     * @return true if the file should be chunked
+     */
+    protected boolean probe() {
+        HttpURLConnection conn = null;
         try {
-            // finalize
-            mOutputStream.flush();
-            mOutputStream.close();
+            conn = openConnection();
+            conn.setRequestMethod("HEAD");
+            if (conn.getResponseCode() == HttpURLConnection.HTTP_OK && "bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges"))) {
+                mProbedLength = getContentLength(conn);
+                mProbedValidator = getValidator(conn);
+                return mProbedValidator != null && mProbedLength >= mChunkMinSize;
+            }
         } catch (IOException e) {
             if (LOG_ENABLED) {
-                Log.e(TAG, "CLOSE ERROR!", e);
+                Log.v(TAG, "PROBE ERROR!", e);
+            }
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Download the chunks in parallel, each one writes to its own range of the part file. The progress of each chunk is kept in the info for resuming.
+     * 
+     * @param partFile
+     * @param info
+     * @param length
+     * @param validator
+     * @return true if all the chunks are complete
+     */
+    protected boolean downloadChunks(final File partFile, final Properties info, final long length, final String validator) {
+        final int numChunks = mNumChunks;
+        if (!validator.equals(info.getProperty(KEY_VALIDATOR)) || Long.parseLong(info.getProperty(KEY_LENGTH, "-1")) != length
+                || Integer.parseInt(info.getProperty(KEY_CHUNKS, "1")) != numChunks || !partFile.exists()) {
+            // the file changed, it's a different split or the part file is gone, start over
+            info.clear();
+            partFile.delete();
+        }
+        info.setProperty(KEY_VALIDATOR, validator);
+        info.setProperty(KEY_LENGTH, String.valueOf(length));
+        info.setProperty(KEY_CHUNKS, String.valueOf(numChunks));
+        mContentLength = (int) length;
+
+        final long[] loaded = new long[numChunks];
+        final boolean[] results = new boolean[numChunks];
+        final Thread[] threads = new Thread[numChunks];
+        final int bufferSize = length / numChunks > LARGE_FILE_SIZE ? LARGE_DOWNLOAD_BUFFER : DOWNLOAD_BUFFER;
+        RandomAccessFile file = null;
+        boolean success = true;
+        try {
+            file = new RandomAccessFile(partFile, "rw");
+            file.setLength(length);
+            final FileChannel channel = file.getChannel();
+
+            for (int i = 0; i < numChunks; i++) {
+                final int index = i;
+                final long start = length * i / numChunks;
+                final long end = length * (i + 1) / numChunks;
+                loaded[i] = Long.parseLong(info.getProperty(KEY_CHUNK + i, "0"));
+                if (start + loaded[i] >= end) {
+                    // already done
+                    results[i] = true;
+                    continue;
+                }
+
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        results[index] = downloadChunk(channel, validator, start, end, loaded, index, bufferSize);
+                    }
+                }, TAG + "-" + i);
+                threads[i].start();
             }
 
-            // uh oh!
+            for (int i = 0; i < numChunks; i++) {
+                if (threads[i] != null) {
+                    threads[i].join();
+                }
+                success &= results[i];
+            }
+        } catch (Exception e) {
+            if (LOG_ENABLED) {
+                Log.e(TAG, "DOWNLOAD ERROR!", e);
+            }
             success = false;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    success = false;
+                }
+            }
         }
 
-        if (!success) {
-            // remove the file
-            file.delete();
+        long total = 0;
+        for (int i = 0; i < numChunks; i++) {
+            info.setProperty(KEY_CHUNK + i, String.valueOf(loaded[i]));
+            total += loaded[i];
         }
+        mTotalBytesLoaded = (int) total;
 
         return success;
     }
 
+    /**
+     * Download a range of the file, called on the chunk's own thread
+     * 
+     * @param channel
+     * @param validator
+     * @param start
+     * @param end exclusive
+     * @param loaded the number of bytes loaded of each chunk, updated while downloading
+     * @param index
+     * @param bufferSize
+     * @return true if the range is complete
+     */
+    protected boolean downloadChunk(final FileChannel channel, final String validator, final long start, final long end, final long[] loaded, final int index, final int bufferSize) {
+        final long from = start + loaded[index];
+        HttpURLConnection conn = null;
+        try {
+            conn = openConnection();
+            conn.setRequestProperty("Range", "bytes=" + from + "-" + (end - 1));
+            conn.setRequestProperty("If-Range", validator);
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL || getRangeStart(conn) != from) {
+                // the file changed on the server
+                return false;
+            }
+
+            final InputStream inputStream = conn.getInputStream();
+            final byte[] buffer = new byte[bufferSize];
+            long position = from;
+            int count;
+            try {
+                while (position < end && (count = inputStream.read(buffer, 0, (int) Math.min(buffer.length, end - position))) != -1) {
+                    final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, count);
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+                    loaded[index] = position - start;
+                }
+            } finally {
+                inputStream.close();
+            }
+
+            return position == end;
+        } catch (Exception e) {
+            if (LOG_ENABLED) {
+                Log.e(TAG, "CHUNK ERROR! " + index, e);
+            }
+            return false;
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    protected HttpURLConnection openConnection() throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) new URL(mURL).openConnection();
+        conn.setConnectTimeout(DEFAULT_TIMEOUT);
+        conn.setReadTimeout(DEFAULT_TIMEOUT);
+        // ranges and sizes are only valid without gzip
+        conn.setRequestProperty("Accept-Encoding", "identity");
+
+        return conn;
+    }
+
+    /**
+     * Use a bigger buffer for a bigger file
+     * 
+     * @param length
+     */
+    protected void adaptBuffer(final long length) {
+        final int bufferSize = length > LARGE_FILE_SIZE ? LARGE_DOWNLOAD_BUFFER : Math.max(mBufferSize, DOWNLOAD_BUFFER);
+        if (bufferSize != mBufferSize) {
+            mBufferSize = bufferSize;
+            mBuffer = null;
+        }
+    }
+
+    /**
+     * @param partFile
+     * @return true if the part file matches the expected size and hash, if any
+     */
+    protected boolean verify(final File partFile) {
+        if (mExpectedSize >= 0 && partFile.length() != mExpectedSize) {
+            return false;
+        }
+
+        if (mHashAlgorithm != null && mExpectedHash != null) {
+            try {
+                return mExpectedHash.equalsIgnoreCase(computeHash(partFile, mHashAlgorithm));
+            } catch (Exception e) {
+                if (LOG_ENABLED) {
+                    Log.e(TAG, "HASH ERROR!", e);
+                }
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String getValidator(final HttpURLConnection conn) {
+        final String etag = conn.getHeaderField("ETag");
+        // weak tags can't be used for ranges
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+
+        return conn.getHeaderField("Last-Modified");
+    }
+
+    private static long getContentLength(final HttpURLConnection conn) {
+        final String length = conn.getHeaderField("Content-Length");
+        if (length != null) {
+            try {
+                return Long.parseLong(length.trim());
+            } catch (NumberFormatException e) {
+                // unknown
+            }
+        }
+
+        return -1;
+    }
+
+    private static long getRangeStart(final HttpURLConnection conn) {
+        // bytes <start>-<end>/<total>
+        final String range = conn.getHeaderField("Content-Range");
+        if (range != null) {
+            final int space = range.indexOf(' ');
+            final int dash = range.indexOf('-', space + 1);
+            if (dash > space) {
+                try {
+                    return Long.parseLong(range.substring(space + 1, dash).trim());
+                } catch (NumberFormatException e) {
+                    // invalid
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private static Properties readInfo(final File infoFile) {
+        final Properties info = new Properties();
+        if (infoFile.exists()) {
+            try {
+                final FileInputStream inputStream = new FileInputStream(infoFile);
+                try {
+                    info.load(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            } catch (Exception e) {
+                // start over
+                info.clear();
+            }
+        }
+
+        return info;
+    }
+
+    private static void writeInfo(final File infoFile, final Properties info) {
+        try {
+            final FileOutputStream outputStream = new FileOutputStream(infoFile);
+            try {
+                info.store(outputStream, null);
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException e) {
+            if (LOG_ENABLED) {
+                Log.e(TAG, "WRITE INFO ERROR!", e);
+            }
+        }
+    }
+
+    /**
+     * Compute the hash of a file
+     * 
+     * @param file
+     * @param algorithm such as "MD5", "SHA-1", "SHA-256"
+     * @return the hash in lower case hex
+     * @throws Exception
+     */
+    public static String computeHash(final File file, final String algorithm) throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance(algorithm);
+        final FileInputStream inputStream = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[DOWNLOAD_BUFFER];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return toHex(digest.digest());
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            sb.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+
+        return sb.toString();
+    }
+
     protected boolean retry() {
         if (mRetriedAlready < mRetryMax || mRetryMax == RETRY_UNLIMITED) {
             if (mRetryDelay > 0) {
@@ -208,6 +655,66 @@ public class DownloadTask extends URLTask implements Retriable, Optional {
         mOverriding = overriding;
     }
 
+    public boolean isResumable() {
+        return mResumable;
+    }
+
+    /**
+     * Keep the part file of a failed download, to resume from it on the next try. Enabled by default.
+     * 
+     * @param resumable
+     */
+    public void setResumable(final boolean resumable) {
+        mResumable = resumable;
+    }
+
+    public int getNumChunks() {
+        return mNumChunks;
+    }
+
+    /**
+     * Split the files bigger than {@link #getChunkMinSize()} into range chunks downloaded in parallel. {@link #onProgress(byte[], int)} is not called for chunked downloads.
+     * 
+     * @param numChunks
+     */
+    public void setNumChunks(final int numChunks) {
+        mNumChunks = numChunks;
+    }
+
+    public long getChunkMinSize() {
+        return mChunkMinSize;
+    }
+
+    public void setChunkMinSize(final long chunkMinSize) {
+        mChunkMinSize = chunkMinSize;
+    }
+
+    public long getExpectedSize() {
+        return mExpectedSize;
+    }
+
+    /**
+     * @param expectedSize the size to verify, -1 to skip
+     */
+    public void setExpectedSize(final long expectedSize) {
+        mExpectedSize = expectedSize;
+    }
+
+    public String getExpectedHash() {
+        return mExpectedHash;
+    }
+
+    /**
+     * Verify the downloaded file against a hash before it replaces the destination
+     * 
+     * @param algorithm such as "MD5", "SHA-1", "SHA-256"
+     * @param hash in hex
+     */
+    public void setExpectedHash(final String algorithm, final String hash) {
+        mHashAlgorithm = algorithm;
+        mExpectedHash = hash;
+    }
+
     /*
      * (non-Javadoc)
      * @see java.lang.Object#toString()
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.loaders.tasks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+
+import android.util.Log;
+
+/**
+ * A size-bounded disk cache of HTTP responses, evicted by least recent use. Each response is a body file and a small properties file with its validators, so the cache survives
+ * restarts.
+ * 
+ * @author long
+ * @see HttpClient
+ */
+public class HttpCache {
+    private static final String TAG = HttpCache.class.getSimpleName();
+
+    private static final String BODY_EXTENSION = ".body";
+    private static final String META_EXTENSION = ".meta";
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+
+    protected final File mDir;
+    protected long mMaxSize;
+    private long mSize = 0;
+    // in access order, for LRU
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    public HttpCache(final String dir, final long maxSize) {
+        mDir = new File(dir);
+        mMaxSize = maxSize;
+
+        mDir.mkdirs();
+        load();
+    }
+
+    /**
+     * Read the entries left from before, the oldest used first
+     */
+    private void load() {
+        final File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final ArrayList<File> metaFiles = new ArrayList<File>();
+        for (final File file : files) {
+            if (file.getName().endsWith(META_EXTENSION)) {
+                metaFiles.add(file);
+            } else if (!file.getName().endsWith(BODY_EXTENSION)) {
+                // unfinished temp files
+                file.delete();
+            }
+        }
+        Collections.sort(metaFiles, new Comparator<File>() {
+            @Override
+            public int compare(final File a, final File b) {
+                final long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+
+        for (final File metaFile : metaFiles) {
+            final String name = metaFile.getName();
+            final String key = name.substring(0, name.length() - META_EXTENSION.length());
+            final File bodyFile = new File(mDir, key + BODY_EXTENSION);
+            final Properties meta = new Properties();
+            try {
+                final FileInputStream inputStream = new FileInputStream(metaFile);
+                try {
+                    meta.load(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                metaFile.delete();
+                bodyFile.delete();
+                continue;
+            }
+
+            if (!bodyFile.exists() || meta.getProperty(KEY_URL) == null) {
+                metaFile.delete();
+                bodyFile.delete();
+                continue;
+            }
+
+            final Entry entry = new Entry(key, meta.getProperty(KEY_URL), meta.getProperty(KEY_ETAG), meta.getProperty(KEY_LAST_MODIFIED), bodyFile.length());
+            mEntries.put(entry.url, entry);
+            mSize += entry.length;
+        }
+
+        trim();
+    }
+
+    /**
+     * @param url
+     * @return the entry, or null if not cached
+     */
+    public synchronized Entry get(final String url) {
+        return mEntries.get(url);
+    }
+
+    /**
+     * @param entry
+     * @return the body file of an entry
+     */
+    public File getFile(final Entry entry) {
+        return new File(mDir, entry.key + BODY_EXTENSION);
+    }
+
+    /**
+     * Mark an entry as used, so its order survives restarts
+     * 
+     * @param entry
+     */
+    public void touch(final Entry entry) {
+        new File(mDir, entry.key + META_EXTENSION).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * @return a new file to write a body to, before {@link #put(String, String, String, File)}
+     * @throws IOException
+     */
+    public File createTempFile() throws IOException {
+        return File.createTempFile("http", ".tmp", mDir);
+    }
+
+    /**
+     * Add or replace a response
+     * 
+     * @param url
+     * @param etag
+     * @param lastModified
+     * @param tempFile the body, which is moved into the cache
+     * @return true if cached
+     */
+    public synchronized boolean put(final String url, final String etag, final String lastModified, final File tempFile) {
+        remove(url);
+
+        final Entry entry = new Entry(getKey(url), url, etag, lastModified, tempFile.length());
+        if (entry.length > mMaxSize) {
+            tempFile.delete();
+            return false;
+        }
+
+        final Properties meta = new Properties();
+        meta.setProperty(KEY_URL, url);
+        if (etag != null) {
+            meta.setProperty(KEY_ETAG, etag);
+        }
+        if (lastModified != null) {
+            meta.setProperty(KEY_LAST_MODIFIED, lastModified);
+        }
+
+        final File metaFile = new File(mDir, entry.key + META_EXTENSION);
+        try {
+            final FileOutputStream outputStream = new FileOutputStream(metaFile);
+            try {
+                meta.store(outputStream, null);
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "WRITE ERROR!", e);
+            metaFile.delete();
+            tempFile.delete();
+            return false;
+        }
+
+        if (!tempFile.renameTo(getFile(entry))) {
+            metaFile.delete();
+            tempFile.delete();
+            return false;
+        }
+
+        mEntries.put(url, entry);
+        mSize += entry.length;
+        trim();
+
+        return true;
+    }
+
+    public synchronized void remove(final String url) {
+        final Entry entry = mEntries.remove(url);
+        if (entry != null) {
+            delete(entry);
+        }
+    }
+
+    public synchronized void clear() {
+        for (final Entry entry : mEntries.values()) {
+            delete(entry);
+        }
+        mEntries.clear();
+    }
+
+    private void delete(final Entry entry) {
+        new File(mDir, entry.key + META_EXTENSION).delete();
+        getFile(entry).delete();
+        mSize -= entry.length;
+    }
+
+    /**
+     * Evict the least recently used entries until the size fits
+     */
+    private void trim() {
+        final Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            iterator.remove();
+            delete(entry);
+        }
+    }
+
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized void setMaxSize(final long maxSize) {
+        mMaxSize = maxSize;
+        trim();
+    }
+
+    public synchronized int getNumEntries() {
+        return mEntries.size();
+    }
+
+    private static String getKey(final String url) {
+        try {
+            return DownloadTask.toHex(MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8")));
+        } catch (Exception e) {
+            // MD5 is always there
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    public static class Entry {
+        public final String key;
+        public final String url;
+        public final String etag;
+        public final String lastModified;
+        public final long length;
+
+        public Entry(final String key, final String url, final String etag, final String lastModified, final long length) {
+            this.key = key;
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+}
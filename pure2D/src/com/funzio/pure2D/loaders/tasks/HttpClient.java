@@ -0,0 +1,480 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.loaders.tasks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * A shared HTTP layer for {@link URLTask}s, see {@link URLTask#setDefaultClient(HttpClient)}. Connections are kept alive and reused by always reading the responses to the end.
+ * With an {@link HttpCache}, responses carrying an ETag or Last-Modified are cached and revalidated with conditional GETs. Identical GETs that are in flight at the same time are
+ * sent once and share the response. Latency and bytes are counted per host.
+ * 
+ * @author long
+ */
+public class HttpClient {
+    public static boolean LOG_ENABLED = true;
+    private static final String TAG = HttpClient.class.getSimpleName();
+
+    public static final int DEFAULT_TIMEOUT = 20 * 1000;
+    public static final int DEFAULT_MAX_CONNECTIONS = 5;
+
+    protected HttpCache mCache;
+    protected int mConnectTimeout = DEFAULT_TIMEOUT;
+    protected int mReadTimeout = DEFAULT_TIMEOUT;
+    private final byte[] mDrainBuffer = new byte[1024];
+
+    // url -> the request in flight
+    private final HashMap<String, Call> mCalls = new HashMap<String, Call>();
+    // host -> stats
+    private final HashMap<String, HostStats> mHostStats = new HashMap<String, HostStats>();
+
+    public HttpClient() {
+        this(null, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param cache the response cache, null for none
+     * @param maxConnections max number of idle connections kept alive per host
+     */
+    public HttpClient(final HttpCache cache, final int maxConnections) {
+        mCache = cache;
+
+        // these are global to HttpURLConnection
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(maxConnections));
+    }
+
+    /**
+     * GET a url, or share the response of the same GET in flight
+     * 
+     * @param url
+     * @param properties request properties, the requests with properties are never shared
+     * @param gzipEnabled
+     * @return the response, or null if the request failed
+     */
+    public Response get(final String url, final Map<String, String> properties, final boolean gzipEnabled) {
+        final boolean sharable = properties == null || properties.isEmpty();
+        final String key = gzipEnabled ? url : url + " identity";
+
+        Call call = null;
+        if (sharable) {
+            final Call pendingCall;
+            synchronized (mCalls) {
+                pendingCall = mCalls.get(key);
+                if (pendingCall == null) {
+                    call = new Call();
+                    mCalls.put(key, call);
+                }
+            }
+
+            if (pendingCall != null) {
+                // wait for it
+                getHostStats(url).addCoalesced();
+                return pendingCall.await();
+            }
+        }
+
+        Response response = null;
+        try {
+            response = execute(url, properties, gzipEnabled);
+        } finally {
+            if (call != null) {
+                synchronized (mCalls) {
+                    mCalls.remove(key);
+                }
+                call.finish(response);
+            }
+        }
+
+        return response;
+    }
+
+    protected Response execute(final String url, final Map<String, String> properties, final boolean gzipEnabled) {
+        final HostStats stats = getHostStats(url);
+        final HttpCache.Entry entry = mCache != null && gzipEnabled ? mCache.get(url) : null;
+
+        HttpURLConnection conn = null;
+        try {
+            final long startTime = System.currentTimeMillis();
+            final URLConnection urlConn = new URL(url).openConnection();
+            urlConn.setConnectTimeout(mConnectTimeout);
+            urlConn.setReadTimeout(mReadTimeout);
+            if (!gzipEnabled) {
+                // disable gzip
+                urlConn.setRequestProperty("Accept-Encoding", "identity");
+            }
+            if (properties != null) {
+                for (final Map.Entry<String, String> property : properties.entrySet()) {
+                    if (property.getValue() != null) {
+                        urlConn.setRequestProperty(property.getKey(), property.getValue());
+                    }
+                }
+            }
+
+            if (!(urlConn instanceof HttpURLConnection)) {
+                // file: and such, nothing to cache
+                final byte[] data = readAll(urlConn.getInputStream(), null);
+                stats.addResponse(System.currentTimeMillis() - startTime, data.length);
+                return new Response(data, false);
+            }
+
+            conn = (HttpURLConnection) urlConn;
+            if (entry != null) {
+                if (entry.etag != null) {
+                    conn.setRequestProperty("If-None-Match", entry.etag);
+                }
+                if (entry.lastModified != null) {
+                    conn.setRequestProperty("If-Modified-Since", entry.lastModified);
+                }
+            }
+
+            final int code = conn.getResponseCode();
+            final long latency = System.currentTimeMillis() - startTime;
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+                drain(conn.getInputStream());
+                final byte[] data = readCache(entry);
+                if (data != null) {
+                    stats.addCacheHit(latency);
+                    return new Response(data, true);
+                }
+
+                // evicted meanwhile, load it again
+                mCache.remove(url);
+                return execute(url, properties, gzipEnabled);
+            } else if (code != HttpURLConnection.HTTP_OK) {
+                if (LOG_ENABLED) {
+                    Log.v(TAG, "HTTP ERROR! " + code + ", " + url);
+                }
+                drain(conn.getErrorStream());
+                stats.addError();
+                return null;
+            }
+
+            // cache only what can be validated
+            final String etag = conn.getHeaderField("ETag");
+            final String lastModified = conn.getHeaderField("Last-Modified");
+            final String cacheControl = conn.getHeaderField("Cache-Control");
+            final boolean cachable = mCache != null && gzipEnabled && (etag != null || lastModified != null) && (cacheControl == null || !cacheControl.contains("no-store"));
+
+            final File tempFile = cachable ? mCache.createTempFile() : null;
+            final byte[] data;
+            try {
+                data = readAll(conn.getInputStream(), tempFile);
+            } catch (IOException e) {
+                if (tempFile != null) {
+                    tempFile.delete();
+                }
+                throw e;
+            }
+            if (tempFile != null) {
+                mCache.put(url, etag, lastModified, tempFile);
+            }
+
+            stats.addResponse(latency, data.length);
+            return new Response(data, false);
+        } catch (IOException e) {
+            if (LOG_ENABLED) {
+                Log.v(TAG, "CONNECTION ERROR! " + url, e);
+            }
+            stats.addError();
+            if (conn != null) {
+                // the connection can't be reused
+                conn.disconnect();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Read a stream to the end, so the connection can be reused
+     * 
+     * @param stream
+     * @param file also write to this file if not null
+     * @return the bytes
+     * @throws IOException
+     */
+    private static byte[] readAll(final InputStream stream, final File file) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final OutputStream fileStream = file != null ? new FileOutputStream(file) : null;
+        final byte[] buffer = new byte[8 * 1024];
+        try {
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+                if (fileStream != null) {
+                    fileStream.write(buffer, 0, count);
+                }
+            }
+        } finally {
+            stream.close();
+            if (fileStream != null) {
+                fileStream.close();
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private byte[] readCache(final HttpCache.Entry entry) {
+        try {
+            final byte[] data = readAll(new FileInputStream(mCache.getFile(entry)), null);
+            mCache.touch(entry);
+            return data;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void drain(final InputStream stream) {
+        if (stream == null) {
+            return;
+        }
+
+        try {
+            synchronized (mDrainBuffer) {
+                while (stream.read(mDrainBuffer) != -1) {
+                    // skip
+                }
+            }
+            stream.close();
+        } catch (IOException e) {
+            // TODO nothing
+        }
+    }
+
+    protected HostStats getHostStats(final String url) {
+        String host;
+        try {
+            host = new URL(url).getHost();
+        } catch (IOException e) {
+            host = "";
+        }
+
+        synchronized (mHostStats) {
+            HostStats stats = mHostStats.get(host);
+            if (stats == null) {
+                stats = new HostStats(host);
+                mHostStats.put(host, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * @return the stats of all the hosts so far
+     */
+    public List<HostStats> getAllHostStats() {
+        synchronized (mHostStats) {
+            return new ArrayList<HostStats>(mHostStats.values());
+        }
+    }
+
+    public HttpCache getCache() {
+        return mCache;
+    }
+
+    public void setCache(final HttpCache cache) {
+        mCache = cache;
+    }
+
+    public int getConnectTimeout() {
+        return mConnectTimeout;
+    }
+
+    public void setConnectTimeout(final int connectTimeout) {
+        mConnectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return mReadTimeout;
+    }
+
+    public void setReadTimeout(final int readTimeout) {
+        mReadTimeout = readTimeout;
+    }
+
+    public static class Response {
+        protected final byte[] mData;
+        protected final boolean mFromCache;
+
+        public Response(final byte[] data, final boolean fromCache) {
+            mData = data;
+            mFromCache = fromCache;
+        }
+
+        public InputStream openStream() {
+            return new ByteArrayInputStream(mData);
+        }
+
+        public byte[] getData() {
+            return mData;
+        }
+
+        public int getContentLength() {
+            return mData.length;
+        }
+
+        /**
+         * @return true if the server said the cached response is still valid
+         */
+        public boolean isFromCache() {
+            return mFromCache;
+        }
+    }
+
+    /**
+     * Counters of a host, all latencies in ms
+     */
+    public static class HostStats {
+        private final String mHost;
+        private int mNumRequests = 0;
+        private int mNumCacheHits = 0;
+        private int mNumCoalesced = 0;
+        private int mNumErrors = 0;
+        private long mBytesReceived = 0;
+        private long mTotalLatency = 0;
+        private long mMaxLatency = 0;
+
+        public HostStats(final String host) {
+            mHost = host;
+        }
+
+        synchronized void addResponse(final long latency, final int bytes) {
+            mNumRequests++;
+            mBytesReceived += bytes;
+            addLatency(latency);
+        }
+
+        synchronized void addCacheHit(final long latency) {
+            mNumRequests++;
+            mNumCacheHits++;
+            addLatency(latency);
+        }
+
+        synchronized void addCoalesced() {
+            mNumCoalesced++;
+        }
+
+        synchronized void addError() {
+            mNumRequests++;
+            mNumErrors++;
+        }
+
+        private void addLatency(final long latency) {
+            mTotalLatency += latency;
+            if (latency > mMaxLatency) {
+                mMaxLatency = latency;
+            }
+        }
+
+        public String getHost() {
+            return mHost;
+        }
+
+        public synchronized int getNumRequests() {
+            return mNumRequests;
+        }
+
+        /**
+         * @return the number of requests answered with 304 Not Modified
+         */
+        public synchronized int getNumCacheHits() {
+            return mNumCacheHits;
+        }
+
+        /**
+         * @return the number of requests that shared the response of another one
+         */
+        public synchronized int getNumCoalesced() {
+            return mNumCoalesced;
+        }
+
+        public synchronized int getNumErrors() {
+            return mNumErrors;
+        }
+
+        public synchronized long getBytesReceived() {
+            return mBytesReceived;
+        }
+
+        public synchronized float getAverageLatency() {
+            final int numResponses = mNumRequests - mNumErrors;
+            return numResponses > 0 ? (float) mTotalLatency / numResponses : 0;
+        }
+
+        public synchronized long getMaxLatency() {
+            return mMaxLatency;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "[HostStats " + mHost + ", requests: " + mNumRequests + ", cache hits: " + mNumCacheHits + ", coalesced: " + mNumCoalesced + ", errors: " + mNumErrors + ", bytes: "
+                    + mBytesReceived + ", latency: " + getAverageLatency() + " ]";
+        }
+    }
+
+    /**
+     * A request in flight, which other threads can wait for
+     */
+    private static class Call {
+        private Response mResponse;
+        private boolean mFinished = false;
+
+        synchronized void finish(final Response response) {
+            mResponse = response;
+            mFinished = true;
+            notifyAll();
+        }
+
+        synchronized Response await() {
+            while (!mFinished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+
+            return mResponse;
+        }
+    }
+}
@@ -24,22 +24,39 @@
  */
 package com.funzio.pure2D.loaders.tasks;
 
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.util.Log;
 
 /**
+ * Runs the tasks one after another by default. With {@link #setMaxConcurrency(int)} or {@link #addDependency(Task, Task)}, the tasks are scheduled on a pool of worker threads instead,
+ * respecting the dependencies and the per-host limit of {@link URLTask}s. The listener is always called on the thread that runs the group.
+ * 
  * @author long
  */
 public class TaskGroup implements Task, Retriable {
     private static final String TAG = TaskGroup.class.getSimpleName();
 
     protected List<Task> mTasks = new ArrayList<Task>();
+    // task -> the tasks it depends on
+    protected HashMap<Task, List<Task>> mDependencies = new HashMap<Task, List<Task>>();
 
     protected TaskListener mTaskListener;
     protected long mTaskDelay = 0;
-    protected int mNumTasksCompleted = 0;
+    protected volatile int mNumTasksCompleted = 0;
+
+    // scheduled mode
+    protected int mMaxConcurrency = 1;
+    protected int mMaxConcurrencyPerHost = 0;
+    protected boolean mStopOnTaskFailed = false;
 
     private boolean mSucceeded = false;
 
@@ -88,17 +105,46 @@ public class TaskGroup implements Task, Retriable {
 
     public void removeTask(final Task task) {
         mTasks.remove(task);
+        mDependencies.remove(task);
     }
 
     public void clearTasks() {
         mTasks.clear();
+        mDependencies.clear();
+    }
+
+    /**
+     * Make a task wait for another one to succeed first. This switches the group to the scheduled mode.
+     * 
+     * @param task
+     * @param dependency
+     */
+    public void addDependency(final Task task, final Task dependency) {
+        List<Task> dependencies = mDependencies.get(task);
+        if (dependencies == null) {
+            dependencies = new ArrayList<Task>();
+            mDependencies.put(task, dependencies);
+        }
+        dependencies.add(dependency);
+    }
+
+    public List<Task> getDependencies(final Task task) {
+        return mDependencies.get(task);
+    }
+
+    /**
+     * @return true if the tasks are run by {@link #runScheduledTasks()}
+     */
+    public boolean isScheduled() {
+        return mMaxConcurrency != 1 || !mDependencies.isEmpty();
     }
 
     @Override
     public boolean run() {
 
         mSucceeded = runTasks();
-        if (!mSucceeded) {
+        // the scheduled mode retries each task by itself
+        if (!mSucceeded && !isScheduled()) {
             mSucceeded = retry();
         }
 
@@ -106,6 +152,10 @@ public class TaskGroup implements Task, Retriable {
     }
 
     protected boolean runTasks() {
+        if (isScheduled()) {
+            return runScheduledTasks();
+        }
+
         final int size = mTasks.size();
 
         if (size == 0) {
@@ -148,6 +198,207 @@ public class TaskGroup implements Task, Retriable {
         return success;
     }
 
+    /**
+     * Run the tasks on a pool of {@link #mMaxConcurrency} threads. Each failed task is retried after {@link #mRetryDelay} on its own, without blocking a worker. The tasks that depend on a
+     * failed task are skipped.
+     * 
+     * @return true if all the tasks succeeded
+     */
+    protected boolean runScheduledTasks() {
+        final int size = mTasks.size();
+        final int maxConcurrency = mMaxConcurrency > 0 ? mMaxConcurrency : size;
+        if (size == 0 || maxConcurrency == 0) {
+            // no task to run, done!
+            return true;
+        }
+
+        // find what to run first
+        final ArrayList<Task> readyTasks = new ArrayList<Task>();
+        final HashMap<Task, Integer> numWaitings = new HashMap<Task, Integer>();
+        final HashMap<Task, List<Task>> dependents = new HashMap<Task, List<Task>>();
+        int numRemaining = 0;
+        for (int i = 0; i < size; i++) {
+            final Task task = mTasks.get(i);
+            // only run task that has not succeeded yet
+            if (task.isSucceeded()) {
+                continue;
+            }
+            numRemaining++;
+
+            int numWaiting = 0;
+            final List<Task> dependencies = mDependencies.get(task);
+            if (dependencies != null) {
+                for (int j = 0; j < dependencies.size(); j++) {
+                    final Task dependency = dependencies.get(j);
+                    if (!dependency.isSucceeded()) {
+                        List<Task> list = dependents.get(dependency);
+                        if (list == null) {
+                            list = new ArrayList<Task>();
+                            dependents.put(dependency, list);
+                        }
+                        list.add(task);
+                        numWaiting++;
+                    }
+                }
+            }
+
+            if (numWaiting == 0) {
+                readyTasks.add(task);
+            } else {
+                numWaitings.put(task, numWaiting);
+            }
+        }
+
+        final LinkedBlockingQueue<Task> events = new LinkedBlockingQueue<Task>();
+        final HashMap<Task, Boolean> completedTasks = new HashMap<Task, Boolean>();
+        final HashMap<Task, Integer> retries = new HashMap<Task, Integer>();
+        final HashMap<String, Integer> hostCounts = new HashMap<String, Integer>();
+        final ScheduledThreadPoolExecutor executor = createExecutor(Math.min(maxConcurrency, numRemaining));
+
+        boolean success = true;
+        boolean stopped = false;
+        int numRunning = 0, numDelayed = 0;
+        try {
+            while (true) {
+                // dispatch as many as allowed
+                for (int i = 0; !stopped && i < readyTasks.size() && numRunning < maxConcurrency;) {
+                    final Task task = readyTasks.get(i);
+                    final String host = getHost(task);
+                    if (host != null && mMaxConcurrencyPerHost > 0) {
+                        final Integer count = hostCounts.get(host);
+                        if (count != null && count >= mMaxConcurrencyPerHost) {
+                            // try the next one
+                            i++;
+                            continue;
+                        }
+                        hostCounts.put(host, count == null ? 1 : count + 1);
+                    }
+
+                    readyTasks.remove(i);
+                    numRunning++;
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            boolean taskSuccess = false;
+                            try {
+                                taskSuccess = task.run();
+                            } catch (Exception e) {
+                                Log.e(TAG, "TASK ERROR!", e);
+                            } finally {
+                                synchronized (completedTasks) {
+                                    completedTasks.put(task, taskSuccess);
+                                }
+                                events.add(task);
+                            }
+                        }
+                    });
+                }
+
+                if (numRunning == 0 && numDelayed == 0 && (stopped || readyTasks.isEmpty())) {
+                    // nothing else can run, the rest is waiting for failed tasks
+                    break;
+                }
+
+                final Task task = events.take();
+                final Boolean taskSuccess;
+                synchronized (completedTasks) {
+                    taskSuccess = completedTasks.remove(task);
+                }
+
+                if (taskSuccess == null) {
+                    // a retry is due
+                    numDelayed--;
+                    readyTasks.add(task);
+                    continue;
+                }
+
+                numRunning--;
+                final String host = getHost(task);
+                if (host != null && mMaxConcurrencyPerHost > 0) {
+                    hostCounts.put(host, hostCounts.get(host) - 1);
+                }
+
+                if (!taskSuccess) {
+                    final Integer retried = retries.get(task);
+                    final int retriedAlready = retried == null ? 0 : retried;
+                    if (!stopped && (retriedAlready < mRetryMax || mRetryMax == RETRY_UNLIMITED)) {
+                        retries.put(task, retriedAlready + 1);
+                        numDelayed++;
+                        // wait without holding a worker
+                        executor.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                events.add(task);
+                            }
+                        }, mRetryDelay, TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+
+                    success = false;
+                    stopped |= mStopOnTaskFailed;
+                } else {
+                    mNumTasksCompleted++;
+
+                    // release the dependents
+                    final List<Task> list = dependents.get(task);
+                    if (list != null) {
+                        for (int i = 0; i < list.size(); i++) {
+                            final Task dependent = list.get(i);
+                            final int numWaiting = numWaitings.get(dependent) - 1;
+                            if (numWaiting == 0) {
+                                numWaitings.remove(dependent);
+                                readyTasks.add(dependent);
+                            } else {
+                                numWaitings.put(dependent, numWaiting);
+                            }
+                        }
+                    }
+                }
+
+                if (mTaskListener != null) {
+                    // complete doesn't mean success
+                    mTaskListener.onTaskComplete(task);
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.e(TAG, "INTERRUPTED ERROR!", e);
+            Thread.currentThread().interrupt();
+            success = false;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // skipped tasks also fail the group
+        return success && !stopped && numWaitings.isEmpty() && readyTasks.isEmpty();
+    }
+
+    protected ScheduledThreadPoolExecutor createExecutor(final int numThreads) {
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        return new ScheduledThreadPoolExecutor(numThreads, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(r, TAG + "-" + threadCount.incrementAndGet());
+            }
+        });
+    }
+
+    /**
+     * @param task
+     * @return the host of a {@link URLTask}, null otherwise
+     */
+    protected String getHost(final Task task) {
+        if (task instanceof URLTask) {
+            try {
+                return new URL(((URLTask) task).getURL()).getHost();
+            } catch (Exception e) {
+                // invalid url, no limit
+            }
+        }
+
+        return null;
+    }
+
     public float getProgress() {
         return (float) mNumTasksCompleted / (float) mTasks.size();
     }
@@ -230,4 +481,43 @@ public class TaskGroup implements Task, Retriable {
     public void setRetryDelay(final int retryDelay) {
         mRetryDelay = retryDelay;
     }
+
+    public int getMaxConcurrency() {
+        return mMaxConcurrency;
+    }
+
+    /**
+     * Set the max number of tasks running at the same time. Anything other than 1 switches the group to the scheduled mode.
+     * 
+     * @param maxConcurrency 0 for no limit
+     */
+    public void setMaxConcurrency(final int maxConcurrency) {
+        mMaxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxConcurrencyPerHost() {
+        return mMaxConcurrencyPerHost;
+    }
+
+    /**
+     * Set the max number of {@link URLTask}s running against the same host at the same time, in the scheduled mode.
+     * 
+     * @param maxConcurrencyPerHost 0 for no limit
+     */
+    public void setMaxConcurrencyPerHost(final int maxConcurrencyPerHost) {
+        mMaxConcurrencyPerHost = maxConcurrencyPerHost;
+    }
+
+    public boolean isStopOnTaskFailed() {
+        return mStopOnTaskFailed;
+    }
+
+    /**
+     * Stop dispatching new tasks once a task failed for good, in the scheduled mode. The running tasks are still awaited.
+     * 
+     * @param stopOnTaskFailed
+     */
+    public void setStopOnTaskFailed(final boolean stopOnTaskFailed) {
+        mStopOnTaskFailed = stopOnTaskFailed;
+    }
 }
@@ -51,8 +51,12 @@ public abstract class URLTask implements IntentTask {
     public static final String INTENT_COMPLETE = CLASS_NAME + ".INTENT_COMPLETE";
     public static String EXTRA_URL = "url";
 
+    // shared by all the tasks, null for none
+    private static HttpClient sDefaultClient;
+
     protected int mBufferSize = DEFAULT_BUFFER;
     protected byte[] mBuffer;
+    protected HttpClient mClient = sDefaultClient;
 
     protected final String mURL;
     protected int mContentLength = -1;
@@ -80,6 +84,32 @@ public abstract class URLTask implements IntentTask {
         return mURL;
     }
 
+    public HttpClient getClient() {
+        return mClient;
+    }
+
+    /**
+     * Set the client of this task, null to open the url directly
+     * 
+     * @param client
+     */
+    public void setClient(final HttpClient client) {
+        mClient = client;
+    }
+
+    public static HttpClient getDefaultClient() {
+        return sDefaultClient;
+    }
+
+    /**
+     * Set the client for all the tasks created afterwards, such as the ones of JsonAtlas and NovaLoader
+     * 
+     * @param client null to open the urls directly
+     */
+    public static void setDefaultClient(final HttpClient client) {
+        sDefaultClient = client;
+    }
+
     protected boolean openURL() {
         return openURL(null);
     }
@@ -87,6 +117,10 @@ public abstract class URLTask implements IntentTask {
     protected boolean openURL(final Map<String, String> properties) {
         // Log.v(TAG, "run(), " + mURL);
 
+        if (mClient != null) {
+            return openURLWithClient(properties);
+        }
+
         final URLConnection conn;
         try {
             final URL address = new URL(mURL);
@@ -133,6 +167,31 @@ public abstract class URLTask implements IntentTask {
         return mContentLength < 0 || (mContentLength == mTotalBytesLoaded) || (mGzipEnabled && mTotalBytesLoaded > 0);
     }
 
+    /**
+     * Load through the client, which may answer from its cache or share the response with the same request in flight
+     * 
+     * @param properties
+     * @return true if loaded
+     */
+    protected boolean openURLWithClient(final Map<String, String> properties) {
+        final HttpClient.Response response = mClient.get(mURL, properties, mGzipEnabled);
+        if (response == null) {
+            return false;
+        }
+
+        mContentLength = response.getContentLength();
+        try {
+            mTotalBytesLoaded = readStream(response.openStream());
+        } catch (Exception e) {
+            if (LOG_ENABLED) {
+                Log.v(TAG, "READ ERROR!", e);
+            }
+            return false;
+        }
+
+        return true;
+    }
+
     protected int readStream(final InputStream stream) throws Exception {
         int count = 0;
         int totalBytesLoaded = 0;
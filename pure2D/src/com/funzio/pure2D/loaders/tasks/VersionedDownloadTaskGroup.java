@@ -32,7 +32,9 @@ import com.funzio.pure2D.utils.PathUtils;
 
 /**
  * @author long
+ * @deprecated Use {@link ContentUpdateTaskGroup}, which only downloads the changed chunks of the changed files
  */
+@Deprecated
 public class VersionedDownloadTaskGroup extends TaskGroup {
 
     private static final String TAG = VersionedDownloadTaskGroup.class.getSimpleName();
@@ -63,6 +63,12 @@ public class LWFObject extends BaseDisplayObject implements Playable {
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // lwf animates on every frame
+        return mLWF != null || super.isUpdateNeeded();
+    }
+
     @Override
     protected boolean drawChildren(final GLState glState) {
         if (mLWF == null) {
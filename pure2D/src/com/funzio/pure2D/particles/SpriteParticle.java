@@ -68,6 +68,12 @@ public class SpriteParticle extends Sprite implements Particle {
         return true;
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // always moving
+        return true;
+    }
+
     /*
      * (non-Javadoc)
      * @see com.funzio.pure2D.shapes.Rectangular#setSize(float, float)
@@ -97,7 +97,7 @@ public class NovaFactory {
         // pool is optional
         if (poolSize > 0) {
             mPoolSize = poolSize;
-            mParticlePool = new ObjectPool<NovaParticle>(poolSize);
+            mParticlePool = new ObjectPool<NovaParticle>(poolSize, true); // GL thread only
             mAnimatorPools = new HashMap<String, ObjectPool<Animator>>();
             mMotionTrailPools = new HashMap<String, ObjectPool<MotionTrail>>();
         }
@@ -248,7 +248,7 @@ public class NovaFactory {
             ObjectPool<Animator> pool = mAnimatorPools.get(animationName);
             if (pool == null) {
                 // no pool created yet, create one
-                pool = new ObjectPool<Animator>(mPoolSize);
+                pool = new ObjectPool<Animator>(mPoolSize, true);
                 mAnimatorPools.put(animationName, pool); // use name as key, works better for GroupAnimators
             } else {
                 // there is a pool, try to acquire
@@ -331,7 +331,7 @@ public class NovaFactory {
             ObjectPool<MotionTrail> pool = mMotionTrailPools.get(type); // use type as key
             if (pool == null) {
                 // no pool created yet, create one
-                pool = new ObjectPool<MotionTrail>(mPoolSize);
+                pool = new ObjectPool<MotionTrail>(mPoolSize, true);
                 mMotionTrailPools.put(type, pool);
             } else {
                 // there is a pool, try to acquire
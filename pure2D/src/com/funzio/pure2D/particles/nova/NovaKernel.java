@@ -0,0 +1,732 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.particles.nova;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import android.util.Log;
+import android.view.animation.Interpolator;
+
+import com.funzio.pure2D.LoopModes;
+import com.funzio.pure2D.gl.GLColor;
+import com.funzio.pure2D.particles.nova.NovaParticleSystem.ParticleGroup;
+import com.funzio.pure2D.particles.nova.vo.AlphaAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.AnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.ColorAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.DelayAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.GroupAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.MoveAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.ParallelAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.RotateAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.ScaleAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.SequenceAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.TweenAnimatorVO;
+import com.funzio.pure2D.particles.nova.vo.UnstableMoveAnimatorVO;
+import com.funzio.pure2D.utils.Pure2DUtils;
+
+/**
+ * A tween animator compiled into flat per-particle arrays. Each kernel type runs one tight loop over a whole {@link ParticleGroup} instead of one Animator object per particle.
+ * 
+ * @author long
+ * @see NovaParticleSystem
+ */
+abstract class NovaKernel {
+    protected static final String TAG = NovaKernel.class.getSimpleName();
+
+    static final int INFINITE = Integer.MAX_VALUE;
+
+    // shared settings from the vo
+    protected final TweenAnimatorVO mVO;
+    protected final Interpolator mInterpolator;
+    protected final int mLoopMode;
+    protected final boolean mReversed;
+    protected final boolean mAccumulating;
+    protected final int mNumChannels;
+
+    // per particle values
+    protected int[] mStart;
+    protected int[] mEnd;
+    protected int[] mDuration;
+    protected int[] mLoopCount;
+    protected boolean[] mEnded;
+    protected float[] mLast;
+    protected float[][] mFrom;
+    protected float[][] mDelta;
+
+    protected NovaKernel(final TweenAnimatorVO vo, final int numChannels) {
+        mVO = vo;
+        mInterpolator = NovaConfig.getInterpolator(vo.interpolation);
+        mLoopMode = NovaConfig.getLoopMode(vo.loop_mode);
+        mReversed = vo.reversed;
+        mAccumulating = vo.accumulating;
+        mNumChannels = numChannels;
+        mFrom = new float[numChannels][];
+        mDelta = new float[numChannels][];
+    }
+
+    void ensureCapacity(final int capacity) {
+        mStart = NovaParticleSystem.grow(mStart, capacity);
+        mEnd = NovaParticleSystem.grow(mEnd, capacity);
+        mDuration = NovaParticleSystem.grow(mDuration, capacity);
+        mLoopCount = NovaParticleSystem.grow(mLoopCount, capacity);
+        mEnded = NovaParticleSystem.grow(mEnded, capacity);
+        mLast = NovaParticleSystem.grow(mLast, capacity);
+        for (int c = 0; c < mNumChannels; c++) {
+            mFrom[c] = NovaParticleSystem.grow(mFrom[c], capacity);
+            mDelta[c] = NovaParticleSystem.grow(mDelta[c], capacity);
+        }
+    }
+
+    /**
+     * Copy the values of a particle to another slot, used when removing particles
+     */
+    void copy(final int src, final int dst) {
+        mStart[dst] = mStart[src];
+        mEnd[dst] = mEnd[src];
+        mDuration[dst] = mDuration[src];
+        mLoopCount[dst] = mLoopCount[src];
+        mEnded[dst] = mEnded[src];
+        mLast[dst] = mLast[src];
+        for (int c = 0; c < mNumChannels; c++) {
+            mFrom[c][dst] = mFrom[c][src];
+            mDelta[c][dst] = mDelta[c][src];
+        }
+    }
+
+    /**
+     * Initialize the values of a new particle, mirroring TweenAnimator and BaseAnimator.
+     * 
+     * @param index the particle slot
+     * @param emitIndex the emit index for NovaConfig lists
+     * @param time the start time, relative to the particle's birth
+     * @return the end time
+     */
+    int reset(final int index, final int emitIndex, final int time) {
+        final int start = add(time, NovaConfig.getInt(mVO.start_delay, emitIndex, 0));
+        final int duration = NovaConfig.getInt(mVO.duration, emitIndex, 0);
+        final int loopCount = mVO.loop_count != null ? NovaConfig.getInt(mVO.loop_count, emitIndex, -1) : -1;
+        final int lifespan = NovaConfig.getInt(mVO.lifespan, emitIndex, 0);
+
+        int end;
+        if (duration <= 0) {
+            // TweenAnimator never runs without a duration
+            end = INFINITE;
+        } else if (mLoopMode == LoopModes.LOOP_NONE) {
+            end = add(start, duration);
+        } else if (loopCount >= 0) {
+            end = add(start, duration * (loopCount + 1));
+        } else {
+            end = INFINITE;
+        }
+        if (lifespan > 0) {
+            end = Math.min(end, add(start, lifespan));
+        }
+
+        mStart[index] = start;
+        mEnd[index] = end;
+        mDuration[index] = duration;
+        mLoopCount[index] = loopCount;
+        mEnded[index] = false;
+        mLast[index] = 0;
+        resetValues(index, emitIndex);
+
+        return end;
+    }
+
+    /**
+     * @return the interpolated value of a particle at the specified age, or NaN when the tween is not running
+     */
+    protected final float getValue(final int index, final int age) {
+        if (mEnded[index]) {
+            return Float.NaN;
+        }
+
+        final int elapsed = age - mStart[index];
+        final int duration = mDuration[index];
+        if (elapsed < 0 || duration <= 0) {
+            // not started, or never runs without a duration
+            return Float.NaN;
+        }
+
+        float value;
+        if (age >= mEnd[index]) {
+            // force end, apply the final value once
+            mEnded[index] = true;
+            if (mLoopMode == LoopModes.LOOP_REVERSE && mLoopCount[index] > 0) {
+                value = mLoopCount[index] % 2 == 0 ? 1 : 0;
+            } else {
+                value = 1;
+            }
+        } else {
+            float timeline;
+            if (mLoopMode == LoopModes.LOOP_REPEAT) {
+                timeline = (float) (elapsed % duration) / duration;
+            } else if (mLoopMode == LoopModes.LOOP_REVERSE) {
+                timeline = (float) (elapsed % duration) / duration;
+                if ((elapsed / duration) % 2 != 0) {
+                    timeline = 1 - timeline;
+                }
+            } else {
+                timeline = (float) elapsed / duration;
+            }
+
+            value = mInterpolator == null ? timeline : mInterpolator.getInterpolation(timeline);
+        }
+
+        return mReversed ? 1 - value : value;
+    }
+
+    /**
+     * Set the from/delta channels of a new particle
+     */
+    abstract protected void resetValues(final int index, final int emitIndex);
+
+    /**
+     * Run this kernel on a range of particles of a group
+     * 
+     * @param start the first particle, inclusive
+     * @param end the last particle, exclusive
+     * @param random the generator of this range. Kernels may run in parallel, so they must not use any shared one.
+     */
+    abstract void apply(final ParticleGroup group, final int start, final int end, final Random random);
+
+    /**
+     * @return a + b, saturated at {@link #INFINITE}
+     */
+    static int add(final int a, final int b) {
+        return (a == INFINITE || b == INFINITE || (long) a + b >= INFINITE) ? INFINITE : a + b;
+    }
+
+    /**
+     * Move: accumulates (v - last) * delta on x and y
+     */
+    static class MoveKernel extends NovaKernel {
+        private final MoveAnimatorVO mMoveVO;
+
+        MoveKernel(final MoveAnimatorVO vo) {
+            super(vo, 2);
+
+            mMoveVO = vo;
+        }
+
+        @Override
+        protected void resetValues(final int index, final int emitIndex) {
+            if (mMoveVO.distance != null) {
+                final float distance = NovaConfig.getInt(mMoveVO.distance, emitIndex, 0);
+                final float radian = NovaConfig.getInt(mMoveVO.degree, emitIndex, 0) * Pure2DUtils.DEGREE_TO_RADIAN;
+                mDelta[0][index] = distance * (float) Math.cos(radian);
+                mDelta[1][index] = distance * (float) Math.sin(radian);
+            } else {
+                mDelta[0][index] = NovaConfig.getInt(mMoveVO.dx, emitIndex, 0);
+                mDelta[1][index] = NovaConfig.getInt(mMoveVO.dy, emitIndex, 0);
+            }
+        }
+
+        @Override
+        void apply(final ParticleGroup group, final int start, final int end, final Random random) {
+            final int[] ages = group.mAge;
+            final float[] xs = group.mX, ys = group.mY, dxs = mDelta[0], dys = mDelta[1];
+            for (int i = start; i < end; i++) {
+                final float value = getValue(i, ages[i]);
+                if (value == value) {
+                    final float step = value - mLast[i];
+                    xs[i] += step * dxs[i];
+                    ys[i] += step * dys[i];
+                    mLast[i] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Unstable move: a move plus a random wind that changes every segment, picked from the range's generator
+     */
+    static class UnstableMoveKernel extends NovaKernel {
+        private final UnstableMoveAnimatorVO mMoveVO;
+
+        // wind, per particle
+        private int[] mSegmentDuration;
+        private int[] mSegment;
+        private float[] mWindX1;
+        private float[] mWindX2;
+        private float[] mWindY1;
+        private float[] mWindY2;
+        private float[] mWindX;
+        private float[] mWindY;
+        private float[] mModStartX;
+        private float[] mModStartY;
+        private float[] mModX;
+        private float[] mModY;
+
+        UnstableMoveKernel(final UnstableMoveAnimatorVO vo) {
+            super(vo, 2);
+
+            mMoveVO = vo;
+        }
+
+        @Override
+        void ensureCapacity(final int capacity) {
+            super.ensureCapacity(capacity);
+
+            mSegmentDuration = NovaParticleSystem.grow(mSegmentDuration, capacity);
+            mSegment = NovaParticleSystem.grow(mSegment, capacity);
+            mWindX1 = NovaParticleSystem.grow(mWindX1, capacity);
+            mWindX2 = NovaParticleSystem.grow(mWindX2, capacity);
+            mWindY1 = NovaParticleSystem.grow(mWindY1, capacity);
+            mWindY2 = NovaParticleSystem.grow(mWindY2, capacity);
+            mWindX = NovaParticleSystem.grow(mWindX, capacity);
+            mWindY = NovaParticleSystem.grow(mWindY, capacity);
+            mModStartX = NovaParticleSystem.grow(mModStartX, capacity);
+            mModStartY = NovaParticleSystem.grow(mModStartY, capacity);
+            mModX = NovaParticleSystem.grow(mModX, capacity);
+            mModY = NovaParticleSystem.grow(mModY, capacity);
+        }
+
+        @Override
+        void copy(final int src, final int dst) {
+            super.copy(src, dst);
+
+            mSegmentDuration[dst] = mSegmentDuration[src];
+            mSegment[dst] = mSegment[src];
+            mWindX1[dst] = mWindX1[src];
+            mWindX2[dst] = mWindX2[src];
+            mWindY1[dst] = mWindY1[src];
+            mWindY2[dst] = mWindY2[src];
+            mWindX[dst] = mWindX[src];
+            mWindY[dst] = mWindY[src];
+            mModStartX[dst] = mModStartX[src];
+            mModStartY[dst] = mModStartY[src];
+            mModX[dst] = mModX[src];
+            mModY[dst] = mModY[src];
+        }
+
+        @Override
+        protected void resetValues(final int index, final int emitIndex) {
+            if (mMoveVO.distance != null) {
+                final float distance = NovaConfig.getInt(mMoveVO.distance, emitIndex, 0);
+                final float radian = NovaConfig.getInt(mMoveVO.degree, emitIndex, 0) * Pure2DUtils.DEGREE_TO_RADIAN;
+                mDelta[0][index] = distance * (float) Math.cos(radian);
+                mDelta[1][index] = distance * (float) Math.sin(radian);
+            } else {
+                mDelta[0][index] = NovaConfig.getInt(mMoveVO.dx, emitIndex, 0);
+                mDelta[1][index] = NovaConfig.getInt(mMoveVO.dy, emitIndex, 0);
+            }
+
+            mSegmentDuration[index] = NovaConfig.getInt(mMoveVO.segment_duration, emitIndex, 0);
+            mSegment[index] = -1;
+            mWindX1[index] = NovaConfig.getFloat(mMoveVO.wind_x1, emitIndex, 0);
+            mWindX2[index] = NovaConfig.getFloat(mMoveVO.wind_x2, emitIndex, 0);
+            mWindY1[index] = NovaConfig.getFloat(mMoveVO.wind_y1, emitIndex, 0);
+            mWindY2[index] = NovaConfig.getFloat(mMoveVO.wind_y2, emitIndex, 0);
+            mWindX[index] = mWindY[index] = 0;
+            mModStartX[index] = mModStartY[index] = 0;
+            mModX[index] = mModY[index] = 0;
+        }
+
+        @Override
+        void apply(final ParticleGroup group, final int start, final int end, final Random random) {
+            final int[] ages = group.mAge;
+            final float[] xs = group.mX, ys = group.mY, dxs = mDelta[0], dys = mDelta[1];
+            for (int i = start; i < end; i++) {
+                final float value = getValue(i, ages[i]);
+                if (value != value) {
+                    continue;
+                }
+
+                final float lastModX = mModX[i];
+                final float lastModY = mModY[i];
+                final int segmentDuration = mSegmentDuration[i];
+                if (segmentDuration > 0 && segmentDuration < mDuration[i]) {
+                    final int elapsed = Math.min(ages[i], mEnd[i]) - mStart[i];
+                    final int segment = elapsed / segmentDuration;
+                    if (segment != mSegment[i]) {
+                        mSegment[i] = segment;
+                        if (segment % 2 != 0) {
+                            // go backward
+                            mModStartX[i] = mModX[i];
+                            mModStartY[i] = mModY[i];
+                            mWindX[i] = -mWindX[i];
+                            mWindY[i] = -mWindY[i];
+                        } else {
+                            // restart
+                            mModStartX[i] = mModStartY[i] = 0;
+                            mWindX[i] = mWindX1[i] + random.nextFloat() * (mWindX2[i] - mWindX1[i]);
+                            mWindY[i] = mWindY1[i] + random.nextFloat() * (mWindY2[i] - mWindY1[i]);
+                        }
+                    }
+
+                    float f = Math.min(1, (float) (elapsed - segment * segmentDuration) / segmentDuration);
+                    if (mInterpolator != null) {
+                        f = mInterpolator.getInterpolation(f);
+                    }
+                    mModX[i] = mModStartX[i] + mWindX[i] * f;
+                    mModY[i] = mModStartY[i] + mWindY[i] * f;
+                }
+
+                final float step = value - mLast[i];
+                xs[i] += step * dxs[i] - lastModX + mModX[i];
+                ys[i] += step * dys[i] - lastModY + mModY[i];
+                mLast[i] = value;
+            }
+        }
+    }
+
+    /**
+     * Alpha: from + v * delta
+     */
+    static class AlphaKernel extends NovaKernel {
+        private final AlphaAnimatorVO mAlphaVO;
+
+        AlphaKernel(final AlphaAnimatorVO vo) {
+            super(vo, 1);
+
+            mAlphaVO = vo;
+        }
+
+        @Override
+        protected void resetValues(final int index, final int emitIndex) {
+            final float from = NovaConfig.getFloat(mAlphaVO.from, emitIndex, 1);
+            mFrom[0][index] = from;
+            mDelta[0][index] = NovaConfig.getFloat(mAlphaVO.to, emitIndex, 0) - from;
+        }
+
+        @Override
+        void apply(final ParticleGroup group, final int start, final int end, final Random random) {
+            final int[] ages = group.mAge;
+            final float[] alphas = group.mAlpha, froms = mFrom[0], deltas = mDelta[0];
+            for (int i = start; i < end; i++) {
+                final float value = getValue(i, ages[i]);
+                if (value == value) {
+                    alphas[i] = froms[i] + value * deltas[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Scale: from + v * delta on x and y
+     */
+    static class ScaleKernel extends NovaKernel {
+        private final ScaleAnimatorVO mScaleVO;
+
+        ScaleKernel(final ScaleAnimatorVO vo) {
+            super(vo, 2);
+
+            mScaleVO = vo;
+        }
+
+        @Override
+        protected void resetValues(final int index, final int emitIndex) {
+            final float fromX = NovaConfig.getFloat(mScaleVO.x_from, emitIndex, 1);
+            final float fromY = NovaConfig.getFloat(mScaleVO.y_from, emitIndex, 1);
+            mFrom[0][index] = fromX;
+            mFrom[1][index] = fromY;
+            mDelta[0][index] = NovaConfig.getFloat(mScaleVO.x_to, emitIndex, 1) - fromX;
+            mDelta[1][index] = NovaConfig.getFloat(mScaleVO.y_to, emitIndex, 1) - fromY;
+        }
+
+        @Override
+        void apply(final ParticleGroup group, final int start, final int end, final Random random) {
+            final int[] ages = group.mAge;
+            final float[] sxs = group.mScaleX, sys = group.mScaleY;
+            final float[] fromXs = mFrom[0], fromYs = mFrom[1], dxs = mDelta[0], dys = mDelta[1];
+            for (int i = start; i < end; i++) {
+                final float value = getValue(i, ages[i]);
+                if (value == value) {
+                    sxs[i] = fromXs[i] + value * dxs[i];
+                    sys[i] = fromYs[i] + value * dys[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Rotate: accumulates (v - last) * delta, or from + v * delta when not accumulating
+     */
+    static class RotateKernel extends NovaKernel {
+        private final RotateAnimatorVO mRotateVO;
+
+        RotateKernel(final RotateAnimatorVO vo) {
+            super(vo, 1);
+
+            mRotateVO = vo;
+        }
+
+        @Override
+        protected void resetValues(final int index, final int emitIndex) {
+            if (mRotateVO.delta != null) {
+                mFrom[0][index] = 0;
+                mDelta[0][index] = NovaConfig.getFloat(mRotateVO.delta, emitIndex, 0);
+            } else {
+                final float from = NovaConfig.getFloat(mRotateVO.from, emitIndex, 0);
+                mFrom[0][index] = from;
+                mDelta[0][index] = NovaConfig.getFloat(mRotateVO.to, emitIndex, 0) - from;
+            }
+        }
+
+        @Override
+        void apply(final ParticleGroup group, final int start, final int end, final Random random) {
+            final int[] ages = group.mAge;
+            final float[] rotations = group.mRotation, froms = mFrom[0], deltas = mDelta[0];
+            for (int i = start; i < end; i++) {
+                final float value = getValue(i, ages[i]);
+                if (value == value) {
+                    if (mAccumulating) {
+                        rotations[i] += (value - mLast[i]) * deltas[i];
+                    } else {
+                        rotations[i] = froms[i] + value * deltas[i];
+                    }
+                    mLast[i] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Color: from + v * delta on r, g, b and a
+     */
+    static class ColorKernel extends NovaKernel {
+        private final ColorAnimatorVO mColorVO;
+
+        ColorKernel(final ColorAnimatorVO vo) {
+            super(vo, 4);
+
+            mColorVO = vo;
+        }
+
+        @Override
+        protected void resetValues(final int index, final int emitIndex) {
+            final GLColor from = NovaConfig.getColor(mColorVO.from, emitIndex, GLColor.WHITE);
+            final GLColor to = NovaConfig.getColor(mColorVO.to, emitIndex, GLColor.WHITE);
+            mFrom[0][index] = from.r;
+            mFrom[1][index] = from.g;
+            mFrom[2][index] = from.b;
+            mFrom[3][index] = from.a;
+            mDelta[0][index] = to.r - from.r;
+            mDelta[1][index] = to.g - from.g;
+            mDelta[2][index] = to.b - from.b;
+            mDelta[3][index] = to.a - from.a;
+        }
+
+        @Override
+        void apply(final ParticleGroup group, final int start, final int end, final Random random) {
+            final int[] ages = group.mAge;
+            final float[] rs = group.mRed, gs = group.mGreen, bs = group.mBlue, as = group.mColorAlpha;
+            for (int i = start; i < end; i++) {
+                final float value = getValue(i, ages[i]);
+                if (value == value) {
+                    rs[i] = mFrom[0][i] + value * mDelta[0][i];
+                    gs[i] = mFrom[1][i] + value * mDelta[1][i];
+                    bs[i] = mFrom[2][i] + value * mDelta[2][i];
+                    as[i] = mFrom[3][i] + value * mDelta[3][i];
+                }
+            }
+        }
+    }
+
+    /**
+     * An animator tree compiled into kernels. Sequences and parallels are flattened into per-particle start times, the kernels then only see absolute ages.
+     */
+    static class Program {
+        // step types
+        private static final int TWEEN = 0;
+        private static final int DELAY = 1;
+        private static final int SEQUENCE = 2;
+        private static final int PARALLEL = 3;
+        private static final int SKIP = 4;
+
+        // only warn once per type
+        private static final HashSet<String> sWarnedTypes = new HashSet<String>();
+
+        private final Step mRoot;
+        private final NovaKernel[] mKernels;
+
+        private Program(final Step root, final ArrayList<NovaKernel> kernels) {
+            mRoot = root;
+            mKernels = kernels.toArray(new NovaKernel[kernels.size()]);
+        }
+
+        /**
+         * Compile an animator vo
+         * 
+         * @param vo can be null
+         * @return null if there is nothing to run
+         */
+        static Program compile(final AnimatorVO vo) {
+            if (vo == null) {
+                return null;
+            }
+
+            final ArrayList<NovaKernel> kernels = new ArrayList<NovaKernel>();
+            return new Program(compileStep(vo, kernels), kernels);
+        }
+
+        private static Step compileStep(final AnimatorVO vo, final ArrayList<NovaKernel> kernels) {
+            final Step step = new Step(vo);
+
+            if (vo instanceof SequenceAnimatorVO || vo instanceof ParallelAnimatorVO) {
+                step.mType = vo instanceof SequenceAnimatorVO ? SEQUENCE : PARALLEL;
+                final ArrayList<AnimatorVO> children = ((GroupAnimatorVO) vo).animators;
+                final int size = children == null ? 0 : children.size();
+                step.mChildren = new Step[size];
+                for (int i = 0; i < size; i++) {
+                    step.mChildren[i] = compileStep(children.get(i), kernels);
+                }
+
+                if (vo.loop_count != null) {
+                    warn(vo.type + " loop_count");
+                }
+            } else if (vo instanceof DelayAnimatorVO) {
+                step.mType = DELAY;
+            } else {
+                step.mKernel = createKernel(vo);
+                if (step.mKernel != null) {
+                    step.mType = TWEEN;
+                    kernels.add(step.mKernel);
+                } else {
+                    step.mType = SKIP;
+                    warn(vo.type);
+                }
+            }
+
+            return step;
+        }
+
+        private static NovaKernel createKernel(final AnimatorVO vo) {
+            if (vo instanceof MoveAnimatorVO) {
+                return new MoveKernel((MoveAnimatorVO) vo);
+            } else if (vo instanceof UnstableMoveAnimatorVO) {
+                return new UnstableMoveKernel((UnstableMoveAnimatorVO) vo);
+            } else if (vo instanceof AlphaAnimatorVO) {
+                return new AlphaKernel((AlphaAnimatorVO) vo);
+            } else if (vo instanceof ScaleAnimatorVO) {
+                return new ScaleKernel((ScaleAnimatorVO) vo);
+            } else if (vo instanceof RotateAnimatorVO) {
+                final RotateAnimatorVO rotateVO = (RotateAnimatorVO) vo;
+                if (rotateVO.pivot_x != null && rotateVO.pivot_y != null) {
+                    warn(vo.type + " pivot");
+                }
+                return new RotateKernel(rotateVO);
+            } else if (vo instanceof ColorAnimatorVO) {
+                return new ColorKernel((ColorAnimatorVO) vo);
+            }
+
+            return null;
+        }
+
+        private static void warn(final String type) {
+            synchronized (sWarnedTypes) {
+                if (sWarnedTypes.add(type)) {
+                    Log.w(TAG, "Not supported, skipped: " + type);
+                }
+            }
+        }
+
+        void ensureCapacity(final int capacity) {
+            for (NovaKernel kernel : mKernels) {
+                kernel.ensureCapacity(capacity);
+            }
+        }
+
+        void copy(final int src, final int dst) {
+            for (NovaKernel kernel : mKernels) {
+                kernel.copy(src, dst);
+            }
+        }
+
+        /**
+         * Initialize a new particle
+         * 
+         * @return the time the whole animator ends, which is the particle's lifespan
+         */
+        int reset(final int index, final int emitIndex) {
+            return reset(mRoot, index, emitIndex, 0);
+        }
+
+        private int reset(final Step step, final int index, final int emitIndex, final int time) {
+            final AnimatorVO vo = step.mVO;
+
+            switch (step.mType) {
+                case TWEEN:
+                    return step.mKernel.reset(index, emitIndex, time);
+
+                case DELAY: {
+                    // a delay without duration never ends
+                    final int duration = NovaConfig.getInt(((DelayAnimatorVO) vo).duration, emitIndex, 0);
+                    return duration > 0 ? add(add(time, NovaConfig.getInt(vo.start_delay, emitIndex, 0)), duration) : INFINITE;
+                }
+
+                case SEQUENCE: {
+                    final int start = add(time, NovaConfig.getInt(vo.start_delay, emitIndex, 0));
+                    int end = start;
+                    for (Step child : step.mChildren) {
+                        end = reset(child, index, emitIndex, end);
+                    }
+                    return limit(vo, emitIndex, start, end);
+                }
+
+                case PARALLEL: {
+                    final int start = add(time, NovaConfig.getInt(vo.start_delay, emitIndex, 0));
+                    int end = start;
+                    for (Step child : step.mChildren) {
+                        end = Math.max(end, reset(child, index, emitIndex, start));
+                    }
+                    return limit(vo, emitIndex, start, end);
+                }
+
+                default:
+                    // skipped, ends right away
+                    return add(time, NovaConfig.getInt(vo.start_delay, emitIndex, 0));
+            }
+        }
+
+        private int limit(final AnimatorVO vo, final int emitIndex, final int start, final int end) {
+            final int lifespan = NovaConfig.getInt(vo.lifespan, emitIndex, 0);
+            return lifespan > 0 ? Math.min(end, add(start, lifespan)) : end;
+        }
+
+        /**
+         * Run all the kernels on a range of particles of a group
+         */
+        void apply(final ParticleGroup group, final int start, final int end, final Random random) {
+            for (NovaKernel kernel : mKernels) {
+                kernel.apply(group, start, end, random);
+            }
+        }
+    }
+
+    private static class Step {
+        private final AnimatorVO mVO;
+        private int mType;
+        private NovaKernel mKernel;
+        private Step[] mChildren;
+
+        private Step(final AnimatorVO vo) {
+            mVO = vo;
+        }
+    }
+}
@@ -24,19 +24,27 @@
  */
 package com.funzio.pure2D.particles.nova;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
 import android.content.res.AssetManager;
 import android.util.Log;
 
 import org.json.JSONException;
 
 import com.funzio.pure2D.loaders.AsyncTaskExecuter;
-import com.funzio.pure2D.loaders.tasks.ReadTextFileTask;
 import com.funzio.pure2D.loaders.tasks.RunnableTask;
 import com.funzio.pure2D.loaders.tasks.Task;
 import com.funzio.pure2D.loaders.tasks.URLLoadJsonTask;
 import com.funzio.pure2D.loaders.tasks.URLLoadTextTask;
 import com.funzio.pure2D.loaders.tasks.WriteTextFileTask;
 import com.funzio.pure2D.particles.nova.vo.NovaVO;
+import com.funzio.pure2D.utils.JsonStreamReader;
+import com.funzio.pure2D.utils.JsonTokenReader;
+import com.funzio.pure2D.utils.binary.BinaryJsonReader;
 
 /**
  * @author long
@@ -74,7 +82,7 @@ public class NovaLoader {
     }
 
     /**
-     * Load a specific Nova file, synchronously
+     * Load a specific Nova file, synchronously. The precompiled binary version is used if there is one next to the file.
      * 
      * @param assets
      * @param filePath
@@ -82,24 +90,21 @@ public class NovaLoader {
     public void load(final AssetManager assets, final String filePath) {
         Log.v(TAG, "load(): " + filePath);
 
-        final ReadTextFileTask readTask = new ReadTextFileTask(assets, filePath);
-        if (readTask.run()) {
-            Log.v(TAG, "Load success: " + filePath);
+        try {
+            final NovaVO vo = read(BinaryJsonReader.open(assets, filePath));
+            Log.v(TAG, "Load success: " + filePath + ", bytes: " + vo.getParseBytes() + ", time: " + vo.getParseTime() + "ms");
 
-            try {
-                if (mListener != null) {
-                    mListener.onLoad(NovaLoader.this, filePath, new NovaVO(readTask.getContent()));
-                }
-            } catch (JSONException e) {
-                Log.e(TAG, "Load JSON failed: " + filePath, e);
-
-                if (mListener != null) {
-                    mListener.onError(NovaLoader.this, filePath);
-                }
+            if (mListener != null) {
+                mListener.onLoad(NovaLoader.this, filePath, vo);
             }
+        } catch (IOException e) {
+            Log.e(TAG, "Load failed: " + filePath, e);
 
-        } else {
-            Log.e(TAG, "Load failed: " + filePath);
+            if (mListener != null) {
+                mListener.onError(NovaLoader.this, filePath);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Load JSON failed: " + filePath, e);
 
             if (mListener != null) {
                 mListener.onError(NovaLoader.this, filePath);
@@ -111,19 +116,21 @@ public class NovaLoader {
         Log.v(TAG, "loadURL(): " + urlPath + ", " + cachePath);
 
         // read cache first
-        if (cachePath != null && cachePath.length() > 0) {
-            final ReadTextFileTask readTask = new ReadTextFileTask(cachePath);
-            if (readTask.run()) {
-                try {
-                    if (mListener != null) {
-                        mListener.onLoad(NovaLoader.this, urlPath, new NovaVO(readTask.getContent()));
-                    }
-                } catch (JSONException e) {
-                    Log.e(TAG, "Load JSON failed: " + urlPath, e);
-
-                    if (mListener != null) {
-                        mListener.onError(NovaLoader.this, urlPath);
-                    }
+        if (cachePath != null && cachePath.length() > 0 && new File(cachePath).exists()) {
+            try {
+                final NovaVO vo = read(new FileInputStream(new File(cachePath)));
+                if (mListener != null) {
+                    mListener.onLoad(NovaLoader.this, urlPath, vo);
+                }
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Load cache failed: " + cachePath, e);
+                // fall back to the url
+            } catch (JSONException e) {
+                Log.e(TAG, "Load JSON failed: " + urlPath, e);
+
+                if (mListener != null) {
+                    mListener.onError(NovaLoader.this, urlPath);
                 }
                 return true;
             }
@@ -134,8 +141,15 @@ public class NovaLoader {
         if (urlTask.run()) {
             final String json = urlTask.getStringBuilder().toString();
             try {
+                final NovaVO vo = new NovaVO(new JsonStreamReader(new StringReader(json)));
                 if (mListener != null) {
-                    mListener.onLoad(NovaLoader.this, urlPath, new NovaVO(json));
+                    mListener.onLoad(NovaLoader.this, urlPath, vo);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Load failed: " + urlPath, e);
+
+                if (mListener != null) {
+                    mListener.onError(NovaLoader.this, urlPath);
                 }
             } catch (JSONException e) {
                 Log.e(TAG, "Load JSON failed: " + urlPath, e);
@@ -170,6 +184,34 @@ public class NovaLoader {
         }));
     }
 
+    /**
+     * Parse a Nova file straight from the stream, then close it
+     * 
+     * @param stream
+     * @return
+     * @throws IOException
+     * @throws JSONException
+     */
+    public static NovaVO read(final InputStream stream) throws IOException, JSONException {
+        return read(new JsonStreamReader(stream));
+    }
+
+    /**
+     * Parse a Nova file from a text or binary reader, then close it
+     * 
+     * @param reader
+     * @return
+     * @throws IOException
+     * @throws JSONException
+     */
+    public static NovaVO read(final JsonTokenReader reader) throws IOException, JSONException {
+        try {
+            return new NovaVO(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
     public Listener getListener() {
         return mListener;
     }
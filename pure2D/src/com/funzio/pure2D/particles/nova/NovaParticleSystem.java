@@ -0,0 +1,953 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.particles.nova;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.graphics.PointF;
+
+import com.funzio.pure2D.BaseDisplayObject;
+import com.funzio.pure2D.LoopModes;
+import com.funzio.pure2D.Scene;
+import com.funzio.pure2D.animators.Timeline;
+import com.funzio.pure2D.animators.Timeline.Action;
+import com.funzio.pure2D.atlas.Atlas;
+import com.funzio.pure2D.atlas.AtlasFrame;
+import com.funzio.pure2D.atlas.AtlasFrameSet;
+import com.funzio.pure2D.gl.GLColor;
+import com.funzio.pure2D.gl.gl10.BlendModes;
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadMeshBuffer;
+import com.funzio.pure2D.gl.gl10.QuadMeshColorBuffer;
+import com.funzio.pure2D.gl.gl10.textures.QuadMeshTextureCoordBuffer;
+import com.funzio.pure2D.gl.gl10.textures.Texture;
+import com.funzio.pure2D.particles.nova.vo.NovaEmitterVO;
+import com.funzio.pure2D.particles.nova.vo.NovaParticleVO;
+import com.funzio.pure2D.particles.nova.vo.NovaVO;
+import com.funzio.pure2D.utils.Pure2DUtils;
+
+/**
+ * A structure-of-arrays alternative to {@link NovaEmitter} and {@link NovaParticle}. Particles are plain slots in primitive arrays, animators are compiled into {@link NovaKernel}s and the
+ * whole system is drawn as one quad mesh with a single texture and blend function, split into several draw calls only past the 16-bit index limit.
+ * <p>
+ * Big systems are simulated in ranges on a shared worker pool, joined before drawing. See {@link #setSeed(long)} for replays.
+ * </p>
+ * <p>
+ * It loads the same {@link NovaVO}. Motion trails, layers, skew, z, emitter animators, rotation pivots and looping groups are not supported. Sprites are looked up in the given {@link Atlas}.
+ * </p>
+ * 
+ * @author long
+ */
+public class NovaParticleSystem extends BaseDisplayObject implements Timeline.Listener {
+    public static final int DEFAULT_MAX_PARTICLES = 0x10000;
+    // limited by the short indices of the mesh, more particles are drawn in more calls
+    private static final int MAX_CELLS_PER_DRAW = 0x10000 / QuadMeshBuffer.NUM_VERTICES_PER_CELL;
+
+    // parallel simulation, the GL thread also takes a range
+    public static final int RANGE_SIZE = 1024;
+    public static final int PARALLEL_THRESHOLD = RANGE_SIZE * 4;
+    private static final int NUM_WORKERS = Math.max(0, Runtime.getRuntime().availableProcessors() - 1);
+    private static ThreadPoolExecutor sExecutor;
+
+    private static final float[] DEFAULT_TEXTURE_COORDS = {
+            0, 0, 0, 1, 1, 0, 1, 1
+    };
+
+    protected final NovaVO mNovaVO;
+    protected final Atlas mAtlas;
+    protected Texture mTexture;
+
+    protected final Timeline[] mTimelines;
+    protected final ArrayList<ParticleGroup> mGroups = new ArrayList<ParticleGroup>();
+    private int mNumRunningTimelines = 0;
+    private int mNumParticles = 0;
+    private int mMaxParticles = DEFAULT_MAX_PARTICLES;
+
+    private final Random mRandom = new Random();
+    private long mSeed = mRandom.nextLong();
+    private int mNumFrames = 0;
+
+    // parallel simulation
+    private boolean mParallelEnabled = true;
+    private final ArrayList<RangeTask> mTasks = new ArrayList<RangeTask>();
+    private final HashMap<String, AtlasFrameSet> mFrameSets = new HashMap<String, AtlasFrameSet>();
+
+    private boolean mFinished = false;
+    private boolean mRemoveOnFinish = false;
+    private Listener mListener;
+
+    // mesh
+    private int mSceneAxis = -1;
+    private QuadMeshBuffer mMeshBuffer;
+    private QuadMeshColorBuffer mColorBuffer;
+    private QuadMeshTextureCoordBuffer mTextureCoordBuffer;
+    private final float[] mQuadValues = new float[QuadMeshBuffer.NUM_VERTICES_PER_CELL * 2];
+
+    /**
+     * @param novaVO the nova config, the same one {@link NovaFactory} uses
+     * @param texture the shared texture of all the particles
+     * @param atlas the atlas of the texture to look up the sprites, can be null
+     */
+    public NovaParticleSystem(final NovaVO novaVO, final Texture texture, final Atlas atlas) {
+        super();
+
+        mNovaVO = novaVO;
+        mTexture = texture;
+        mAtlas = atlas;
+
+        // there is no bounds for the particles
+        setBypassCameraClipping(true);
+
+        // one timeline per emitter, just like NovaEmitter
+        final int numEmitters = novaVO.emitters.size();
+        mTimelines = new Timeline[numEmitters];
+        for (int i = 0; i < numEmitters; i++) {
+            final NovaEmitterVO emitterVO = novaVO.emitters.get(i);
+            final Timeline timeline = new Timeline(emitterVO.lifespan, this);
+            final int size = emitterVO.particles.size();
+            for (int j = 0; j < size; j++) {
+                timeline.addAction(new EmitAction(emitterVO, emitterVO.particles.get(j)));
+            }
+            mTimelines[i] = timeline;
+            addManipulator(timeline);
+        }
+
+        // a single blend mode for the whole batch, taken from the first particle that has one
+        for (NovaEmitterVO emitterVO : novaVO.emitters) {
+            for (NovaParticleVO particleVO : emitterVO.particles) {
+                if (mBlendFunc == null && particleVO.blend_mode != null && !particleVO.blend_mode.isEmpty()) {
+                    setBlendFunc(BlendModes.getBlendFunc(particleVO.blend_mode.get(0)));
+                }
+            }
+        }
+
+        start();
+    }
+
+    /**
+     * Restart all the emitters. Existing particles are kept.
+     */
+    public void start() {
+        mNumRunningTimelines = mTimelines.length;
+        mFinished = false;
+        for (Timeline timeline : mTimelines) {
+            timeline.reset();
+            timeline.start();
+        }
+    }
+
+    /**
+     * Stop emitting. Existing particles are kept until they end.
+     */
+    public void stop() {
+        for (Timeline timeline : mTimelines) {
+            if (timeline.isRunning()) {
+                timeline.stop();
+                mNumRunningTimelines--;
+            }
+        }
+    }
+
+    /**
+     * Remove all the particles
+     */
+    public void clear() {
+        final int size = mGroups.size();
+        for (int i = 0; i < size; i++) {
+            mGroups.get(i).mNumParticles = 0;
+        }
+        mNumParticles = 0;
+
+        invalidate(CHILDREN);
+    }
+
+    @Override
+    public void onTimelineComplete(final Timeline timeline) {
+        // this can be called more than once when the lifespan is over
+        if (timeline.isRunning()) {
+            timeline.stop();
+            mNumRunningTimelines--;
+        }
+    }
+
+    @Override
+    public boolean update(final int deltaTime) {
+        // find axis system
+        if (mSceneAxis < 0 && mScene != null) {
+            mSceneAxis = mScene.getAxisSystem();
+        }
+
+        // timelines emit new particles
+        final boolean returned = super.update(deltaTime);
+
+        // simulate, this joins all the ranges before returning
+        simulate(deltaTime);
+
+        // then clean up on this thread
+        int numParticles = 0;
+        final int size = mGroups.size();
+        for (int i = 0; i < size; i++) {
+            final ParticleGroup group = mGroups.get(i);
+            if (group.mNumParticles > 0) {
+                group.removeEnded();
+                numParticles += group.mNumParticles;
+            }
+        }
+        mNumParticles = numParticles;
+
+        if (numParticles > 0) {
+            invalidate(CHILDREN);
+        } else if (mNumRunningTimelines <= 0 && !mFinished) {
+            queueFinish();
+        }
+
+        return returned || numParticles > 0;
+    }
+
+    /**
+     * Age and animate all the particles. Groups are split into ranges of {@link #RANGE_SIZE}, each with its own seeded generator, so the result only depends on the seed and the frames,
+     * not on the number of threads. Big systems are simulated by the worker pool and this thread together.
+     */
+    private void simulate(final int deltaTime) {
+        final long frameSeed = mSeed + (++mNumFrames) * 0x9E3779B97F4A7C15L;
+
+        // prepare the ranges
+        int numTasks = 0;
+        final int size = mGroups.size();
+        for (int g = 0; g < size; g++) {
+            final ParticleGroup group = mGroups.get(g);
+            final int n = group.mNumParticles;
+            for (int start = 0, range = 0; start < n; start += RANGE_SIZE, range++) {
+                if (numTasks == mTasks.size()) {
+                    mTasks.add(new RangeTask());
+                }
+                mTasks.get(numTasks++).set(group, start, Math.min(n, start + RANGE_SIZE), deltaTime, frameSeed + g * 0xBF58476D1CE4E5B9L + range);
+            }
+        }
+
+        if (numTasks == 0) {
+            return;
+        } else if (!mParallelEnabled || NUM_WORKERS == 0 || numTasks < 2 || mNumParticles < PARALLEL_THRESHOLD) {
+            // not worth it
+            for (int i = 0; i < numTasks; i++) {
+                mTasks.get(i).run();
+            }
+            return;
+        }
+
+        // fork
+        final CountDownLatch latch = new CountDownLatch(numTasks - 1);
+        final ThreadPoolExecutor executor = getExecutor();
+        for (int i = 1; i < numTasks; i++) {
+            final RangeTask task = mTasks.get(i);
+            task.mLatch = latch;
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.run();
+            }
+        }
+        try {
+            // this thread takes the first range
+            mTasks.get(0).run();
+        } finally {
+            // join, even when the first range failed
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // rethrow what went wrong on the workers
+        for (int i = 1; i < numTasks; i++) {
+            final RuntimeException error = mTasks.get(i).mError;
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            sExecutor = new ThreadPoolExecutor(NUM_WORKERS, NUM_WORKERS, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, NovaParticleSystem.class.getSimpleName() + "-" + threadCount.incrementAndGet());
+                    // the GL thread is waiting for these, don't let them die with the app
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return sExecutor;
+    }
+
+    @Override
+    public boolean isUpdateNeeded() {
+        return super.isUpdateNeeded() || mNumParticles > 0 || mSceneAxis < 0;
+    }
+
+    @Override
+    public boolean draw(final GLState glState) {
+        if (mNumParticles == 0 || mTexture == null) {
+            return false;
+        }
+
+        return super.draw(glState);
+    }
+
+    @Override
+    protected boolean drawChildren(final GLState glState) {
+        final int numCells = Math.min(mNumParticles, MAX_CELLS_PER_DRAW);
+        // init the buffers
+        if (mMeshBuffer == null) {
+            mMeshBuffer = new QuadMeshBuffer(numCells);
+            mColorBuffer = new QuadMeshColorBuffer(numCells);
+            mTextureCoordBuffer = new QuadMeshTextureCoordBuffer(numCells);
+        } else {
+            mMeshBuffer.setNumCells(numCells);
+            mColorBuffer.setNumCells(numCells);
+            mTextureCoordBuffer.setNumCells(numCells);
+        }
+
+        mTexture.bind();
+
+        final boolean axisFlipped = mSceneAxis == Scene.AXIS_TOP_LEFT;
+        final boolean premultiplied = !BlendModes.isInterpolate(getInheritedBlendFunc());
+        int cell = 0;
+        final int size = mGroups.size();
+        for (int g = 0; g < size; g++) {
+            final ParticleGroup group = mGroups.get(g);
+            final int n = group.mNumParticles;
+            for (int i = 0; i < n; i++) {
+                setCell(cell, group, i, axisFlipped, premultiplied);
+
+                // the mesh is full, flush it
+                if (++cell == MAX_CELLS_PER_DRAW) {
+                    drawCells(glState, cell);
+                    cell = 0;
+                }
+            }
+        }
+
+        if (cell > 0) {
+            drawCells(glState, cell);
+        }
+
+        mColorBuffer.unapply(glState);
+
+        return true;
+    }
+
+    private void drawCells(final GLState glState, final int numCells) {
+        mTextureCoordBuffer.validate();
+        mTextureCoordBuffer.apply(glState);
+        mColorBuffer.validate();
+        mColorBuffer.apply(glState);
+        mMeshBuffer.validate();
+        mMeshBuffer.setIndicesNumUsed(numCells * QuadMeshBuffer.NUM_INDICES_PER_CELL);
+
+        // one call for all these particles
+        mMeshBuffer.draw(glState);
+    }
+
+    private void setCell(final int cell, final ParticleGroup group, final int i, final boolean axisFlipped, final boolean premultiplied) {
+        // texture coordinates and size
+        final AtlasFrame frame = group.getFrame(i);
+        final float width, height;
+        if (frame != null) {
+            final PointF frameSize = frame.getSize();
+            width = frameSize.x;
+            height = frameSize.y;
+            mTextureCoordBuffer.setRectAt(cell, frame.getTextureCoords());
+        } else {
+            final PointF textureSize = mTexture.getSize();
+            width = textureSize.x;
+            height = textureSize.y;
+            mTextureCoordBuffer.setRectAt(cell, DEFAULT_TEXTURE_COORDS);
+        }
+
+        // corners around the origin
+        final NovaParticleVO vo = group.mParticleVO;
+        final boolean centered = vo.hasOriginAtCenter();
+        final float ox = centered ? width * 0.5f : vo.origin_x;
+        final float oy = centered ? height * 0.5f : vo.origin_y;
+        final float sx = group.mScaleX[i], sy = group.mScaleY[i];
+        final float left = -ox * sx;
+        final float right = (width - ox) * sx;
+        final float top = (axisFlipped ? -oy : height - oy) * sy;
+        final float bottom = (axisFlipped ? height - oy : -oy) * sy;
+        final float x = group.mX[i], y = group.mY[i];
+
+        final float[] quad = mQuadValues;
+        final float rotation = group.mRotation[i];
+        if (rotation == 0) {
+            quad[0] = x + left;
+            quad[1] = y + top;
+            quad[2] = x + left;
+            quad[3] = y + bottom;
+            quad[4] = x + right;
+            quad[5] = y + top;
+            quad[6] = x + right;
+            quad[7] = y + bottom;
+        } else {
+            final float radian = rotation * Pure2DUtils.DEGREE_TO_RADIAN;
+            final float cos = (float) Math.cos(radian);
+            final float sin = (float) Math.sin(radian);
+            quad[0] = x + left * cos - top * sin;
+            quad[1] = y + left * sin + top * cos;
+            quad[2] = x + left * cos - bottom * sin;
+            quad[3] = y + left * sin + bottom * cos;
+            quad[4] = x + right * cos - top * sin;
+            quad[5] = y + right * sin + top * cos;
+            quad[6] = x + right * cos - bottom * sin;
+            quad[7] = y + right * sin + bottom * cos;
+        }
+        mMeshBuffer.setValuesAt(cell, quad);
+
+        // color and alpha
+        final float alpha = group.mColorAlpha[i] * group.mAlpha[i];
+        if (premultiplied) {
+            mColorBuffer.setColorAt(cell, group.mRed[i] * alpha, group.mGreen[i] * alpha, group.mBlue[i] * alpha, alpha);
+        } else {
+            mColorBuffer.setColorAt(cell, group.mRed[i], group.mGreen[i], group.mBlue[i], alpha);
+        }
+    }
+
+    /**
+     * Emit a new particle
+     * 
+     * @return true if the particle is emitted, false when the system is full
+     */
+    protected boolean emit(final NovaEmitterVO emitterVO, final NovaParticleVO particleVO, final int emitIndex) {
+        if (mNumParticles >= mMaxParticles) {
+            return false;
+        }
+
+        // one group per animator, so the kernels of a group all apply to all of its particles
+        String animator = NovaConfig.getString(particleVO.animator, emitIndex);
+        if (animator == null) {
+            animator = "";
+        }
+        final ParticleGroup group = getGroup(emitterVO, particleVO, animator);
+
+        // the emitter area is centered at its offset
+        final float x = emitterVO.x - emitterVO.width * 0.5f + (emitterVO.width > 1 ? mRandom.nextInt(emitterVO.width) : 0);
+        final float y = emitterVO.y - emitterVO.height * 0.5f + (emitterVO.height > 1 ? mRandom.nextInt(emitterVO.height) : 0);
+        group.add(emitIndex, x, y);
+        mNumParticles++;
+
+        return true;
+    }
+
+    protected ParticleGroup getGroup(final NovaEmitterVO emitterVO, final NovaParticleVO particleVO, final String animator) {
+        final int size = mGroups.size();
+        for (int i = 0; i < size; i++) {
+            final ParticleGroup group = mGroups.get(i);
+            if (group.mParticleVO == particleVO && group.mEmitterVO == emitterVO && group.mAnimator.equals(animator)) {
+                return group;
+            }
+        }
+
+        final ParticleGroup group = new ParticleGroup(this, emitterVO, particleVO, animator);
+        mGroups.add(group);
+        return group;
+    }
+
+    /**
+     * Find the frames of a sprite. Override this to look up somewhere other than the atlas.
+     * 
+     * @param sprite
+     * @return the frame set or null
+     */
+    protected AtlasFrameSet getFrameSet(final String sprite) {
+        if (sprite == null || mAtlas == null) {
+            return null;
+        }
+
+        AtlasFrameSet frameSet = mFrameSets.get(sprite);
+        if (frameSet == null && !mFrameSets.containsKey(sprite)) {
+            frameSet = mAtlas.getSubFrameSet(sprite);
+            if (frameSet == null) {
+                // a single frame
+                final AtlasFrame frame = mAtlas.getFrame(sprite);
+                if (frame != null) {
+                    frameSet = new AtlasFrameSet(sprite);
+                    frameSet.addFrame(frame);
+                }
+            }
+            mFrameSets.put(sprite, frameSet);
+        }
+
+        return frameSet;
+    }
+
+    public void finish() {
+        // check
+        if (mFinished) {
+            return;
+        }
+
+        mFinished = true;
+        if (mRemoveOnFinish) {
+            // auto remove me
+            removeFromParent();
+        }
+
+        // check listener
+        if (mListener != null) {
+            mListener.onParticleSystemFinish(this);
+        }
+    }
+
+    public void queueFinish() {
+        final boolean success = queueEvent(new Runnable() {
+
+            @Override
+            public void run() {
+                finish();
+            }
+        });
+
+        if (!success) {
+            finish();
+        }
+    }
+
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    public boolean isRemoveOnFinish() {
+        return mRemoveOnFinish;
+    }
+
+    /**
+     * @param removeOnFinish auto remove when all emitters are done and all particles have ended
+     */
+    public void setRemoveOnFinish(final boolean removeOnFinish) {
+        mRemoveOnFinish = removeOnFinish;
+    }
+
+    public Listener getListener() {
+        return mListener;
+    }
+
+    public void setListener(final Listener listener) {
+        mListener = listener;
+    }
+
+    public NovaVO getNovaVO() {
+        return mNovaVO;
+    }
+
+    public Texture getTexture() {
+        return mTexture;
+    }
+
+    public void setTexture(final Texture texture) {
+        mTexture = texture;
+
+        invalidate(CHILDREN);
+    }
+
+    public int getNumParticles() {
+        return mNumParticles;
+    }
+
+    public boolean isParallelEnabled() {
+        return mParallelEnabled;
+    }
+
+    /**
+     * Enable/disable simulating big systems on the worker pool. Results are the same either way.
+     * 
+     * @param parallelEnabled
+     */
+    public void setParallelEnabled(final boolean parallelEnabled) {
+        mParallelEnabled = parallelEnabled;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    /**
+     * Seed the emitting positions and the simulation, for replays and tests. Random values in the NovaVO lists still come from {@link NovaConfig#RANDOM}.
+     * 
+     * @param seed
+     */
+    public void setSeed(final long seed) {
+        mSeed = seed;
+        mRandom.setSeed(seed);
+        mNumFrames = 0;
+    }
+
+    public int getMaxParticles() {
+        return mMaxParticles;
+    }
+
+    /**
+     * @param maxParticles the cap of live particles, new particles are dropped beyond it
+     */
+    public void setMaxParticles(final int maxParticles) {
+        mMaxParticles = maxParticles;
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+
+        if (mMeshBuffer != null) {
+            mMeshBuffer.dispose();
+            mMeshBuffer = null;
+        }
+
+        if (mColorBuffer != null) {
+            mColorBuffer.dispose();
+            mColorBuffer = null;
+        }
+
+        if (mTextureCoordBuffer != null) {
+            mTextureCoordBuffer.dispose();
+            mTextureCoordBuffer = null;
+        }
+
+        mGroups.clear();
+        mFrameSets.clear();
+    }
+
+    static int[] grow(final int[] array, final int capacity) {
+        if (array != null && array.length >= capacity) {
+            return array;
+        }
+        final int[] newArray = new int[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, array.length);
+        }
+        return newArray;
+    }
+
+    static float[] grow(final float[] array, final int capacity) {
+        if (array != null && array.length >= capacity) {
+            return array;
+        }
+        final float[] newArray = new float[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, array.length);
+        }
+        return newArray;
+    }
+
+    static boolean[] grow(final boolean[] array, final int capacity) {
+        if (array != null && array.length >= capacity) {
+            return array;
+        }
+        final boolean[] newArray = new boolean[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, array.length);
+        }
+        return newArray;
+    }
+
+    /**
+     * Timeline Action for emitting particles
+     */
+    private class EmitAction extends Action {
+        private final NovaEmitterVO mEmitterVO;
+        private final NovaParticleVO mParticleVO;
+        private int mEmitIndex = 0;
+
+        public EmitAction(final NovaEmitterVO emitterVO, final NovaParticleVO particleVO) {
+            super(particleVO.start_delay, particleVO.step_delay, particleVO.duration);
+
+            mEmitterVO = emitterVO;
+            mParticleVO = particleVO;
+        }
+
+        @Override
+        protected void reset() {
+            super.reset();
+
+            mEmitIndex = 0;
+        }
+
+        @Override
+        public void run() {
+            for (int n = 0; n < mParticleVO.step_quantity; n++) {
+                if (!emit(mEmitterVO, mParticleVO, mEmitIndex++)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * All the particles of the same emitter, particle vo and animator, in parallel arrays
+     * 
+     * @author long
+     */
+    protected static class ParticleGroup {
+        final NovaParticleSystem mSystem;
+        final NovaEmitterVO mEmitterVO;
+        final NovaParticleVO mParticleVO;
+        final String mAnimator;
+        final NovaKernel.Program mProgram;
+
+        int mNumParticles = 0;
+        int mCapacity = 0;
+
+        // the particles
+        float[] mX;
+        float[] mY;
+        float[] mScaleX;
+        float[] mScaleY;
+        float[] mRotation;
+        float[] mAlpha;
+        float[] mRed;
+        float[] mGreen;
+        float[] mBlue;
+        float[] mColorAlpha;
+        int[] mAge;
+        int[] mLifespan;
+        int[] mStartFrame;
+        int[] mFrameLoop;
+        AtlasFrameSet[] mFrameSet;
+
+        ParticleGroup(final NovaParticleSystem system, final NovaEmitterVO emitterVO, final NovaParticleVO particleVO, final String animator) {
+            mSystem = system;
+            mEmitterVO = emitterVO;
+            mParticleVO = particleVO;
+            mAnimator = animator;
+            mProgram = animator.length() > 0 ? NovaKernel.Program.compile(system.mNovaVO.getAnimatorVO(animator)) : null;
+        }
+
+        private void ensureCapacity(final int capacity) {
+            if (capacity <= mCapacity) {
+                return;
+            }
+
+            // double up
+            final int newCapacity = Math.max(capacity, Math.max(16, mCapacity * 2));
+            mX = grow(mX, newCapacity);
+            mY = grow(mY, newCapacity);
+            mScaleX = grow(mScaleX, newCapacity);
+            mScaleY = grow(mScaleY, newCapacity);
+            mRotation = grow(mRotation, newCapacity);
+            mAlpha = grow(mAlpha, newCapacity);
+            mRed = grow(mRed, newCapacity);
+            mGreen = grow(mGreen, newCapacity);
+            mBlue = grow(mBlue, newCapacity);
+            mColorAlpha = grow(mColorAlpha, newCapacity);
+            mAge = grow(mAge, newCapacity);
+            mLifespan = grow(mLifespan, newCapacity);
+            mStartFrame = grow(mStartFrame, newCapacity);
+            mFrameLoop = grow(mFrameLoop, newCapacity);
+            final AtlasFrameSet[] frameSets = new AtlasFrameSet[newCapacity];
+            if (mFrameSet != null) {
+                System.arraycopy(mFrameSet, 0, frameSets, 0, mFrameSet.length);
+            }
+            mFrameSet = frameSets;
+            if (mProgram != null) {
+                mProgram.ensureCapacity(newCapacity);
+            }
+
+            mCapacity = newCapacity;
+        }
+
+        /**
+         * Add a new particle, the same way NovaParticle.reset() does
+         */
+        void add(final int emitIndex, final float x, final float y) {
+            ensureCapacity(mNumParticles + 1);
+
+            final NovaParticleVO vo = mParticleVO;
+            final int i = mNumParticles++;
+            mX[i] = x + NovaConfig.getInt(vo.x, emitIndex, 0);
+            mY[i] = y + NovaConfig.getInt(vo.y, emitIndex, 0);
+            mScaleX[i] = NovaConfig.getFloat(vo.scale_x, emitIndex, 1);
+            mScaleY[i] = NovaConfig.getFloat(vo.scale_y, emitIndex, 1);
+            mRotation[i] = NovaConfig.getFloat(vo.rotation, emitIndex, 0);
+            mAlpha[i] = NovaConfig.getFloat(vo.alpha, emitIndex, 1);
+            final GLColor color = NovaConfig.getColor(vo.color, emitIndex, GLColor.WHITE);
+            mRed[i] = color.r;
+            mGreen[i] = color.g;
+            mBlue[i] = color.b;
+            mColorAlpha[i] = color.a;
+            mAge[i] = 0;
+
+            // frames
+            final AtlasFrameSet frameSet = mSystem.getFrameSet(NovaConfig.getString(vo.sprite, emitIndex));
+            mFrameSet[i] = frameSet;
+            mStartFrame[i] = frameSet == null ? 0 : Math.max(0, Math.min(NovaConfig.getInt(vo.start_frame, emitIndex, 0), frameSet.getNumFrames() - 1));
+            mFrameLoop[i] = vo.loop_mode != null ? NovaConfig.getLoopMode(NovaConfig.getString(vo.loop_mode, emitIndex)) : LoopModes.LOOP_REPEAT;
+
+            // the particle ends with its animator
+            mLifespan[i] = mProgram != null ? mProgram.reset(i, emitIndex) : NovaKernel.INFINITE;
+        }
+
+        /**
+         * Age and animate a range of particles. Different ranges can run in parallel.
+         */
+        void update(final int deltaTime, final int start, final int end, final Random random) {
+            final int[] ages = mAge;
+            for (int i = start; i < end; i++) {
+                ages[i] += deltaTime;
+            }
+
+            if (mProgram != null) {
+                mProgram.apply(this, start, end, random);
+            }
+        }
+
+        /**
+         * Remove the ended particles by moving the last ones into their slots
+         */
+        void removeEnded() {
+            for (int i = mNumParticles - 1; i >= 0; i--) {
+                if (mAge[i] >= mLifespan[i]) {
+                    final int last = --mNumParticles;
+                    if (i != last) {
+                        mX[i] = mX[last];
+                        mY[i] = mY[last];
+                        mScaleX[i] = mScaleX[last];
+                        mScaleY[i] = mScaleY[last];
+                        mRotation[i] = mRotation[last];
+                        mAlpha[i] = mAlpha[last];
+                        mRed[i] = mRed[last];
+                        mGreen[i] = mGreen[last];
+                        mBlue[i] = mBlue[last];
+                        mColorAlpha[i] = mColorAlpha[last];
+                        mAge[i] = mAge[last];
+                        mLifespan[i] = mLifespan[last];
+                        mStartFrame[i] = mStartFrame[last];
+                        mFrameLoop[i] = mFrameLoop[last];
+                        mFrameSet[i] = mFrameSet[last];
+                        if (mProgram != null) {
+                            mProgram.copy(last, i);
+                        }
+                    }
+                    mFrameSet[last] = null;
+                }
+            }
+        }
+
+        /**
+         * @return the current frame of a particle, based on its age
+         */
+        AtlasFrame getFrame(final int index) {
+            final AtlasFrameSet frameSet = mFrameSet[index];
+            if (frameSet == null) {
+                return null;
+            }
+
+            final int numFrames = frameSet.getNumFrames();
+            if (numFrames <= 1) {
+                return frameSet.getFrame(0);
+            }
+
+            final int fps = frameSet.getFps();
+            final int frames = mAge[index] / (fps > 0 ? 1000 / fps : Scene.DEFAULT_MSPF);
+            final int loop = mFrameLoop[index];
+            int frame = mStartFrame[index] + frames;
+            if (loop == LoopModes.LOOP_REPEAT) {
+                frame %= numFrames;
+            } else if (loop == LoopModes.LOOP_REVERSE) {
+                final int cycle = (numFrames - 1) * 2;
+                frame %= cycle;
+                if (frame >= numFrames) {
+                    frame = cycle - frame;
+                }
+            } else if (frame >= numFrames) {
+                frame = numFrames - 1;
+            }
+
+            return frameSet.getFrame(frame);
+        }
+    }
+
+    /**
+     * A range of a group to simulate, reused every frame
+     */
+    private static class RangeTask implements Runnable {
+        private final Random mRandom = new Random();
+        private ParticleGroup mGroup;
+        private int mStart;
+        private int mEnd;
+        private int mDeltaTime;
+        private CountDownLatch mLatch;
+        private volatile RuntimeException mError;
+
+        private void set(final ParticleGroup group, final int start, final int end, final int deltaTime, final long seed) {
+            mGroup = group;
+            mStart = start;
+            mEnd = end;
+            mDeltaTime = deltaTime;
+            mRandom.setSeed(seed);
+            mLatch = null;
+            mError = null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mGroup.update(mDeltaTime, mStart, mEnd, mRandom);
+            } catch (RuntimeException e) {
+                if (mLatch == null) {
+                    throw e;
+                }
+                mError = e;
+            } finally {
+                if (mLatch != null) {
+                    mLatch.countDown();
+                }
+            }
+        }
+    }
+
+    public static interface Listener {
+        public void onParticleSystemFinish(NovaParticleSystem system);
+    }
+}
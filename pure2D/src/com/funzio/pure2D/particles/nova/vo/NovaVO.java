@@ -24,6 +24,7 @@
  */
 package com.funzio.pure2D.particles.nova.vo;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,6 +37,7 @@ import org.json.JSONObject;
 
 import com.funzio.pure2D.gl.GLColor;
 import com.funzio.pure2D.gl.gl10.textures.TextureOptions;
+import com.funzio.pure2D.utils.JsonTokenReader;
 
 /**
  * @author long
@@ -57,6 +59,10 @@ public class NovaVO {
     private HashSet<String> mUsedSprites;
     private JSONObject mSource;
 
+    // parsing stats
+    private float mParseTime = 0;
+    private long mParseBytes = 0;
+
     // @JsonCreator
     // public NovaVO( //
     // @JsonProperty("version")//
@@ -89,7 +95,69 @@ public class NovaVO {
         animators = getAnimators(json.optJSONArray("animators"));
         motion_trails = getMotionTrails(json.optJSONArray("motion_trails"));
 
-        // make the maps
+        createMaps();
+    }
+
+    public NovaVO(final String json) throws JSONException {
+        this(new JSONObject(json));
+    }
+
+    /**
+     * Build the VOs straight from a stream. Only one entry at a time is held as a JSONObject, and the source is not kept.
+     * 
+     * @param reader
+     * @throws IOException
+     * @throws JSONException
+     */
+    public NovaVO(final JsonTokenReader reader) throws IOException, JSONException {
+        final long startTime = System.nanoTime();
+
+        name = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String field = reader.nextName();
+            if (reader.peek() == JsonTokenReader.NULL) {
+                reader.skipValue();
+            } else if ("version".equals(field)) {
+                version = reader.nextInt();
+            } else if ("name".equals(field)) {
+                name = reader.nextString();
+            } else if ("pool_size".equals(field)) {
+                pool_size = reader.nextInt();
+            } else if ("emitters".equals(field)) {
+                emitters = new ArrayList<NovaEmitterVO>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    emitters.add(new NovaEmitterVO(reader.nextJSONObject()));
+                }
+                reader.endArray();
+            } else if ("animators".equals(field)) {
+                animators = new ArrayList<AnimatorVO>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    animators.add(AnimatorVO.create(reader.nextJSONObject()));
+                }
+                reader.endArray();
+            } else if ("motion_trails".equals(field)) {
+                motion_trails = new ArrayList<MotionTrailVO>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    motion_trails.add(MotionTrailVO.create(reader.nextJSONObject()));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        createMaps();
+
+        mParseTime = (System.nanoTime() - startTime) / 1000000f;
+        mParseBytes = reader.getBytesRead();
+    }
+
+    private void createMaps() {
         if (emitters != null) {
             mEmitterMap = new HashMap<String, NovaEmitterVO>();
             for (final NovaEmitterVO vo : emitters) {
@@ -116,10 +184,6 @@ public class NovaVO {
         }
     }
 
-    public NovaVO(final String json) throws JSONException {
-        this(new JSONObject(json));
-    }
-
     /**
      * Apply a screen's scale factor to some certain numbers such as x, y, dx, dy. This is used when you scale the texture.
      * 
@@ -332,10 +396,27 @@ public class NovaVO {
         mSource = null;
     }
 
+    /**
+     * @return the source json, or null if released or streamed
+     */
     public JSONObject getSource() {
         return mSource;
     }
 
+    /**
+     * @return the time of parsing from a stream, in ms
+     */
+    public float getParseTime() {
+        return mParseTime;
+    }
+
+    /**
+     * @return the number of bytes parsed from a stream
+     */
+    public long getParseBytes() {
+        return mParseBytes;
+    }
+
     /*
      * (non-Javadoc)
      * @see java.lang.Object#toString()
@@ -166,8 +166,19 @@ public class Clip extends Sprite implements Playable {
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        if (mFrameSet != null && (mCurrentFrame != mPreviousFrame || mFrameSet.getNumFrames() != mNumFrames)) {
+            // frame changed or async frame set
+            return true;
+        }
+
+        return super.isUpdateNeeded() || (mNumFrames > 1 && mPlaying);
+    }
+
     public void play() {
         mPlaying = true;
+        invalidateUpdate();
     }
 
     public void playAt(final int frame) {
@@ -184,6 +195,7 @@ public class Clip extends Sprite implements Playable {
     public void stopAt(final int frame) {
         mCurrentFrame = frame;
         stop();
+        invalidateUpdate();
     }
 
     /**
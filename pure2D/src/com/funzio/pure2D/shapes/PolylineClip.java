@@ -139,8 +139,14 @@ public class PolylineClip extends Polyline implements Playable {
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        return super.isUpdateNeeded() || (mNumFrames > 1 && mPlaying) || (mFrameSet != null && mCurrentFrame != mPreviousFrame);
+    }
+
     public void play() {
         mPlaying = true;
+        invalidateUpdate();
     }
 
     public void playAt(final int frame) {
@@ -157,6 +163,7 @@ public class PolylineClip extends Polyline implements Playable {
     public void stopAt(final int frame) {
         mCurrentFrame = frame;
         stop();
+        invalidateUpdate();
     }
 
     /**
@@ -38,6 +38,7 @@ import com.funzio.pure2D.geom.Matrix4;
 import com.funzio.pure2D.gl.GLColor;
 import com.funzio.pure2D.gl.gl10.ColorBuffer;
 import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadBuffer;
 import com.funzio.pure2D.gl.gl10.VertexBuffer;
 import com.funzio.pure2D.gl.gl10.textures.Texture;
 import com.funzio.pure2D.gl.gl10.textures.TextureCoordBuffer;
@@ -102,6 +103,12 @@ public class Shape extends BaseDisplayObject {
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // keep polling till the texture is loaded
+        return super.isUpdateNeeded() || (!mTextureLoaded && mTexture != null);
+    }
+
     @Override
     protected void drawStart(final GLState glState) {
         // texture coordinates changed?
@@ -195,12 +202,30 @@ public class Shape extends BaseDisplayObject {
     protected void shaderSetup(final GLState glState) {   // override this to get control just before drawing, for example to populate uniforms
     }
 
+    /**
+     * Whether this shape can be merged into the GLState's quad batch. Override and return false when {@link #shaderSetup(GLState)} is used.
+     * 
+     * @return true if this is a plain quad without color buffer
+     * @see GLState#setBatchingEnabled(boolean)
+     */
+    protected boolean isBatchable() {
+        return mVertexBuffer instanceof QuadBuffer && mColorBuffer == null;
+    }
+
     @Override
     protected boolean drawChildren(final GLState glState) {
         if (mVertexBuffer == null) {
             return false;
         }
 
+        // batch it up instead of drawing on its own
+        if (glState.isBatchingEnabled() && isBatchable()) {
+            final TextureCoordBuffer coords = mTexture == null ? null : (mTextureCoordBufferScaled != null ? mTextureCoordBufferScaled : mTextureCoordBuffer);
+            if (glState.batchQuad(mTexture, coords != null ? coords.getValues() : null, ((QuadBuffer) mVertexBuffer).getValues())) {
+                return true;
+            }
+        }
+
         // color buffer
         if (mColorBuffer == null) {
             glState.setColorArrayEnabled(false);
@@ -33,6 +33,7 @@ public abstract class AbstractSound implements Soundable {
     protected int mPriority = 0;
     protected int mLoop = 0;
     protected long mLength = -1;
+    protected int mMaxInstances = 0;
 
     public AbstractSound(final int key) {
         mKey = key;
@@ -65,4 +66,15 @@ public abstract class AbstractSound implements Soundable {
     public long getLength() {
         return mLength;
     }
+
+    public int getMaxInstances() {
+        return mMaxInstances;
+    }
+
+    /**
+     * @param maxInstances max number of voices of this sound at the same time, 0 for no limit
+     */
+    public void setMaxInstances(final int maxInstances) {
+        mMaxInstances = maxInstances;
+    }
 }
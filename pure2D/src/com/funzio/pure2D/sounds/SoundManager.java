@@ -21,8 +21,11 @@
  ******************************************************************************/
 package com.funzio.pure2D.sounds;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.MediaPlayer.OnErrorListener;
@@ -33,14 +36,19 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.provider.Settings;
 import android.util.Log;
 import android.util.SparseArray;
-import android.util.SparseIntArray;
 
 public class SoundManager extends Thread implements SoundPool.OnLoadCompleteListener, OnPreparedListener, OnErrorListener {
     protected static final String TAG = SoundManager.class.getSimpleName();
 
     protected static final float DEFAULT_MEDIA_VOLUME = 0.8f;
+    // one frame, to merge the same sounds played together
+    public static final int DEFAULT_COALESCE_WINDOW = 16;
+
+    private static final int MSG_UPDATE = 1;
+    private static final int MSG_UPDATE_DELAYED = 2;
 
     // map keys to sounds, for caching
     protected SparseArray<Soundable> mSoundMap;
@@ -56,19 +64,23 @@ public class SoundManager extends Thread implements SoundPool.OnLoadCompleteList
     protected MediaPlayer mMediaPlayer;
     protected float mMediaVolume = DEFAULT_MEDIA_VOLUME;
 
-    protected Handler mHandler;
+    protected volatile Handler mHandler;
 
-    protected volatile SparseIntArray mStreamIds;
+    protected final VoiceManager mVoiceManager;
+    protected int mCoalesceWindow = DEFAULT_COALESCE_WINDOW;
+    private final AtomicBoolean mUpdatePending = new AtomicBoolean(false);
+    private ContentObserver mVolumeObserver;
 
     public SoundManager(final Context context, final int maxStream) {
         mContext = context;
         mSoundMap = new SparseArray<Soundable>();
-        mStreamIds = new SparseIntArray();
 
         mSoundPool = new SoundPool(maxStream, AudioManager.STREAM_MUSIC, 0);
         mSoundPool.setOnLoadCompleteListener(this);
+        mVoiceManager = new VoiceManager(new SoundPoolBackend(mSoundPool), maxStream);
 
         mAudioManager = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
+        refreshVolume();
 
         start();
     }
@@ -77,9 +89,28 @@ public class SoundManager extends Thread implements SoundPool.OnLoadCompleteList
     public void run() {
         Looper.prepare();
         mHandler = new SoundHandler();
+        // handle what was requested before the handler existed
+        scheduleUpdate();
+
+        // cache the volume instead of asking on every play, the observer is called on this thread
+        mVolumeObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(final boolean selfChange) {
+                refreshVolume();
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(Settings.System.CONTENT_URI, true, mVolumeObserver);
+
         Looper.loop();
     }
 
+    /**
+     * Read the stream volume again. This is done automatically when the volume settings change.
+     */
+    public void refreshVolume() {
+        mVoiceManager.setMasterVolume((float) mAudioManager.getStreamVolume(AudioManager.STREAM_MUSIC) / (float) mAudioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC));
+    }
+
     public boolean isSoundEnabled() {
         return mSoundEnabled;
     }
@@ -121,10 +152,7 @@ public class SoundManager extends Thread implements SoundPool.OnLoadCompleteList
 
         Soundable soundable = mSoundMap.get(key);
         if (soundable != null) {
-            Message msg = new Message();
-            msg.arg1 = soundable.getSoundID();
-            msg.arg2 = soundable.getLoop();
-            mHandler.sendMessage(msg);
+            request(soundable, 1f, 0);
         } else {
             Log.e(TAG, "Unable to play sound: " + key);
         }
@@ -132,10 +160,15 @@ public class SoundManager extends Thread implements SoundPool.OnLoadCompleteList
 
     public void play(final Soundable sound) {
         if (sound != null) {
-            Message msg = new Message();
-            msg.arg1 = sound.getSoundID();
-            msg.arg2 = sound.getLoop();
-            mHandler.sendMessage(msg);
+            request(sound, 1f, 0);
+        } else {
+            Log.e(TAG, "Unable to play sound: " + sound);
+        }
+    }
+
+    public void play(final Soundable sound, final float volume) {
+        if (sound != null) {
+            request(sound, volume, 0);
         } else {
             Log.e(TAG, "Unable to play sound: " + sound);
         }
@@ -143,24 +176,32 @@ public class SoundManager extends Thread implements SoundPool.OnLoadCompleteList
 
     public void playDelayed(final Soundable sound, final int msec) {
         if (sound != null) {
-            Message msg = new Message();
-            msg.arg1 = sound.getSoundID();
-            msg.arg2 = sound.getLoop();
-            mHandler.sendMessageDelayed(msg, msec);
+            request(sound, 1f, msec);
         } else {
             Log.e(TAG, "Unable to play sound: " + sound);
         }
     }
 
-    private int privatePlay(final int soundID, final int loop) {
-        // Log.v(TAG, "play(" + sound + ")");
+    private void request(final Soundable sound, final float volume, final int delay) {
+        if (mSoundEnabled && sound.getSoundID() > 0) {
+            mVoiceManager.request(sound.getSoundID(), sound.getPriority(), sound.getMaxInstances(), sound.getLength(), sound.getLoop(), volume, delay);
+            scheduleUpdate();
+        }
+    }
 
-        if (mSoundEnabled && soundID > 0) {
-            final float volume = (float) mAudioManager.getStreamVolume(AudioManager.STREAM_MUSIC) / (float) mAudioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
-            return mSoundPool.play(soundID, volume, volume, 1, loop, 1f);
+    /**
+     * Let the sound thread handle the requests, after the coalesce window. Only one update is queued at a time.
+     */
+    private void scheduleUpdate() {
+        final Handler handler = mHandler;
+        // sound thread not ready yet, the requests stay queued until run() schedules the first update
+        if (handler == null) {
+            return;
         }
 
-        return 0;
+        if (mUpdatePending.compareAndSet(false, true)) {
+            handler.sendEmptyMessageDelayed(MSG_UPDATE, mCoalesceWindow);
+        }
     }
 
     public void play(final Media media) throws IllegalStateException {
@@ -240,19 +281,34 @@ public class SoundManager extends Thread implements SoundPool.OnLoadCompleteList
     protected void playByID(final int soundID) {
         // Log.v(TAG, "playByID(" + soundID + ")");
 
-        Message msg = new Message();
-        msg.arg1 = soundID;
-        msg.arg2 = 0;
-        mHandler.sendMessage(msg);
+        if (mSoundEnabled && soundID > 0) {
+            mVoiceManager.request(soundID, 0, 0, -1, 0, 1f, 0);
+            scheduleUpdate();
+        }
     }
 
+    /**
+     * Stop all the voices of a sound
+     * 
+     * @param soundID
+     */
     public void stop(final int soundID) {
-        int streamID = mStreamIds.get(soundID, -1);
+        mVoiceManager.stop(soundID);
+    }
 
-        if (streamID > 0) {
-            mSoundPool.stop(streamID);
-            mStreamIds.delete(soundID);
-        }
+    public VoiceManager getVoiceManager() {
+        return mVoiceManager;
+    }
+
+    public int getCoalesceWindow() {
+        return mCoalesceWindow;
+    }
+
+    /**
+     * @param coalesceWindow how long to wait in ms for more plays of the same sound to merge with, 0 for no wait
+     */
+    public void setCoalesceWindow(final int coalesceWindow) {
+        mCoalesceWindow = coalesceWindow;
     }
 
     public boolean unloadByID(final int soundID) {
@@ -319,8 +375,13 @@ public class SoundManager extends Thread implements SoundPool.OnLoadCompleteList
             mSoundMap.clear();
         }
 
+        if (mVolumeObserver != null) {
+            mContext.getContentResolver().unregisterContentObserver(mVolumeObserver);
+            mVolumeObserver = null;
+        }
+
+        mVoiceManager.stopAll();
         mSoundPool.release();
-        mStreamIds.clear();
 
         releaseMedia();
     }
@@ -361,12 +422,15 @@ public class SoundManager extends Thread implements SoundPool.OnLoadCompleteList
 
         @Override
         public void handleMessage(final Message msg) {
-            final int soundID = msg.arg1;
-            final int soundLoop = msg.arg2;
+            if (msg.what == MSG_UPDATE) {
+                mUpdatePending.set(false);
+            }
 
-            int streamId = privatePlay(soundID, soundLoop);
-            if (streamId != 0) {
-                mStreamIds.put(soundID, streamId);
+            final long nextTime = mVoiceManager.update();
+            if (nextTime >= 0) {
+                // wake up for the next delayed play
+                removeMessages(MSG_UPDATE_DELAYED);
+                sendEmptyMessageAtTime(MSG_UPDATE_DELAYED, nextTime);
             }
         }
     }
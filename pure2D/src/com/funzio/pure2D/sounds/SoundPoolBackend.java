@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.sounds;
+
+import android.media.SoundPool;
+import android.os.SystemClock;
+
+/**
+ * @author long
+ */
+public class SoundPoolBackend implements SoundBackend {
+    protected final SoundPool mSoundPool;
+
+    public SoundPoolBackend(final SoundPool soundPool) {
+        mSoundPool = soundPool;
+    }
+
+    @Override
+    public int play(final int soundID, final float leftVolume, final float rightVolume, final int priority, final int loop, final float rate) {
+        return mSoundPool.play(soundID, leftVolume, rightVolume, priority, loop, rate);
+    }
+
+    @Override
+    public void stop(final int streamID) {
+        mSoundPool.stop(streamID);
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    public SoundPool getSoundPool() {
+        return mSoundPool;
+    }
+}
@@ -43,4 +43,14 @@ public interface Soundable {
     public int getLoop();
 
     public void setLoop(final int loop);
+
+    /**
+     * @return the length in ms, -1 if unknown
+     */
+    public long getLength();
+
+    /**
+     * @return max number of voices of this sound at the same time, 0 for no limit
+     */
+    public int getMaxInstances();
 }
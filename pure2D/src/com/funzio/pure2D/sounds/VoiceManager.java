@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.sounds;
+
+import java.util.ArrayList;
+
+import com.funzio.pure2D.utils.ObjectPool;
+import com.funzio.pure2D.utils.Reusable;
+
+/**
+ * Decides which sounds get a voice. Play requests are queued and handled together in {@link #update()}:
+ * <ul>
+ * <li>Requests for the same sound in the same update are merged into one play, at the loudest volume.</li>
+ * <li>A sound with a max number of instances replaces its own oldest voice when it's at the limit.</li>
+ * <li>When all the voices are busy, the lowest priority voice is stolen, then the quietest, then the oldest. A request never steals from a higher priority.</li>
+ * </ul>
+ * SoundPool doesn't say when a sound ends, so a voice is considered done after the length of its sound, or {@link #getDefaultLength()} if unknown. Looping voices last until
+ * stopped.
+ * 
+ * @author long
+ */
+public class VoiceManager {
+    public static final int DEFAULT_LENGTH = 2000;
+
+    protected final SoundBackend mBackend;
+    protected final int mMaxVoices;
+    protected int mDefaultLength = DEFAULT_LENGTH;
+    protected volatile float mMasterVolume = 1f;
+
+    private final Voice[] mVoices;
+    private int mNumVoices = 0;
+
+    // sorted by time
+    private final ArrayList<Request> mRequests = new ArrayList<Request>();
+    private final ArrayList<Request> mDueRequests = new ArrayList<Request>();
+    private final ObjectPool<Request> mRequestPool = new ObjectPool<Request>(64, true);
+
+    // stats
+    private int mNumPlayed = 0;
+    private int mNumCoalesced = 0;
+    private int mNumStolen = 0;
+    private int mNumDropped = 0;
+
+    public VoiceManager(final SoundBackend backend, final int maxVoices) {
+        mBackend = backend;
+        mMaxVoices = maxVoices;
+        mVoices = new Voice[maxVoices];
+        for (int i = 0; i < maxVoices; i++) {
+            mVoices[i] = new Voice();
+        }
+    }
+
+    /**
+     * Queue a play request, handled by the next {@link #update()} after the delay
+     * 
+     * @param soundID
+     * @param priority
+     * @param maxInstances max number of voices of this sound, 0 for no limit
+     * @param length the length of the sound in ms, -1 if unknown
+     * @param loop
+     * @param volume
+     * @param delay in ms
+     */
+    public synchronized void request(final int soundID, final int priority, final int maxInstances, final long length, final int loop, final float volume, final int delay) {
+        Request request = mRequestPool.acquire();
+        if (request == null) {
+            request = new Request();
+        }
+        request.soundID = soundID;
+        request.priority = priority;
+        request.maxInstances = maxInstances;
+        request.length = length;
+        request.loop = loop;
+        request.volume = volume;
+        request.time = mBackend.uptimeMillis() + delay;
+
+        // keep sorted, the later the more likely to be at the end
+        int index = mRequests.size();
+        while (index > 0 && mRequests.get(index - 1).time > request.time) {
+            index--;
+        }
+        mRequests.add(index, request);
+    }
+
+    /**
+     * Play the due requests
+     * 
+     * @return the time of the next request, or -1 if none
+     */
+    public synchronized long update() {
+        final long now = mBackend.uptimeMillis();
+
+        // free the voices that are done
+        for (int i = mNumVoices - 1; i >= 0; i--) {
+            if (mVoices[i].endTime <= now) {
+                removeVoice(i);
+            }
+        }
+
+        // collect the due ones, merging the same sounds
+        int numDue = 0;
+        while (numDue < mRequests.size() && mRequests.get(numDue).time <= now) {
+            numDue++;
+        }
+        for (int i = 0; i < numDue; i++) {
+            final Request request = mRequests.get(i);
+            Request merged = null;
+            for (int j = 0; j < mDueRequests.size(); j++) {
+                if (mDueRequests.get(j).soundID == request.soundID) {
+                    merged = mDueRequests.get(j);
+                    break;
+                }
+            }
+
+            if (merged == null) {
+                mDueRequests.add(request);
+            } else {
+                merged.volume = Math.max(merged.volume, request.volume);
+                merged.priority = Math.max(merged.priority, request.priority);
+                mNumCoalesced++;
+            }
+        }
+
+        // most important first, insertion sort since there are only a few
+        for (int i = 1; i < mDueRequests.size(); i++) {
+            final Request request = mDueRequests.get(i);
+            int j = i;
+            while (j > 0 && mDueRequests.get(j - 1).priority < request.priority) {
+                mDueRequests.set(j, mDueRequests.get(j - 1));
+                j--;
+            }
+            mDueRequests.set(j, request);
+        }
+
+        for (int i = 0; i < mDueRequests.size(); i++) {
+            play(mDueRequests.get(i), now);
+        }
+        mDueRequests.clear();
+
+        // recycle
+        for (int i = 0; i < numDue; i++) {
+            mRequestPool.release(mRequests.get(i));
+        }
+        if (numDue > 0) {
+            mRequests.subList(0, numDue).clear();
+        }
+
+        return mRequests.isEmpty() ? -1 : mRequests.get(0).time;
+    }
+
+    private boolean play(final Request request, final long now) {
+        // instance limit, replace its own oldest
+        if (request.maxInstances > 0) {
+            int numInstances = 0, oldest = -1;
+            for (int i = 0; i < mNumVoices; i++) {
+                if (mVoices[i].soundID == request.soundID) {
+                    numInstances++;
+                    if (oldest < 0 || mVoices[i].startTime < mVoices[oldest].startTime) {
+                        oldest = i;
+                    }
+                }
+            }
+            if (numInstances >= request.maxInstances) {
+                stopVoice(oldest);
+            }
+        }
+
+        // voice limit
+        if (mNumVoices >= mMaxVoices) {
+            final int victim = findVictim(request.priority);
+            if (victim < 0) {
+                mNumDropped++;
+                return false;
+            }
+
+            stopVoice(victim);
+            mNumStolen++;
+        }
+
+        final float volume = request.volume * mMasterVolume;
+        final int streamID = mBackend.play(request.soundID, volume, volume, request.priority, request.loop, 1f);
+        if (streamID == 0) {
+            mNumDropped++;
+            return false;
+        }
+
+        final Voice voice = mVoices[mNumVoices++];
+        voice.streamID = streamID;
+        voice.soundID = request.soundID;
+        voice.priority = request.priority;
+        voice.volume = request.volume;
+        voice.startTime = now;
+        voice.endTime = request.loop != 0 ? Long.MAX_VALUE : now + (request.length > 0 ? request.length : mDefaultLength);
+        mNumPlayed++;
+
+        return true;
+    }
+
+    /**
+     * @param priority
+     * @return the index of the voice to steal, -1 if all the voices are more important
+     */
+    private int findVictim(final int priority) {
+        int victim = -1;
+        Voice voice, best;
+        for (int i = 0; i < mNumVoices; i++) {
+            voice = mVoices[i];
+            if (voice.priority > priority) {
+                continue;
+            }
+
+            if (victim < 0) {
+                victim = i;
+                continue;
+            }
+
+            best = mVoices[victim];
+            if (voice.priority < best.priority || (voice.priority == best.priority && (voice.volume < best.volume || (voice.volume == best.volume && voice.startTime < best.startTime)))) {
+                victim = i;
+            }
+        }
+
+        return victim;
+    }
+
+    private void stopVoice(final int index) {
+        mBackend.stop(mVoices[index].streamID);
+        removeVoice(index);
+    }
+
+    private void removeVoice(final int index) {
+        // swap with the last one
+        final Voice voice = mVoices[index];
+        mVoices[index] = mVoices[--mNumVoices];
+        mVoices[mNumVoices] = voice;
+    }
+
+    /**
+     * Stop all the voices of a sound and cancel its pending requests
+     * 
+     * @param soundID
+     */
+    public synchronized void stop(final int soundID) {
+        for (int i = mNumVoices - 1; i >= 0; i--) {
+            if (mVoices[i].soundID == soundID) {
+                stopVoice(i);
+            }
+        }
+
+        for (int i = mRequests.size() - 1; i >= 0; i--) {
+            if (mRequests.get(i).soundID == soundID) {
+                mRequestPool.release(mRequests.remove(i));
+            }
+        }
+    }
+
+    public synchronized void stopAll() {
+        for (int i = mNumVoices - 1; i >= 0; i--) {
+            stopVoice(i);
+        }
+
+        for (int i = 0; i < mRequests.size(); i++) {
+            mRequestPool.release(mRequests.get(i));
+        }
+        mRequests.clear();
+    }
+
+    public synchronized int getNumVoices() {
+        return mNumVoices;
+    }
+
+    public int getMaxVoices() {
+        return mMaxVoices;
+    }
+
+    public synchronized int getNumPendingRequests() {
+        return mRequests.size();
+    }
+
+    public float getMasterVolume() {
+        return mMasterVolume;
+    }
+
+    /**
+     * Set the volume that all the new voices are multiplied with
+     * 
+     * @param masterVolume
+     */
+    public void setMasterVolume(final float masterVolume) {
+        mMasterVolume = masterVolume;
+    }
+
+    public int getDefaultLength() {
+        return mDefaultLength;
+    }
+
+    /**
+     * @param defaultLength how long a voice lasts in ms, for the sounds with unknown length
+     */
+    public void setDefaultLength(final int defaultLength) {
+        mDefaultLength = defaultLength;
+    }
+
+    public synchronized int getNumPlayed() {
+        return mNumPlayed;
+    }
+
+    /**
+     * @return the number of requests merged into another one
+     */
+    public synchronized int getNumCoalesced() {
+        return mNumCoalesced;
+    }
+
+    public synchronized int getNumStolen() {
+        return mNumStolen;
+    }
+
+    public synchronized int getNumDropped() {
+        return mNumDropped;
+    }
+
+    private static class Voice {
+        int streamID;
+        int soundID;
+        int priority;
+        float volume;
+        long startTime;
+        long endTime;
+    }
+
+    private static class Request implements Reusable {
+        int soundID;
+        int priority;
+        int maxInstances;
+        long length;
+        int loop;
+        float volume;
+        long time;
+
+        @Override
+        public void reset(final Object... params) {
+            // all the fields are set by request()
+        }
+    }
+}
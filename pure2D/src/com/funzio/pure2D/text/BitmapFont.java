@@ -24,7 +24,7 @@
  */
 package com.funzio.pure2D.text;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 
 import android.opengl.GLES20;
 
@@ -33,29 +33,50 @@ import android.graphics.Canvas;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.util.Log;
 
 import com.funzio.pure2D.Pure2D;
 import com.funzio.pure2D.atlas.AtlasFrame;
 import com.funzio.pure2D.gl.gl10.GLState;
 import com.funzio.pure2D.gl.gl10.textures.Texture;
 import com.funzio.pure2D.gl.gl10.textures.TextureManager;
+import com.funzio.pure2D.utils.Pure2DUtils;
 import com.funzio.pure2D.utils.RectPacker;
 
 /**
+ * A font pre-rendered into a texture. By default only the given characters are rendered, all at once. With {@link #setGlyphCachePages(int)}, any other character is also rendered
+ * on demand into a few texture pages, which is needed for localized and user-generated text.
+ * 
  * @author long
  */
 public class BitmapFont {
+    private static final String TAG = BitmapFont.class.getSimpleName();
+
+    // gap between cached glyphs, to avoid bleeding
+    private static final int GLYPH_PADDING = 1;
 
     private final TextOptions mTextOptions;
     private final String mCharacters;
     private Texture mTexture;
 
-    private HashMap<Character, AtlasFrame> mCharFrames = new HashMap<Character, AtlasFrame>();
+    private final CharFrameMap mCharFrames;
     private RectPacker mRectPacker;
     private PointF[] mCharOffsets;
     private float[] mCharPositions;
     private BitmapFontMetrics mFontMetrics;
 
+    // glyph cache
+    private final int mPageSize;
+    private int mMaxPages = 0;
+    private TextureManager mTextureManager;
+    private ArrayList<Page> mPages;
+    private ArrayList<Glyph> mPendingGlyphs;
+    private int mNumEvictions = 0;
+    private final Rect mTempBounds = new Rect();
+    private final Rect mTempUnion = new Rect();
+    private final char[] mTempChar = new char[1];
+    private Canvas mGlyphCanvas;
+
     public BitmapFont(final String characters, final TextOptions textOptions) {
         this(characters, textOptions, 512);
     }
@@ -65,6 +86,8 @@ public class BitmapFont {
         mCharacters = characters;
 
         mFontMetrics = new BitmapFontMetrics(mTextOptions);
+        mCharFrames = new CharFrameMap(characters != null ? characters.length() : 0);
+        mPageSize = Math.min(mTextOptions.inPo2 ? Pure2DUtils.getNextPO2(textureMaxSize) : textureMaxSize, Pure2D.GL_MAX_TEXTURE_SIZE);
 
         mRectPacker = new RectPacker(Math.min(textureMaxSize, Pure2D.GL_MAX_TEXTURE_SIZE), mTextOptions.inPo2);
         mRectPacker.setQuickMode(true);
@@ -88,6 +111,10 @@ public class BitmapFont {
      * @return
      */
     public Texture load(final TextureManager textureManager) {
+        if (mMaxPages > 0) {
+            return loadGlyphCache(textureManager);
+        }
+
         if (mTexture == null) {
             mTexture = textureManager.createDynamicTexture(new Runnable() {
 
@@ -133,8 +160,304 @@ public class BitmapFont {
         return mTexture;
     }
 
+    /**
+     * In glyph cache mode, a missing character is rendered on demand, but it's only uploaded by the next {@link #flush()}.
+     * 
+     * @param ch
+     * @return the frame or null if the character is missing
+     */
     public AtlasFrame getCharFrame(final char ch) {
-        return mCharFrames.get(ch);
+        final AtlasFrame frame = mCharFrames.get(ch);
+        if (mPages == null) {
+            return frame;
+        } else if (frame != null) {
+            // touch for LRU
+            ((Glyph) frame).mPage.mLastUsedFrame = mTextureManager.getFrame();
+            return frame;
+        } else {
+            return addGlyph(ch);
+        }
+    }
+
+    public boolean isGlyphCacheEnabled() {
+        return mMaxPages > 0;
+    }
+
+    public int getGlyphCachePages() {
+        return mMaxPages;
+    }
+
+    /**
+     * Enable glyph cache mode, this must be called before {@link #load(TextureManager)}. The given characters are only rendered first, the others are added when they are
+     * requested. When all the pages are full, the least recently used page is cleared for the new glyphs.
+     * 
+     * @param maxPages the max number of textures, each of them is textureMaxSize x textureMaxSize. 0 to disable.
+     */
+    public void setGlyphCachePages(final int maxPages) {
+        if (mTexture != null) {
+            Log.w(TAG, "setGlyphCachePages(): font is already loaded!");
+            return;
+        }
+
+        mMaxPages = maxPages;
+    }
+
+    /**
+     * @return the number of textures, always 1 when glyph cache mode is disabled
+     */
+    public int getNumPages() {
+        return mPages == null ? 1 : mPages.size();
+    }
+
+    public Texture getPageTexture(final int page) {
+        return mPages == null ? mTexture : mPages.get(page).mTexture;
+    }
+
+    /**
+     * @param frame a frame of this font
+     * @return the page index of the frame, to find its texture
+     */
+    public int getPageIndex(final AtlasFrame frame) {
+        return mPages == null ? 0 : ((Glyph) frame).mPage.mIndex;
+    }
+
+    /**
+     * @return the number of times a page got cleared. The frames of the cleared glyphs are no longer valid after that, so the text using them needs to be laid out again.
+     */
+    public int getNumEvictions() {
+        return mNumEvictions;
+    }
+
+    /**
+     * Upload the glyphs added since the last flush, batched per page. This is called by {@link BmfTextObject} before drawing. This can only called on GL Thread.
+     */
+    public void flush() {
+        if (mPendingGlyphs == null || mPendingGlyphs.isEmpty()) {
+            return;
+        }
+
+        final int numPages = mPages.size();
+        for (int p = 0; p < numPages; p++) {
+            final Page page = mPages.get(p);
+
+            // find the union of the new glyphs
+            int pendingArea = 0;
+            mTempUnion.setEmpty();
+            final int numPending = mPendingGlyphs.size();
+            for (int i = 0; i < numPending; i++) {
+                final Glyph glyph = mPendingGlyphs.get(i);
+                if (glyph.mPage == page) {
+                    mTempUnion.union(glyph.mPageRect);
+                    pendingArea += glyph.mPageRect.width() * glyph.mPageRect.height();
+                }
+            }
+
+            if (pendingArea == 0) {
+                continue;
+            } else if (mTempUnion.width() * mTempUnion.height() <= pendingArea * 4) {
+                // close enough, redraw the whole area including the old glyphs in it, in 1 upload
+                uploadGlyphs(page, mTempUnion, page.mGlyphs);
+            } else {
+                // too sparse, upload 1 by 1
+                for (int i = 0; i < numPending; i++) {
+                    final Glyph glyph = mPendingGlyphs.get(i);
+                    if (glyph.mPage == page) {
+                        uploadGlyphs(page, glyph.mPageRect, mPendingGlyphs);
+                    }
+                }
+            }
+        }
+
+        mPendingGlyphs.clear();
+    }
+
+    private Texture loadGlyphCache(final TextureManager textureManager) {
+        if (mPages == null) {
+            mTextureManager = textureManager;
+            mPages = new ArrayList<Page>(mMaxPages);
+            mPendingGlyphs = new ArrayList<Glyph>();
+            mGlyphCanvas = new Canvas();
+
+            mTexture = createPage().mTexture;
+
+            // pre-render the given characters
+            if (mCharacters != null) {
+                final int length = mCharacters.length();
+                for (int i = 0; i < length; i++) {
+                    getCharFrame(mCharacters.charAt(i));
+                }
+            }
+            flush();
+        }
+
+        return mTexture;
+    }
+
+    private Page createPage() {
+        final Page page = new Page(mPages.size());
+        page.mPacker = new RectPacker(mPageSize, false);
+        page.mPacker.setRotationEnabled(false);
+        page.mPacker.setMode(RectPacker.MODE_MAX_RECTS);
+        page.mTexture = mTextureManager.createDynamicTexture(new Runnable() {
+
+            @Override
+            public void run() {
+                // GL context lost or memory evicted, render the glyphs again
+                final Bitmap bitmap = Bitmap.createBitmap(mPageSize, mPageSize, mTextOptions.inPreferredConfig);
+                mGlyphCanvas.setBitmap(bitmap);
+                drawGlyphs(mGlyphCanvas, page.mGlyphs, null);
+                page.mTexture.load(bitmap, mPageSize, mPageSize, 0);
+                bitmap.recycle();
+            }
+        }, null);
+        page.mTexture.reload();
+        page.mTexture.setFilters(GLES20.GL_LINEAR, GLES20.GL_LINEAR); // better output
+        page.mLastUsedFrame = mTextureManager.getFrame();
+
+        mPages.add(page);
+        return page;
+    }
+
+    private AtlasFrame addGlyph(final char ch) {
+        // same metrics as findCharOffsets()
+        final Rect bounds = mTempBounds;
+        mTempChar[0] = ch;
+        mTextOptions.inTextPaint.getTextBounds(mTempChar, 0, 1, bounds);
+        bounds.inset(-Math.round(mFontMetrics.letterPaddingX), -Math.round(mFontMetrics.letterPaddingY));
+        final int width = Math.round((bounds.right - bounds.left + 1) * mTextOptions.inScaleX);
+        final int height = Math.round((bounds.bottom - bounds.top + 1) * mTextOptions.inScaleY);
+        if (width + GLYPH_PADDING > mPageSize || height + GLYPH_PADDING > mPageSize) {
+            return null;
+        }
+
+        // find a page with some room, the newest first
+        Page page = null;
+        Rect rect = null;
+        for (int i = mPages.size() - 1; i >= 0 && rect == null; i--) {
+            page = mPages.get(i);
+            rect = page.mPacker.tryOccupy(width + GLYPH_PADDING, height + GLYPH_PADDING);
+        }
+        if (rect == null) {
+            page = mPages.size() < mMaxPages ? createPage() : evictPage();
+            if (page == null) {
+                // everything is still on screen
+                Log.w(TAG, "Glyph cache is full: " + ch);
+                return null;
+            }
+            rect = page.mPacker.tryOccupy(width + GLYPH_PADDING, height + GLYPH_PADDING);
+        }
+
+        final Glyph glyph = new Glyph(page, ch, rect);
+        glyph.mOffset = new PointF(bounds.left * mTextOptions.inScaleX, -bounds.top * mTextOptions.inScaleY);
+        glyph.mOriginX = bounds.left;
+        glyph.mOriginY = bounds.top;
+        page.mGlyphs.add(glyph);
+        page.mLastUsedFrame = mTextureManager.getFrame();
+
+        mCharFrames.put(ch, glyph);
+        mPendingGlyphs.add(glyph);
+
+        return glyph;
+    }
+
+    /**
+     * Clear the least recently used page
+     * 
+     * @return the page or null if all pages are still in use
+     */
+    private Page evictPage() {
+        // still in use if touched or bound in this or the previous frame
+        final int lastFrame = mTextureManager.getFrame() - 2;
+        Page lru = null;
+        int lruFrame = 0;
+        final int numPages = mPages.size();
+        for (int i = 0; i < numPages; i++) {
+            final Page page = mPages.get(i);
+            final int usedFrame = Math.max(page.mLastUsedFrame, page.mTexture.getLastBindFrame());
+            if (usedFrame <= lastFrame && (lru == null || usedFrame < lruFrame)) {
+                lru = page;
+                lruFrame = usedFrame;
+            }
+        }
+        if (lru == null) {
+            return null;
+        }
+
+        final int numGlyphs = lru.mGlyphs.size();
+        for (int i = 0; i < numGlyphs; i++) {
+            mCharFrames.remove(lru.mGlyphs.get(i).mChar);
+        }
+        for (int i = mPendingGlyphs.size() - 1; i >= 0; i--) {
+            if (mPendingGlyphs.get(i).mPage == lru) {
+                mPendingGlyphs.remove(i);
+            }
+        }
+        lru.mGlyphs.clear();
+        lru.mPacker.reset();
+
+        // clear the texture, without creating a new one
+        final Bitmap bitmap = Bitmap.createBitmap(mPageSize, mPageSize, mTextOptions.inPreferredConfig);
+        lru.mTexture.loadSubImage(bitmap, 0, 0);
+        bitmap.recycle();
+
+        mNumEvictions++;
+        Log.v(TAG, "evictPage(): " + lru.mIndex + ", " + numGlyphs + " glyphs");
+
+        return lru;
+    }
+
+    /**
+     * Draw the glyphs within an area of a page and upload them with a single glTexSubImage2D()
+     */
+    private void uploadGlyphs(final Page page, final Rect area, final ArrayList<Glyph> glyphs) {
+        final Bitmap bitmap = Bitmap.createBitmap(area.width(), area.height(), mTextOptions.inPreferredConfig);
+        mGlyphCanvas.setBitmap(bitmap);
+        mGlyphCanvas.save();
+        mGlyphCanvas.translate(-area.left, -area.top);
+        drawGlyphs(mGlyphCanvas, glyphs, area);
+        mGlyphCanvas.restore();
+
+        page.mTexture.loadSubImage(bitmap, area.left, area.top);
+        bitmap.recycle();
+    }
+
+    /**
+     * Draw the glyphs at their page positions
+     * 
+     * @param canvas
+     * @param glyphs
+     * @param area only the glyphs within this area are drawn, null for all
+     */
+    @SuppressWarnings("deprecation")
+    private void drawGlyphs(final Canvas canvas, final ArrayList<Glyph> glyphs, final Rect area) {
+        canvas.save();
+        // apply scale
+        if (mTextOptions.inScaleX != 1 || mTextOptions.inScaleY != 1) {
+            canvas.scale(mTextOptions.inScaleX, mTextOptions.inScaleY);
+        }
+        if (mTextOptions.inBackground != null) {
+            canvas.drawBitmap(mTextOptions.inBackground, 0, 0, mTextOptions.inTextPaint);
+        }
+
+        final int size = glyphs.size();
+        for (int i = 0; i < size; i++) {
+            final Glyph glyph = glyphs.get(i);
+            if (area != null && !Rect.intersects(area, glyph.mPageRect)) {
+                continue;
+            }
+
+            mTempChar[0] = glyph.mChar;
+            final float x = glyph.mPageRect.left / mTextOptions.inScaleX - glyph.mOriginX;
+            final float y = glyph.mPageRect.top / mTextOptions.inScaleY - glyph.mOriginY;
+            // draw the stroke
+            if (mTextOptions.inStrokePaint != null) {
+                canvas.drawText(mTempChar, 0, 1, x, y, mTextOptions.inStrokePaint);
+            }
+            // draw the text
+            canvas.drawText(mTempChar, 0, 1, x, y, mTextOptions.inTextPaint);
+        }
+
+        canvas.restore();
     }
 
     protected void findCharOffsets() {
@@ -217,4 +540,35 @@ public class BitmapFont {
 
         return bitmap;
     }
+
+    private static class Page {
+        private final int mIndex;
+        private Texture mTexture;
+        private RectPacker mPacker;
+        private final ArrayList<Glyph> mGlyphs = new ArrayList<Glyph>();
+        private int mLastUsedFrame;
+
+        private Page(final int index) {
+            mIndex = index;
+        }
+    }
+
+    private static class Glyph extends AtlasFrame {
+        private final Page mPage;
+        private final char mChar;
+        // the occupied rect, including the padding
+        private final Rect mPageRect;
+        // top-left of the text bounds, before scaling
+        private int mOriginX;
+        private int mOriginY;
+
+        private Glyph(final Page page, final char ch, final Rect rect) {
+            // same frame size as the non-cache mode
+            super(page.mTexture, 0, String.valueOf(ch), new RectF(rect.left, rect.top, rect.right - GLYPH_PADDING, rect.bottom - GLYPH_PADDING));
+
+            mPage = page;
+            mChar = ch;
+            mPageRect = new Rect(rect);
+        }
+    }
 }
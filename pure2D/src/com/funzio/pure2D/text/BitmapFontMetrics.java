@@ -42,6 +42,7 @@ public class BitmapFontMetrics extends FontMetrics {
     // private stuff
     private TextOptions mTextOptions;
     private Rect mTempRect;
+    private char[] mTempChars;
 
     public BitmapFontMetrics(final TextOptions options) {
         super();
@@ -68,9 +69,25 @@ public class BitmapFontMetrics extends FontMetrics {
 
     public void getTextBounds(final String text, final RectF textBounds) {
         final int length = text.length();
+        if (mTempChars == null || mTempChars.length < length) {
+            mTempChars = new char[length];
+        }
+        text.getChars(0, length, mTempChars, 0);
+
+        getTextBounds(mTempChars, length, textBounds);
+    }
+
+    /**
+     * Same as {@link #getTextBounds(String, RectF)} but for a char buffer, without allocating a String
+     * 
+     * @param chars
+     * @param length the number of chars in use
+     * @param textBounds
+     */
+    public void getTextBounds(final char[] chars, final int length, final RectF textBounds) {
         float baseline = 0;
         int start = 0, lineLength;
-        int end = text.indexOf(Characters.NEW_LINE);
+        int end = indexOfNewLine(chars, 0, length);
         if (end < 0) {
             end = length - 1;
         } else {
@@ -86,7 +103,7 @@ public class BitmapFontMetrics extends FontMetrics {
 
         // multi lines
         do {
-            mTextOptions.inTextPaint.getTextBounds(text, start, start + lineLength, mTempRect);
+            mTextOptions.inTextPaint.getTextBounds(chars, start, lineLength, mTempRect);
             // apply scale
             mTempRect.left *= mTextOptions.inScaleX;
             mTempRect.right *= mTextOptions.inScaleX;
@@ -99,7 +116,7 @@ public class BitmapFontMetrics extends FontMetrics {
             textBounds.union(mTempRect.left, mTempRect.top, mTempRect.right, mTempRect.bottom);
 
             start = end + 2; // also skip newline
-            end = text.indexOf(Characters.NEW_LINE, start);
+            end = indexOfNewLine(chars, start, length);
             if (end < 0) {
                 end = length - 1;
             } else {
@@ -109,4 +126,14 @@ public class BitmapFontMetrics extends FontMetrics {
             baseline += (bottom - top);
         } while (start < length);
     }
+
+    private static int indexOfNewLine(final char[] chars, final int start, final int length) {
+        for (int i = start; i < length; i++) {
+            if (chars[i] == Characters.NEW_LINE) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
 }
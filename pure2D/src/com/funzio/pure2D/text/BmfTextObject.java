@@ -81,6 +81,8 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
     protected Texture mTexture;
     protected QuadMeshBuffer mMeshBuffer;
 
+    protected final TextBuffer mTextBuffer = new TextBuffer();
+    // created on demand by getText()
     protected String mText = "";
     protected int mTextAlignment = Alignment.LEFT;
     protected RectF mTextBounds = new RectF();
@@ -89,14 +91,22 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
     private QuadMeshTextureCoordBuffer mTextureCoordBuffer;
     private float[] mLineWidths;
 
+    // what each cell currently shows, to rewrite only the changed ones
+    private AtlasFrame[] mCellFrames;
+    private float[] mCellPositions;
+
+    // glyph cache support, the cells are grouped by page
+    private AtlasFrame[] mFrames;
+    private int[] mPageStarts;
+    private int[] mPageCursors;
+    private int mNumPages = 1;
+    private int mFontEvictions = 0;
+
     // cache
     protected FrameBuffer mCacheFrameBuffer;
     protected DummyDrawer mCacheDrawer;
     protected boolean mCacheEnabled = false;
 
-    // a copy of text for rendering without being interrupted
-    private static String sScratchText;
-
     // protected int mCacheProjection = Scene.AXIS_BOTTOM_LEFT;
 
     public BmfTextObject() {
@@ -107,33 +117,79 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
      * @param text the text to set
      */
     public void setText(final String text) {
-        mText = text;
-        int lineCount = 1;
+        if (mTextBuffer.set(text)) {
+            mText = text == null ? "" : text;
+            onTextChange();
+        }
+    }
 
-        int length = text.length();
-        char ch;
-        for (int i = 0; i < length; i++) {
-            ch = mText.charAt(i);
+    /**
+     * Set the text from a mutable sequence such as a StringBuilder, without allocating a String. The content is copied.
+     * 
+     * @param text
+     */
+    public void setText(final CharSequence text) {
+        if (mTextBuffer.set(text)) {
+            mText = null;
+            onTextChange();
+        }
+    }
 
-            if (ch == Characters.NEW_LINE && i < length - 1) {
-                lineCount++;
-            }
+    /**
+     * Set the text from a char buffer, without allocating a String. The content is copied.
+     * 
+     * @param chars
+     * @param offset
+     * @param length
+     */
+    public void setText(final char[] chars, final int offset, final int length) {
+        if (mTextBuffer.set(chars, offset, length)) {
+            mText = null;
+            onTextChange();
+        }
+    }
+
+    /**
+     * Set the text to a number, such as a score or a counter, without allocating a String
+     * 
+     * @param value
+     */
+    public void setNumber(final long value) {
+        if (mTextBuffer.setNumber(value)) {
+            mText = null;
+            onTextChange();
         }
+    }
 
+    protected void onTextChange() {
+        final int lineCount = mTextBuffer.getNumLines();
         if (mLineWidths == null || mLineWidths.length != lineCount) {
             mLineWidths = new float[lineCount];
         }
 
         invalidate(CHILDREN);
+        // text bounds get updated in update()
+        invalidateUpdate();
     }
 
     /**
      * @return the text
      */
     public String getText() {
+        if (mText == null) {
+            mText = mTextBuffer.toString();
+        }
+
         return mText;
     }
 
+    /**
+     * @return the current text, without allocating a String
+     */
+    public CharSequence getTextBuffer() {
+        return mTextBuffer;
+    }
+
     public int getTextAlignment() {
         return mTextAlignment;
     }
@@ -158,10 +214,12 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
     }
 
     public void updateTextBounds() {
+        final char[] chars = mTextBuffer.getChars();
+        final int length = mTextBuffer.length();
+
         // find the bounds, this is not 100% precised, so we need the below logic
-        mFontMetrics.getTextBounds(mText, mTextBounds);
+        mFontMetrics.getTextBounds(chars, length, mTextBounds);
 
-        final int length = mText.length();
         float nextX = 0;
         float width = 0;
         int lineIndex = 0;
@@ -169,7 +227,7 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
         char ch;
         AtlasFrame frame;
         for (int i = 0; i < length; i++) {
-            ch = mText.charAt(i);
+            ch = chars[i];
 
             if (ch == Characters.SPACE) {
                 nextX += mFontMetrics.whitespace + mFontMetrics.letterSpacing;
@@ -217,9 +275,14 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        return super.isUpdateNeeded() || mSceneAxis < 0 || mSize.x <= 1 || mSize.y <= 1;
+    }
+
     @Override
     public boolean draw(final GLState glState) {
-        if (mText == null || mText.length() == 0) {
+        if (mTextBuffer.length() == 0) {
             return false;
         }
 
@@ -310,13 +373,13 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
             return false;
         }
 
-        // bind the texture
-        mTexture.bind();
+        // the frames of the cleared glyphs are no longer valid
+        final boolean evicted = mFontEvictions != mBitmapFont.getNumEvictions();
 
-        if ((mInvalidateFlags & InvalidateFlags.CHILDREN) > 0) {
-            sScratchText = mText;
+        if ((mInvalidateFlags & InvalidateFlags.CHILDREN) > 0 || evicted) {
+            final char[] chars = mTextBuffer.getChars();
             final boolean axisFlipped = (mSceneAxis == Scene.AXIS_TOP_LEFT);
-            final int length = sScratchText.length();
+            final int length = mTextBuffer.length();
             float nextX, nextY = mTextBounds.bottom;
             char ch;
             AtlasFrame frame;
@@ -332,22 +395,65 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
                 nextX = 0;
             }
 
-            // init mesh buffer
+            // find the frames first, new glyphs might get added to the cache
+            if (mFrames == null || mFrames.length < length) {
+                mFrames = new AtlasFrame[length];
+            }
+            for (int i = 0; i < length; i++) {
+                ch = chars[i];
+                mFrames[i] = (ch == Characters.SPACE || ch == Characters.NEW_LINE) ? null : mBitmapFont.getCharFrame(ch);
+            }
+            mFontEvictions = mBitmapFont.getNumEvictions();
+
+            // group the cells by page, so each page is drawn once
+            mNumPages = mBitmapFont.getNumPages();
+            if (mPageStarts == null || mPageStarts.length < mNumPages + 1) {
+                mPageStarts = new int[mNumPages + 1];
+                mPageCursors = new int[mNumPages];
+            }
+            for (int p = 0; p <= mNumPages; p++) {
+                mPageStarts[p] = 0;
+            }
+            for (int i = 0; i < length; i++) {
+                if (mFrames[i] != null) {
+                    mPageStarts[mBitmapFont.getPageIndex(mFrames[i]) + 1]++;
+                }
+            }
+            for (int p = 0; p < mNumPages; p++) {
+                mPageStarts[p + 1] += mPageStarts[p];
+                mPageCursors[p] = mPageStarts[p];
+            }
+
+            // init mesh buffer, the buffers only grow and keep their values
             if (mMeshBuffer == null) {
                 mMeshBuffer = new QuadMeshBuffer(length);
+                mCellFrames = null;
             } else {
                 mMeshBuffer.setNumCells(length);
             }
             // apply the coordinates
             if (mTextureCoordBuffer == null) {
                 mTextureCoordBuffer = new QuadMeshTextureCoordBuffer(length);
+                mCellFrames = null;
             } else {
                 mTextureCoordBuffer.setNumCells(length);
             }
+            final int capacity = mMeshBuffer.getCapacity();
+            if (mCellFrames == null || mCellFrames.length < capacity) {
+                final AtlasFrame[] cellFrames = new AtlasFrame[capacity];
+                final float[] cellPositions = new float[capacity * 2];
+                if (mCellFrames != null) {
+                    System.arraycopy(mCellFrames, 0, cellFrames, 0, mCellFrames.length);
+                    System.arraycopy(mCellPositions, 0, cellPositions, 0, mCellPositions.length);
+                }
+                mCellFrames = cellFrames;
+                mCellPositions = cellPositions;
+            }
 
-            int meshIndex = 0;
+            int meshIndex;
+            float y;
             for (int i = 0; i < length; i++) {
-                ch = sScratchText.charAt(i);
+                ch = chars[i];
 
                 if (ch == Characters.SPACE) {
                     nextX += mFontMetrics.whitespace + mFontMetrics.letterSpacing;
@@ -367,18 +473,27 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
                     nextY -= (mFontMetrics.bottom - mFontMetrics.top);
                 } else {
                     // get the current atlas frame
-                    frame = mBitmapFont.getCharFrame(ch);
+                    frame = mFrames[i];
                     if (frame != null) {
                         frameSize = frame.getSize();
+                        meshIndex = mPageCursors[mBitmapFont.getPageIndex(frame)]++;
+                        y = axisFlipped ? convertY(nextY - (frameSize.y - frame.mOffset.y), frameSize.y) : nextY - (frameSize.y - frame.mOffset.y);
 
-                        // apply the coordinates
-                        mTextureCoordBuffer.setRectAt(meshIndex, frame.getTextureCoords());
-
-                        // set position and size
-                        if (axisFlipped) {
-                            mMeshBuffer.setRectFlipVerticalAt(meshIndex++, nextX, convertY(nextY - (frameSize.y - frame.mOffset.y), frameSize.y), frameSize.x, frameSize.y);
-                        } else {
-                            mMeshBuffer.setRectAt(meshIndex++, nextX, nextY - (frameSize.y - frame.mOffset.y), frameSize.x, frameSize.y);
+                        // only rewrite the cells that changed
+                        if (mCellFrames[meshIndex] != frame) {
+                            // apply the coordinates
+                            mTextureCoordBuffer.setRectAt(meshIndex, frame.getTextureCoords());
+                        }
+                        if (mCellFrames[meshIndex] != frame || mCellPositions[meshIndex * 2] != nextX || mCellPositions[meshIndex * 2 + 1] != y) {
+                            // set position and size
+                            if (axisFlipped) {
+                                mMeshBuffer.setRectFlipVerticalAt(meshIndex, nextX, y, frameSize.x, frameSize.y);
+                            } else {
+                                mMeshBuffer.setRectAt(meshIndex, nextX, y, frameSize.x, frameSize.y);
+                            }
+                            mCellFrames[meshIndex] = frame;
+                            mCellPositions[meshIndex * 2] = nextX;
+                            mCellPositions[meshIndex * 2 + 1] = y;
                         }
 
                         // find next x
@@ -390,16 +505,37 @@ public class BmfTextObject extends BaseDisplayObject implements Cacheable {
             // apply
             // mTextureCoordBuffer.validate();
             // and the vertex buffer
-            mMeshBuffer.setIndicesNumUsed(meshIndex * QuadMeshBuffer.NUM_INDICES_PER_CELL);
+            mMeshBuffer.setIndicesNumUsed(mPageStarts[mNumPages] * QuadMeshBuffer.NUM_INDICES_PER_CELL);
             // mMeshBuffer.validate();
         }
 
-        // draw now
-        mTextureCoordBuffer.apply(glState);
+        // upload the new glyphs, if any
+        mBitmapFont.flush();
+
+        // nothing but spaces
+        if (mMeshBuffer == null || mPageStarts[mNumPages] == 0) {
+            return false;
+        }
+
+        // draw now, only the changed cells get copied
         mMeshBuffer.validate();
         mTextureCoordBuffer.validate();
+        mTextureCoordBuffer.apply(glState);
 
-        mMeshBuffer.draw(glState);
+        if (mNumPages == 1) {
+            // bind the texture
+            mTexture.bind();
+            mMeshBuffer.draw(glState);
+        } else {
+            // 1 draw call per page
+            for (int p = 0; p < mNumPages; p++) {
+                final int numCells = mPageStarts[p + 1] - mPageStarts[p];
+                if (numCells > 0) {
+                    mBitmapFont.getPageTexture(p).bind();
+                    mMeshBuffer.draw(glState, mPageStarts[p] * QuadMeshBuffer.NUM_INDICES_PER_CELL, numCells * QuadMeshBuffer.NUM_INDICES_PER_CELL);
+                }
+            }
+        }
 
         return true;
     }
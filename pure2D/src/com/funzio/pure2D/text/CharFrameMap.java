@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.text;
+
+import com.funzio.pure2D.atlas.AtlasFrame;
+
+/**
+ * An open-addressing map of characters to frames, with linear probing. No boxing and no entry objects, so look-ups while laying out text don't produce garbage.
+ * 
+ * @author long
+ */
+public class CharFrameMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private char[] mKeys;
+    private AtlasFrame[] mValues; // null means an empty slot
+    private int mMask;
+    private int mSize = 0;
+
+    public CharFrameMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public CharFrameMap(final int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        // keep the load factor under 0.5
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(final int capacity) {
+        mKeys = new char[capacity];
+        mValues = new AtlasFrame[capacity];
+        mMask = capacity - 1;
+    }
+
+    private static int hash(final char key) {
+        final int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public AtlasFrame get(final char key) {
+        int i = hash(key) & mMask;
+        AtlasFrame value;
+        while ((value = mValues[i]) != null) {
+            if (mKeys[i] == key) {
+                return value;
+            }
+            i = (i + 1) & mMask;
+        }
+
+        return null;
+    }
+
+    public boolean containsKey(final char key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key
+     * @param value null to remove
+     * @return the previous value or null
+     */
+    public AtlasFrame put(final char key, final AtlasFrame value) {
+        if (value == null) {
+            return remove(key);
+        }
+
+        int i = hash(key) & mMask;
+        AtlasFrame old;
+        while ((old = mValues[i]) != null) {
+            if (mKeys[i] == key) {
+                mValues[i] = value;
+                return old;
+            }
+            i = (i + 1) & mMask;
+        }
+
+        mKeys[i] = key;
+        mValues[i] = value;
+        if (++mSize * 2 > mValues.length) {
+            rehash(mValues.length << 1);
+        }
+
+        return null;
+    }
+
+    public AtlasFrame remove(final char key) {
+        int i = hash(key) & mMask;
+        AtlasFrame old;
+        while ((old = mValues[i]) != null) {
+            if (mKeys[i] == key) {
+                break;
+            }
+            i = (i + 1) & mMask;
+        }
+        if (old == null) {
+            return null;
+        }
+
+        // shift the following entries back instead of leaving a tombstone
+        int j = i;
+        while (true) {
+            j = (j + 1) & mMask;
+            if (mValues[j] == null) {
+                break;
+            }
+
+            // the home slot of the entry at j, it can move to i only if i is between home and j (cyclically)
+            final int home = hash(mKeys[j]) & mMask;
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                mKeys[i] = mKeys[j];
+                mValues[i] = mValues[j];
+                i = j;
+            }
+        }
+        mValues[i] = null;
+        mSize--;
+
+        return old;
+    }
+
+    private void rehash(final int capacity) {
+        final char[] keys = mKeys;
+        final AtlasFrame[] values = mValues;
+        allocate(capacity);
+
+        final int length = values.length;
+        for (int k = 0; k < length; k++) {
+            if (values[k] != null) {
+                int i = hash(keys[k]) & mMask;
+                while (mValues[i] != null) {
+                    i = (i + 1) & mMask;
+                }
+                mKeys[i] = keys[k];
+                mValues[i] = values[k];
+            }
+        }
+    }
+
+    public void clear() {
+        final int length = mValues.length;
+        for (int i = 0; i < length; i++) {
+            mValues[i] = null;
+        }
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.text;
+
+/**
+ * A reusable char buffer for text that changes often, such as scores and timers. Setting a new text doesn't allocate unless the buffer needs to grow, and the first changed
+ * character is tracked so only the glyphs after it need to be updated.
+ * 
+ * @author long
+ */
+public class TextBuffer implements CharSequence {
+    private static final int MIN_CAPACITY = 16;
+
+    private char[] mChars;
+    private int mLength = 0;
+    private int mNumLines = 1;
+    private int mFirstChange = -1;
+
+    // for number formatting
+    private final char[] mDigits = new char[20];
+
+    public TextBuffer() {
+        mChars = new char[MIN_CAPACITY];
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > mChars.length) {
+            final char[] chars = new char[Math.max(capacity, mChars.length * 2)];
+            System.arraycopy(mChars, 0, chars, 0, mLength);
+            mChars = chars;
+        }
+    }
+
+    /**
+     * @param text null means empty
+     * @return true if the text has changed
+     */
+    public boolean set(final CharSequence text) {
+        final int length = text == null ? 0 : text.length();
+        ensureCapacity(length);
+
+        int firstChange = -1;
+        char ch;
+        for (int i = 0; i < length; i++) {
+            ch = text.charAt(i);
+            if (firstChange < 0 && (i >= mLength || mChars[i] != ch)) {
+                firstChange = i;
+            }
+            mChars[i] = ch;
+        }
+
+        return applyLength(length, firstChange);
+    }
+
+    /**
+     * @param chars
+     * @param offset
+     * @param length
+     * @return true if the text has changed
+     */
+    public boolean set(final char[] chars, final int offset, final int length) {
+        ensureCapacity(length);
+
+        int firstChange = -1;
+        char ch;
+        for (int i = 0; i < length; i++) {
+            ch = chars[offset + i];
+            if (firstChange < 0 && (i >= mLength || mChars[i] != ch)) {
+                firstChange = i;
+            }
+            mChars[i] = ch;
+        }
+
+        return applyLength(length, firstChange);
+    }
+
+    /**
+     * Set the text to a number, without allocating a String
+     * 
+     * @param value
+     * @return true if the text has changed
+     */
+    public boolean setNumber(final long value) {
+        int start = mDigits.length;
+        long n = value;
+        // negative to handle Long.MIN_VALUE
+        if (n > 0) {
+            n = -n;
+        }
+        do {
+            mDigits[--start] = (char) ('0' - (n % 10));
+            n /= 10;
+        } while (n != 0);
+        if (value < 0) {
+            mDigits[--start] = '-';
+        }
+
+        return set(mDigits, start, mDigits.length - start);
+    }
+
+    private boolean applyLength(final int length, final int firstChange) {
+        mFirstChange = firstChange;
+        if (mFirstChange < 0 && length != mLength) {
+            mFirstChange = Math.min(length, mLength);
+        }
+        mLength = length;
+
+        if (mFirstChange < 0) {
+            return false;
+        }
+
+        // a new line at the end doesn't count
+        mNumLines = 1;
+        for (int i = 0; i < length - 1; i++) {
+            if (mChars[i] == Characters.NEW_LINE) {
+                mNumLines++;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the shared chars, only the first {@link #length()} are valid
+     */
+    public char[] getChars() {
+        return mChars;
+    }
+
+    public int getNumLines() {
+        return mNumLines;
+    }
+
+    /**
+     * @return the index of the first character changed by the last set, -1 if nothing changed
+     */
+    public int getFirstChange() {
+        return mFirstChange;
+    }
+
+    @Override
+    public int length() {
+        return mLength;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return mChars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return new String(mChars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mLength);
+    }
+}
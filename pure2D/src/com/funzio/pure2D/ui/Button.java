@@ -86,6 +86,12 @@ public class Button extends DisplayGroup implements UIObject {
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // keep polling till the texture is loaded
+        return super.isUpdateNeeded() || (!mTextureLoaded && mCurrentTexture != null);
+    }
+
     protected void createChildren() {
         mButtonSprite = new Sprite9();
         mButtonSprite.setAutoUpdateBounds(true);
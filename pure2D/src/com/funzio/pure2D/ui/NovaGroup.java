@@ -74,6 +74,12 @@ public class NovaGroup extends DisplayGroup {
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // keep polling till the nova is loaded
+        return super.isUpdateNeeded() || (!mNovaLoaded && mNovaFactory != null);
+    }
+
     @Override
     public void setXMLAttributes(final XmlPullParser xmlParser, final UIManager manager) {
         super.setXMLAttributes(xmlParser, manager);
@@ -41,6 +41,7 @@ public class PageStacker implements Pageable.TransitionListener {
     protected ArrayList<Pageable> mPages = new ArrayList<Pageable>();
     protected int mNumPages = 0;
     protected Pageable mCurrentPage;
+    protected UIPrefetcher mPrefetcher;
 
     public PageStacker(final Container container) {
         mContainer = container;
@@ -54,6 +55,15 @@ public class PageStacker implements Pageable.TransitionListener {
             final Pageable previousPage = mCurrentPage;
             mCurrentPage = page;
 
+            // record and warm up what comes next
+            if (mPrefetcher != null) {
+                // begin first, while the previous page is still active, so the transition gets recorded
+                mPrefetcher.begin(getPageKey(page));
+                if (previousPage != null && !page.isPageFloating()) {
+                    mPrefetcher.end(getPageKey(previousPage));
+                }
+            }
+
             // slide in the new page, on GL Thread
             mContainer.queueEvent(new Runnable() {
 
@@ -93,6 +103,13 @@ public class PageStacker implements Pageable.TransitionListener {
         }
         final Pageable previousPage = mCurrentPage;
 
+        if (mPrefetcher != null) {
+            mPrefetcher.end(getPageKey(currentPage));
+            if (previousPage != null && previousPage != currentPage && !currentPage.isPageFloating()) {
+                mPrefetcher.begin(getPageKey(previousPage));
+            }
+        }
+
         // slide in the new page, on GL Thread
         mContainer.queueEvent(new Runnable() {
 
@@ -124,6 +141,28 @@ public class PageStacker implements Pageable.TransitionListener {
         return mContainer;
     }
 
+    public UIPrefetcher getPrefetcher() {
+        return mPrefetcher;
+    }
+
+    /**
+     * Let the prefetcher record what each page loads and warm up the pages that usually come next, such as UIManager.getInstance().getPrefetcher()
+     * 
+     * @param prefetcher can be null
+     */
+    public void setPrefetcher(final UIPrefetcher prefetcher) {
+        mPrefetcher = prefetcher;
+    }
+
+    /**
+     * @param page
+     * @return the key of a page for the prefetcher, by its id or class
+     */
+    protected String getPageKey(final Pageable page) {
+        final String id = page.getId();
+        return UIPrefetcher.PREFIX_PAGE + (id != null ? id : page.getClass().getName());
+    }
+
     // public void setContainer(final Container container) {
     // mContainer = container;
     // }
@@ -108,7 +108,7 @@ public class UILoader {
                 // include other xml layout
                 final String layout = parser.getAttributeValue(null, ATT_LAYOUT);
                 if (layout != null) {
-                    displayObject = mUIManager.load(mUIManager.getXMLByName(layout.substring(Pure2DURI.XML.length())));
+                    displayObject = mUIManager.loadByName(layout.substring(Pure2DURI.XML.length()));
                     if (displayObject != null) {
                         // you can also override the attributes
                         displayObject.setXMLAttributes(parser, mUIManager);
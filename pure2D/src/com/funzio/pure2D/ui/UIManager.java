@@ -55,11 +55,13 @@ public class UIManager {
     private UITextureManager mTextureManager;
     private TextureOptions mTextureOptions;
     private UILoader mLoader;
+    private UIPrefetcher mPrefetcher;
 
     private UIConfigVO mConfigVO;
 
     private UIManager() {
         mLoader = new UILoader(this);
+        mPrefetcher = new UIPrefetcher(this);
     }
 
     public static UIManager getInstance() {
@@ -145,7 +147,33 @@ public class UIManager {
     }
 
     public DisplayObject load(final int xmlResource) {
-        return mLoader.load(mResources.getXml(xmlResource));
+        final String key = UIPrefetcher.PREFIX_XML + mResources.getResourceEntryName(xmlResource);
+        mPrefetcher.begin(key);
+        try {
+            return mLoader.load(mResources.getXml(xmlResource));
+        } finally {
+            mPrefetcher.end(key);
+        }
+    }
+
+    /**
+     * Load an XML resource by name, such as the ones included by other XMLs
+     * 
+     * @param xmlName
+     * @return
+     */
+    public DisplayObject loadByName(final String xmlName) {
+        final String key = UIPrefetcher.PREFIX_XML + xmlName;
+        mPrefetcher.begin(key);
+        try {
+            return mLoader.load(getXMLByName(xmlName));
+        } finally {
+            mPrefetcher.end(key);
+        }
+    }
+
+    public UIPrefetcher getPrefetcher() {
+        return mPrefetcher;
     }
 
     public TextureOptions getTextureOptions() {
@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.ui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.funzio.pure2D.Scene;
+import com.funzio.pure2D.gl.gl10.textures.TextureLoader;
+import com.funzio.pure2D.gl.gl10.textures.TextureOptions;
+import com.funzio.pure2D.loaders.tasks.ReadTextFileTask;
+import com.funzio.pure2D.loaders.tasks.WriteTextFileTask;
+
+/**
+ * Records which texture, atlas and nova URIs each UI XML and Page touches, and which ones usually come next. On the next run, the assets of the next ones are warmed up in the
+ * background as soon as the current one begins, so they are mostly ready when they are needed. The manifests can be persisted with {@link #save(String)} and {@link #load(String)}.
+ * 
+ * @author long.ngo
+ */
+public class UIPrefetcher {
+    protected static final String TAG = UIPrefetcher.class.getSimpleName();
+
+    public static final int VERSION = 1;
+    public static final int DEFAULT_MAX_URIS = 256; // per kind per manifest
+
+    // key prefixes
+    public static final String PREFIX_XML = "xml:";
+    public static final String PREFIX_PAGE = "page:";
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_MANIFESTS = "manifests";
+    private static final String KEY_TEXTURES = "textures";
+    private static final String KEY_ATLASES = "atlases";
+    private static final String KEY_NOVAS = "novas";
+    private static final String KEY_NEXT = "next";
+
+    private final UIManager mUIManager;
+    private final HashMap<String, Manifest> mManifests = new HashMap<String, Manifest>();
+    // the keys being recorded, such as the current page and the XMLs being loaded
+    private final ArrayList<String> mActiveKeys = new ArrayList<String>();
+
+    private boolean mRecordingEnabled = true;
+    private boolean mPrefetchEnabled = true;
+    private int mMaxUris = DEFAULT_MAX_URIS;
+    private boolean mWarming = false;
+    private TextureOptions mTextureOptions;
+
+    public UIPrefetcher(final UIManager manager) {
+        mUIManager = manager;
+    }
+
+    public boolean isRecordingEnabled() {
+        return mRecordingEnabled;
+    }
+
+    public void setRecordingEnabled(final boolean recordingEnabled) {
+        mRecordingEnabled = recordingEnabled;
+    }
+
+    public boolean isPrefetchEnabled() {
+        return mPrefetchEnabled;
+    }
+
+    /**
+     * @param prefetchEnabled whether to warm up the next ones automatically in {@link #begin(String)}
+     */
+    public void setPrefetchEnabled(final boolean prefetchEnabled) {
+        mPrefetchEnabled = prefetchEnabled;
+    }
+
+    public void setMaxUris(final int maxUris) {
+        mMaxUris = maxUris;
+    }
+
+    /**
+     * Start recording for a key, such as "xml:shop" or "page:shop". The key is linked as the next one of all the active keys, then its own next ones are warmed up.
+     * 
+     * @param key
+     */
+    public synchronized void begin(final String key) {
+        if (mRecordingEnabled) {
+            final int size = mActiveKeys.size();
+            for (int i = 0; i < size; i++) {
+                final String activeKey = mActiveKeys.get(i);
+                if (!activeKey.equals(key)) {
+                    addUri(getManifest(activeKey).mNext, key);
+                }
+            }
+        }
+        mActiveKeys.add(key);
+
+        if (mPrefetchEnabled) {
+            prefetchNext(key);
+        }
+    }
+
+    /**
+     * Stop recording for a key
+     * 
+     * @param key
+     */
+    public synchronized void end(final String key) {
+        final int index = mActiveKeys.lastIndexOf(key);
+        if (index >= 0) {
+            mActiveKeys.remove(index);
+        }
+    }
+
+    void recordTexture(final String uri) {
+        record(KEY_TEXTURES, uri);
+    }
+
+    void recordAtlas(final String uri) {
+        record(KEY_ATLASES, uri);
+    }
+
+    void recordNova(final String uri) {
+        record(KEY_NOVAS, uri);
+    }
+
+    private synchronized void record(final String kind, final String uri) {
+        if (!mRecordingEnabled || mWarming || uri == null) {
+            return;
+        }
+
+        final int size = mActiveKeys.size();
+        for (int i = 0; i < size; i++) {
+            addUri(getManifest(mActiveKeys.get(i)).get(kind), uri);
+        }
+    }
+
+    private void addUri(final LinkedHashSet<String> uris, final String uri) {
+        if (uris.size() < mMaxUris) {
+            uris.add(uri);
+        }
+    }
+
+    private Manifest getManifest(final String key) {
+        Manifest manifest = mManifests.get(key);
+        if (manifest == null) {
+            manifest = new Manifest();
+            mManifests.put(key, manifest);
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Warm up the assets of the ones that usually come after a key
+     * 
+     * @param key
+     */
+    public synchronized void prefetchNext(final String key) {
+        final Manifest manifest = mManifests.get(key);
+        if (manifest == null) {
+            return;
+        }
+
+        for (String nextKey : manifest.mNext) {
+            prefetch(nextKey);
+        }
+    }
+
+    /**
+     * Warm up the recorded assets of a key in the background, at {@link TextureLoader#PRIORITY_PREFETCH}
+     * 
+     * @param key
+     */
+    public synchronized void prefetch(final String key) {
+        final Manifest manifest = mManifests.get(key);
+        final UITextureManager textureManager = mUIManager.getTextureManager();
+        if (manifest == null || textureManager == null || textureManager.getScene() == null) {
+            return;
+        }
+
+        Log.v(TAG, "prefetch(): " + key);
+
+        // copy, the manifest can change in the mean time
+        final String[] textures = manifest.mTextures.toArray(new String[manifest.mTextures.size()]);
+        final String[] atlases = manifest.mAtlases.toArray(new String[manifest.mAtlases.size()]);
+        final String[] novas = manifest.mNovas.toArray(new String[manifest.mNovas.size()]);
+
+        // the texture manager is not thread-safe
+        final Scene scene = textureManager.getScene();
+        scene.queueEvent(new Runnable() {
+
+            @Override
+            public void run() {
+                if (mUIManager.getTextureManager() != textureManager) {
+                    // reset in the mean time
+                    return;
+                }
+
+                synchronized (UIPrefetcher.this) {
+                    mWarming = true;
+                }
+                try {
+                    final TextureOptions options = getTextureOptions();
+                    for (String uri : textures) {
+                        textureManager.getUriTexture(uri, options, true);
+                    }
+                    for (String uri : atlases) {
+                        textureManager.getUriAtlas(uri, options, true);
+                    }
+                    for (String uri : novas) {
+                        textureManager.getUriNova(uri, true);
+                    }
+                } finally {
+                    synchronized (UIPrefetcher.this) {
+                        mWarming = false;
+                    }
+                }
+            }
+        });
+    }
+
+    private TextureOptions getTextureOptions() {
+        if (mTextureOptions == null) {
+            mTextureOptions = TextureOptions.getDefault();
+            mTextureOptions.set(mUIManager.getTextureOptions());
+            mTextureOptions.inLoadPriority = TextureLoader.PRIORITY_PREFETCH;
+        }
+
+        return mTextureOptions;
+    }
+
+    /**
+     * Forget everything recorded
+     */
+    public synchronized void clear() {
+        mManifests.clear();
+    }
+
+    public synchronized int getNumManifests() {
+        return mManifests.size();
+    }
+
+    /**
+     * Load the manifests saved by a previous session, synchronously
+     * 
+     * @param filePath
+     * @return true if success
+     */
+    public boolean load(final String filePath) {
+        Log.v(TAG, "load(): " + filePath);
+
+        final ReadTextFileTask readTask = new ReadTextFileTask(filePath);
+        if (!readTask.run()) {
+            return false;
+        }
+
+        try {
+            final JSONObject json = new JSONObject(readTask.getContent());
+            if (json.optInt(KEY_VERSION) != VERSION) {
+                Log.w(TAG, "Unsupported version: " + filePath);
+                return false;
+            }
+
+            final JSONObject manifests = json.getJSONObject(KEY_MANIFESTS);
+            synchronized (this) {
+                final Iterator<?> keys = manifests.keys();
+                while (keys.hasNext()) {
+                    final String key = (String) keys.next();
+                    final JSONObject manifestJson = manifests.getJSONObject(key);
+                    final Manifest manifest = getManifest(key);
+                    readUris(manifestJson, KEY_TEXTURES, manifest.mTextures);
+                    readUris(manifestJson, KEY_ATLASES, manifest.mAtlases);
+                    readUris(manifestJson, KEY_NOVAS, manifest.mNovas);
+                    readUris(manifestJson, KEY_NEXT, manifest.mNext);
+                }
+            }
+
+            return true;
+        } catch (JSONException e) {
+            Log.e(TAG, "Load failed: " + filePath, e);
+            return false;
+        }
+    }
+
+    private void readUris(final JSONObject json, final String name, final LinkedHashSet<String> uris) throws JSONException {
+        final JSONArray array = json.optJSONArray(name);
+        if (array != null) {
+            final int length = array.length();
+            for (int i = 0; i < length; i++) {
+                addUri(uris, array.getString(i));
+            }
+        }
+    }
+
+    /**
+     * Save the manifests for the next session, synchronously
+     * 
+     * @param filePath
+     * @return true if success
+     */
+    public boolean save(final String filePath) {
+        Log.v(TAG, "save(): " + filePath);
+
+        final String content;
+        try {
+            final JSONObject manifests = new JSONObject();
+            synchronized (this) {
+                for (String key : mManifests.keySet()) {
+                    final Manifest manifest = mManifests.get(key);
+                    final JSONObject manifestJson = new JSONObject();
+                    writeUris(manifestJson, KEY_TEXTURES, manifest.mTextures);
+                    writeUris(manifestJson, KEY_ATLASES, manifest.mAtlases);
+                    writeUris(manifestJson, KEY_NOVAS, manifest.mNovas);
+                    writeUris(manifestJson, KEY_NEXT, manifest.mNext);
+                    manifests.put(key, manifestJson);
+                }
+            }
+
+            final JSONObject json = new JSONObject();
+            json.put(KEY_VERSION, VERSION);
+            json.put(KEY_MANIFESTS, manifests);
+            content = json.toString();
+        } catch (JSONException e) {
+            Log.e(TAG, "Save failed: " + filePath, e);
+            return false;
+        }
+
+        return new WriteTextFileTask(content, filePath, true).run();
+    }
+
+    private void writeUris(final JSONObject json, final String name, final LinkedHashSet<String> uris) throws JSONException {
+        // skip the empty ones, for compactness
+        if (!uris.isEmpty()) {
+            final JSONArray array = new JSONArray();
+            for (String uri : uris) {
+                array.put(uri);
+            }
+            json.put(name, array);
+        }
+    }
+
+    private static class Manifest {
+        private final LinkedHashSet<String> mTextures = new LinkedHashSet<String>();
+        private final LinkedHashSet<String> mAtlases = new LinkedHashSet<String>();
+        private final LinkedHashSet<String> mNovas = new LinkedHashSet<String>();
+        private final LinkedHashSet<String> mNext = new LinkedHashSet<String>();
+
+        private LinkedHashSet<String> get(final String kind) {
+            if (kind == KEY_TEXTURES) {
+                return mTextures;
+            } else if (kind == KEY_ATLASES) {
+                return mAtlases;
+            } else {
+                return mNovas;
+            }
+        }
+    }
+}
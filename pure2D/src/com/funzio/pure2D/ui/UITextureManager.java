@@ -33,9 +33,11 @@ import android.util.Log;
 
 import com.funzio.pure2D.Pure2DURI;
 import com.funzio.pure2D.Scene;
+import com.funzio.pure2D.atlas.AtlasFrame;
 import com.funzio.pure2D.atlas.AtlasFrameSet;
 import com.funzio.pure2D.atlas.JsonAtlas;
 import com.funzio.pure2D.atlas.SingleFrameSet;
+import com.funzio.pure2D.gl.gl10.textures.DynamicAtlas;
 import com.funzio.pure2D.gl.gl10.textures.Texture;
 import com.funzio.pure2D.gl.gl10.textures.TextureManager;
 import com.funzio.pure2D.gl.gl10.textures.TextureOptions;
@@ -89,6 +91,8 @@ public class UITextureManager extends TextureManager {
             mUIConfigVO = manager.getConfig();
             // texture expiration
             setExpirationCheckInterval(manager.getConfig().texture_manager.expiration_check_interval);
+            // texture memory budget
+            setMemoryBudget(manager.getConfig().texture_manager.texture_budget_mb * 1024L * 1024L);
         }
     }
 
@@ -109,7 +113,12 @@ public class UITextureManager extends TextureManager {
             final FontVO fontVO = fonts.get(i);
             final TextOptions options = fontVO.createTextOptions(mUIManager);
             final BitmapFont font = new BitmapFont(options.inCharacters, options, fontVO.texture_size);
+            font.setGlyphCachePages(fontVO.cache_pages);
             font.load(this);
+            // fonts are always in use, never evict them. The glyph cache pages can be rendered again though.
+            if (font.getTexture() != null && !font.isGlyphCacheEnabled()) {
+                font.getTexture().setPinned(true);
+            }
             // map it
             mBitmapFonts.put(options.id, font);
         }
@@ -164,6 +173,8 @@ public class UITextureManager extends TextureManager {
             textureUri = Pure2DURI.ASSET + textureUri; // make it asset://
         }
         final String actualPath = Pure2DURI.getPathFromUri(textureUri);
+        // for prefetching next time
+        mUIManager.getPrefetcher().recordTexture(textureUri);
 
         if (mGeneralTextures.containsKey(actualPath)) {
             // use cache
@@ -215,7 +226,19 @@ public class UITextureManager extends TextureManager {
      * @param jsonUri
      * @return
      */
-    public AtlasFrameSet getUriAtlas(String jsonUri, final boolean async) {
+    public AtlasFrameSet getUriAtlas(final String jsonUri, final boolean async) {
+        return getUriAtlas(jsonUri, null, async);
+    }
+
+    /**
+     * Load a Json atlas file
+     * 
+     * @param jsonUri
+     * @param options for the atlas texture, can be null. If this is null, it used the Texture Options defined in UI Config file.
+     * @param async
+     * @return
+     */
+    public AtlasFrameSet getUriAtlas(String jsonUri, final TextureOptions options, final boolean async) {
         if (Texture.LOG_ENABLED) {
             Log.v(TAG, "getUriAtlas(): " + jsonUri);
         }
@@ -225,6 +248,10 @@ public class UITextureManager extends TextureManager {
             jsonUri = Pure2DURI.ASSET + jsonUri; // make it asset://
         }
         final String actualPath = Pure2DURI.getPathFromUri(jsonUri);
+        // for prefetching next time
+        if (mUIManager != null) {
+            mUIManager.getPrefetcher().recordAtlas(jsonUri);
+        }
 
         if (mAtlasFrames.containsKey(actualPath)) {
             // reuse cache
@@ -263,7 +290,7 @@ public class UITextureManager extends TextureManager {
 
                 // now load texture
                 final AtlasFrameSet multiFrames = atlas.getMasterFrameSet();
-                multiFrames.setTexture(getUriTexture(jsonUri.replace(UIConfig.FILE_JSON, UIConfig.FILE_PNG), null, async));
+                multiFrames.setTexture(getUriTexture(jsonUri.replace(UIConfig.FILE_JSON, UIConfig.FILE_PNG), options, async));
 
                 // cache it
                 mAtlasFrames.put(actualPath, multiFrames);
@@ -274,7 +301,24 @@ public class UITextureManager extends TextureManager {
                 return null;
             }
         } else {
-            final SingleFrameSet singleFrame = new SingleFrameSet(actualPath, getUriTexture(jsonUri.replace(UIConfig.FILE_JSON, UIConfig.FILE_PNG), null, async));
+            final String pngUri = jsonUri.replace(UIConfig.FILE_JSON, UIConfig.FILE_PNG);
+
+            // small images share the pages of the dynamic atlas
+            if (!async && mUIConfigVO != null && mUIConfigVO.texture_manager.dynamic_atlas_frame_size > 0) {
+                final DynamicAtlas dynamicAtlas = getDynamicAtlas();
+                if (dynamicAtlas.isPackable(pngUri)) {
+                    final AtlasFrame frame = dynamicAtlas.add(pngUri);
+                    if (frame != null) {
+                        final AtlasFrameSet frameSet = new AtlasFrameSet(actualPath);
+                        frameSet.addFrame(frame);
+                        // cache it
+                        mAtlasFrames.put(actualPath, frameSet);
+                        return frameSet;
+                    }
+                }
+            }
+
+            final SingleFrameSet singleFrame = new SingleFrameSet(actualPath, getUriTexture(pngUri, options, async));
             // cache it
             mAtlasFrames.put(actualPath, singleFrame);
             return singleFrame;
@@ -287,6 +331,10 @@ public class UITextureManager extends TextureManager {
         }
 
         final String actualPath = Pure2DURI.getPathFromUri(jsonUri);
+        // for prefetching next time
+        if (mUIManager != null) {
+            mUIManager.getPrefetcher().recordNova(jsonUri);
+        }
 
         if (mNovaFactories.containsKey(actualPath)) {
             // reuse cache
@@ -327,6 +375,20 @@ public class UITextureManager extends TextureManager {
         }
     }
 
+    @Override
+    public DynamicAtlas getDynamicAtlas() {
+        if (mDynamicAtlas == null && mUIManager != null) {
+            // same options as the other UI textures
+            mDynamicAtlas = new DynamicAtlas(this, mResources, DynamicAtlas.DEFAULT_PAGE_SIZE, mUIManager.getTextureOptions());
+            mDynamicAtlas.setPackageName(mUIManager.getPackageName());
+            if (mUIConfigVO != null && mUIConfigVO.texture_manager.dynamic_atlas_frame_size > 0) {
+                mDynamicAtlas.setMaxFrameSize(mUIConfigVO.texture_manager.dynamic_atlas_frame_size);
+            }
+        }
+
+        return super.getDynamicAtlas();
+    }
+
     public NovaDelegator getNovaDelegator() {
         if (mNovaDelegator != null) {
             return mNovaDelegator;
@@ -389,6 +451,12 @@ public class UITextureManager extends TextureManager {
     public void reset() {
         Log.w(TAG, "reset()");
 
+        // release the shared pages
+        if (mDynamicAtlas != null) {
+            mDynamicAtlas.clear();
+            mDynamicAtlas = null;
+        }
+
         synchronized (mAtlasFrames) {
             // also release the textures
             final Set<String> keys = mAtlasFrames.keySet();
@@ -58,6 +58,8 @@ public class FontVO {
     public String stroke_color;
 
     public int texture_size;
+    // > 0 to render the missing characters on demand, see BitmapFont.setGlyphCachePages()
+    public int cache_pages;
 
     public FontVO(final JSONObject json) throws JSONException {
         name = json.getString("name");
@@ -80,6 +82,7 @@ public class FontVO {
         stroke_color = json.optString("stroke_color", "");
 
         texture_size = json.optInt("texture_size", 512);
+        cache_pages = json.optInt("cache_pages", 0);
     }
 
     public TextOptions createTextOptions(final UIManager manager) {
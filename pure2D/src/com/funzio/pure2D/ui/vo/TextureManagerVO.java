@@ -36,6 +36,8 @@ public class TextureManagerVO {
     public String cache_dir;
     public final int texture_expiration_time;
     public final int expiration_check_interval;
+    public final int texture_budget_mb; // 0 means unlimited
+    public final int dynamic_atlas_frame_size; // max size of the images packed into the dynamic atlas, 0 means disabled
 
     public final TextureOptionsVO texture_options;
 
@@ -46,6 +48,9 @@ public class TextureManagerVO {
         // expiration_check_interval = json.optInt("expiration_check_interval", 0);
         expiration_check_interval = texture_expiration_time / 2; // default value, has to be < texture_expiration_time
 
+        texture_budget_mb = json.optInt("texture_budget_mb", 0);
+        dynamic_atlas_frame_size = json.optInt("dynamic_atlas_frame_size", 0);
+
         texture_options = new TextureOptionsVO(json.getJSONObject("texture_options"));
     }
 
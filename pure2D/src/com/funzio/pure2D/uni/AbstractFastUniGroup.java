@@ -418,6 +418,12 @@ abstract public class AbstractFastUniGroup extends BaseDisplayObject implements
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // the uni children don't flag this group, always update
+        return true;
+    }
+
     @Override
     public final void invalidate(final int flags) {
         super.invalidate(flags);
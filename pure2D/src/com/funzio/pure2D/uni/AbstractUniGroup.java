@@ -422,6 +422,12 @@ abstract public class AbstractUniGroup extends BaseDisplayObject implements UniC
         return super.update(deltaTime);
     }
 
+    @Override
+    public boolean isUpdateNeeded() {
+        // the uni children don't flag this group, always update
+        return true;
+    }
+
     @Override
     public final void invalidate(final int flags) {
         super.invalidate(flags);
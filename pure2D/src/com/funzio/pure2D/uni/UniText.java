@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.uni;
+
+import android.graphics.PointF;
+import android.graphics.RectF;
+
+import com.funzio.pure2D.Pure2D;
+import com.funzio.pure2D.Scene;
+import com.funzio.pure2D.atlas.AtlasFrame;
+import com.funzio.pure2D.containers.Alignment;
+import com.funzio.pure2D.gl.GLColor;
+import com.funzio.pure2D.gl.gl10.ColorBuffer;
+import com.funzio.pure2D.gl.gl10.GLState;
+import com.funzio.pure2D.gl.gl10.QuadMeshBuffer;
+import com.funzio.pure2D.gl.gl10.QuadMeshColorBuffer;
+import com.funzio.pure2D.gl.gl10.VertexBuffer;
+import com.funzio.pure2D.gl.gl10.textures.QuadMeshTextureCoordBuffer;
+import com.funzio.pure2D.gl.gl10.textures.TextureCoordBuffer;
+import com.funzio.pure2D.text.BitmapFont;
+import com.funzio.pure2D.text.BitmapFontMetrics;
+import com.funzio.pure2D.text.Characters;
+import com.funzio.pure2D.text.TextBuffer;
+
+/**
+ * A bitmap font text that is stacked into a {@link UniGroup} as 1 cell per glyph, so hundreds of labels such as damage numbers can be drawn with a single draw call. The group's
+ * texture has to be the font's texture, and only the glyphs on the first page of a glyph cache font are stacked.
+ * 
+ * @author long
+ */
+public class UniText extends UniObject {
+    private static final int VALUES_PER_CELL = 8;
+
+    protected BitmapFont mBitmapFont;
+    protected BitmapFontMetrics mFontMetrics;
+    protected final TextBuffer mTextBuffer = new TextBuffer();
+    protected int mTextAlignment = Alignment.LEFT;
+    protected RectF mTextBounds = new RectF();
+
+    private float[] mLineWidths = new float[1];
+    private float[] mLocalVertices;
+    private float[] mTextureCoords;
+    private int mNumCells = 0;
+    private boolean mTextChanged = false;
+    // to detect the glyph cache evictions
+    private int mFontEvictions = 0;
+
+    public UniText() {
+        super();
+
+        allocate(0);
+    }
+
+    private void allocate(final int numCells) {
+        final int capacity = mLocalVertices == null ? Math.max(numCells, 8) : Math.max(numCells, mLocalVertices.length / VALUES_PER_CELL * 2);
+        mLocalVertices = new float[capacity * VALUES_PER_CELL];
+        mVertices = new float[capacity * VALUES_PER_CELL];
+        mTextureCoords = new float[capacity * VALUES_PER_CELL];
+    }
+
+    public BitmapFont getBitmapFont() {
+        return mBitmapFont;
+    }
+
+    public void setBitmapFont(final BitmapFont bitmapFont) {
+        mBitmapFont = bitmapFont;
+        mFontMetrics = bitmapFont.getFontMetrics();
+
+        invalidateText();
+    }
+
+    public void setText(final CharSequence text) {
+        if (mTextBuffer.set(text)) {
+            invalidateText();
+        }
+    }
+
+    public void setText(final char[] chars, final int offset, final int length) {
+        if (mTextBuffer.set(chars, offset, length)) {
+            invalidateText();
+        }
+    }
+
+    /**
+     * Set the text to a number, without allocating a String
+     * 
+     * @param value
+     */
+    public void setNumber(final long value) {
+        if (mTextBuffer.setNumber(value)) {
+            invalidateText();
+        }
+    }
+
+    public String getText() {
+        return mTextBuffer.toString();
+    }
+
+    public int getTextAlignment() {
+        return mTextAlignment;
+    }
+
+    public void setTextAlignment(final int alignment) {
+        mTextAlignment = alignment;
+
+        invalidateText();
+    }
+
+    private void invalidateText() {
+        mTextChanged = true;
+        invalidate(VERTICES);
+    }
+
+    @Override
+    public boolean update(final int deltaTime) {
+        if (mBitmapFont != null) {
+            // the frames of the cleared glyphs are no longer valid
+            if (mFontEvictions != mBitmapFont.getNumEvictions()) {
+                invalidateText();
+            }
+
+            if (mTextChanged) {
+                mFontEvictions = mBitmapFont.getNumEvictions();
+                layout();
+                mTextChanged = false;
+            }
+        }
+
+        return super.update(deltaTime);
+    }
+
+    /**
+     * Find the glyph quads in local space and the size
+     */
+    protected void layout() {
+        final char[] chars = mTextBuffer.getChars();
+        final int length = mTextBuffer.length();
+        mFontMetrics.getTextBounds(chars, length, mTextBounds);
+
+        // line widths first, for the alignment
+        final int numLines = mTextBuffer.getNumLines();
+        if (mLineWidths.length < numLines) {
+            mLineWidths = new float[numLines];
+        }
+        float nextX = 0, width = 0;
+        int lineIndex = 0, numCells = 0;
+        char ch;
+        AtlasFrame frame;
+        for (int i = 0; i < length; i++) {
+            ch = chars[i];
+            if (ch == Characters.SPACE) {
+                nextX += mFontMetrics.whitespace + mFontMetrics.letterSpacing;
+            } else if (ch == Characters.NEW_LINE) {
+                if (i < length - 1) {
+                    mLineWidths[lineIndex++] = nextX;
+                    nextX = 0;
+                }
+            } else {
+                frame = mBitmapFont.getCharFrame(ch);
+                if (frame != null) {
+                    nextX += frame.getSize().x + mFontMetrics.letterSpacing;
+                    numCells++;
+                }
+            }
+
+            if (nextX > width) {
+                width = nextX;
+            }
+        }
+        mLineWidths[lineIndex] = nextX;
+
+        // same as BmfTextObject
+        mTextBounds.right = mTextBounds.left + width - 1;
+        setSize(mTextBounds.right - mTextBounds.left + 1, mTextBounds.bottom - mTextBounds.top + 1);
+
+        if (numCells * VALUES_PER_CELL > mLocalVertices.length) {
+            allocate(numCells);
+        }
+
+        // now the quads
+        final boolean axisFlipped = mScene != null && mScene.getAxisSystem() == Scene.AXIS_TOP_LEFT;
+        float nextY = mTextBounds.bottom, x, y;
+        PointF frameSize;
+        lineIndex = 0;
+        nextX = getLineStart(0);
+        int cell = 0;
+        for (int i = 0; i < length; i++) {
+            ch = chars[i];
+            if (ch == Characters.SPACE) {
+                nextX += mFontMetrics.whitespace + mFontMetrics.letterSpacing;
+            } else if (ch == Characters.NEW_LINE) {
+                if (i < length - 1) {
+                    nextX = getLineStart(++lineIndex);
+                    nextY -= (mFontMetrics.bottom - mFontMetrics.top);
+                }
+            } else {
+                frame = mBitmapFont.getCharFrame(ch);
+                if (frame != null) {
+                    frameSize = frame.getSize();
+                    // other pages are not in the group's texture
+                    if (mBitmapFont.getPageIndex(frame) == 0) {
+                        x = nextX;
+                        y = nextY - (frameSize.y - frame.mOffset.y);
+                        final int start = cell * VALUES_PER_CELL;
+                        if (axisFlipped) {
+                            y = mSize.y - y - frameSize.y;
+                            mLocalVertices[start] = x;
+                            mLocalVertices[start + 1] = y;
+                            mLocalVertices[start + 2] = x;
+                            mLocalVertices[start + 3] = y + frameSize.y;
+                            mLocalVertices[start + 4] = x + frameSize.x;
+                            mLocalVertices[start + 5] = y;
+                            mLocalVertices[start + 6] = x + frameSize.x;
+                            mLocalVertices[start + 7] = y + frameSize.y;
+                        } else {
+                            mLocalVertices[start] = x;
+                            mLocalVertices[start + 1] = y + frameSize.y;
+                            mLocalVertices[start + 2] = x;
+                            mLocalVertices[start + 3] = y;
+                            mLocalVertices[start + 4] = x + frameSize.x;
+                            mLocalVertices[start + 5] = y + frameSize.y;
+                            mLocalVertices[start + 6] = x + frameSize.x;
+                            mLocalVertices[start + 7] = y;
+                        }
+                        System.arraycopy(frame.getTextureCoords(), 0, mTextureCoords, start, VALUES_PER_CELL);
+                        cell++;
+                    }
+
+                    nextX += frameSize.x + mFontMetrics.letterSpacing;
+                }
+            }
+        }
+        mNumCells = cell;
+    }
+
+    private float getLineStart(final int lineIndex) {
+        if ((mTextAlignment & Alignment.HORIZONTAL_CENTER) > 0) {
+            return (mSize.x - mLineWidths[lineIndex]) * 0.5f;
+        } else if ((mTextAlignment & Alignment.RIGHT) > 0) {
+            return mSize.x - mLineWidths[lineIndex];
+        } else {
+            return 0;
+        }
+    }
+
+    @Override
+    protected void resetVertices() {
+        System.arraycopy(mLocalVertices, 0, mVertices, 0, mNumCells * VALUES_PER_CELL);
+    }
+
+    @Override
+    public int getNumStackedChildren() {
+        return mNumCells;
+    }
+
+    @Override
+    public int stack(final GLState glState, final int index, final VertexBuffer vertexBuffer, final ColorBuffer colorBuffer, final TextureCoordBuffer coordBuffer) {
+        // upload the new glyphs, if any, same as BmfTextObject
+        if (mBitmapFont != null) {
+            mBitmapFont.flush();
+        }
+
+        ((QuadMeshBuffer) vertexBuffer).setValuesAt(index, mNumCells, mVertices);
+
+        final GLColor color = getInheritedColor();
+        final QuadMeshColorBuffer colors = (QuadMeshColorBuffer) colorBuffer;
+        for (int i = 0; i < mNumCells; i++) {
+            colors.setColorAt(index + i, color);
+        }
+
+        // optional
+        if (coordBuffer != null) {
+            ((QuadMeshTextureCoordBuffer) coordBuffer).setValuesAt(index, mNumCells, mTextureCoords);
+        }
+
+        // for debugging
+        final int debugFlags = Pure2D.DEBUG_FLAGS | mDebugFlags;
+        // debug global bounds
+        if ((debugFlags & Pure2D.DEBUG_FLAG_GLOBAL_BOUNDS) != 0) {
+            drawBounds(glState);
+        }
+
+        // validate visual only
+        mInvalidateFlags &= ~VISUAL;
+
+        return mNumCells;
+    }
+}
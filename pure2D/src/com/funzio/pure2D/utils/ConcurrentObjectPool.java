@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free ObjectPool for objects that get released from other threads, such as loader or worker threads, and acquired on the GL thread. The objects are kept in a fixed
+ * array of slots that are claimed with compare-and-set, so there is no allocation and no locking. The order is roughly LIFO.
+ * 
+ * @author long
+ */
+public class ConcurrentObjectPool<T extends Reusable> extends ObjectPool<T> {
+    private final AtomicReferenceArray<T> mSlots;
+    private final AtomicInteger mCount = new AtomicInteger();
+    private volatile int mHint = 0;
+    private volatile int mLimit;
+
+    // stats
+    private final AtomicInteger mAtomicHits = new AtomicInteger();
+    private final AtomicInteger mAtomicMisses = new AtomicInteger();
+    private final AtomicInteger mAtomicOverflows = new AtomicInteger();
+
+    /**
+     * @param maxSize the capacity, which cannot be raised later
+     */
+    public ConcurrentObjectPool(final int maxSize) {
+        super(maxSize, true);
+
+        mSlots = new AtomicReferenceArray<T>(maxSize);
+        mLimit = maxSize;
+    }
+
+    @Override
+    public int getMaxSize() {
+        return mLimit;
+    }
+
+    /**
+     * Lower the limit. The capacity given to the constructor cannot be exceeded.
+     */
+    @Override
+    public void setMaxSize(final int maxSize) {
+        mLimit = Math.min(maxSize, mSlots.length());
+    }
+
+    @Override
+    public T acquire() {
+        // reserve one
+        if (mCount.decrementAndGet() < 0) {
+            mCount.incrementAndGet();
+            mAtomicMisses.incrementAndGet();
+            return null;
+        }
+
+        // then find it, starting from the last touched slot
+        final int length = mSlots.length();
+        int index = mHint;
+        for (int i = 0; i < length; i++) {
+            final T reusable = mSlots.getAndSet(index, null);
+            if (reusable != null) {
+                mHint = index;
+                mAtomicHits.incrementAndGet();
+                return reusable;
+            }
+
+            index = index > 0 ? index - 1 : length - 1;
+        }
+
+        // a release is reserved but not stored yet, give the reservation back
+        mCount.incrementAndGet();
+        mAtomicMisses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public boolean release(final T reusable) {
+        // reserve a slot
+        if (mCount.incrementAndGet() > mLimit) {
+            mCount.decrementAndGet();
+            mAtomicOverflows.incrementAndGet();
+            return false;
+        }
+
+        // there must be a free slot now, find it
+        final int length = mSlots.length();
+        int index = mHint;
+        while (true) {
+            if (mSlots.compareAndSet(index, null, reusable)) {
+                mHint = index;
+                return true;
+            }
+
+            index = index < length - 1 ? index + 1 : 0;
+        }
+    }
+
+    @Override
+    public void clear() {
+        final int length = mSlots.length();
+        for (int i = 0; i < length; i++) {
+            if (mSlots.getAndSet(i, null) != null) {
+                mCount.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, mCount.get());
+    }
+
+    @Override
+    public int getHits() {
+        return mAtomicHits.get();
+    }
+
+    @Override
+    public int getMisses() {
+        return mAtomicMisses.get();
+    }
+
+    @Override
+    public int getOverflows() {
+        return mAtomicOverflows.get();
+    }
+
+    @Override
+    public void resetStats() {
+        mAtomicHits.set(0);
+        mAtomicMisses.set(0);
+        mAtomicOverflows.set(0);
+    }
+}
@@ -0,0 +1,575 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.json.JSONException;
+
+/**
+ * A small pull parser that reads JSON tokens straight from a stream, without building the whole document as a String or a DOM. Numbers are decoded in place and the
+ * char buffers are reused, so the only garbage is the names and strings being read. This follows android.util.JsonReader which is not available on older APIs.
+ * 
+ * @author long
+ */
+public class JsonStreamReader extends JsonTokenReader {
+    // scopes
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final Reader mReader;
+    private final CountingInputStream mCountingStream;
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+    private int mPos = 0;
+    private int mLimit = 0;
+
+    private int[] mStack = new int[32];
+    private int mStackSize = 0;
+
+    private int mPeeked = 0;
+    private boolean mPeekedBoolean;
+
+    // reused for strings and numbers
+    private final StringBuilder mBuilder = new StringBuilder();
+
+    public JsonStreamReader(final InputStream stream) {
+        mCountingStream = new CountingInputStream(stream);
+        mReader = new InputStreamReader(mCountingStream, Charset.forName("UTF-8"));
+        push(EMPTY_DOCUMENT);
+    }
+
+    public JsonStreamReader(final Reader reader) {
+        mCountingStream = null;
+        mReader = reader;
+        push(EMPTY_DOCUMENT);
+    }
+
+    @Override
+    public int peek() throws IOException, JSONException {
+        if (mPeeked != 0) {
+            return mPeeked;
+        }
+
+        final int scope = mStack[mStackSize - 1];
+        if (scope == EMPTY_ARRAY) {
+            mStack[mStackSize - 1] = NONEMPTY_ARRAY;
+        } else if (scope == NONEMPTY_ARRAY) {
+            final int c = nextNonWhitespace(true);
+            if (c == ']') {
+                return mPeeked = END_ARRAY;
+            } else if (c != ',') {
+                throw syntaxError("Expected ',' or ']'");
+            }
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            mStack[mStackSize - 1] = DANGLING_NAME;
+            if (scope == NONEMPTY_OBJECT) {
+                final int c = nextNonWhitespace(true);
+                if (c == '}') {
+                    return mPeeked = END_OBJECT;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+            }
+
+            final int c = nextNonWhitespace(true);
+            if (c == '"') {
+                return mPeeked = NAME;
+            } else if (c == '}' && scope == EMPTY_OBJECT) {
+                return mPeeked = END_OBJECT;
+            } else {
+                throw syntaxError("Expected name");
+            }
+        } else if (scope == DANGLING_NAME) {
+            mStack[mStackSize - 1] = NONEMPTY_OBJECT;
+            if (nextNonWhitespace(true) != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (scope == EMPTY_DOCUMENT) {
+            mStack[mStackSize - 1] = NONEMPTY_DOCUMENT;
+        } else if (scope == NONEMPTY_DOCUMENT) {
+            if (nextNonWhitespace(false) == -1) {
+                return mPeeked = END_DOCUMENT;
+            }
+            throw syntaxError("Expected end of document");
+        }
+
+        final int c = nextNonWhitespace(true);
+        switch (c) {
+            case '{':
+                return mPeeked = BEGIN_OBJECT;
+            case '[':
+                return mPeeked = BEGIN_ARRAY;
+            case ']':
+                if (scope == EMPTY_ARRAY) {
+                    return mPeeked = END_ARRAY;
+                }
+                throw syntaxError("Unexpected ']'");
+            case '"':
+                return mPeeked = STRING;
+            case 't':
+                expectLiteral("rue");
+                mPeekedBoolean = true;
+                return mPeeked = BOOLEAN;
+            case 'f':
+                expectLiteral("alse");
+                mPeekedBoolean = false;
+                return mPeeked = BOOLEAN;
+            case 'n':
+                expectLiteral("ull");
+                return mPeeked = NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    // leave the first char for nextDouble()
+                    mPos--;
+                    return mPeeked = NUMBER;
+                }
+                throw syntaxError("Unexpected character: " + (char) c);
+        }
+    }
+
+    @Override
+    public void beginObject() throws IOException, JSONException {
+        expect(BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+        mPeeked = 0;
+    }
+
+    @Override
+    public void endObject() throws IOException, JSONException {
+        expect(END_OBJECT);
+        mStackSize--;
+        mPeeked = 0;
+    }
+
+    @Override
+    public void beginArray() throws IOException, JSONException {
+        expect(BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+        mPeeked = 0;
+    }
+
+    @Override
+    public void endArray() throws IOException, JSONException {
+        expect(END_ARRAY);
+        mStackSize--;
+        mPeeked = 0;
+    }
+
+    @Override
+    public String nextName() throws IOException, JSONException {
+        expect(NAME);
+        mPeeked = 0;
+        return readString();
+    }
+
+    @Override
+    public String nextString() throws IOException, JSONException {
+        final int token = peek();
+        mPeeked = 0;
+        if (token == STRING) {
+            return readString();
+        } else if (token == NUMBER) {
+            readNumber();
+            return mBuilder.toString();
+        } else if (token == BOOLEAN) {
+            return mPeekedBoolean ? "true" : "false";
+        } else if (token == NULL) {
+            return null;
+        }
+
+        mPeeked = token;
+        throw syntaxError("Expected a string");
+    }
+
+    @Override
+    public double nextDouble() throws IOException, JSONException {
+        final int token = peek();
+        if (token == NUMBER) {
+            mPeeked = 0;
+            return readNumber();
+        } else if (token == STRING) {
+            // numeric strings are accepted, same as org.json
+            mPeeked = 0;
+            final String value = readString();
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw syntaxError("Expected a number: " + value);
+            }
+        }
+
+        throw syntaxError("Expected a number");
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException, JSONException {
+        final int token = peek();
+        if (token == BOOLEAN) {
+            mPeeked = 0;
+            return mPeekedBoolean;
+        } else if (token == STRING) {
+            mPeeked = 0;
+            final String value = readString();
+            if ("true".equalsIgnoreCase(value)) {
+                return true;
+            } else if ("false".equalsIgnoreCase(value)) {
+                return false;
+            }
+        }
+
+        throw syntaxError("Expected a boolean");
+    }
+
+    @Override
+    public void nextNull() throws IOException, JSONException {
+        expect(NULL);
+        mPeeked = 0;
+    }
+
+    @Override
+    public void skipValue() throws IOException, JSONException {
+        int depth = 0;
+        do {
+            final int token = peek();
+            mPeeked = 0;
+            if (token == BEGIN_OBJECT) {
+                push(EMPTY_OBJECT);
+                depth++;
+            } else if (token == BEGIN_ARRAY) {
+                push(EMPTY_ARRAY);
+                depth++;
+            } else if (token == END_OBJECT || token == END_ARRAY) {
+                mStackSize--;
+                depth--;
+            } else if (token == NAME || token == STRING) {
+                skipString();
+            } else if (token == NUMBER) {
+                readNumber();
+            } else if (token == END_DOCUMENT) {
+                throw syntaxError("Unexpected end of document");
+            }
+        } while (depth != 0);
+    }
+
+    @Override
+    public Number nextNumber() throws IOException, JSONException {
+        expect(NUMBER);
+        mPeeked = 0;
+        final double value = readNumber();
+        if (mBuilder.indexOf(".") < 0 && mBuilder.indexOf("e") < 0 && mBuilder.indexOf("E") < 0) {
+            if (value == (int) value) {
+                return Integer.valueOf((int) value);
+            } else if (value == (long) value) {
+                return Long.valueOf((long) value);
+            }
+        }
+
+        return Double.valueOf(value);
+    }
+
+    /**
+     * @return number of bytes read from the stream so far, or -1 when reading from a Reader
+     */
+    @Override
+    public long getBytesRead() {
+        return mCountingStream != null ? mCountingStream.mCount : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mPeeked = 0;
+        mStackSize = 0;
+        mReader.close();
+    }
+
+    private void push(final int scope) {
+        if (mStackSize == mStack.length) {
+            final int[] stack = new int[mStackSize * 2];
+            System.arraycopy(mStack, 0, stack, 0, mStackSize);
+            mStack = stack;
+        }
+        mStack[mStackSize++] = scope;
+    }
+
+    private void expect(final int token) throws IOException, JSONException {
+        if (peek() != token) {
+            throw syntaxError("Expected token " + token + " but was " + mPeeked);
+        }
+    }
+
+    private void expectLiteral(final String rest) throws IOException, JSONException {
+        final int length = rest.length();
+        for (int i = 0; i < length; i++) {
+            if (nextChar() != rest.charAt(i)) {
+                throw syntaxError("Unexpected literal");
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        mPos = 0;
+        mLimit = mReader.read(mBuffer, 0, BUFFER_SIZE);
+        if (mLimit < 0) {
+            mLimit = 0;
+            return false;
+        }
+
+        return true;
+    }
+
+    private int nextChar() throws IOException, JSONException {
+        if (mPos == mLimit && !fill()) {
+            throw syntaxError("Unexpected end of input");
+        }
+
+        return mBuffer[mPos++];
+    }
+
+    private int nextNonWhitespace(final boolean required) throws IOException, JSONException {
+        while (mPos < mLimit || fill()) {
+            final char c = mBuffer[mPos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+
+        if (required) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return -1;
+    }
+
+    /**
+     * Read a string whose opening quote is consumed already
+     */
+    private String readString() throws IOException, JSONException {
+        mBuilder.setLength(0);
+        while (true) {
+            // bulk append the plain chars
+            int start = mPos;
+            while (mPos < mLimit) {
+                final char c = mBuffer[mPos];
+                if (c == '"') {
+                    mBuilder.append(mBuffer, start, mPos - start);
+                    mPos++;
+                    return mBuilder.toString();
+                } else if (c == '\\') {
+                    mBuilder.append(mBuffer, start, mPos - start);
+                    mPos++;
+                    mBuilder.append(readEscape());
+                    start = mPos;
+                } else {
+                    mPos++;
+                }
+            }
+
+            mBuilder.append(mBuffer, start, mPos - start);
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private void skipString() throws IOException, JSONException {
+        while (true) {
+            final int c = nextChar();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            }
+        }
+    }
+
+    private char readEscape() throws IOException, JSONException {
+        final int c = nextChar();
+        switch (c) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int h = nextChar();
+                    value <<= 4;
+                    if (h >= '0' && h <= '9') {
+                        value += h - '0';
+                    } else if (h >= 'a' && h <= 'f') {
+                        value += h - 'a' + 10;
+                    } else if (h >= 'A' && h <= 'F') {
+                        value += h - 'A' + 10;
+                    } else {
+                        throw syntaxError("Invalid escape");
+                    }
+                }
+                return (char) value;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                // '"', '\\', '/' and the rest as-is
+                return (char) c;
+        }
+    }
+
+    /**
+     * Read a number into mBuilder and decode it. Plain decimals with up to 15 significant digits are computed exactly without going through Double.parseDouble().
+     */
+    private double readNumber() throws IOException, JSONException {
+        mBuilder.setLength(0);
+
+        boolean negative = false;
+        boolean exact = true;
+        long mantissa = 0;
+        int scale = 0; // power of 10
+        int digits = 0;
+        boolean fraction = false;
+        boolean exponent = false;
+        boolean expNegative = false;
+        int exp = 0;
+
+        while (mPos < mLimit || fill()) {
+            final char c = mBuffer[mPos];
+            if (c >= '0' && c <= '9') {
+                if (exponent) {
+                    exp = exp * 10 + (c - '0');
+                    if (exp > 1000) {
+                        exact = false;
+                    }
+                } else if (mantissa < MAX_EXACT_MANTISSA / 10) {
+                    if (mantissa != 0 || c != '0') {
+                        digits++;
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (fraction) {
+                        scale--;
+                    }
+                } else {
+                    exact = false;
+                }
+            } else if (c == '-' && mBuilder.length() == 0) {
+                negative = true;
+            } else if (c == '.' && !fraction && !exponent) {
+                fraction = true;
+            } else if ((c == 'e' || c == 'E') && !exponent) {
+                exponent = true;
+            } else if ((c == '-' || c == '+') && exponent) {
+                expNegative = c == '-';
+            } else {
+                break;
+            }
+
+            mBuilder.append(c);
+            mPos++;
+        }
+
+        if (mBuilder.length() == 0 || (mBuilder.length() == 1 && negative)) {
+            throw syntaxError("Invalid number");
+        }
+
+        if (exact) {
+            scale += expNegative ? -exp : exp;
+            double value = -1;
+            if (scale == 0) {
+                value = mantissa;
+            } else if (scale < 0 && scale >= -22) {
+                value = mantissa / POW10[-scale];
+            } else if (scale > 0 && scale <= 22 && digits + scale <= 15) {
+                value = mantissa * POW10[scale];
+            }
+
+            if (value >= 0) {
+                return negative ? -value : value;
+            }
+        }
+
+        // slow path for the rest
+        try {
+            return Double.parseDouble(mBuilder.toString());
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid number: " + mBuilder);
+        }
+    }
+
+    private JSONException syntaxError(final String message) {
+        return new JSONException(message + " at depth " + mStackSize);
+    }
+
+    /**
+     * Counts the raw bytes for stats
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount = 0;
+
+        public CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int count) throws IOException {
+            final int n = super.read(buffer, offset, count);
+            if (n > 0) {
+                mCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
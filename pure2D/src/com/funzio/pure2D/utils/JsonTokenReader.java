@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils;
+
+import java.io.IOException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The pull API shared by the text and the binary JSON readers, so parsers can build their objects from either one.
+ * 
+ * @author long
+ * @see JsonStreamReader
+ * @see com.funzio.pure2D.utils.binary.BinaryJsonReader
+ */
+public abstract class JsonTokenReader {
+    // tokens
+    public static final int BEGIN_OBJECT = 1;
+    public static final int END_OBJECT = 2;
+    public static final int BEGIN_ARRAY = 3;
+    public static final int END_ARRAY = 4;
+    public static final int NAME = 5;
+    public static final int STRING = 6;
+    public static final int NUMBER = 7;
+    public static final int BOOLEAN = 8;
+    public static final int NULL = 9;
+    public static final int END_DOCUMENT = 10;
+
+    /**
+     * @return the next token type without consuming it
+     * @throws IOException
+     * @throws JSONException
+     */
+    public abstract int peek() throws IOException, JSONException;
+
+    public abstract void beginObject() throws IOException, JSONException;
+
+    public abstract void endObject() throws IOException, JSONException;
+
+    public abstract void beginArray() throws IOException, JSONException;
+
+    public abstract void endArray() throws IOException, JSONException;
+
+    public abstract String nextName() throws IOException, JSONException;
+
+    /**
+     * @return the next string. Numbers and booleans are returned as text, like org.json's optString()
+     */
+    public abstract String nextString() throws IOException, JSONException;
+
+    /**
+     * @return the next number. Numeric strings are accepted, same as org.json
+     */
+    public abstract double nextDouble() throws IOException, JSONException;
+
+    public abstract boolean nextBoolean() throws IOException, JSONException;
+
+    public abstract void nextNull() throws IOException, JSONException;
+
+    /**
+     * Skip the next value, including nested objects and arrays
+     */
+    public abstract void skipValue() throws IOException, JSONException;
+
+    /**
+     * @return the next number as an Integer, Long or Double, like org.json does
+     */
+    public abstract Number nextNumber() throws IOException, JSONException;
+
+    /**
+     * @return number of bytes read from the source so far, or -1 if unknown
+     */
+    public abstract long getBytesRead();
+
+    public abstract void close() throws IOException;
+
+    public boolean hasNext() throws IOException, JSONException {
+        final int token = peek();
+        return token != END_OBJECT && token != END_ARRAY && token != END_DOCUMENT;
+    }
+
+    public float nextFloat() throws IOException, JSONException {
+        return (float) nextDouble();
+    }
+
+    public int nextInt() throws IOException, JSONException {
+        return (int) nextDouble();
+    }
+
+    /**
+     * Read the next value as an org.json object. Use this for small sub-trees only, such as a single entry of a long list.
+     */
+    public JSONObject nextJSONObject() throws IOException, JSONException {
+        final JSONObject object = new JSONObject();
+        beginObject();
+        while (hasNext()) {
+            final String name = nextName();
+            object.put(name, nextValue());
+        }
+        endObject();
+
+        return object;
+    }
+
+    public JSONArray nextJSONArray() throws IOException, JSONException {
+        final JSONArray array = new JSONArray();
+        beginArray();
+        while (hasNext()) {
+            array.put(nextValue());
+        }
+        endArray();
+
+        return array;
+    }
+
+    /**
+     * @return the next value as an org.json compatible object
+     */
+    public Object nextValue() throws IOException, JSONException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                return nextJSONObject();
+            case BEGIN_ARRAY:
+                return nextJSONArray();
+            case STRING:
+                return nextString();
+            case NUMBER:
+                return nextNumber();
+            case BOOLEAN:
+                return Boolean.valueOf(nextBoolean());
+            case NULL:
+                nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Expected a value");
+        }
+    }
+}
@@ -24,17 +24,40 @@
  */
 package com.funzio.pure2D.utils;
 
-import java.util.Vector;
-
 /**
+ * A LIFO pool of reusable objects, backed by a plain array so acquire() and release() are O(1) and allocation-free. By default the pool is synchronized. Pools that are only
+ * touched by one thread, such as the GL thread, can be thread-confined to skip the locking. For releasing from other threads without locks, see {@link ConcurrentObjectPool}.
+ * 
  * @author long
  */
 public class ObjectPool<T extends Reusable> {
-    private Vector<T> mReusables = new Vector<T>();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] mReusables;
+    private int mSize = 0;
     private int mMaxSize;
+    private final boolean mThreadConfined;
+
+    // stats
+    protected int mHits = 0;
+    protected int mMisses = 0;
+    protected int mOverflows = 0;
 
     public ObjectPool(final int maxSize) {
+        this(maxSize, false);
+    }
+
+    /**
+     * @param maxSize
+     * @param threadConfined true if this pool is only used by a single thread, such as the GL thread. No locking is done then.
+     */
+    public ObjectPool(final int maxSize, final boolean threadConfined) {
         mMaxSize = maxSize;
+        mThreadConfined = threadConfined;
+    }
+
+    public boolean isThreadConfined() {
+        return mThreadConfined;
     }
 
     public int getMaxSize() {
@@ -42,31 +65,146 @@ public class ObjectPool<T extends Reusable> {
     }
 
     public void setMaxSize(final int maxSize) {
-        mMaxSize = maxSize;
+        if (mThreadConfined) {
+            doSetMaxSize(maxSize);
+        } else {
+            synchronized (this) {
+                doSetMaxSize(maxSize);
+            }
+        }
     }
 
+    /**
+     * @return the most recently released object or null if the pool is empty
+     */
     public T acquire() {
-        if (mReusables.size() > 0) {
-            return mReusables.remove(0);
+        if (mThreadConfined) {
+            return doAcquire();
+        } else {
+            synchronized (this) {
+                return doAcquire();
+            }
+        }
+    }
+
+    /**
+     * @param reusable
+     * @return false if the pool is full
+     */
+    public boolean release(final T reusable) {
+        if (mThreadConfined) {
+            return doRelease(reusable);
+        } else {
+            synchronized (this) {
+                return doRelease(reusable);
+            }
+        }
+    }
+
+    /**
+     * Fill up the pool ahead of time to avoid allocations later, such as during gameplay.
+     * 
+     * @param count
+     * @param factory
+     * @return the number of objects added
+     */
+    public int prewarm(final int count, final Factory<T> factory) {
+        int added = 0;
+        while (added < count && size() < getMaxSize() && release(factory.create())) {
+            added++;
+        }
+
+        return added;
+    }
+
+    public void clear() {
+        if (mThreadConfined) {
+            doClear();
+        } else {
+            synchronized (this) {
+                doClear();
+            }
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return number of times acquire() returned an object
+     */
+    public int getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return number of times acquire() returned null
+     */
+    public int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return number of times release() was rejected because the pool was full
+     */
+    public int getOverflows() {
+        return mOverflows;
+    }
+
+    public void resetStats() {
+        mHits = mMisses = mOverflows = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T doAcquire() {
+        if (mSize > 0) {
+            final T reusable = (T) mReusables[--mSize];
+            mReusables[mSize] = null;
+            mHits++;
+            return reusable;
         }
 
+        mMisses++;
         return null;
     }
 
-    public boolean release(final T reusable) {
-        if (mReusables.size() < mMaxSize) {
-            mReusables.add(reusable);
+    private boolean doRelease(final T reusable) {
+        if (mSize < mMaxSize) {
+            // grow
+            if (mReusables == null || mSize == mReusables.length) {
+                final Object[] reusables = new Object[Math.min(mMaxSize, Math.max(INITIAL_CAPACITY, mSize * 2))];
+                if (mReusables != null) {
+                    System.arraycopy(mReusables, 0, reusables, 0, mSize);
+                }
+                mReusables = reusables;
+            }
+
+            mReusables[mSize++] = reusable;
             return true;
         }
 
+        mOverflows++;
         return false;
     }
 
-    public void clear() {
-        mReusables.clear();
+    private void doSetMaxSize(final int maxSize) {
+        mMaxSize = maxSize;
+
+        // drop the extra ones
+        while (mSize > maxSize) {
+            mReusables[--mSize] = null;
+        }
     }
 
-    public int size() {
-        return mReusables.size();
+    private void doClear() {
+        for (int i = 0; i < mSize; i++) {
+            mReusables[i] = null;
+        }
+        mSize = 0;
+    }
+
+    public interface Factory<T> {
+        public T create();
     }
 }
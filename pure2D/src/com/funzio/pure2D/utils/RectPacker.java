@@ -25,6 +25,7 @@
 package com.funzio.pure2D.utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.TreeSet;
@@ -34,11 +35,33 @@ import android.graphics.Rect;
 import android.util.Log;
 
 /**
+ * Packs rects into a square of maxWidth. There are 3 modes: the original hot points, skyline bottom-left and max rects best-short-side-fit. The last 2 are faster and tighter,
+ * especially with {@link #occupyAll(int[], int[])} which packs the biggest rects first.
+ * 
  * @author long
  */
 public class RectPacker {
     private static final String TAG = RectPacker.class.getSimpleName();
 
+    // packing modes
+    public static final int MODE_HOT_POINTS = 0;
+    public static final int MODE_SKYLINE = 1;
+    public static final int MODE_MAX_RECTS = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final Comparator<int[]> SIZE_COMPARATOR = new Comparator<int[]>() {
+        public int compare(final int[] left, final int[] right) {
+            // [index, width, height], longer side first, then bigger area
+            final int leftMax = Math.max(left[1], left[2]);
+            final int rightMax = Math.max(right[1], right[2]);
+            if (leftMax != rightMax) {
+                return rightMax - leftMax;
+            }
+            return right[1] * right[2] - left[1] * left[2];
+        }
+    };
+
     private static final Comparator<Point> COMPARATOR = new Comparator<Point>() {
         public int compare(final Point left, final Point right) {
             return (left.x * left.x + left.y + left.y) - (right.x * right.x + right.y * right.y); // square
@@ -55,11 +78,29 @@ public class RectPacker {
     private boolean mQuickMode = true;
     private int mWidth = 0;
     private int mHeight = 0;
+    private int mMode = MODE_HOT_POINTS;
+
+    // skyline nodes
+    private int[] mSkyX = new int[0];
+    private int[] mSkyY = new int[0];
+    private int[] mSkyW = new int[0];
+    private int mSkyNum = 0;
+
+    // max rects free list
+    private int[] mFreeX = new int[0];
+    private int[] mFreeY = new int[0];
+    private int[] mFreeW = new int[0];
+    private int[] mFreeH = new int[0];
+    private int mFreeNum = 0;
+
+    // metrics
+    private long mOccupiedArea = 0;
+    private long mPackTime = 0; // ns
 
     // for sorting the lines
-    private final TreeSet<Integer> mHLines = new TreeSet<Integer>();
-    private final TreeSet<Integer> mVLines = new TreeSet<Integer>();
-    private final TreeSet<Point> mHotPoints = new TreeSet<Point>(COMPARATOR);
+    private TreeSet<Integer> mHLines = new TreeSet<Integer>();
+    private TreeSet<Integer> mVLines = new TreeSet<Integer>();
+    private TreeSet<Point> mHotPoints = new TreeSet<Point>(COMPARATOR);
     private final ArrayList<Point> mPoints2Remove = new ArrayList<Point>();
     private final Rect mTempRect = new Rect();
     private final Rect mTempBounds = new Rect();
@@ -85,9 +126,161 @@ public class RectPacker {
         mQuickMode = quickMode;
     }
 
+    public int getMode() {
+        return mMode;
+    }
+
+    /**
+     * Set the packing mode. This only applies when the packer is empty, such as after {@link #reset()}.
+     * 
+     * @param mode {@link #MODE_HOT_POINTS}, {@link #MODE_SKYLINE} or {@link #MODE_MAX_RECTS}
+     */
+    public void setMode(final int mode) {
+        if (mRectNum > 0) {
+            Log.w(TAG, "setMode(): packer is not empty!");
+            return;
+        }
+
+        mMode = mode;
+    }
+
     public Rect occupy(final int rectWidth, final int rectHeight) {
+        final Rect newRect = tryOccupy(rectWidth, rectHeight);
+        if (newRect == null) {
+            Log.e(TAG, "Error: ran out of space!", new Exception());
+        }
+
+        return newRect;
+    }
+
+    /**
+     * Same as {@link #occupy(int, int)} but silently returns null when there is no space left, for filling multiple packers.
+     * 
+     * @param rectWidth
+     * @param rectHeight
+     * @return the new rect or null
+     */
+    public Rect tryOccupy(final int rectWidth, final int rectHeight) {
         // Log.e("long", "occupy() " + rectWidth + " x " + rectHeight);
+        final long start = System.nanoTime();
+
+        final Rect newRect;
+        if (mMode == MODE_SKYLINE) {
+            newRect = occupySkyline(rectWidth, rectHeight);
+        } else if (mMode == MODE_MAX_RECTS) {
+            newRect = occupyMaxRects(rectWidth, rectHeight);
+        } else {
+            newRect = occupyHotPoints(rectWidth, rectHeight);
+        }
+
+        if (newRect != null) {
+            // update the bounds
+            mBounds.union(newRect);
+            // add the rect to the list
+            mRects.add(newRect);
+            mRectNum++;
+            mOccupiedArea += rectWidth * rectHeight;
+
+            // find the size
+            mWidth = mForcePO2 ? Pure2DUtils.getNextPO2(mBounds.width()) : mBounds.width();
+            mHeight = mForcePO2 ? Pure2DUtils.getNextPO2(mBounds.height()) : mBounds.height();
+        }
+
+        mPackTime += System.nanoTime() - start;
+        return newRect;
+    }
+
+    /**
+     * Occupy multiple rects at once. They are packed from the biggest to the smallest for better occupancy, but still indexed in the given order by {@link #getRect(int)}.
+     * 
+     * @param widths
+     * @param heights
+     * @return the new rects in the given order, null if one of them ran out of space. In that case, nothing is occupied.
+     */
+    public Rect[] occupyAll(final int[] widths, final int[] heights) {
+        final int num = widths.length;
+        final int[][] sizes = new int[num][];
+        for (int i = 0; i < num; i++) {
+            sizes[i] = new int[] {
+                    i, widths[i], heights[i]
+            };
+        }
+        Arrays.sort(sizes, SIZE_COMPARATOR);
+
+        // keep the current state in case of running out of space
+        final int oldRectNum = mRectNum;
+        final Rect oldBounds = new Rect(mBounds);
+        final int oldWidth = mWidth, oldHeight = mHeight;
+        final long oldArea = mOccupiedArea;
+        // and the free space of the current mode
+        final int oldSkyNum = mSkyNum, oldFreeNum = mFreeNum;
+        int[] oldSkyX = null, oldSkyY = null, oldSkyW = null, oldFreeX = null, oldFreeY = null, oldFreeW = null, oldFreeH = null;
+        TreeSet<Integer> oldHLines = null, oldVLines = null;
+        TreeSet<Point> oldHotPoints = null;
+        if (mMode == MODE_SKYLINE) {
+            oldSkyX = mSkyX.clone();
+            oldSkyY = mSkyY.clone();
+            oldSkyW = mSkyW.clone();
+        } else if (mMode == MODE_MAX_RECTS) {
+            oldFreeX = mFreeX.clone();
+            oldFreeY = mFreeY.clone();
+            oldFreeW = mFreeW.clone();
+            oldFreeH = mFreeH.clone();
+        } else {
+            // work on copies, the order of the hot points depends on their history so they cannot be re-added later
+            oldHLines = mHLines;
+            oldVLines = mVLines;
+            oldHotPoints = mHotPoints;
+            mHLines = new TreeSet<Integer>(oldHLines);
+            mVLines = new TreeSet<Integer>(oldVLines);
+            mHotPoints = new TreeSet<Point>(oldHotPoints);
+        }
+
+        final Rect[] rects = new Rect[num];
+        for (int i = 0; i < num; i++) {
+            final int[] size = sizes[i];
+            final Rect rect = tryOccupy(size[1], size[2]);
+            if (rect == null) {
+                Log.e(TAG, "Error: ran out of space!", new Exception());
+                // roll back
+                while (mRectNum > oldRectNum) {
+                    mRects.remove(--mRectNum);
+                }
+                mBounds.set(oldBounds);
+                mWidth = oldWidth;
+                mHeight = oldHeight;
+                mOccupiedArea = oldArea;
+                if (mMode == MODE_SKYLINE) {
+                    mSkyX = oldSkyX;
+                    mSkyY = oldSkyY;
+                    mSkyW = oldSkyW;
+                    mSkyNum = oldSkyNum;
+                } else if (mMode == MODE_MAX_RECTS) {
+                    mFreeX = oldFreeX;
+                    mFreeY = oldFreeY;
+                    mFreeW = oldFreeW;
+                    mFreeH = oldFreeH;
+                    mFreeNum = oldFreeNum;
+                } else {
+                    mHLines = oldHLines;
+                    mVLines = oldVLines;
+                    mHotPoints = oldHotPoints;
+                    mPoints2Remove.clear();
+                }
+                return null;
+            }
+            rects[size[0]] = rect;
+        }
+
+        // re-index in the given order
+        for (int i = 0; i < num; i++) {
+            mRects.set(oldRectNum + i, rects[i]);
+        }
 
+        return rects;
+    }
+
+    private Rect occupyHotPoints(final int rectWidth, final int rectHeight) {
         Rect newRect;
         if (mWidth == 0) {
             mHLines.add(0);
@@ -112,28 +305,304 @@ public class RectPacker {
                 }
             }
 
-            // update the bounds
-            mBounds.union(newRect);
-            // add the rect to the list
-            mRects.add(newRect);
-            mRectNum++;
-
             // add the lines
             mHLines.add(newRect.bottom);
             mVLines.add(newRect.right);
 
             // Log.e("long", mHotPoints.toString());
-
-            // find the size
-            mWidth = mForcePO2 ? Pure2DUtils.getNextPO2(mBounds.width()) : mBounds.width();
-            mHeight = mForcePO2 ? Pure2DUtils.getNextPO2(mBounds.height()) : mBounds.height();
-        } else {
-            Log.e(TAG, "Error: ran out of space!", new Exception());
         }
 
         return newRect;
     }
 
+    private Rect occupySkyline(final int rectWidth, final int rectHeight) {
+        if (mSkyNum == 0) {
+            // the whole floor
+            ensureSkyCapacity(INITIAL_CAPACITY);
+            mSkyX[0] = mSkyY[0] = 0;
+            mSkyW[0] = mMaxWidth;
+            mSkyNum = 1;
+        }
+
+        // bottom-left: lowest top edge first, then leftmost
+        int bestIndex = -1, bestTop = Integer.MAX_VALUE, bestX = 0, bestY = 0, bestWidth = 0, bestHeight = 0;
+        for (int i = 0; i < mSkyNum; i++) {
+            for (int r = 0; r < 2; r++) {
+                final int w = r == 0 ? rectWidth : rectHeight;
+                final int h = r == 0 ? rectHeight : rectWidth;
+                if (r == 1 && (!mRotationEnabled || rectWidth == rectHeight)) {
+                    break;
+                }
+
+                final int y = fitSkyline(i, w, h);
+                if (y >= 0 && (y + h < bestTop || (y + h == bestTop && mSkyX[i] < bestX))) {
+                    bestIndex = i;
+                    bestTop = y + h;
+                    bestX = mSkyX[i];
+                    bestY = y;
+                    bestWidth = w;
+                    bestHeight = h;
+                }
+            }
+        }
+
+        if (bestIndex < 0) {
+            return null;
+        }
+
+        addSkylineNode(bestIndex, bestX, bestY + bestHeight, bestWidth);
+        return new Rect(bestX, bestY, bestX + bestWidth, bestY + bestHeight);
+    }
+
+    /**
+     * @return the y to place a rect on the skyline node at index, -1 if it doesn't fit
+     */
+    private int fitSkyline(int index, final int rectWidth, final int rectHeight) {
+        if (mSkyX[index] + rectWidth > mMaxWidth) {
+            return -1;
+        }
+
+        int y = mSkyY[index];
+        int widthLeft = rectWidth;
+        while (widthLeft > 0) {
+            if (mSkyY[index] > y) {
+                y = mSkyY[index];
+            }
+            if (y + rectHeight > mMaxWidth) {
+                return -1;
+            }
+            widthLeft -= mSkyW[index];
+            index++;
+        }
+
+        return y;
+    }
+
+    private void addSkylineNode(final int index, final int x, final int y, final int width) {
+        // insert
+        ensureSkyCapacity(mSkyNum + 1);
+        System.arraycopy(mSkyX, index, mSkyX, index + 1, mSkyNum - index);
+        System.arraycopy(mSkyY, index, mSkyY, index + 1, mSkyNum - index);
+        System.arraycopy(mSkyW, index, mSkyW, index + 1, mSkyNum - index);
+        mSkyX[index] = x;
+        mSkyY[index] = y;
+        mSkyW[index] = width;
+        mSkyNum++;
+
+        // cut the nodes below the new one
+        final int right = x + width;
+        int i = index + 1;
+        while (i < mSkyNum && mSkyX[i] < right) {
+            final int shrink = right - mSkyX[i];
+            if (mSkyW[i] <= shrink) {
+                removeSkylineNode(i);
+            } else {
+                mSkyX[i] += shrink;
+                mSkyW[i] -= shrink;
+                break;
+            }
+        }
+
+        // merge the same levels
+        for (i = 0; i < mSkyNum - 1;) {
+            if (mSkyY[i] == mSkyY[i + 1]) {
+                mSkyW[i] += mSkyW[i + 1];
+                removeSkylineNode(i + 1);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private void removeSkylineNode(final int index) {
+        final int length = mSkyNum - index - 1;
+        System.arraycopy(mSkyX, index + 1, mSkyX, index, length);
+        System.arraycopy(mSkyY, index + 1, mSkyY, index, length);
+        System.arraycopy(mSkyW, index + 1, mSkyW, index, length);
+        mSkyNum--;
+    }
+
+    private void ensureSkyCapacity(final int capacity) {
+        if (mSkyX.length < capacity) {
+            final int newCapacity = Math.max(capacity, mSkyX.length * 2);
+            mSkyX = grow(mSkyX, newCapacity);
+            mSkyY = grow(mSkyY, newCapacity);
+            mSkyW = grow(mSkyW, newCapacity);
+        }
+    }
+
+    private Rect occupyMaxRects(final int rectWidth, final int rectHeight) {
+        if (mRectNum == 0 && mFreeNum == 0) {
+            // the whole space is free
+            ensureFreeCapacity(INITIAL_CAPACITY);
+            mFreeX[0] = mFreeY[0] = 0;
+            mFreeW[0] = mFreeH[0] = mMaxWidth;
+            mFreeNum = 1;
+        }
+
+        // least growth of the bounds, then best short side fit, then best long side fit
+        long bestGrowth = Long.MAX_VALUE;
+        int bestShort = Integer.MAX_VALUE, bestLong = Integer.MAX_VALUE, bestX = 0, bestY = 0, bestWidth = 0, bestHeight = 0;
+        for (int i = 0; i < mFreeNum; i++) {
+            for (int r = 0; r < 2; r++) {
+                final int w = r == 0 ? rectWidth : rectHeight;
+                final int h = r == 0 ? rectHeight : rectWidth;
+                if (r == 1 && (!mRotationEnabled || rectWidth == rectHeight)) {
+                    break;
+                }
+                if (mFreeW[i] < w || mFreeH[i] < h) {
+                    continue;
+                }
+
+                final long growth = getGrowth(mFreeX[i] + w, mFreeY[i] + h);
+                final int leftoverW = mFreeW[i] - w;
+                final int leftoverH = mFreeH[i] - h;
+                final int shortSide = Math.min(leftoverW, leftoverH);
+                final int longSide = Math.max(leftoverW, leftoverH);
+                if (growth < bestGrowth || (growth == bestGrowth && (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong)))) {
+                    bestGrowth = growth;
+                    bestShort = shortSide;
+                    bestLong = longSide;
+                    bestX = mFreeX[i];
+                    bestY = mFreeY[i];
+                    bestWidth = w;
+                    bestHeight = h;
+                }
+            }
+        }
+
+        if (bestGrowth == Long.MAX_VALUE) {
+            return null;
+        }
+
+        splitFreeRects(bestX, bestY, bestWidth, bestHeight);
+        pruneFreeRects();
+
+        return new Rect(bestX, bestY, bestX + bestWidth, bestY + bestHeight);
+    }
+
+    /**
+     * @return the size of the bounds after adding a rect, same measure as {@link #MODE_HOT_POINTS}
+     */
+    private long getGrowth(final int right, final int bottom) {
+        long w = Math.max(mBounds.right, right);
+        long h = Math.max(mBounds.bottom, bottom);
+        if (mForcePO2) {
+            w = Pure2DUtils.getNextPO2((int) w);
+            h = Pure2DUtils.getNextPO2((int) h);
+        }
+
+        return w * w + h * h;
+    }
+
+    /**
+     * Split all the free rects that overlap the used rect
+     */
+    private void splitFreeRects(final int x, final int y, final int width, final int height) {
+        final int right = x + width;
+        final int bottom = y + height;
+        final int num = mFreeNum;
+        for (int i = 0; i < num; i++) {
+            final int fx = mFreeX[i], fy = mFreeY[i], fw = mFreeW[i], fh = mFreeH[i];
+            final int fRight = fx + fw, fBottom = fy + fh;
+            if (fw == 0 || x >= fRight || right <= fx || y >= fBottom || bottom <= fy) {
+                // no overlap
+                continue;
+            }
+
+            if (x < fRight && right > fx) {
+                // top part
+                if (y > fy && y < fBottom) {
+                    addFreeRect(fx, fy, fw, y - fy);
+                }
+                // bottom part
+                if (bottom < fBottom) {
+                    addFreeRect(fx, bottom, fw, fBottom - bottom);
+                }
+            }
+            if (y < fBottom && bottom > fy) {
+                // left part
+                if (x > fx && x < fRight) {
+                    addFreeRect(fx, fy, x - fx, fh);
+                }
+                // right part
+                if (right < fRight) {
+                    addFreeRect(right, fy, fRight - right, fh);
+                }
+            }
+
+            // mark as removed
+            mFreeW[i] = 0;
+        }
+    }
+
+    /**
+     * Remove the marked and the contained free rects
+     */
+    private void pruneFreeRects() {
+        for (int i = 0; i < mFreeNum; i++) {
+            if (mFreeW[i] == 0) {
+                continue;
+            }
+
+            for (int j = i + 1; j < mFreeNum; j++) {
+                if (mFreeW[j] == 0) {
+                    continue;
+                }
+
+                if (isContained(i, j)) {
+                    mFreeW[i] = 0;
+                    break;
+                } else if (isContained(j, i)) {
+                    mFreeW[j] = 0;
+                }
+            }
+        }
+
+        // compact
+        int n = 0;
+        for (int i = 0; i < mFreeNum; i++) {
+            if (mFreeW[i] != 0) {
+                mFreeX[n] = mFreeX[i];
+                mFreeY[n] = mFreeY[i];
+                mFreeW[n] = mFreeW[i];
+                mFreeH[n] = mFreeH[i];
+                n++;
+            }
+        }
+        mFreeNum = n;
+    }
+
+    private boolean isContained(final int inner, final int outer) {
+        return mFreeX[inner] >= mFreeX[outer] && mFreeY[inner] >= mFreeY[outer] && mFreeX[inner] + mFreeW[inner] <= mFreeX[outer] + mFreeW[outer]
+                && mFreeY[inner] + mFreeH[inner] <= mFreeY[outer] + mFreeH[outer];
+    }
+
+    private void addFreeRect(final int x, final int y, final int width, final int height) {
+        ensureFreeCapacity(mFreeNum + 1);
+        mFreeX[mFreeNum] = x;
+        mFreeY[mFreeNum] = y;
+        mFreeW[mFreeNum] = width;
+        mFreeH[mFreeNum] = height;
+        mFreeNum++;
+    }
+
+    private void ensureFreeCapacity(final int capacity) {
+        if (mFreeX.length < capacity) {
+            final int newCapacity = Math.max(capacity, mFreeX.length * 2);
+            mFreeX = grow(mFreeX, newCapacity);
+            mFreeY = grow(mFreeY, newCapacity);
+            mFreeW = grow(mFreeW, newCapacity);
+            mFreeH = grow(mFreeH, newCapacity);
+        }
+    }
+
+    private static int[] grow(final int[] array, final int capacity) {
+        final int[] newArray = new int[capacity];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
     public void reset() {
         mBounds.setEmpty();
 
@@ -146,6 +615,11 @@ public class RectPacker {
 
         mPoints2Remove.clear();
         mWidth = mHeight = 0;
+
+        mSkyNum = 0;
+        mFreeNum = 0;
+        mOccupiedArea = 0;
+        mPackTime = 0;
     }
 
     private Rect getNextRect(final int rectWidth, final int rectHeight) {
@@ -284,6 +758,27 @@ public class RectPacker {
         return mHeight;
     }
 
+    /**
+     * @return the occupied area over the area of {@link #getWidth()} x {@link #getHeight()}, 0 to 1
+     */
+    public float getOccupancy() {
+        return mWidth > 0 && mHeight > 0 ? (float) mOccupiedArea / ((long) mWidth * mHeight) : 0;
+    }
+
+    /**
+     * @return the total time spent on packing since the last reset, in ms
+     */
+    public float getPackTime() {
+        return mPackTime / 1000000f;
+    }
+
+    public int getNumRects() {
+        return mRectNum;
+    }
+
+    /**
+     * Only used by {@link #MODE_HOT_POINTS}
+     */
     public TreeSet<Point> getHotPoints() {
         return mHotPoints;
     }
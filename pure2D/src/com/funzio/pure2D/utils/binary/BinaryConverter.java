@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils.binary;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+/**
+ * Offline converter from the text assets to the binary formats, to run on a plain JVM as part of the asset build. Each file.json / file.xml gets a
+ * file.json.bin / file.xml.bin next to it, which the loaders pick up in place of the text. Needs org.json on the classpath.
+ * 
+ * <pre>
+ * java -cp pure2D.jar:json.jar com.funzio.pure2D.utils.binary.BinaryConverter assets/atlases assets/novas assets/ui
+ * </pre>
+ * 
+ * @author long
+ */
+public class BinaryConverter {
+    private int mNumFiles = 0;
+    private long mTextBytes = 0;
+    private long mBinaryBytes = 0;
+
+    public static void main(final String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: BinaryConverter <file or directory>...");
+            System.exit(1);
+        }
+
+        final BinaryConverter converter = new BinaryConverter();
+        boolean success = true;
+        for (final String path : args) {
+            success &= converter.convert(new File(path));
+        }
+
+        System.out.println("Converted " + converter.mNumFiles + " files, " + converter.mTextBytes + " -> " + converter.mBinaryBytes + " bytes");
+        System.exit(success ? 0 : 1);
+    }
+
+    /**
+     * Convert a file, or all the .json and .xml files in a directory, recursively
+     * 
+     * @param file
+     * @return true if there was no error
+     */
+    public boolean convert(final File file) {
+        if (file.isDirectory()) {
+            boolean success = true;
+            final File[] children = file.listFiles();
+            if (children != null) {
+                for (final File child : children) {
+                    success &= convert(child);
+                }
+            }
+            return success;
+        }
+
+        final String name = file.getName().toLowerCase();
+        final boolean json = name.endsWith(".json");
+        if (!json && !name.endsWith(".xml")) {
+            return true;
+        }
+
+        final File binFile = new File(file.getPath() + BinaryFormat.EXTENSION);
+        try {
+            final BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+            final FileOutputStream out = new FileOutputStream(binFile);
+            if (json) {
+                new BinaryJsonWriter().convert(in, out);
+            } else {
+                new BinaryXmlWriter().convert(in, out);
+            }
+
+            mNumFiles++;
+            mTextBytes += file.length();
+            mBinaryBytes += binFile.length();
+            System.out.println(file.getPath() + ": " + file.length() + " -> " + binFile.length() + " bytes");
+            return true;
+        } catch (Exception e) {
+            System.err.println(file.getPath() + ": " + e);
+            binFile.delete();
+            return false;
+        }
+    }
+}
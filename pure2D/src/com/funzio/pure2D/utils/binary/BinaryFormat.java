@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+
+/**
+ * The precompiled binary formats for JSON and XML assets. A file starts with a magic number and a version, then a table of all the strings, then the body which
+ * refers to the strings by index. Nothing is parsed from text at load time.
+ * 
+ * @author long
+ * @see BinaryConverter
+ */
+public class BinaryFormat {
+    public static final String EXTENSION = ".bin";
+    public static final int VERSION = 1;
+
+    public static final int MAGIC_JSON = ('P' << 24) | ('2' << 16) | ('D' << 8) | 'J';
+    public static final int MAGIC_XML = ('P' << 24) | ('2' << 16) | ('D' << 8) | 'X';
+
+    // json value tags
+    public static final byte TAG_OBJECT = 1; // count, then count x (name index, value)
+    public static final byte TAG_ARRAY = 2; // count, then count x value
+    public static final byte TAG_STRING = 3; // string index
+    public static final byte TAG_INT = 4;
+    public static final byte TAG_LONG = 5;
+    public static final byte TAG_DOUBLE = 6;
+    public static final byte TAG_TRUE = 7;
+    public static final byte TAG_FALSE = 8;
+    public static final byte TAG_NULL = 9;
+
+    // xml events, same values as XmlPullParser's
+    public static final byte EVENT_END_DOCUMENT = 1;
+    public static final byte EVENT_START_TAG = 2; // name index, attribute count, then count x (name index, value index)
+    public static final byte EVENT_END_TAG = 3;
+    public static final byte EVENT_TEXT = 4; // string index
+
+    private static final String UTF8 = "UTF-8";
+
+    /**
+     * Read the whole stream in one go and close it
+     * 
+     * @param stream
+     * @return
+     * @throws IOException
+     */
+    public static ByteBuffer read(final InputStream stream) throws IOException {
+        try {
+            final int available = stream.available();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(available > 0 ? available : 8192);
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+
+            return ByteBuffer.wrap(out.toByteArray());
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Memory-map a file
+     * 
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static ByteBuffer map(final File file) throws IOException {
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            final FileChannel channel = stream.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // the mapping stays valid after closing
+            stream.close();
+        }
+    }
+
+    /**
+     * Check the header and read the string table
+     * 
+     * @param buffer
+     * @param magic
+     * @return the strings
+     * @throws IOException
+     */
+    public static String[] readHeader(final ByteBuffer buffer, final int magic) throws IOException {
+        if (buffer.remaining() < 12 || buffer.getInt() != magic) {
+            throw new IOException("Not a binary asset");
+        }
+
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+
+        final int numStrings = buffer.getInt();
+        final String[] strings = new String[numStrings];
+        byte[] bytes = null;
+        for (int i = 0; i < numStrings; i++) {
+            final int length = buffer.getInt();
+            if (buffer.hasArray()) {
+                strings[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+                buffer.position(buffer.position() + length);
+            } else {
+                if (bytes == null || bytes.length < length) {
+                    bytes = new byte[Math.max(length, 256)];
+                }
+                buffer.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, UTF8);
+            }
+        }
+
+        return strings;
+    }
+
+    /**
+     * Write the header and the string table
+     * 
+     * @param out
+     * @param magic
+     * @param strings
+     * @throws IOException
+     */
+    public static void writeHeader(final DataOutputStream out, final int magic, final Collection<String> strings) throws IOException {
+        out.writeInt(magic);
+        out.writeInt(VERSION);
+        out.writeInt(strings.size());
+        for (final String string : strings) {
+            final byte[] bytes = getBytes(string);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] getBytes(final String string) {
+        try {
+            return string.getBytes(UTF8);
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+}
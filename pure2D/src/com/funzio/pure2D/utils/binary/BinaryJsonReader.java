@@ -0,0 +1,356 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils.binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import android.content.res.AssetManager;
+
+import org.json.JSONException;
+
+import com.funzio.pure2D.utils.JsonStreamReader;
+import com.funzio.pure2D.utils.JsonTokenReader;
+
+/**
+ * Reads the binary JSON format written by {@link BinaryJsonWriter}, with the same pull API as {@link JsonStreamReader}. Names and strings come from the string
+ * table so they are not allocated per value, and numbers are stored as-is.
+ * 
+ * @author long
+ */
+public class BinaryJsonReader extends JsonTokenReader {
+    private final ByteBuffer mBuffer;
+    private final String[] mStrings;
+
+    // per level of nesting
+    private boolean[] mIsObject = new boolean[32];
+    private boolean[] mExpectName = new boolean[32];
+    private int[] mRemaining = new int[32];
+    private int mStackSize = 0;
+
+    private int mPeeked = 0;
+    private byte mTag;
+    private boolean mRootDone = false;
+
+    public BinaryJsonReader(final ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        mStrings = BinaryFormat.readHeader(buffer, BinaryFormat.MAGIC_JSON);
+    }
+
+    public BinaryJsonReader(final InputStream stream) throws IOException {
+        this(BinaryFormat.read(stream));
+    }
+
+    /**
+     * Open a JSON file, preferring the precompiled binary next to it. Files are memory-mapped, assets are read in bulk.
+     * 
+     * @param assets null to read from the file system
+     * @param filePath the text file path, without {@link BinaryFormat#EXTENSION}
+     * @return a binary reader, or a text reader if there is no binary version
+     * @throws IOException
+     */
+    public static JsonTokenReader open(final AssetManager assets, final String filePath) throws IOException {
+        final String binPath = filePath + BinaryFormat.EXTENSION;
+        if (assets == null) {
+            final File binFile = new File(binPath);
+            if (binFile.exists()) {
+                return new BinaryJsonReader(BinaryFormat.map(binFile));
+            }
+
+            return new JsonStreamReader(new FileInputStream(new File(filePath)));
+        } else {
+            try {
+                return new BinaryJsonReader(assets.open(binPath));
+            } catch (FileNotFoundException e) {
+                // fall back to text
+                return new JsonStreamReader(assets.open(filePath));
+            }
+        }
+    }
+
+    @Override
+    public int peek() throws IOException, JSONException {
+        if (mPeeked != 0) {
+            return mPeeked;
+        }
+
+        if (mStackSize == 0) {
+            if (mRootDone) {
+                return mPeeked = END_DOCUMENT;
+            }
+        } else {
+            final int top = mStackSize - 1;
+            if (mRemaining[top] == 0) {
+                return mPeeked = mIsObject[top] ? END_OBJECT : END_ARRAY;
+            } else if (mIsObject[top] && mExpectName[top]) {
+                return mPeeked = NAME;
+            }
+        }
+
+        mTag = mBuffer.get();
+        switch (mTag) {
+            case BinaryFormat.TAG_OBJECT:
+                return mPeeked = BEGIN_OBJECT;
+            case BinaryFormat.TAG_ARRAY:
+                return mPeeked = BEGIN_ARRAY;
+            case BinaryFormat.TAG_STRING:
+                return mPeeked = STRING;
+            case BinaryFormat.TAG_INT:
+            case BinaryFormat.TAG_LONG:
+            case BinaryFormat.TAG_DOUBLE:
+                return mPeeked = NUMBER;
+            case BinaryFormat.TAG_TRUE:
+            case BinaryFormat.TAG_FALSE:
+                return mPeeked = BOOLEAN;
+            case BinaryFormat.TAG_NULL:
+                return mPeeked = NULL;
+            default:
+                throw new JSONException("Invalid tag: " + mTag + " at " + (mBuffer.position() - 1));
+        }
+    }
+
+    @Override
+    public void beginObject() throws IOException, JSONException {
+        expect(BEGIN_OBJECT);
+        final int count = mBuffer.getInt();
+        consumed();
+        push(true, count);
+    }
+
+    @Override
+    public void endObject() throws IOException, JSONException {
+        expect(END_OBJECT);
+        mStackSize--;
+        mPeeked = 0;
+    }
+
+    @Override
+    public void beginArray() throws IOException, JSONException {
+        expect(BEGIN_ARRAY);
+        final int count = mBuffer.getInt();
+        consumed();
+        push(false, count);
+    }
+
+    @Override
+    public void endArray() throws IOException, JSONException {
+        expect(END_ARRAY);
+        mStackSize--;
+        mPeeked = 0;
+    }
+
+    @Override
+    public String nextName() throws IOException, JSONException {
+        expect(NAME);
+        mPeeked = 0;
+        mExpectName[mStackSize - 1] = false;
+        return mStrings[mBuffer.getInt()];
+    }
+
+    @Override
+    public String nextString() throws IOException, JSONException {
+        final int token = peek();
+        if (token == NUMBER) {
+            return nextNumber().toString();
+        }
+
+        final String value;
+        if (token == STRING) {
+            value = mStrings[mBuffer.getInt()];
+        } else if (token == BOOLEAN) {
+            value = mTag == BinaryFormat.TAG_TRUE ? "true" : "false";
+        } else if (token == NULL) {
+            value = null;
+        } else {
+            throw new JSONException("Expected a string");
+        }
+
+        consumed();
+        return value;
+    }
+
+    @Override
+    public double nextDouble() throws IOException, JSONException {
+        final int token = peek();
+        if (token == NUMBER) {
+            final double value = mTag == BinaryFormat.TAG_INT ? mBuffer.getInt() : mTag == BinaryFormat.TAG_LONG ? mBuffer.getLong() : mBuffer.getDouble();
+            consumed();
+            return value;
+        } else if (token == STRING) {
+            final String value = mStrings[mBuffer.getInt()];
+            consumed();
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new JSONException("Expected a number: " + value);
+            }
+        }
+
+        throw new JSONException("Expected a number");
+    }
+
+    @Override
+    public int nextInt() throws IOException, JSONException {
+        if (peek() == NUMBER && mTag == BinaryFormat.TAG_INT) {
+            final int value = mBuffer.getInt();
+            consumed();
+            return value;
+        }
+
+        return super.nextInt();
+    }
+
+    @Override
+    public Number nextNumber() throws IOException, JSONException {
+        expect(NUMBER);
+        final Number value;
+        if (mTag == BinaryFormat.TAG_INT) {
+            value = Integer.valueOf(mBuffer.getInt());
+        } else if (mTag == BinaryFormat.TAG_LONG) {
+            value = Long.valueOf(mBuffer.getLong());
+        } else {
+            value = Double.valueOf(mBuffer.getDouble());
+        }
+
+        consumed();
+        return value;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException, JSONException {
+        final int token = peek();
+        if (token == BOOLEAN) {
+            consumed();
+            return mTag == BinaryFormat.TAG_TRUE;
+        } else if (token == STRING) {
+            final String value = mStrings[mBuffer.getInt()];
+            consumed();
+            if ("true".equalsIgnoreCase(value)) {
+                return true;
+            } else if ("false".equalsIgnoreCase(value)) {
+                return false;
+            }
+        }
+
+        throw new JSONException("Expected a boolean");
+    }
+
+    @Override
+    public void nextNull() throws IOException, JSONException {
+        expect(NULL);
+        consumed();
+    }
+
+    @Override
+    public void skipValue() throws IOException, JSONException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case NAME:
+                nextName();
+                break;
+            case STRING:
+            case NUMBER:
+                // skip the payload
+                mBuffer.position(mBuffer.position() + (mTag == BinaryFormat.TAG_STRING || mTag == BinaryFormat.TAG_INT ? 4 : 8));
+                consumed();
+                break;
+            case BOOLEAN:
+            case NULL:
+                consumed();
+                break;
+            default:
+                throw new JSONException("Unexpected end");
+        }
+    }
+
+    @Override
+    public long getBytesRead() {
+        return mBuffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mPeeked = 0;
+        mStackSize = 0;
+    }
+
+    private void expect(final int token) throws IOException, JSONException {
+        if (peek() != token) {
+            throw new JSONException("Expected token " + token + " but was " + mPeeked);
+        }
+    }
+
+    /**
+     * A value or the start of a container is consumed from the current level
+     */
+    private void consumed() {
+        mPeeked = 0;
+        if (mStackSize == 0) {
+            mRootDone = true;
+        } else {
+            final int top = mStackSize - 1;
+            mRemaining[top]--;
+            mExpectName[top] = true;
+        }
+    }
+
+    private void push(final boolean isObject, final int count) {
+        if (mStackSize == mRemaining.length) {
+            final int size = mStackSize * 2;
+            final boolean[] isObjects = new boolean[size];
+            final boolean[] expectNames = new boolean[size];
+            final int[] remainings = new int[size];
+            System.arraycopy(mIsObject, 0, isObjects, 0, mStackSize);
+            System.arraycopy(mExpectName, 0, expectNames, 0, mStackSize);
+            System.arraycopy(mRemaining, 0, remainings, 0, mStackSize);
+            mIsObject = isObjects;
+            mExpectName = expectNames;
+            mRemaining = remainings;
+        }
+
+        mIsObject[mStackSize] = isObject;
+        mExpectName[mStackSize] = isObject;
+        mRemaining[mStackSize] = count;
+        mStackSize++;
+    }
+}
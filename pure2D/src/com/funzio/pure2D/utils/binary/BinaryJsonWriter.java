@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+
+import com.funzio.pure2D.utils.JsonStreamReader;
+import com.funzio.pure2D.utils.JsonTokenReader;
+
+/**
+ * Converts a JSON text file into the binary format. This only depends on the JDK and org.json so it can run offline on a plain JVM.
+ * 
+ * @author long
+ * @see BinaryConverter
+ */
+public class BinaryJsonWriter {
+    private static final Object NULL = new Object();
+
+    private final LinkedHashMap<String, Integer> mStrings = new LinkedHashMap<String, Integer>();
+
+    /**
+     * Read the JSON text from the input and write the binary to the output. Both streams are closed.
+     * 
+     * @param in
+     * @param out
+     * @throws IOException
+     * @throws JSONException
+     */
+    public void convert(final InputStream in, final OutputStream out) throws IOException, JSONException {
+        mStrings.clear();
+
+        final JsonStreamReader reader = new JsonStreamReader(in);
+        final Object root;
+        try {
+            root = readValue(reader);
+        } finally {
+            reader.close();
+        }
+
+        final DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        try {
+            BinaryFormat.writeHeader(dataOut, BinaryFormat.MAGIC_JSON, mStrings.keySet());
+            writeValue(dataOut, root);
+        } finally {
+            dataOut.close();
+        }
+    }
+
+    /**
+     * Read into plain maps and lists, collecting the strings on the way
+     */
+    private Object readValue(final JsonTokenReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case JsonTokenReader.BEGIN_OBJECT:
+                final LinkedHashMap<Integer, Object> object = new LinkedHashMap<Integer, Object>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final Integer name = getStringIndex(reader.nextName());
+                    object.put(name, readValue(reader));
+                }
+                reader.endObject();
+                return object;
+
+            case JsonTokenReader.BEGIN_ARRAY:
+                final ArrayList<Object> array = new ArrayList<Object>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.add(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+
+            case JsonTokenReader.STRING:
+                final String string = reader.nextString();
+                getStringIndex(string);
+                return string;
+
+            case JsonTokenReader.NUMBER:
+                return reader.nextNumber();
+
+            case JsonTokenReader.BOOLEAN:
+                return Boolean.valueOf(reader.nextBoolean());
+
+            case JsonTokenReader.NULL:
+                reader.nextNull();
+                return NULL;
+
+            default:
+                throw new JSONException("Expected a value");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if (value instanceof Map) {
+            final Map<Integer, Object> object = (Map<Integer, Object>) value;
+            out.writeByte(BinaryFormat.TAG_OBJECT);
+            out.writeInt(object.size());
+            for (final Map.Entry<Integer, Object> entry : object.entrySet()) {
+                out.writeInt(entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof ArrayList) {
+            final ArrayList<Object> array = (ArrayList<Object>) value;
+            out.writeByte(BinaryFormat.TAG_ARRAY);
+            out.writeInt(array.size());
+            for (final Object item : array) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof String) {
+            out.writeByte(BinaryFormat.TAG_STRING);
+            out.writeInt(getStringIndex((String) value));
+        } else if (value instanceof Integer) {
+            out.writeByte(BinaryFormat.TAG_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(BinaryFormat.TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(BinaryFormat.TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? BinaryFormat.TAG_TRUE : BinaryFormat.TAG_FALSE);
+        } else {
+            out.writeByte(BinaryFormat.TAG_NULL);
+        }
+    }
+
+    private Integer getStringIndex(final String string) {
+        Integer index = mStrings.get(string);
+        if (index == null) {
+            index = mStrings.size();
+            mStrings.put(string, index);
+        }
+
+        return index;
+    }
+}
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * An XmlPullParser over the binary format written by {@link BinaryXmlWriter}, so UILoader, XMLAtlas and the likes can use it in place of a text parser. No
+ * namespaces, no entities and no comments, just tags, attributes and text.
+ * 
+ * @author long
+ */
+public class BinaryXmlParser implements XmlPullParser {
+    private ByteBuffer mBuffer;
+    private String[] mStrings;
+
+    private int mEventType = START_DOCUMENT;
+    private String mText;
+    private boolean mPopPending = false;
+
+    // element names by depth
+    private String[] mNameStack = new String[16];
+    private int mDepth = 0;
+
+    // attributes of the current start tag, as string indices
+    private int[] mAttributes = new int[16];
+    private int mNumAttributes = 0;
+
+    public BinaryXmlParser() {
+        // setInput() later
+    }
+
+    public BinaryXmlParser(final ByteBuffer buffer) throws IOException {
+        setInput(buffer);
+    }
+
+    public BinaryXmlParser(final InputStream stream) throws IOException {
+        setInput(BinaryFormat.read(stream));
+    }
+
+    public void setInput(final ByteBuffer buffer) throws IOException {
+        mStrings = BinaryFormat.readHeader(buffer, BinaryFormat.MAGIC_XML);
+        mBuffer = buffer;
+        mEventType = START_DOCUMENT;
+        mText = null;
+        mPopPending = false;
+        mDepth = 0;
+        mNumAttributes = 0;
+    }
+
+    @Override
+    public void setInput(final InputStream inputStream, final String inputEncoding) throws XmlPullParserException {
+        try {
+            setInput(BinaryFormat.read(inputStream));
+        } catch (IOException e) {
+            throw new XmlPullParserException(e.getMessage(), this, e);
+        }
+    }
+
+    @Override
+    public void setInput(final Reader in) throws XmlPullParserException {
+        throw new XmlPullParserException("Binary input only");
+    }
+
+    @Override
+    public int next() throws XmlPullParserException, IOException {
+        if (mEventType == END_DOCUMENT) {
+            return mEventType;
+        }
+
+        if (mPopPending) {
+            mPopPending = false;
+            mDepth--;
+        }
+        mText = null;
+        mNumAttributes = 0;
+
+        if (!mBuffer.hasRemaining()) {
+            return mEventType = END_DOCUMENT;
+        }
+
+        mEventType = mBuffer.get();
+        if (mEventType == START_TAG) {
+            if (mDepth == mNameStack.length) {
+                final String[] stack = new String[mDepth * 2];
+                System.arraycopy(mNameStack, 0, stack, 0, mDepth);
+                mNameStack = stack;
+            }
+            mNameStack[mDepth++] = mStrings[mBuffer.getInt()];
+
+            mNumAttributes = mBuffer.getInt();
+            if (mAttributes.length < mNumAttributes * 2) {
+                mAttributes = new int[mNumAttributes * 2];
+            }
+            for (int i = 0; i < mNumAttributes * 2; i++) {
+                mAttributes[i] = mBuffer.getInt();
+            }
+        } else if (mEventType == END_TAG) {
+            // depth stays until the next event, same as other parsers
+            mPopPending = true;
+        } else if (mEventType == TEXT) {
+            mText = mStrings[mBuffer.getInt()];
+        } else if (mEventType != END_DOCUMENT) {
+            throw new XmlPullParserException("Invalid event: " + mEventType, this, null);
+        }
+
+        return mEventType;
+    }
+
+    @Override
+    public int nextToken() throws XmlPullParserException, IOException {
+        return next();
+    }
+
+    @Override
+    public int nextTag() throws XmlPullParserException, IOException {
+        int eventType = next();
+        if (eventType == TEXT && isWhitespace()) {
+            eventType = next();
+        }
+        if (eventType != START_TAG && eventType != END_TAG) {
+            throw new XmlPullParserException("Expected start or end tag", this, null);
+        }
+
+        return eventType;
+    }
+
+    @Override
+    public String nextText() throws XmlPullParserException, IOException {
+        if (mEventType != START_TAG) {
+            throw new XmlPullParserException("Expected start tag", this, null);
+        }
+
+        int eventType = next();
+        if (eventType == TEXT) {
+            final String result = mText;
+            eventType = next();
+            if (eventType != END_TAG) {
+                throw new XmlPullParserException("Expected end tag", this, null);
+            }
+            return result;
+        } else if (eventType == END_TAG) {
+            return "";
+        }
+
+        throw new XmlPullParserException("Expected text", this, null);
+    }
+
+    @Override
+    public void require(final int type, final String namespace, final String name) throws XmlPullParserException, IOException {
+        if (type != mEventType || (namespace != null && namespace.length() > 0) || (name != null && !name.equals(getName()))) {
+            throw new XmlPullParserException("Expected " + TYPES[type] + " " + name, this, null);
+        }
+    }
+
+    @Override
+    public int getEventType() throws XmlPullParserException {
+        return mEventType;
+    }
+
+    @Override
+    public String getName() {
+        return (mEventType == START_TAG || mEventType == END_TAG) ? mNameStack[mDepth - 1] : null;
+    }
+
+    @Override
+    public int getDepth() {
+        return mDepth;
+    }
+
+    @Override
+    public String getText() {
+        return mText;
+    }
+
+    @Override
+    public char[] getTextCharacters(final int[] holderForStartAndLength) {
+        if (mText == null) {
+            holderForStartAndLength[0] = holderForStartAndLength[1] = -1;
+            return null;
+        }
+
+        holderForStartAndLength[0] = 0;
+        holderForStartAndLength[1] = mText.length();
+        return mText.toCharArray();
+    }
+
+    @Override
+    public boolean isWhitespace() throws XmlPullParserException {
+        return mText != null && mText.trim().length() == 0;
+    }
+
+    @Override
+    public boolean isEmptyElementTag() throws XmlPullParserException {
+        return false;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return mEventType == START_TAG ? mNumAttributes : -1;
+    }
+
+    @Override
+    public String getAttributeName(final int index) {
+        return mStrings[mAttributes[index * 2]];
+    }
+
+    @Override
+    public String getAttributeValue(final int index) {
+        return mStrings[mAttributes[index * 2 + 1]];
+    }
+
+    @Override
+    public String getAttributeValue(final String namespace, final String name) {
+        for (int i = 0; i < mNumAttributes; i++) {
+            if (mStrings[mAttributes[i * 2]].equals(name)) {
+                return mStrings[mAttributes[i * 2 + 1]];
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String getAttributeNamespace(final int index) {
+        return NO_NAMESPACE;
+    }
+
+    @Override
+    public String getAttributePrefix(final int index) {
+        return null;
+    }
+
+    @Override
+    public String getAttributeType(final int index) {
+        return "CDATA";
+    }
+
+    @Override
+    public boolean isAttributeDefault(final int index) {
+        return false;
+    }
+
+    @Override
+    public String getNamespace() {
+        return NO_NAMESPACE;
+    }
+
+    @Override
+    public String getNamespace(final String prefix) {
+        return null;
+    }
+
+    @Override
+    public int getNamespaceCount(final int depth) throws XmlPullParserException {
+        return 0;
+    }
+
+    @Override
+    public String getNamespacePrefix(final int pos) throws XmlPullParserException {
+        throw new XmlPullParserException("No namespaces");
+    }
+
+    @Override
+    public String getNamespaceUri(final int pos) throws XmlPullParserException {
+        throw new XmlPullParserException("No namespaces");
+    }
+
+    @Override
+    public String getPrefix() {
+        return null;
+    }
+
+    @Override
+    public String getInputEncoding() {
+        return null;
+    }
+
+    @Override
+    public void defineEntityReplacementText(final String entityName, final String replacementText) throws XmlPullParserException {
+        // no entities
+    }
+
+    @Override
+    public void setFeature(final String name, final boolean state) throws XmlPullParserException {
+        // nothing to configure
+    }
+
+    @Override
+    public boolean getFeature(final String name) {
+        return false;
+    }
+
+    @Override
+    public void setProperty(final String name, final Object value) throws XmlPullParserException {
+        // nothing to configure
+    }
+
+    @Override
+    public Object getProperty(final String name) {
+        return null;
+    }
+
+    @Override
+    public String getPositionDescription() {
+        return TYPES[mEventType] + " @" + (mBuffer != null ? mBuffer.position() : 0);
+    }
+
+    @Override
+    public int getLineNumber() {
+        return -1;
+    }
+
+    @Override
+    public int getColumnNumber() {
+        return -1;
+    }
+}
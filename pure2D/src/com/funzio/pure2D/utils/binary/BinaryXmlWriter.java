@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (C) 2012-2014 GREE, Inc.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+/**
+ * 
+ */
+package com.funzio.pure2D.utils.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Converts an XML text file, such as a UI layout or an XML atlas, into the binary format. Uses SAX from the JDK so it can run offline on a plain JVM. Comments
+ * and whitespace-only text are dropped.
+ * 
+ * @author long
+ * @see BinaryXmlParser
+ */
+public class BinaryXmlWriter extends DefaultHandler {
+    private final LinkedHashMap<String, Integer> mStrings = new LinkedHashMap<String, Integer>();
+    private final StringBuilder mText = new StringBuilder();
+
+    // the events, as ints
+    private int[] mEvents = new int[256];
+    private int mNumEvents = 0;
+
+    /**
+     * Read the XML text from the input and write the binary to the output. Both streams are closed.
+     * 
+     * @param in
+     * @param out
+     * @throws IOException
+     * @throws SAXException
+     */
+    public void convert(final InputStream in, final OutputStream out) throws IOException, SAXException {
+        mStrings.clear();
+        mText.setLength(0);
+        mNumEvents = 0;
+
+        try {
+            final XMLReader reader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+            reader.setContentHandler(this);
+            reader.parse(new InputSource(in));
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        } finally {
+            in.close();
+        }
+
+        final DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        try {
+            BinaryFormat.writeHeader(dataOut, BinaryFormat.MAGIC_XML, mStrings.keySet());
+            int i = 0;
+            while (i < mNumEvents) {
+                final int event = mEvents[i++];
+                dataOut.writeByte(event);
+                if (event == BinaryFormat.EVENT_START_TAG) {
+                    dataOut.writeInt(mEvents[i++]); // name
+                    final int numAttributes = mEvents[i++];
+                    dataOut.writeInt(numAttributes);
+                    for (int n = 0; n < numAttributes * 2; n++) {
+                        dataOut.writeInt(mEvents[i++]);
+                    }
+                } else if (event == BinaryFormat.EVENT_TEXT) {
+                    dataOut.writeInt(mEvents[i++]);
+                }
+            }
+        } finally {
+            dataOut.close();
+        }
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) throws SAXException {
+        flushText();
+
+        final int numAttributes = attributes.getLength();
+        add(BinaryFormat.EVENT_START_TAG);
+        add(getStringIndex(qName));
+        add(numAttributes);
+        for (int i = 0; i < numAttributes; i++) {
+            add(getStringIndex(attributes.getQName(i)));
+            add(getStringIndex(attributes.getValue(i)));
+        }
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+        flushText();
+        add(BinaryFormat.EVENT_END_TAG);
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) throws SAXException {
+        mText.append(ch, start, length);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        flushText();
+        add(BinaryFormat.EVENT_END_DOCUMENT);
+    }
+
+    private void flushText() {
+        if (mText.length() > 0) {
+            final String text = mText.toString();
+            if (text.trim().length() > 0) {
+                add(BinaryFormat.EVENT_TEXT);
+                add(getStringIndex(text));
+            }
+            mText.setLength(0);
+        }
+    }
+
+    private void add(final int value) {
+        if (mNumEvents == mEvents.length) {
+            final int[] events = new int[mNumEvents * 2];
+            System.arraycopy(mEvents, 0, events, 0, mNumEvents);
+            mEvents = events;
+        }
+        mEvents[mNumEvents++] = value;
+    }
+
+    private int getStringIndex(final String string) {
+        Integer index = mStrings.get(string);
+        if (index == null) {
+            index = mStrings.size();
+            mStrings.put(string, index);
+        }
+
+        return index;
+    }
+}